@@ -0,0 +1,112 @@
+/*
+ * NeighborNetBenchmark.java Copyright (C) 2024 Daniel H. Huson
+ *
+ * (Some files contain contributions from other authors, who are then mentioned separately.)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package megan.benchmarks;
+
+import jloda.util.CanceledException;
+import jloda.util.progress.ProgressSilent;
+import megan.clusteranalysis.nnet.NeighborNet;
+import megan.clusteranalysis.nnet.SplitSystem;
+import megan.clusteranalysis.tree.Distances;
+import megan.clusteranalysis.tree.Taxa;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Random;
+
+/**
+ * benchmark for neighbor-net on random distances between points in the plane, using the L1 metric.
+ * The ordering and the least-squares fit of the split weights are compared against the original implementation,
+ * which is only run up to the given number of taxa, as it takes many minutes for 1000 taxa.
+ * The benchmarks are not part of the MEGAN build, compile and run them with megan.jar and jloda.jar on the class path.
+ * Usage: NeighborNetBenchmark [max-taxa-for-reference] [taxa...]
+ * Daniel Huson, 10.2026
+ */
+public class NeighborNetBenchmark {
+
+    public static void main(String[] args) throws CanceledException {
+        final var maxTaxaForReference = (args.length > 0 ? Integer.parseInt(args[0]) : 1000);
+        final var sizes = (args.length > 1 ? Arrays.stream(args, 1, args.length).mapToInt(Integer::parseInt).toArray() : new int[]{100, 1000, 3000});
+
+        for (var ntax : sizes) {
+            final var random = new Random(666 + ntax); // same distances for a given number of taxa, whatever other sizes are run
+            final var taxa = new Taxa();
+            for (var t = 1; t <= ntax; t++)
+                taxa.add("t" + t);
+            final var distances = createDistances(ntax, random);
+
+            var start = System.currentTimeMillis();
+            final var neighborNet = new NeighborNet();
+            final var splits = neighborNet.apply(new ProgressSilent(), taxa, distances);
+            final var time = System.currentTimeMillis() - start;
+            System.err.printf("Taxa: %,d, NeighborNet:              %,d ms, splits=%,d fit=%.6g%n", ntax, time, splits.size(), computeFit(splits, distances, ntax));
+
+            if (ntax <= maxTaxaForReference) {
+                start = System.currentTimeMillis();
+                final var reference = new NeighborNetReference();
+                final var referenceSplits = reference.apply(new ProgressSilent(), taxa, distances);
+                final var referenceTime = System.currentTimeMillis() - start;
+                System.err.printf("Taxa: %,d, original implementation:  %,d ms, splits=%,d fit=%.6g%n", ntax, referenceTime, referenceSplits.size(), computeFit(referenceSplits, distances, ntax));
+                System.err.println("Same ordering: " + Arrays.equals(neighborNet.getOrdering(), reference.getOrdering()));
+            }
+        }
+    }
+
+    /**
+     * L1 distances between random points in the unit square
+     */
+    private static Distances createDistances(int ntax, Random random) {
+        final var x = new double[ntax + 1];
+        final var y = new double[ntax + 1];
+        for (var i = 1; i <= ntax; i++) {
+            x[i] = random.nextDouble();
+            y[i] = random.nextDouble();
+        }
+        final var distances = new Distances(ntax);
+        for (var i = 1; i <= ntax; i++) {
+            for (var j = i + 1; j <= ntax; j++)
+                distances.set(i, j, Math.abs(x[i] - x[j]) + Math.abs(y[i] - y[j]));
+        }
+        return distances;
+    }
+
+    /**
+     * sum of squared differences between the given distances and the distances induced by the weighted splits
+     */
+    private static double computeFit(SplitSystem splits, Distances distances, int ntax) {
+        final var induced = new double[ntax + 1][ntax + 1];
+        for (var s = 1; s <= splits.size(); s++) {
+            final BitSet part = splits.getSplit(s).getA();
+            final var weight = splits.getSplit(s).getWeight();
+            for (var i = 1; i <= ntax; i++) {
+                for (var j = i + 1; j <= ntax; j++) {
+                    if (part.get(i) != part.get(j))
+                        induced[i][j] += weight;
+                }
+            }
+        }
+        var fit = 0.0;
+        for (var i = 1; i <= ntax; i++) {
+            for (var j = i + 1; j <= ntax; j++) {
+                final var diff = distances.get(i, j) - induced[i][j];
+                fit += diff * diff;
+            }
+        }
+        return fit;
+    }
+}
@@ -18,6 +18,9 @@
  */
 package megan.algorithms;
 
+import megan.classification.Classification;
+import megan.classification.data.IntIdSet;
+import megan.data.ClassificationOrdinals;
 import megan.data.IMatchBlock;
 import megan.data.IReadBlock;
 import megan.viewer.TaxonomyData;
@@ -36,12 +39,14 @@ public class ActiveMatches {
 	 */
     public static void compute(double minScore, double topPercent, double maxExpected, float minPercentIdentity, IReadBlock readBlock, String cName, BitSet activeMatchesForClassification) {
         activeMatchesForClassification.clear();
+        final int cOrdinal = (cName == null ? -1 : ClassificationOrdinals.get(cName));
+        final IntIdSet disabledTaxa = (Classification.Taxonomy.equals(cName) ? TaxonomyData.getDisabledTaxa() : null);
         // the set of matches that we will consider:
         for (int i = 0; i < readBlock.getNumberOfAvailableMatchBlocks(); i++) {
             final IMatchBlock matchBlock = readBlock.getMatchBlock(i);
-            if (!matchBlock.isIgnore() && !TaxonomyData.isTaxonDisabled(cName, matchBlock.getTaxonId()) && matchBlock.getBitScore() >= minScore && matchBlock.getExpected() <= maxExpected &&
+            if (!matchBlock.isIgnore() && !isDisabled(disabledTaxa, matchBlock.getTaxonId()) && matchBlock.getBitScore() >= minScore && matchBlock.getExpected() <= maxExpected &&
                     (matchBlock.getPercentIdentity() == 0 || matchBlock.getPercentIdentity() >= minPercentIdentity)) {
-                if (cName == null || matchBlock.getId(cName) > 0)
+                if (cName == null || matchBlock.getId(cOrdinal) > 0)
                     activeMatchesForClassification.set(i);
             }
         }
@@ -57,6 +62,15 @@ public class ActiveMatches {
         applyTopPercentFilter(topPercent, bestScore, minPercentIdentity, readBlock, activeMatchesForClassification);
     }
 
+    /**
+     * is the taxon disabled? Same as TaxonomyData.isTaxonDisabled(), but the set of disabled taxa is only looked up once per read
+     *
+     * @param disabledTaxa disabled taxa, or null, if not the taxonomy
+     */
+    private static boolean isDisabled(IntIdSet disabledTaxa, int taxonId) {
+        return disabledTaxa != null && taxonId > 0 && !disabledTaxa.isEmpty() && disabledTaxa.contains(taxonId);
+    }
+
     /**
      * applies the top percent filter to a set of active matches
      *
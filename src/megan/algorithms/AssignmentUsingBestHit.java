@@ -24,6 +24,7 @@ import jloda.util.FileUtils;
 import jloda.util.NumberUtils;
 import jloda.util.StringUtils;
 import megan.classification.IdMapper;
+import megan.data.ClassificationOrdinals;
 import megan.data.IMatchBlock;
 import megan.data.IReadBlock;
 
@@ -39,6 +40,7 @@ import java.util.Map;
  */
 public class AssignmentUsingBestHit implements IAssignmentAlgorithm {
     private final String cName;
+    private final int cOrdinal;
 
     private final Map<String, Integer> externalName2IdMap;
 
@@ -48,6 +50,7 @@ public class AssignmentUsingBestHit implements IAssignmentAlgorithm {
 	 */
     public AssignmentUsingBestHit(String cName, String fileName) {
         this.cName = cName;
+        this.cOrdinal = ClassificationOrdinals.get(cName);
 
         externalName2IdMap = loadAssignmentFiles(cName, fileName);
 
@@ -75,7 +78,7 @@ public class AssignmentUsingBestHit implements IAssignmentAlgorithm {
 
         for (int i = activeMatches.nextSetBit(0); i != -1; i = activeMatches.nextSetBit(i + 1)) {
             IMatchBlock match = readBlock.getMatchBlock(i);
-            int id = match.getId(cName);
+            int id = match.getId(cOrdinal);
             if (id > 0)
                 return id;
         }
@@ -25,6 +25,7 @@ import megan.classification.ClassificationManager;
 import megan.classification.IdMapper;
 import megan.classification.data.ClassificationFullTree;
 import megan.core.Document;
+import megan.data.ClassificationOrdinals;
 import megan.data.IMatchBlock;
 import megan.data.IReadBlock;
 import megan.viewer.TaxonomyData;
@@ -37,6 +38,7 @@ import java.util.*;
  */
 public class AssignmentUsingIntervalUnionLCA implements IAssignmentAlgorithm {
     private final String cName;
+    private final int cOrdinal;
     private final float weightedPercentFactor;
     private final float topPercent;
     private final ClassificationFullTree fullTree;
@@ -54,6 +56,7 @@ public class AssignmentUsingIntervalUnionLCA implements IAssignmentAlgorithm {
      */
     public AssignmentUsingIntervalUnionLCA(final String cName, Document doc) {
         this.cName = cName;
+        this.cOrdinal = ClassificationOrdinals.get(cName);
         this.weightedPercentFactor = Math.min(1f, doc.getLcaCoveragePercent() / 100.0f);
         this.topPercent = doc.getTopPercent();
         this.fullTree = ClassificationManager.get(cName, true).getFullTree();
@@ -100,7 +103,7 @@ public class AssignmentUsingIntervalUnionLCA implements IAssignmentAlgorithm {
         int numberOfEvents = 0;
         for (int m = activeMatches.nextSetBit(0); m != -1; m = activeMatches.nextSetBit(m + 1)) {
             final IMatchBlock matchBlock = readBlock.getMatchBlock(m);
-            int taxonId = matchBlock.getId(cName);
+            int taxonId = matchBlock.getId(cOrdinal);
             if (taxonId > 0 && !TaxonomyData.isTaxonDisabled(cName, taxonId)) {
                 if (numberOfEvents + 1 >= events.length) { // need enough to add two new events
                     StartStopEvent[] tmp = new StartStopEvent[2 * events.length];
@@ -135,7 +138,7 @@ public class AssignmentUsingIntervalUnionLCA implements IAssignmentAlgorithm {
                         taxon2BestScore.clear();
                         for (int m = currentMatches.nextSetBit(0); m != -1; m = currentMatches.nextSetBit(m + 1)) {
                             final IMatchBlock matchBlock = readBlock.getMatchBlock(m);
-                            final int taxonId = matchBlock.getId(cName); // store the best score for each taxon
+                            final int taxonId = matchBlock.getId(cOrdinal); // store the best score for each taxon
 
                             if (taxonId > 0 && !TaxonomyData.isTaxonDisabled(cName, taxonId)) {
                                 Float bestScore = taxon2BestScore.get(taxonId);
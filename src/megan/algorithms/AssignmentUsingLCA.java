@@ -23,6 +23,7 @@ import megan.classification.ClassificationManager;
 import megan.classification.IdMapper;
 import megan.classification.data.ClassificationFullTree;
 import megan.classification.data.Name2IdMap;
+import megan.data.ClassificationOrdinals;
 import megan.data.IMatchBlock;
 import megan.data.IReadBlock;
 
@@ -42,6 +43,7 @@ public class AssignmentUsingLCA implements IAssignmentAlgorithm {
     private final Map<Character, Integer> ch2weight;
 
     private final String cName;
+    private final int cOrdinal;
 
     private final boolean useIdentityFilter;
     private final float proportionToCover;
@@ -66,6 +68,7 @@ public class AssignmentUsingLCA implements IAssignmentAlgorithm {
 	 */
     public AssignmentUsingLCA(String cName, boolean useIdentityFilter, float percentToCover, boolean ignoreAncestralTaxa) {
         this.cName = cName;
+        this.cOrdinal = ClassificationOrdinals.get(cName);
         fullTree = ClassificationManager.get(cName, false).getFullTree();
         idMapper = ClassificationManager.get(cName, true).getIdMapper();
         name2IdMap = ClassificationManager.get(cName, false).getIdMapper().getName2IdMap();
@@ -99,7 +102,7 @@ public class AssignmentUsingLCA implements IAssignmentAlgorithm {
             int numberOfAddresses = 0;
             for (int i = activeMatches.nextSetBit(0); i != -1; i = activeMatches.nextSetBit(i + 1)) {
                 final IMatchBlock matchBlock = readBlock.getMatchBlock(i);
-                int id = matchBlock.getId(cName);
+                int id = matchBlock.getId(cOrdinal);
                 if (id > 0) {
                     if (!idMapper.isDisabled(id)) {
                         final String address = fullTree.getAddress(id);
@@ -120,7 +123,7 @@ public class AssignmentUsingLCA implements IAssignmentAlgorithm {
             if (numberOfAddresses == 0 && hasDisabledMatches) {
                 for (int i = activeMatches.nextSetBit(0); i != -1; i = activeMatches.nextSetBit(i + 1)) {
                     final IMatchBlock matchBlock = readBlock.getMatchBlock(i);
-                    int id = matchBlock.getId(cName);
+                    int id = matchBlock.getId(cOrdinal);
                     if (id > 0) {
                         final String address = fullTree.getAddress(id);
                         if (address != null) {
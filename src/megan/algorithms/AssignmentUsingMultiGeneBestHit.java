@@ -22,6 +22,7 @@ package megan.algorithms;
 import jloda.util.interval.Interval;
 import jloda.util.interval.IntervalTree;
 import megan.classification.IdMapper;
+import megan.data.ClassificationOrdinals;
 import megan.data.IMatchBlock;
 import megan.data.IReadBlock;
 
@@ -40,6 +41,7 @@ public class AssignmentUsingMultiGeneBestHit implements IMultiAssignmentAlgorith
     private final Set<Integer> additionalClassIds = new HashSet<>();
 
     private final String cName;
+    private final int cOrdinal;
 
     private int minOverlap = 18;
 
@@ -49,6 +51,7 @@ public class AssignmentUsingMultiGeneBestHit implements IMultiAssignmentAlgorith
 	 */
     public AssignmentUsingMultiGeneBestHit(String cName) {
         this.cName = cName;
+        this.cOrdinal = ClassificationOrdinals.get(cName);
         allMatches = new IntervalTree<>();
         reverseMatches = new IntervalTree<>();
     }
@@ -70,7 +73,7 @@ public class AssignmentUsingMultiGeneBestHit implements IMultiAssignmentAlgorith
         int result = IdMapper.UNASSIGNED_ID;
         final IntervalTree<IMatchBlock> acceptedMatches = computeAcceptedMatches(activeMatches, readBlock);
         for (Interval<IMatchBlock> interval : acceptedMatches) {
-            final int id = interval.getData().getId(cName);
+            final int id = interval.getData().getId(cOrdinal);
             if (result == IdMapper.UNASSIGNED_ID && id > 0)
                 result = id;
             else
@@ -123,7 +126,7 @@ public class AssignmentUsingMultiGeneBestHit implements IMultiAssignmentAlgorith
         reverseMatches.clear();
         for (var i = activeMatches.nextSetBit(0); i != -1; i = activeMatches.nextSetBit(i + 1)) {
             var matchBlock = readBlock.getMatchBlock(i);
-            if (matchBlock.getId(cName) > 0) {
+            if (matchBlock.getId(cOrdinal) > 0) {
                 if (matchBlock.getAlignedQueryStart() <= matchBlock.getAlignedQueryEnd()) {
                     allMatches.add(matchBlock.getAlignedQueryStart(), matchBlock.getAlignedQueryEnd(), matchBlock);
                 } else
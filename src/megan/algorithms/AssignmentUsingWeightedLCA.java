@@ -21,12 +21,11 @@ package megan.algorithms;
 
 
 import jloda.swing.util.ProgramProperties;
-import jloda.util.Basic;
 import megan.classification.ClassificationManager;
 import megan.classification.IdMapper;
 import megan.classification.data.ClassificationFullTree;
 import megan.classification.data.Name2IdMap;
-import megan.daa.connector.MatchBlockDAA;
+import megan.data.ClassificationOrdinals;
 import megan.data.IMatchBlock;
 import megan.data.IReadBlock;
 
@@ -40,12 +39,13 @@ import java.util.*;
  */
 public class AssignmentUsingWeightedLCA implements IAssignmentAlgorithm {
     private final String cName;
+    private final int cOrdinal;
     private final ClassificationFullTree fullTree;
     private final Name2IdMap name2IdMap;
     private final IdMapper idMapper;
 
-    private final int[] refId2weight;
-    private final Map<String, Integer> ref2weight; // map reference sequence to number of reads associated with it
+    private final int[] refIndex2weight; // number of reads associated with each reference
+    private final ReferenceDictionary referenceDictionary;
     private final Taxon2SpeciesMapping taxon2SpeciesMapping;
 
     private final boolean useIdentityFilter;
@@ -62,14 +62,15 @@ public class AssignmentUsingWeightedLCA implements IAssignmentAlgorithm {
      * constructor
      *
 	 */
-    public AssignmentUsingWeightedLCA(final String cName, final int[] refId2Weight, final Map<String, Integer> ref2weight, final Taxon2SpeciesMapping taxon2SpeciesMapping, final float percentToCover, final boolean useIdentityFilter) {
+    public AssignmentUsingWeightedLCA(final String cName, final int[] refIndex2weight, final ReferenceDictionary referenceDictionary, final Taxon2SpeciesMapping taxon2SpeciesMapping, final float percentToCover, final boolean useIdentityFilter) {
         this.cName = cName;
+        this.cOrdinal = ClassificationOrdinals.get(cName);
         this.useIdentityFilter = useIdentityFilter;
         fullTree = ClassificationManager.get(cName, true).getFullTree();
         idMapper = ClassificationManager.get(cName, true).getIdMapper();
         name2IdMap = ClassificationManager.get(cName, true).getName2IdMap();
-        this.refId2weight = refId2Weight;
-        this.ref2weight = ref2weight;
+        this.refIndex2weight = refIndex2weight;
+        this.referenceDictionary = referenceDictionary;
         this.taxon2SpeciesMapping = taxon2SpeciesMapping;
 
         this.percentToCover = (percentToCover >= 99.9999 ? 100 : percentToCover);
@@ -97,7 +98,7 @@ public class AssignmentUsingWeightedLCA implements IAssignmentAlgorithm {
             // collect the addresses of all non-disabled taxa:
             for (int i = activeMatches.nextSetBit(0); i != -1; i = activeMatches.nextSetBit(i + 1)) {
                 final IMatchBlock matchBlock = readBlock.getMatchBlock(i);
-                int taxId = matchBlock.getId(cName);
+                int taxId = matchBlock.getId(cOrdinal);
 
                 if (taxId > 0) {
                     if (!allowBelowSpeciesAssignment) {
@@ -110,22 +111,7 @@ public class AssignmentUsingWeightedLCA implements IAssignmentAlgorithm {
                             if (arrayLength >= addressingArray.length)
                                 addressingArray = resizeArray(addressingArray, 2 * addressingArray.length);
 
-                            if (ref2weight != null) {
-                                final String ref = matchBlock.getTextFirstWord();
-                                Integer weight = ref != null ? ref2weight.get(ref) : null;
-                                if (weight == null)
-                                    weight = 1;
-                                addressingArray[arrayLength++].set(address, weight);
-                            } else {
-                                final int refId = ((MatchBlockDAA) matchBlock).getSubjectId();
-                                int weight = Math.max(1, refId2weight[refId]);
-                                try {
-                                    addressingArray[arrayLength++].set(address, weight);
-                                } catch (NullPointerException ex) {
-                                    Basic.caught(ex);
-                                    throw ex;
-                                }
-                            }
+                            addressingArray[arrayLength++].set(address, getWeight(matchBlock));
                         }
                     } else
                         hasDisabledMatches = true;
@@ -136,7 +122,7 @@ public class AssignmentUsingWeightedLCA implements IAssignmentAlgorithm {
             if (arrayLength == 0 && hasDisabledMatches) {
                 for (int i = activeMatches.nextSetBit(0); i != -1; i = activeMatches.nextSetBit(i + 1)) {
                     final IMatchBlock matchBlock = readBlock.getMatchBlock(i);
-                    int taxId = matchBlock.getId(cName);
+                    int taxId = matchBlock.getId(cOrdinal);
                     if (taxId > 0) {
                         if (!allowBelowSpeciesAssignment) {
                             taxId = taxon2SpeciesMapping.getSpeciesOrReturnTaxonId(taxId);
@@ -148,18 +134,7 @@ public class AssignmentUsingWeightedLCA implements IAssignmentAlgorithm {
                                 if (arrayLength >= addressingArray.length)
                                     addressingArray = resizeArray(addressingArray, 2 * addressingArray.length);
 
-                                if (ref2weight != null) {
-                                    final String ref = matchBlock.getTextFirstWord();
-                                    Integer weight = ref2weight.get(ref);
-                                    if (weight == null)
-                                        weight = 1;
-                                    addressingArray[arrayLength++].set(address, weight);
-
-                                } else {
-                                    final int refId = ((MatchBlockDAA) matchBlock).getSubjectId();
-                                    int weight = Math.max(1, refId2weight[refId]);
-                                    addressingArray[arrayLength++].set(address, weight);
-                                }
+                                addressingArray[arrayLength++].set(address, getWeight(matchBlock));
                             }
                         }
                     }
@@ -186,6 +161,16 @@ public class AssignmentUsingWeightedLCA implements IAssignmentAlgorithm {
         return IdMapper.UNASSIGNED_ID;
     }
 
+    /**
+     * get the weight of the reference of a match
+     *
+     * @return number of reads associated with the reference, at least 1
+     */
+    private int getWeight(IMatchBlock matchBlock) {
+        final int refIndex = referenceDictionary.lookup(matchBlock);
+        return (refIndex >= 0 && refIndex < refIndex2weight.length ? Math.max(1, refIndex2weight[refIndex]) : 1);
+    }
+
     /**
      * get the LCA of two ids
      *
@@ -26,17 +26,16 @@ import jloda.util.progress.ProgressListener;
 import jloda.util.progress.ProgressPercentage;
 import megan.core.Document;
 import megan.daa.connector.DAAConnector;
-import megan.daa.connector.MatchBlockDAA;
 import megan.daa.connector.ReadBlockDAA;
+import megan.data.ClassificationOrdinals;
 import megan.data.IConnector;
 import megan.data.IMatchBlock;
 import megan.data.IReadBlock;
 import megan.data.IReadBlockIterator;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.BitSet;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
@@ -47,14 +46,14 @@ import java.util.concurrent.Executors;
  * Daniel Huson, 2.2016
  */
 public class AssignmentUsingWeightedLCACreator implements IAssignmentAlgorithmCreator {
-    private int[] refId2weight;
-    private Map<String, Integer> ref2weight; // map reference sequence to number of reads associated with it
-    private final Object syncRef = new Object();
+    private final ReferenceDictionary referenceDictionary = new ReferenceDictionary();
+    private int[] refIndex2weight; // number of reads associated with each reference
 
     private final boolean useIdentityFilter;
     private final float percentToCover;
 
     private final String cName;
+    private final int cOrdinal;
 
     private final Taxon2SpeciesMapping taxon2SpeciesMapping;
 
@@ -63,6 +62,7 @@ public class AssignmentUsingWeightedLCACreator implements IAssignmentAlgorithmCr
      */
     public AssignmentUsingWeightedLCACreator(final String cName, final Document doc, final boolean usingIdentityFilter, final float percentToCover) throws IOException, CanceledException {
         this.cName = cName;
+        this.cOrdinal = ClassificationOrdinals.get(cName);
         this.useIdentityFilter = usingIdentityFilter;
 
         this.taxon2SpeciesMapping = new Taxon2SpeciesMapping(cName, doc.getProgressListener());
@@ -75,16 +75,17 @@ public class AssignmentUsingWeightedLCACreator implements IAssignmentAlgorithmCr
     }
 
     /**
-     * compute all the reference weights
+     * compute all the reference weights. References are indexed using a reference dictionary, each worker thread
+     * accumulates weights in its own array and the arrays are summed at the end
      *
 	 */
     private void computeWeights(final Document doc) throws IOException, CanceledException {
         final IConnector connector = doc.getConnector();
-        if (connector instanceof DAAConnector) {
-            DAAConnector daaConnector = (DAAConnector) connector;
-            refId2weight = new int[(int) daaConnector.getDAAHeader().getDbSeqsUsed()];
+        final int initialNumberOfReferences;
+        if (connector instanceof DAAConnector daaConnector) {
+            initialNumberOfReferences = (int) daaConnector.getDAAHeader().getDbSeqsUsed();
         } else
-            ref2weight = new HashMap<>(10000000);
+            initialNumberOfReferences = 10000;
 
         final int numberOfThreads = ProgramExecutorService.getNumberOfCoresToUse();
         final ExecutorService executorService = Executors.newFixedThreadPool(ProgramExecutorService.getNumberOfCoresToUse());
@@ -92,6 +93,7 @@ public class AssignmentUsingWeightedLCACreator implements IAssignmentAlgorithmCr
 
         final long[] totalMatches = new long[numberOfThreads];
         final long[] totalWeight = new long[numberOfThreads];
+        final int[][] threadRefIndex2weight = new int[numberOfThreads][];
 
         final ArrayBlockingQueue<IReadBlock> queue = new ArrayBlockingQueue<>(1000);
         final IReadBlock sentinel = new ReadBlockDAA();
@@ -102,6 +104,8 @@ public class AssignmentUsingWeightedLCACreator implements IAssignmentAlgorithmCr
         for (int i = 0; i < numberOfThreads; i++) {
             final int threadNumber = i;
             executorService.submit(() -> {
+                // start small and grow as needed: for DAA, the number of references can be huge, but few of them have matches
+                int[] weights = new int[Math.min(initialNumberOfReferences, 10000)];
                 try {
                     final BitSet activeMatches = new BitSet(); // pre filter matches for taxon identification
 
@@ -119,7 +123,7 @@ public class AssignmentUsingWeightedLCACreator implements IAssignmentAlgorithmCr
                         int speciesId = 0; // assigns weights at the species level
                         for (int i1 = activeMatches.nextSetBit(0); i1 != -1; i1 = activeMatches.nextSetBit(i1 + 1)) {
                             final IMatchBlock matchBlock = readBlock.getMatchBlock(i1);
-                            int id = matchBlock.getId(cName);
+                            int id = matchBlock.getId(cOrdinal);
                             if (id > 0) {
                                 id = taxon2SpeciesMapping.getSpecies(id); // todo: there is a potential problem here: what if the match is to a higher rank and that is incompatible with the majority species?
                                 if (id > 0) {
@@ -134,25 +138,18 @@ public class AssignmentUsingWeightedLCACreator implements IAssignmentAlgorithmCr
                         }
 
                         if (speciesId > 0) {
+                            final int readWeight = Math.max(1, readBlock.getReadWeight());
                             for (int i1 = activeMatches.nextSetBit(0); i1 != -1; i1 = activeMatches.nextSetBit(i1 + 1)) {
                                 final IMatchBlock matchBlock = readBlock.getMatchBlock(i1);
-                                int id = matchBlock.getId(cName);
+                                int id = matchBlock.getId(cOrdinal);
                                 if (id > 0) {
                                     id = taxon2SpeciesMapping.getSpecies(id);
                                     if (id == speciesId) {
-                                        if (ref2weight != null) {
-                                            final String ref = matchBlock.getTextFirstWord();
-                                            synchronized (syncRef) {
-                                                final Integer count = Basic.replaceNull(ref2weight.get(ref), 0);
-                                                ref2weight.put(ref, count + Math.max(1, readBlock.getReadWeight()));
-                                            }
-                                        } else {
-                                            final int refId = ((MatchBlockDAA) matchBlock).getSubjectId();
-                                            synchronized (syncRef) {
-                                                refId2weight[refId] += Math.max(1, readBlock.getReadWeight());
-                                            }
-                                        }
-                                        totalWeight[threadNumber] += Math.max(1, readBlock.getReadWeight());
+                                        final int refIndex = referenceDictionary.getIndex(matchBlock);
+                                        if (refIndex >= weights.length)
+                                            weights = Arrays.copyOf(weights, Math.max(refIndex + 1, 2 * weights.length));
+                                        weights[refIndex] += readWeight;
+                                        totalWeight[threadNumber] += readWeight;
                                     }
                                 }
                             }
@@ -161,6 +158,7 @@ public class AssignmentUsingWeightedLCACreator implements IAssignmentAlgorithmCr
                 } catch (Exception ex) {
                     Basic.caught(ex);
                 } finally {
+                    threadRefIndex2weight[threadNumber] = weights;
                     countDownLatch.countDown();
                 }
             });
@@ -195,10 +193,26 @@ public class AssignmentUsingWeightedLCACreator implements IAssignmentAlgorithmCr
         if (progress.isUserCancelled())
             throw new CanceledException();
 
+        // sum the weights computed by the threads:
+        var length = 0;
+        for (int[] weights : threadRefIndex2weight) {
+            if (weights != null)
+                length = Math.max(length, weights.length);
+        }
+        refIndex2weight = new int[length];
+        for (int t = 0; t < numberOfThreads; t++) {
+            final int[] weights = threadRefIndex2weight[t];
+            if (weights != null) {
+                for (int r = 0; r < weights.length; r++)
+                    refIndex2weight[r] += weights[r];
+                threadRefIndex2weight[t] = null;
+            }
+        }
+
         if (progress instanceof ProgressPercentage)
             progress.reportTaskCompleted();
         System.err.printf("Total matches:    %,12d %n", CollectionUtils.getSum(totalMatches));
-        System.err.printf("Total references: %,12d %n", (ref2weight != null ? ref2weight.size() : refId2weight.length));
+        System.err.printf("Total references: %,12d %n", (connector instanceof DAAConnector ? initialNumberOfReferences : referenceDictionary.getNumberOfNames()));
         System.err.printf("Total weights:    %,12d %n", CollectionUtils.getSum(totalWeight));
         System.err.println();
 
@@ -212,7 +226,7 @@ public class AssignmentUsingWeightedLCACreator implements IAssignmentAlgorithmCr
      */
 
     public AssignmentUsingWeightedLCA createAssignmentAlgorithm() {
-        return new AssignmentUsingWeightedLCA(cName, refId2weight, ref2weight, taxon2SpeciesMapping, percentToCover, useIdentityFilter);
+        return new AssignmentUsingWeightedLCA(cName, refIndex2weight, referenceDictionary, taxon2SpeciesMapping, percentToCover, useIdentityFilter);
     }
 }
 
@@ -29,6 +29,7 @@ import jloda.util.progress.ProgressPercentage;
 import megan.classification.Classification;
 import megan.classification.ClassificationManager;
 import megan.classification.IdMapper;
+import megan.classification.data.IntIdSet;
 import megan.core.ContaminantManager;
 import megan.core.Document;
 import megan.core.ReadAssignmentCalculator;
@@ -47,6 +48,11 @@ import java.util.*;
  * Daniel Huson, 1.2009, 3.2016
  */
 public class DataProcessor {
+    /**
+     * property: write the assignments of reads to a temporary file during binning, rather than keeping them in memory
+     */
+    public static final String STREAMING_BINNING = "StreamingBinning";
+
     /**
      * process a dataset
      *
@@ -78,7 +84,12 @@ public class DataProcessor {
                     useLCAForClassification[c] = true;
             }
 
-            final var updateList = new UpdateItemList(numberOfClassifications);
+            final IClassificationUpdates updateList;
+            if (ProgramProperties.get(STREAMING_BINNING, false)) {
+                System.err.println("Writing read assignments to temporary file");
+                updateList = new UpdateItemFile(numberOfClassifications, null);
+            } else
+                updateList = new UpdateItemList(numberOfClassifications);
 
             final var doMatePairs = doc.isPairedReads() && doc.getMeganFile().isRMA6File();
 
@@ -147,10 +158,9 @@ public class DataProcessor {
             for (int c = 0; c < numberOfClassifications; c++)
                 assignmentAlgorithm[c] = assignmentAlgorithmCreators[c].createAssignmentAlgorithm();
 
-            final Set<Integer>[] knownIds = new HashSet[numberOfClassifications];
+            final IntIdSet[] knownIds = new IntIdSet[numberOfClassifications];
             for (int c = 0; c < numberOfClassifications; c++) {
-                knownIds[c] = new HashSet<>();
-                knownIds[c].addAll(ClassificationManager.get(cNames[c], true).getName2IdMap().getIds());
+                knownIds[c] = ClassificationManager.get(cNames[c], true).getKnownIds();
             }
 
             final IConnector connector = doc.getConnector();
@@ -247,7 +257,7 @@ public class DataProcessor {
                                         final BitSet activeMatchesForMateTaxa = new BitSet(); // pre filter matches for mate-based taxon identification
                                         ActiveMatches.compute(doc.getMinScore(), topPercentForActiveMatchFiltering, doc.getMaxExpected(), doc.getMinPercentIdentity(), mateReadBlock, cNames[c], activeMatchesForMateTaxa);
                                         if (referenceCoverFilter != null)
-                                            referenceCoverFilter.applyFilter(readBlock, activeMatchesForMateTaxa);
+                                            referenceCoverFilter.applyFilter(mateReadBlock, activeMatchesForMateTaxa);
 
                                         int mateTaxId = assignmentAlgorithm[c].computeId(activeMatchesForMateTaxa, mateReadBlock);
                                         if (mateTaxId > 0) {
@@ -394,7 +404,12 @@ public class DataProcessor {
 
             progress.setTasks("Binning reads", "Writing classification tables");
 
-            connector.updateClassifications(cNames, updateList, progress);
+            if (updateList instanceof UpdateItemFile updateItemFile) {
+                try (updateItemFile) {
+                    connector.updateClassifications(cNames, updateItemFile, progress);
+                }
+            } else
+                connector.updateClassifications(cNames, (UpdateItemList) updateList, progress);
 
             connector.setNumberOfReads((int) doc.getNumberOfReads());
 
@@ -425,7 +440,7 @@ public class DataProcessor {
      * is one of the class ids known?
      *
 	 */
-    private static boolean nonEmptyIntersection(Set<Integer> knownIds, int classId, ArrayList<int[]> moreClassIds) {
+    private static boolean nonEmptyIntersection(IntIdSet knownIds, int classId, ArrayList<int[]> moreClassIds) {
         for (int[] array : moreClassIds) {
             if (knownIds.contains(array[classId]))
                 return true;
@@ -26,6 +26,7 @@ import jloda.util.Pair;
 import jloda.util.interval.Interval;
 import jloda.util.interval.IntervalTree;
 import jloda.util.progress.ProgressListener;
+import megan.data.ClassificationOrdinals;
 import megan.data.IMatchBlock;
 import megan.data.IReadBlock;
 
@@ -84,6 +85,7 @@ public class IntervalTree4Matches {
                 }
             }
         }
+        final int[] cOrdinals = ClassificationOrdinals.get(cNames);
 
         final IntervalTree<IMatchBlock> allMatches = new IntervalTree<>(); // initially all forward matches, at the end, all resulting matches
         final IntervalTree<IMatchBlock> reverseMatches = new IntervalTree<>(); // all reverse matches
@@ -115,8 +117,8 @@ public class IntervalTree4Matches {
                                 (other.getBitScore() > match.getBitScore() || other.getBitScore() == match.getBitScore() &&
                                         (other.getLength() < match.getLength() || (other.getLength() == match.getLength() && other.getUId() < match.getUId())))) {
                             boolean ok = true; // check that other interval has all annotations that this one has, otherwise it doesn't really dominate
-                            for (String cName : cNames) {
-                                if (match.getId(cName) > 0 && other.getId(cName) <= 0) {
+                            for (int cOrdinal : cOrdinals) {
+                                if (match.getId(cOrdinal) > 0 && other.getId(cOrdinal) <= 0) {
                                     ok = false;
                                     break;
                                 }
@@ -175,6 +177,7 @@ public class IntervalTree4Matches {
                 }
             }
         }
+        final int[] cOrdinals = ClassificationOrdinals.get(cNames);
 
         final IntervalTree<IMatchBlock> allMatches = new IntervalTree<>(); // initially all foward matches, at the end, all resulting matches
         final IntervalTree<IMatchBlock> reverseMatches = new IntervalTree<>(); // all reverse matches
@@ -204,8 +207,8 @@ public class IntervalTree4Matches {
                         final IMatchBlock other = otherInterval.getData();
                         if (otherInterval.overlap(interval) > minProportionCoverToDominate * interval.length() && scoreFactor * other.getBitScore() > match.getBitScore()) {
                             boolean ok = true; // check that other interval has all annotations that this one has, otherwise it doesn't really dominate
-                            for (String cName : cNames) {
-                                if (match.getId(cName) > 0 && other.getId(cName) <= 0) {
+                            for (int cOrdinal : cOrdinals) {
+                                if (match.getId(cOrdinal) > 0 && other.getId(cOrdinal) <= 0) {
                                     ok = false;
                                     break;
                                 }
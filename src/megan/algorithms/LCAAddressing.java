@@ -24,6 +24,7 @@ import jloda.phylo.PhyloTree;
 
 import java.util.Collection;
 import java.util.Map;
+import java.util.function.BiConsumer;
 
 /**
  * Computes addresses used in LCA algorithm
@@ -35,23 +36,37 @@ public class LCAAddressing {
      *
 	 */
     public static void computeAddresses(PhyloTree tree, Map<Integer, String> id2address, Map<String, Integer> address2id) {
+        visitAddresses(tree, (v, address) -> {
+            var id = (Integer) v.getInfo();
+            id2address.put(id, address);
+            address2id.put(address, id);
+        });
+    }
+
+    /**
+     * visits all nodes of the tree in preorder, together with their addresses
+     *
+     * @param visitor called for each node and its address
+     */
+    public static void visitAddresses(PhyloTree tree, BiConsumer<Node, String> visitor) {
         var root = tree.getRoot();
         if (root != null)
-            buildId2AddressRec(root, "", id2address, address2id);
+            visitAddressesRec(root, new StringBuilder(), visitor);
     }
 
     /**
-     * computes the id to address mapping
+     * recursively visits nodes and addresses, the path is extended in place, rather than copied for each node
      *
 	 */
-    private static void buildId2AddressRec(Node v, String path, Map<Integer, String> id2address, Map<String, Integer> address2id) {
-        var id = (Integer) v.getInfo();
-        id2address.put(id, path);
-        address2id.put(path, id);
+    private static void visitAddressesRec(Node v, StringBuilder path, BiConsumer<Node, String> visitor) {
+        visitor.accept(v, path.toString());
+        final var length = path.length();
         if (v.getOutDegree() < Character.MAX_VALUE) {
             char count = 1;
             for (var f = v.getFirstOutEdge(); f != null; f = v.getNextOutEdge(f)) {
-                buildId2AddressRec(f.getOpposite(v), path + count, id2address, address2id);
+                path.append(count);
+                visitAddressesRec(f.getOpposite(v), path, visitor);
+                path.setLength(length);
                 count++;
             }
         } else { // use two characters if outdegree is too big
@@ -62,7 +77,9 @@ public class LCAAddressing {
                     count2++;
                     count1 = 1;
                 }
-                buildId2AddressRec(f.getOpposite(v), (path + count1) + count2, id2address, address2id);
+                path.append(count1).append(count2);
+                visitAddressesRec(f.getOpposite(v), path, visitor);
+                path.setLength(length);
                 count1++;
             }
         }
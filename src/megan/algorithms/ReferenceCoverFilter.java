@@ -20,9 +20,8 @@
 package megan.algorithms;
 
 import jloda.fx.util.ProgramExecutorService;
-import jloda.util.Basic;
 import jloda.util.CanceledException;
-import jloda.util.interval.IntervalChain;
+import jloda.util.Single;
 import jloda.util.progress.ProgressListener;
 import jloda.util.progress.ProgressPercentage;
 import megan.daa.connector.ReadBlockDAA;
@@ -30,33 +29,34 @@ import megan.data.IConnector;
 import megan.data.IMatchBlock;
 import megan.data.IReadBlock;
 import megan.data.IReadBlockIterator;
-import megan.util.BlastParsingUtils;
 
 import java.io.IOException;
-import java.util.*;
-import java.util.concurrent.CountDownLatch;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 /**
- * Computes all references that are covered to the desired level and then can be used to filter matches
- * Daniel Huson, 3.2018
+ * Computes all references that are covered to the desired level and then can be used to filter matches.
+ * References are identified by their index in a reference dictionary. Each worker accumulates the covered intervals
+ * of the references that it sees in its own buffers, which are merged once all reads have been processed
+ * Daniel Huson, 3.2018, 10.2026
  */
 public class ReferenceCoverFilter {
     private boolean isActive = false;
     private float proportionToCover = 0;
-    private final Set<String> referencesToUse = new HashSet<>();
-
-    private final int mask = 1023; // 2^10 - 1
-    private final Object[] sync = new Object[mask + 1];
+    private final ReferenceDictionary referenceDictionary = new ReferenceDictionary();
+    private final BitSet referencesToUse = new BitSet();
 
     /**
      * Constructor
      *
 	 */
     public ReferenceCoverFilter(float percentToCover) {
-        Arrays.fill(sync, new Object());
         setPercentToCover(percentToCover);
     }
 
@@ -67,11 +67,9 @@ public class ReferenceCoverFilter {
     public void compute(ProgressListener progress, final IConnector connector, final float minScore, final float topPercent, final float maxExpected, final float minPercentIdentity) throws CanceledException, IOException {
         isActive = false;
         referencesToUse.clear();
+        referenceDictionary.clear();
 
         if (getPercentToCover() > 0) {
-            final Map<String, Integer> ref2length = new HashMap<>();
-            final Map<String, IntervalChain> ref2intervals = new HashMap<>();
-
             progress.setSubtask("Determining reference coverage");
             System.err.printf("Running reference coverage filter with threshold=%.1f%%%n", getPercentToCover());
 
@@ -79,107 +77,125 @@ public class ReferenceCoverFilter {
             if (numberOfThreads == 0)
                 return; // no reads
 
-            final ExecutorService service = Executors.newFixedThreadPool(ProgramExecutorService.getNumberOfCoresToUse());
+            final ArrayList<Accumulator> accumulators = new ArrayList<>();
+            final Single<Exception> exception = new Single<>();
+
+            final IReadBlockIterator[] iterators = connector.getAllReadsIterators(numberOfThreads, minScore, maxExpected, false, true);
+            final ExecutorService service = Executors.newFixedThreadPool(numberOfThreads);
             try {
-                final CountDownLatch countDownLatch = new CountDownLatch(numberOfThreads);
-                final IReadBlock sentinel = new ReadBlockDAA();
-
-                final LinkedBlockingQueue<IReadBlock> queue = new LinkedBlockingQueue<>(1000);
-
-                for (int t = 0; t < numberOfThreads; t++) {
-                    service.submit(() -> {
-                        try {
-                            while (true) {
-                                final IReadBlock readBlock = queue.take();
-                                if (readBlock == sentinel)
-                                    break;
-                                final BitSet activeMatches = new BitSet(); // pre filter matches for taxon identification
-                                ActiveMatches.compute(minScore, topPercent, maxExpected, minPercentIdentity, readBlock, null, activeMatches);
-                                for (int m = activeMatches.nextSetBit(0); m != -1; m = activeMatches.nextSetBit(m + 1)) {
-                                    final IMatchBlock matchBlock = readBlock.getMatchBlock(m);
-                                    final String refId = matchBlock.getTextFirstWord();
-                                    synchronized (sync[refId.hashCode() & mask]) {
-                                        if (ref2length.get(refId) == null)
-                                            ref2length.put(refId, matchBlock.getRefLength());
-                                        IntervalChain intervals = ref2intervals.get(refId);
-                                        if (intervals == null) {
-                                            intervals = new IntervalChain();
-                                            ref2intervals.put(refId, intervals);
-                                        }
-                                        final String matchText = matchBlock.getText();
-                                        final int start = BlastParsingUtils.getStartSubject(matchText);
-                                        final int end = BlastParsingUtils.getEndSubject(matchText);
-                                        intervals.add(start, end);
-                                    }
+                if (iterators.length > 1) { // each worker reads its own range of reads
+                    progress.setMaximum(iterators.length);
+                    progress.setProgress(0);
+                    for (IReadBlockIterator iterator : iterators) {
+                        final Accumulator accumulator = new Accumulator(minScore, topPercent, maxExpected, minPercentIdentity);
+                        accumulators.add(accumulator);
+                        service.submit(() -> {
+                            try (iterator) {
+                                while (iterator.hasNext() && exception.get() == null) {
+                                    accumulator.add(iterator.next());
                                 }
+                                incrementProgress(progress);
+                            } catch (Exception ex) {
+                                exception.setIfCurrentValueIsNull(ex);
                             }
-                        } catch (Exception e) {
-                            Basic.caught(e);
-                        } finally {
-                            countDownLatch.countDown();
-                        }
-                    });
-                }
+                        });
+                    }
+                    service.shutdown();
+                    service.awaitTermination(1000, TimeUnit.DAYS);
+                } else { // one reader, several workers
+                    final IReadBlock sentinel = new ReadBlockDAA();
+                    final ArrayBlockingQueue<IReadBlock> queue = new ArrayBlockingQueue<>(1000);
 
-                // feed the queue
-                try (final IReadBlockIterator it = connector.getAllReadsIterator(0, 10, false, true)) {
-                    progress.setMaximum(it.getMaximumProgress());
-                    progress.setProgress(0);
+                    for (int t = 0; t < numberOfThreads; t++) {
+                        final Accumulator accumulator = new Accumulator(minScore, topPercent, maxExpected, minPercentIdentity);
+                        accumulators.add(accumulator);
+                        service.submit(() -> {
+                            try {
+                                while (true) {
+                                    final IReadBlock readBlock = queue.take();
+                                    if (readBlock == sentinel)
+                                        break;
+                                    accumulator.add(readBlock);
+                                }
+                            } catch (Exception ex) {
+                                exception.setIfCurrentValueIsNull(ex);
+                            }
+                        });
+                    }
+
+                    try (IReadBlockIterator it = iterators[0]) {
+                        progress.setMaximum(it.getMaximumProgress());
+                        progress.setProgress(0);
 
-                    while (it.hasNext()) {
-                        try {
+                        while (it.hasNext() && exception.get() == null) {
                             queue.put(it.next());
-                        } catch (InterruptedException e) {
-                            Basic.caught(e);
-                            break;
+                            progress.setProgress(it.getProgress());
                         }
-                        progress.setProgress(it.getProgress());
-                    }
-                    for (int i = 0; i < numberOfThreads; i++) {
-                        try {
+                    } finally {
+                        for (int i = 0; i < numberOfThreads; i++) {
                             queue.put(sentinel);
-                        } catch (InterruptedException e) {
-                            Basic.caught(e);
-                            break;
                         }
                     }
+                    service.shutdown();
+                    service.awaitTermination(1000, TimeUnit.DAYS);
                 }
-
-                try {
-                    countDownLatch.await();
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
+            } catch (InterruptedException ex) {
+                exception.setIfCurrentValueIsNull(ex);
             } finally {
                 service.shutdownNow();
             }
 
-            for (String ref : ref2length.keySet()) {
-                Integer length = ref2length.get(ref);
-                if (length != null) {
-                    IntervalChain intervalChain = ref2intervals.get(ref);
-                    if (intervalChain != null && intervalChain.getLength() >= proportionToCover * length)
-                        referencesToUse.add(ref);
+            if (exception.get() != null) {
+                if (exception.get() instanceof CanceledException canceledException)
+                    throw canceledException;
+                else if (exception.get() instanceof IOException ioException)
+                    throw ioException;
+                else
+                    throw new IOException(exception.get());
+            }
+
+            // merge the coverage computed by the different workers:
+            final HashMap<Integer, Coverage> ref2coverage = accumulators.get(0).ref2coverage;
+            for (int t = 1; t < accumulators.size(); t++) {
+                for (var entry : accumulators.get(t).ref2coverage.entrySet()) {
+                    final Coverage coverage = ref2coverage.get(entry.getKey());
+                    if (coverage == null)
+                        ref2coverage.put(entry.getKey(), entry.getValue());
+                    else
+                        coverage.addAll(entry.getValue());
                 }
+                accumulators.get(t).ref2coverage.clear();
+            }
+
+            for (var entry : ref2coverage.entrySet()) {
+                final Coverage coverage = entry.getValue();
+                if (coverage.getCovered() >= proportionToCover * coverage.refLength)
+                    referencesToUse.set(entry.getKey());
             }
             if (progress instanceof ProgressPercentage)
                 progress.reportTaskCompleted();
 
-            System.err.println("Reference cover filter: using " + referencesToUse.size() + " of " + ref2intervals.size() + " references");
-            if (referencesToUse.size() == ref2intervals.size()) {
+            System.err.println("Reference cover filter: using " + referencesToUse.cardinality() + " of " + ref2coverage.size() + " references");
+            if (referencesToUse.cardinality() == ref2coverage.size()) {
                 isActive = false;
                 referencesToUse.clear(); // nothing filtered, might as well clear
+                referenceDictionary.clear();
             } else
                 isActive = true;
         }
     }
 
-    private Set<String> getReferencesToUse() {
-        return referencesToUse;
+    private static void incrementProgress(ProgressListener progress) throws CanceledException {
+        synchronized (progress) {
+            progress.incrementProgress();
+        }
     }
 
-    public boolean useReference(String refId) {
-        return !isActive || referencesToUse.contains(refId);
+    public boolean useReference(IMatchBlock matchBlock) {
+        if (!isActive)
+            return true;
+        final int index = referenceDictionary.lookup(matchBlock);
+        return index != -1 && referencesToUse.get(index);
     }
 
     private float getPercentToCover() {
@@ -201,10 +217,114 @@ public class ReferenceCoverFilter {
     public void applyFilter(IReadBlock readBlock, BitSet activeMatches) {
         if (isActive) {
             for (int m = activeMatches.nextSetBit(0); m != -1; m = activeMatches.nextSetBit(m + 1)) {
-                String refId = readBlock.getMatchBlock(m).getTextFirstWord();
-                if (!getReferencesToUse().contains(refId))
+                if (!useReference(readBlock.getMatchBlock(m)))
                     activeMatches.set(m, false);
             }
         }
     }
+
+    /**
+     * accumulates the coverage of references by the active matches of reads, used by one worker only
+     */
+    private class Accumulator {
+        private final float minScore;
+        private final float topPercent;
+        private final float maxExpected;
+        private final float minPercentIdentity;
+        private final BitSet activeMatches = new BitSet();
+        private final HashMap<Integer, Coverage> ref2coverage = new HashMap<>();
+
+        Accumulator(float minScore, float topPercent, float maxExpected, float minPercentIdentity) {
+            this.minScore = minScore;
+            this.topPercent = topPercent;
+            this.maxExpected = maxExpected;
+            this.minPercentIdentity = minPercentIdentity;
+        }
+
+        void add(IReadBlock readBlock) {
+            activeMatches.clear();
+            ActiveMatches.compute(minScore, topPercent, maxExpected, minPercentIdentity, readBlock, null, activeMatches);
+            for (int m = activeMatches.nextSetBit(0); m != -1; m = activeMatches.nextSetBit(m + 1)) {
+                final IMatchBlock matchBlock = readBlock.getMatchBlock(m);
+                final int refIndex = referenceDictionary.getIndex(matchBlock);
+                Coverage coverage = ref2coverage.get(refIndex);
+                if (coverage == null) {
+                    coverage = new Coverage(matchBlock.getRefLength());
+                    ref2coverage.put(refIndex, coverage);
+                }
+                coverage.add(matchBlock.getAlignedSubjectStart(), matchBlock.getAlignedSubjectEnd());
+            }
+        }
+    }
+
+    /**
+     * the intervals of a reference covered by alignments. Intervals are kept as packed longs and are merged whenever the buffer is full
+     */
+    private static class Coverage {
+        private final int refLength;
+        private long[] intervals = new long[4];
+        private int size = 0;
+
+        Coverage(int refLength) {
+            this.refLength = refLength;
+        }
+
+        void add(int start, int end) {
+            if (start > end) {
+                final int tmp = start;
+                start = end;
+                end = tmp;
+            }
+            if (size == intervals.length) {
+                compact();
+                if (size > intervals.length / 2)
+                    intervals = Arrays.copyOf(intervals, 2 * intervals.length);
+            }
+            intervals[size++] = ((long) start << 32) | (end & 0xffffffffL);
+        }
+
+        void addAll(Coverage other) {
+            for (int i = 0; i < other.size; i++) {
+                add((int) (other.intervals[i] >>> 32), (int) other.intervals[i]);
+            }
+        }
+
+        /**
+         * sorts the intervals and merges overlapping or adjacent ones
+         */
+        private void compact() {
+            if (size <= 1)
+                return;
+            Arrays.sort(intervals, 0, size);
+            int count = 0;
+            int currentStart = (int) (intervals[0] >>> 32);
+            int currentEnd = (int) intervals[0];
+            for (int i = 1; i < size; i++) {
+                final int start = (int) (intervals[i] >>> 32);
+                final int end = (int) intervals[i];
+                if (start <= currentEnd + 1) {
+                    if (end > currentEnd)
+                        currentEnd = end;
+                } else {
+                    intervals[count++] = ((long) currentStart << 32) | (currentEnd & 0xffffffffL);
+                    currentStart = start;
+                    currentEnd = end;
+                }
+            }
+            intervals[count++] = ((long) currentStart << 32) | (currentEnd & 0xffffffffL);
+            size = count;
+        }
+
+        /**
+         * @return number of covered positions
+         */
+        long getCovered() {
+            compact();
+            long covered = 0;
+            for (int i = 0; i < size; i++) {
+                covered += (int) intervals[i] - (int) (intervals[i] >>> 32) + 1;
+            }
+            return covered;
+        }
+    }
 }
@@ -0,0 +1,74 @@
+/*
+ * ReferenceDictionary.java Copyright (C) 2024 Daniel H. Huson
+ *
+ * (Some files contain contributions from other authors, who are then mentioned separately.)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package megan.algorithms;
+
+import megan.daa.connector.MatchBlockDAA;
+import megan.data.IMatchBlock;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * assigns consecutive integer indices to the references of matches, so that references can be used as array indices.
+ * For DAA matches, the subject id is used, for all other matches, the reference name is interned.
+ * A dictionary must only be used for matches from one file. Thread safe
+ * Daniel Huson, 10.2026
+ */
+public class ReferenceDictionary {
+    private final ConcurrentHashMap<String, Integer> name2index = new ConcurrentHashMap<>();
+    private final AtomicInteger numberOfNames = new AtomicInteger();
+
+    /**
+     * gets the index of the reference of the given match, assigning a new index, if the reference is new
+     *
+     * @return index
+     */
+    public int getIndex(IMatchBlock matchBlock) {
+        if (matchBlock instanceof MatchBlockDAA matchBlockDAA)
+            return matchBlockDAA.getSubjectId();
+        final var name = matchBlock.getRefName();
+        final var index = name2index.get(name);
+        return index != null ? index : name2index.computeIfAbsent(name, k -> numberOfNames.getAndIncrement());
+    }
+
+    /**
+     * looks up the index of the reference of the given match
+     *
+     * @return index or -1, if the reference has not been seen
+     */
+    public int lookup(IMatchBlock matchBlock) {
+        if (matchBlock instanceof MatchBlockDAA matchBlockDAA)
+            return matchBlockDAA.getSubjectId();
+        final var index = name2index.get(matchBlock.getRefName());
+        return index != null ? index : -1;
+    }
+
+    /**
+     * number of interned names
+     */
+    public int getNumberOfNames() {
+        return numberOfNames.get();
+    }
+
+    public void clear() {
+        name2index.clear();
+        numberOfNames.set(0);
+    }
+}
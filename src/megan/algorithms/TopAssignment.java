@@ -20,6 +20,7 @@ package megan.algorithms;
 
 import jloda.util.Pair;
 import megan.classification.IdMapper;
+import megan.data.ClassificationOrdinals;
 import megan.data.IMatchBlock;
 import megan.data.IReadBlock;
 
@@ -41,11 +42,12 @@ public class TopAssignment {
             return "";
 
 
+        final int cOrdinal = ClassificationOrdinals.get(classificationName);
         int totalClassMatches = 0;
         Map<Integer, Integer> classId2Count = new HashMap<>();
         for (int i = activeMatches.nextSetBit(0); i != -1; i = activeMatches.nextSetBit(i + 1)) {
             final IMatchBlock matchBlock = readBlock.getMatchBlock(i);
-            int classId = matchBlock.getId(classificationName);
+            int classId = matchBlock.getId(cOrdinal);
             if (classId > 0) {
                 Integer count = classId2Count.get(classId);
                 classId2Count.put(classId, count == null ? 1 : count + 1);
@@ -101,10 +103,11 @@ public class TopAssignment {
         if (readBlock.getNumberOfMatches() == 0)
             return IdMapper.NOHITS_ID;
 
+        final int cOrdinal = ClassificationOrdinals.get(cName);
         for (int i = 0; i < readBlock.getNumberOfAvailableMatchBlocks(); i++) {
             IMatchBlock match = readBlock.getMatchBlock(i);
             if (match.getBitScore() >= minScore && match.getExpected() <= maxExpected && (minPercentIdentity == 0 || match.getPercentIdentity() >= minPercentIdentity)) {
-                int id = match.getId(cName);
+                int id = match.getId(cOrdinal);
                 if (id != 0)
                     return id;
             }
@@ -23,10 +23,12 @@ import jloda.graph.Graph;
 import jloda.graph.Node;
 import jloda.graph.NodeArray;
 import jloda.util.CanceledException;
+import jloda.util.Single;
 import jloda.util.progress.ProgressListener;
 import jloda.util.progress.ProgressPercentage;
 
 import java.util.*;
+import java.util.stream.IntStream;
 
 /**
  * assembles a set of reads that align to a specific class in some classification
@@ -63,74 +65,196 @@ public class OverlapGraphBuilder {
 
         readId2ContainedReads = new List[readDatas.length];
 
-        long countPairs = 0;
-        Map<String, SortedSet<MatchData>> ref2matches = new HashMap<>();
+        // references are numbered in order of first appearance, the keys of this map are later used to process them in the same order as before
+        final Map<String, Integer> ref2index = new HashMap<>();
+        var refCounts = new int[16];
+        var countPairs = 0;
 
         for (int r = 0; r < readDatas.length; r++) {
             final ReadData read = readDatas[r];
             if (read.getMatches() != null) {
                 for (int m = 0; m < read.getMatches().length; m++) {
-                    final MatchData match = read.getMatches()[m];
-                    SortedSet<MatchData> set = ref2matches.get(match.getRefName());
-                    if (set == null) {
-                        set = new TreeSet<>(new MatchData());
-                        ref2matches.put(match.getRefName(), set);
-                    }
-                    set.add(match);
+                    final int refIndex = ref2index.computeIfAbsent(read.getMatches()[m].getRefName(), k -> ref2index.size());
+                    if (refIndex >= refCounts.length)
+                        refCounts = Arrays.copyOf(refCounts, 2 * refCounts.length);
+                    refCounts[refIndex]++;
                     countPairs++;
                 }
             }
             progress.setProgress(r);
         }
+
+        // matches grouped by reference, reference r occupies positions refStart[r] to refStart[r+1]-1
+        final int[] refStart = new int[ref2index.size() + 1];
+        for (int ref = 0; ref < ref2index.size(); ref++)
+            refStart[ref + 1] = refStart[ref] + refCounts[ref];
+        final int[] matchFirst = new int[countPairs];
+        final int[] matchLast = new int[countPairs];
+        final int[] matchRead = new int[countPairs];
+        {
+            final int[] next = Arrays.copyOf(refStart, ref2index.size());
+            for (int r = 0; r < readDatas.length; r++) {
+                final ReadData read = readDatas[r];
+                if (read.getMatches() != null) {
+                    for (MatchData match : read.getMatches()) {
+                        final int pos = next[ref2index.get(match.getRefName())]++;
+                        matchFirst[pos] = match.getFirstPosInRef();
+                        matchLast[pos] = match.getLastPosInRef();
+                        matchRead[pos] = r;
+                    }
+                }
+            }
+        }
         if (progress instanceof ProgressPercentage)
             progress.reportTaskCompleted();
         if (verbose)
             System.err.printf("Overlaps:   %,10d%n", countPairs);
 
-        buildOverlapGraph(readDatas, ref2matches, minOverlap);
+        final byte[][] sequences = new byte[readDatas.length][];
+        IntStream.range(0, readDatas.length).parallel().forEach(r -> sequences[r] = toLowerCaseBytes(readDatas[r].getSegment()));
+
+        // compute all overlaps for all references in parallel:
+        progress.setSubtask("Computing overlaps");
+        progress.setMaximum(ref2index.size());
+        progress.setProgress(0);
+
+        final int[][] ref2sortedMatches = new int[ref2index.size()][];
+        final int[][] ref2overlaps = new int[ref2index.size()][];
+        final Single<Boolean> canceled = new Single<>(false);
+
+        IntStream.range(0, ref2index.size()).parallel().forEach(ref -> {
+            if (!canceled.get()) {
+                final int[] matches = sortMatches(refStart[ref], refStart[ref + 1], matchFirst, matchLast, matchRead);
+                ref2sortedMatches[ref] = matches;
+                ref2overlaps[ref] = computeOverlaps(matches, matchFirst, matchLast, matchRead, sequences, minOverlap);
+                synchronized (progress) {
+                    try {
+                        progress.incrementProgress();
+                    } catch (CanceledException e) {
+                        canceled.set(true);
+                    }
+                }
+            }
+        });
+        if (canceled.get())
+            throw new CanceledException();
+
+        final int[] refOrder = new int[ref2index.size()];
+        {
+            int pos = 0;
+            for (String refName : ref2index.keySet()) {
+                refOrder[pos++] = ref2index.get(refName);
+            }
+        }
+        buildOverlapGraph(readDatas, refOrder, ref2sortedMatches, ref2overlaps, matchLast, matchRead, minOverlap);
+    }
+
+    /**
+     * sorts the matches of one reference by ascending start position, descending end position and ascending read id, removing duplicates
+     *
+     * @return sorted match indices
+     */
+    private int[] sortMatches(int from, int to, int[] matchFirst, int[] matchLast, int[] matchRead) {
+        final int[] matches = new int[to - from];
+        for (int i = 0; i < matches.length; i++)
+            matches[i] = from + i;
+        mergeSort(matches, new int[matches.length], 0, matches.length, (a, b) -> {
+            if (matchFirst[a] != matchFirst[b])
+                return Integer.compare(matchFirst[a], matchFirst[b]);
+            if (matchLast[a] != matchLast[b])
+                return Integer.compare(matchLast[b], matchLast[a]);
+            return Integer.compare(readDatas[matchRead[a]].getId(), readDatas[matchRead[b]].getId());
+        });
+
+        int count = 0;
+        for (int i = 0; i < matches.length; i++) {
+            final int a = matches[i];
+            if (count == 0) {
+                matches[count++] = a;
+            } else {
+                final int b = matches[count - 1];
+                if (matchFirst[a] != matchFirst[b] || matchLast[a] != matchLast[b] || readDatas[matchRead[a]].getId() != readDatas[matchRead[b]].getId())
+                    matches[count++] = a;
+            }
+        }
+        return (count == matches.length ? matches : Arrays.copyOf(matches, count));
     }
 
+    /**
+     * sweep over the sorted matches of one reference and compute all overlaps
+     *
+     * @return triplets (i,j,overlapLength) of positions in the sorted matches, sorted by i and then j, only containing overlaps that are used when building the graph
+     */
+    private static int[] computeOverlaps(int[] matches, int[] matchFirst, int[] matchLast, int[] matchRead, byte[][] sequences, int minOverlap) {
+        int[] overlaps = new int[3 * Math.max(4, matches.length)];
+        int length = 0;
+
+        for (int i = 0; i < matches.length; i++) {
+            final int iMatch = matches[i];
+            for (int j = i + 1; j < matches.length; j++) {
+                final int jMatch = matches[j];
+                if (3 * (matchLast[iMatch] - matchFirst[jMatch]) <= minOverlap)
+                    break; // no chance of an overlap
+
+                final int overlapLength = computePerfectOverlapLength(sequences[matchRead[iMatch]], matchFirst[iMatch], matchLast[iMatch], sequences[matchRead[jMatch]], matchFirst[jMatch], matchLast[jMatch]);
+                // positive overlaps are kept even if shorter than minOverlap, as they may mark contained reads,
+                // zero-length overlaps are only kept if minOverlap admits them as edges
+                if (overlapLength > 0 || minOverlap <= 0) {
+                    if (length + 3 > overlaps.length)
+                        overlaps = Arrays.copyOf(overlaps, 2 * overlaps.length);
+                    overlaps[length++] = i;
+                    overlaps[length++] = j;
+                    overlaps[length++] = overlapLength;
+                }
+            }
+        }
+        return Arrays.copyOf(overlaps, length);
+    }
 
     /**
-     * build the overlap graph
+     * build the overlap graph. References are processed in the given order, because reads found to be contained are skipped in all later references
      *
 	 */
-    private void buildOverlapGraph(ReadData[] reads, Map<String, SortedSet<MatchData>> ref2matches, int minOverlap) {
+    private void buildOverlapGraph(ReadData[] reads, int[] refOrder, int[][] ref2sortedMatches, int[][] ref2overlaps, int[] matchLast, int[] matchRead, int minOverlap) {
         final Node[] nodes = new Node[reads.length];
 
         final BitSet containedReadIds = new BitSet();
 
-        for (String refName : ref2matches.keySet()) {
-            final MatchData[] matches = ref2matches.get(refName).toArray(new MatchData[0]);
+        for (int ref : refOrder) {
+            final int[] matches = ref2sortedMatches[ref];
+            final int[] overlaps = ref2overlaps[ref];
+            int pos = 0;
 
             for (int i = 0; i < matches.length; i++) {
-                final MatchData iMatch = matches[i];
+                final ReadData iRead = reads[matchRead[matches[i]]];
+                final int start = pos;
+                while (pos < overlaps.length && overlaps[pos] == i)
+                    pos += 3;
 
-                if (!containedReadIds.get(iMatch.getRead().getId())) {
-                    Node v = nodes[iMatch.getRead().getId()];
+                if (!containedReadIds.get(iRead.getId())) {
+                    Node v = nodes[iRead.getId()];
                     if (v == null) {
-                        v = nodes[iMatch.getRead().getId()] = overlapGraph.newNode(iMatch.getRead().getId());
-                        node2readName.put(v, iMatch.getRead().getName());
+                        v = nodes[iRead.getId()] = overlapGraph.newNode(iRead.getId());
+                        node2readName.put(v, iRead.getName());
                     }
 
-                    for (int j = i + 1; j < matches.length; j++) {
-                        final MatchData jMatch = matches[j];
-                        if (3 * (iMatch.getLastPosInRef() - jMatch.getFirstPosInRef()) <= minOverlap)
-                            break; // no chance of an overlap
+                    for (int k = start; k < pos; k += 3) {
+                        final int jMatch = matches[overlaps[k + 1]];
+                        final ReadData jRead = reads[matchRead[jMatch]];
+                        final int overlapLength = overlaps[k + 2];
 
-                        int overlapLength = computePerfectOverlapLength(iMatch, jMatch);
-                        if (overlapLength > 0 && jMatch.getLastPosInRef() <= iMatch.getLastPosInRef()) { // contained
-                            containedReadIds.set(jMatch.getRead().getId());
-                            List<Integer> contained = readId2ContainedReads[i];
+                        if (overlapLength > 0 && matchLast[jMatch] <= matchLast[matches[i]]) { // contained
+                            containedReadIds.set(jRead.getId());
+                            List<Integer> contained = readId2ContainedReads[iRead.getId()];
                             if (contained == null) {
-                                contained = readId2ContainedReads[i] = new ArrayList<>();
+                                contained = readId2ContainedReads[iRead.getId()] = new ArrayList<>();
                             }
-                            contained.add(j);
+                            contained.add(jRead.getId());
                         } else if (overlapLength >= minOverlap) {
-                            Node w = nodes[jMatch.getRead().getId()];
+                            Node w = nodes[jRead.getId()];
                             if (w == null) {
-                                w = nodes[jMatch.getRead().getId()] = overlapGraph.newNode(jMatch.getRead().getId());
-                                node2readName.put(w, jMatch.getRead().getName());
+                                w = nodes[jRead.getId()] = overlapGraph.newNode(jRead.getId());
+                                node2readName.put(w, jRead.getName());
                             }
 
                             final Edge e = overlapGraph.getCommonEdge(v, w);
@@ -152,35 +276,82 @@ public class OverlapGraphBuilder {
     }
 
     /**
-     * computess the number of matching letters, else returns 0
+     * computes the number of matching letters, else returns 0
      *
      * @return number of matching letters or 0
      */
-    private int computePerfectOverlapLength(MatchData iMatch, MatchData jMatch) {
-        try {
-            int first = Math.max(iMatch.getFirstPosInRef(), jMatch.getFirstPosInRef());
-            int last = Math.min(iMatch.getLastPosInRef(), jMatch.getLastPosInRef());
-
-            int count = 0;
-            for (int refPos = first; refPos <= last; refPos++) {
-                for (int k = 0; k < 3; k++) {
-                    int iPos = 3 * (refPos - iMatch.getFirstPosInRef()) + k;
-                    int jPos = 3 * (refPos - jMatch.getFirstPosInRef()) + k;
-                    char iChar = Character.toLowerCase(iMatch.getRead().getSegment().charAt(iPos));
-                    char jChar = Character.toLowerCase(jMatch.getRead().getSegment().charAt(jPos));
-
-                    if (iChar != jChar && iChar != 'n' && jChar != 'n')
-                        return 0;
-                    else if (Character.isLetter(iMatch.getRead().getSegment().charAt(iPos)))
-                        count++;
+    private static int computePerfectOverlapLength(byte[] iSequence, int iFirstPosInRef, int iLastPosInRef, byte[] jSequence, int jFirstPosInRef, int jLastPosInRef) {
+        if (iSequence == null || jSequence == null)
+            return 0;
+        final int first = Math.max(iFirstPosInRef, jFirstPosInRef);
+        final int last = Math.min(iLastPosInRef, jLastPosInRef);
+        if (last < first)
+            return 0;
+        if (3 * (last - iFirstPosInRef) + 2 >= iSequence.length || 3 * (last - jFirstPosInRef) + 2 >= jSequence.length)
+            return 0; // alignment extends beyond the end of one of the sequences
+
+        int iPos = 3 * (first - iFirstPosInRef);
+        int jPos = 3 * (first - jFirstPosInRef);
+        final int iEnd = 3 * (last - iFirstPosInRef) + 3;
+
+        int count = 0;
+        for (; iPos < iEnd; iPos++, jPos++) {
+            final byte iChar = iSequence[iPos];
+            final byte jChar = jSequence[jPos];
+            if (iChar != jChar && iChar != 'n' && jChar != 'n')
+                return 0;
+            else if (iChar >= 'a' && iChar <= 'z')
+                count++;
+        }
+        return count;
+    }
+
+    /**
+     * lower-case copy of a DNA sequence as bytes
+     */
+    private static byte[] toLowerCaseBytes(String sequence) {
+        if (sequence == null)
+            return null;
+        final byte[] bytes = new byte[sequence.length()];
+        for (int i = 0; i < bytes.length; i++)
+            bytes[i] = (byte) Character.toLowerCase(sequence.charAt(i));
+        return bytes;
+    }
+
+    /**
+     * stable merge sort of an int array using a comparator on ints
+     */
+    private static void mergeSort(int[] array, int[] tmp, int from, int to, IntComparator comparator) {
+        if (to - from <= 16) {
+            for (int i = from + 1; i < to; i++) {
+                final int value = array[i];
+                int j = i - 1;
+                while (j >= from && comparator.compare(array[j], value) > 0) {
+                    array[j + 1] = array[j];
+                    j--;
                 }
+                array[j + 1] = value;
             }
-            return count;
-        } catch (Exception ex) {
-            return 0;
+        } else {
+            final int mid = (from + to) >>> 1;
+            mergeSort(array, tmp, from, mid, comparator);
+            mergeSort(array, tmp, mid, to, comparator);
+            if (comparator.compare(array[mid - 1], array[mid]) <= 0)
+                return;
+            System.arraycopy(array, from, tmp, from, to - from);
+            int a = from, b = mid, pos = from;
+            while (a < mid && b < to)
+                array[pos++] = (comparator.compare(tmp[a], tmp[b]) <= 0 ? tmp[a++] : tmp[b++]);
+            while (a < mid)
+                array[pos++] = tmp[a++];
+            while (b < to)
+                array[pos++] = tmp[b++];
         }
     }
 
+    private interface IntComparator {
+        int compare(int a, int b);
+    }
 
     /**
      * get the overlap graph
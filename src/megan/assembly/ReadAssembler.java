@@ -23,6 +23,7 @@ import jloda.graph.*;
 import jloda.graph.io.GraphGML;
 import jloda.util.*;
 import jloda.util.progress.ProgressListener;
+import megan.assembly.align.ContigSeedIndex;
 import megan.assembly.align.SimpleAligner4DNA;
 import megan.core.Director;
 
@@ -31,6 +32,7 @@ import java.io.Writer;
 import java.util.*;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * assembler for all reads assigned to a particular class
@@ -187,6 +189,19 @@ public class ReadAssembler {
      * @return number of resulting
 	 */
     public static int mergeOverlappingContigs(int maxNumberOfThreads, final ProgressListener progress, final float minPercentIdentityToMergeContigs, final int minOverlap, final ArrayList<Pair<String, String>> contigs, final boolean verbose) throws CanceledException {
+        return mergeOverlappingContigs(maxNumberOfThreads, progress, minPercentIdentityToMergeContigs, minOverlap, contigs, verbose, new ContigOverlapStatistics());
+    }
+
+    /**
+     * computes all overlaps between contigs and then merges contigs.
+     * Candidate pairs are obtained from a seed index, only these are aligned
+     *
+     * @param contigs    input list of contigs and output list of merged contigs
+     * @param statistics used to report the number of candidates and verified pairs and the time spent in each stage
+     * @return number of resulting
+     */
+    public static int mergeOverlappingContigs(int maxNumberOfThreads, final ProgressListener progress, final float minPercentIdentityToMergeContigs, final int minOverlap, final ArrayList<Pair<String, String>> contigs, final boolean verbose,
+                                              final ContigOverlapStatistics statistics) throws CanceledException {
         progress.setSubtask("Overlapping contigs");
 
         final ArrayList<Pair<String, String>> sortedContigs = new ArrayList<>(contigs.size());
@@ -200,35 +215,55 @@ public class ReadAssembler {
 
         // main parallel computation:
         if (sortedContigs.size() > 0) {
-            final var numberOfThreads = (Math.min(sortedContigs.size(), Math.min(Runtime.getRuntime().availableProcessors() - 1, maxNumberOfThreads)));
+            final var numberOfThreads = Math.max(1, Math.min(sortedContigs.size(), Math.min(Runtime.getRuntime().availableProcessors() - 1, maxNumberOfThreads)));
             final var notCanceled = new Single<>(true);
 
+            final var contigBytes = new byte[sortedContigs.size()][];
+            for (var i = 0; i < sortedContigs.size(); i++) {
+                contigBytes[i] = sortedContigs.get(i).getSecond().getBytes();
+            }
+
+            var startTime = System.currentTimeMillis();
+            final ContigSeedIndex seedIndex;
+            {
+                final var simpleAlignerDNA = new SimpleAligner4DNA();
+                simpleAlignerDNA.setMinPercentIdentity(minPercentIdentityToMergeContigs);
+                seedIndex = new ContigSeedIndex(contigBytes, simpleAlignerDNA.getSeedLength());
+            }
+            statistics.addIndexTime(System.currentTimeMillis() - startTime);
+
             progress.setMaximum(sortedContigs.size() / numberOfThreads);
             progress.setProgress(0);
 
-            final var contig2Node = new HashMap<Integer, Node>();
-
-            for (var i = 0; i < sortedContigs.size(); i++) {
-                final Node v = overlapGraph.newNode(i);
-                contig2Node.put(i, v);
-            }
+            // each thread collects its results in its own buffers, these are merged once all threads are done
+            final var threadContainments = new IntArrayBuffer[numberOfThreads];
+            final var threadOverlaps = new IntArrayBuffer[numberOfThreads];
 
+            startTime = System.currentTimeMillis();
             final var service = Executors.newFixedThreadPool(numberOfThreads);
             final var countDownLatch = new CountDownLatch(numberOfThreads);
             try {
                 for (int t = 0; t < numberOfThreads; t++) {
                     final int threadNumber = t;
+                    final var containments = threadContainments[t] = new IntArrayBuffer(2);
+                    final var overlaps = threadOverlaps[t] = new IntArrayBuffer(3);
                     service.submit(() -> {
                                 try {
                                     final var simpleAlignerDNA = new SimpleAligner4DNA();
                                     simpleAlignerDNA.setMinPercentIdentity(minPercentIdentityToMergeContigs);
                                     final var overlap = new Single<>(0);
+                                    final var seen = new boolean[contigBytes.length];
+                                    final var candidates = new int[contigBytes.length];
+                                    var countCandidates = 0L;
+
+                                    for (var i = threadNumber; i < contigBytes.length && notCanceled.get(); i += numberOfThreads) {
+                                        final var iBytes = contigBytes[i];
+                                        final var numberOfCandidates = seedIndex.getCandidates(iBytes, i, seen, candidates);
+                                        countCandidates += numberOfCandidates;
 
-                                    for (var i = threadNumber; i < sortedContigs.size(); i += numberOfThreads) {
-                                        final var iContig = sortedContigs.get(i).getSecond();
-                                        final var iBytes = iContig.getBytes();
-                                        for (var j = 0; j < i; j++) {
-                                            final var jBytes = sortedContigs.get(j).getSecond().getBytes();
+                                        for (var c = 0; c < numberOfCandidates; c++) {
+                                            final var j = candidates[c];
+                                            final var jBytes = contigBytes[j];
 
                                             if (iBytes.length > jBytes.length)
                                                 throw new RuntimeException("Internal error: contig i is longer than contig j");
@@ -237,32 +272,17 @@ public class ReadAssembler {
 
                                             // if contained or nearly contained, remove
                                             if (overlapType == SimpleAligner4DNA.OverlapType.QueryContainedInRef) {
-                                                synchronized (contigId2ContainedContigs) {
-                                                    var contained = contigId2ContainedContigs[j];
-                                                    if (contained == null) {
-                                                        contained = new ArrayList<>();
-                                                        contigId2ContainedContigs[j] = contained;
-                                                    }
-                                                    contained.add(i);
-                                                    containedContigs.set(i);
-                                                }
+                                                containments.add(j, i);
                                             } else if (overlapType == SimpleAligner4DNA.OverlapType.QuerySuffix2RefPrefix && overlap.get() >= minOverlap) {
-                                                final var v = contig2Node.get(i);
-                                                final var w = contig2Node.get(j);
-                                                synchronized (overlapGraph) {
-                                                    overlapGraph.newEdge(v, w, overlap.get());
-                                                }
+                                                overlaps.add(i, j, overlap.get());
                                             } else if (overlapType == SimpleAligner4DNA.OverlapType.QueryPrefix2RefSuffix && overlap.get() >= minOverlap) {
-                                                final var v = contig2Node.get(i);
-                                                final var w = contig2Node.get(j);
-                                                synchronized (overlapGraph) {
-                                                    overlapGraph.newEdge(w, v, overlap.get());
-                                                }
+                                                overlaps.add(j, i, overlap.get());
                                             }
                                         }
+                                        if (threadNumber == 0)
+                                            progress.incrementProgress();
                                     }
-                                    if (threadNumber == 0)
-                                        progress.incrementProgress();
+                                    statistics.addCandidates(countCandidates);
                                 } catch (CanceledException e) {
                                     notCanceled.set(false);
                                     while (countDownLatch.getCount() > 0)
@@ -283,6 +303,38 @@ public class ReadAssembler {
             } finally {
                 service.shutdownNow();
             }
+            statistics.addVerificationTime(System.currentTimeMillis() - startTime);
+            if (!notCanceled.get())
+                throw new CanceledException();
+
+            startTime = System.currentTimeMillis();
+            final var contig2Node = new Node[contigBytes.length];
+            for (var i = 0; i < contigBytes.length; i++) {
+                contig2Node[i] = overlapGraph.newNode(i);
+            }
+            for (var containments : threadContainments) {
+                for (var k = 0; k < containments.size(); k++) {
+                    final var j = containments.get(k, 0);
+                    final var i = containments.get(k, 1);
+                    var contained = contigId2ContainedContigs[j];
+                    if (contained == null) {
+                        contained = new ArrayList<>();
+                        contigId2ContainedContigs[j] = contained;
+                    }
+                    contained.add(i);
+                    containedContigs.set(i);
+                }
+                statistics.addVerifiedPairs(containments.size());
+            }
+            for (var overlaps : threadOverlaps) {
+                for (var k = 0; k < overlaps.size(); k++) {
+                    overlapGraph.newEdge(contig2Node[overlaps.get(k, 0)], contig2Node[overlaps.get(k, 1)], overlaps.get(k, 2));
+                }
+                statistics.addVerifiedPairs(overlaps.size());
+            }
+            statistics.addGraphTime(System.currentTimeMillis() - startTime);
+            if (verbose)
+                System.err.println(statistics);
         }
 
         if (verbose)
@@ -406,4 +458,93 @@ public class ReadAssembler {
         }
         return contigs.size();
     }
+    /**
+     * growable buffer of fixed-size int tuples, used to collect results per thread
+     */
+    private static class IntArrayBuffer {
+        private final int tupleSize;
+        private int[] values = new int[1024];
+        private int length = 0;
+
+        IntArrayBuffer(int tupleSize) {
+            this.tupleSize = tupleSize;
+        }
+
+        void add(int... tuple) {
+            if (length + tupleSize > values.length)
+                values = Arrays.copyOf(values, 2 * values.length);
+            System.arraycopy(tuple, 0, values, length, tupleSize);
+            length += tupleSize;
+        }
+
+        int size() {
+            return length / tupleSize;
+        }
+
+        int get(int index, int component) {
+            return values[index * tupleSize + component];
+        }
+    }
+
+    /**
+     * counts and timings for the contig overlap computation
+     */
+    public static class ContigOverlapStatistics {
+        private final LongAdder candidates = new LongAdder();
+        private final LongAdder verifiedPairs = new LongAdder();
+        private final LongAdder indexTime = new LongAdder();
+        private final LongAdder verificationTime = new LongAdder();
+        private final LongAdder graphTime = new LongAdder();
+
+        void addCandidates(long count) {
+            candidates.add(count);
+        }
+
+        void addVerifiedPairs(long count) {
+            verifiedPairs.add(count);
+        }
+
+        void addIndexTime(long milliseconds) {
+            indexTime.add(milliseconds);
+        }
+
+        void addVerificationTime(long milliseconds) {
+            verificationTime.add(milliseconds);
+        }
+
+        void addGraphTime(long milliseconds) {
+            graphTime.add(milliseconds);
+        }
+
+        /**
+         * number of candidate pairs proposed by the seed index and aligned
+         */
+        public long getCandidates() {
+            return candidates.sum();
+        }
+
+        /**
+         * number of candidate pairs that were confirmed as overlaps or containments
+         */
+        public long getVerifiedPairs() {
+            return verifiedPairs.sum();
+        }
+
+        public long getIndexTime() {
+            return indexTime.sum();
+        }
+
+        public long getVerificationTime() {
+            return verificationTime.sum();
+        }
+
+        public long getGraphTime() {
+            return graphTime.sum();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Candidate pairs:%,10d%nVerified pairs: %,10d%nTime (ms): index=%,d verify=%,d graph=%,d", getCandidates(), getVerifiedPairs(), getIndexTime(), getVerificationTime(), getGraphTime());
+        }
+    }
 }
@@ -0,0 +1,179 @@
+/*
+ * ContigSeedIndex.java Copyright (C) 2024 Daniel H. Huson
+ *
+ * (Some files contain contributions from other authors, who are then mentioned separately.)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package megan.assembly.align;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * index of all k-mers contained in a list of contigs, used to propose candidate pairs of contigs for overlap computation.
+ * <p>
+ * SimpleAligner4DNA only reports an overlap if one of the query k-mers starting at positions 0, k, 2k,... occurs exactly in
+ * the reference, so looking up exactly these seeds in an index of all reference k-mers loses no overlaps.
+ * Each entry is a single long: the high bits hold the k-mer hash, the low bits hold the contig id, and all entries are sorted.
+ * Hash collisions only produce additional candidates, which are then rejected by the aligner.
+ * <p>
+ * Daniel Huson, 10.2026
+ */
+public class ContigSeedIndex {
+    private static final long BASE = 0x100000001b3L;
+
+    private final int k;
+    private final long idMask;
+    private final long[] entries;
+
+    /**
+     * constructs the index
+     *
+     * @param contigs contig sequences, the position of a contig in the array is used as its id
+     * @param k       seed length
+     */
+    public ContigSeedIndex(byte[][] contigs, int k) {
+        this.k = k;
+        final var bitsForId = Math.max(1, 32 - Integer.numberOfLeadingZeros(contigs.length));
+        idMask = (1L << bitsForId) - 1;
+
+        final var perContig = new long[contigs.length][];
+        IntStream.range(0, contigs.length).parallel().forEach(id -> perContig[id] = computeEntries(contigs[id], id));
+
+        var size = 0;
+        for (var array : perContig)
+            size += array.length;
+        entries = new long[size];
+        var pos = 0;
+        for (var id = 0; id < perContig.length; id++) {
+            System.arraycopy(perContig[id], 0, entries, pos, perContig[id].length);
+            pos += perContig[id].length;
+            perContig[id] = null;
+        }
+        Arrays.parallelSort(entries);
+    }
+
+    /**
+     * gets the ids of all contigs with id smaller than maxId that contain one of the seeds of the query, in increasing order
+     *
+     * @param query  query sequence
+     * @param maxId  only ids smaller than this are reported
+     * @param seen   work array of length at least maxId, all entries must be false, and will be false on return
+     * @param buffer work array of length at least maxId, used to return the candidates
+     * @return number of candidates written to buffer
+     */
+    public int getCandidates(byte[] query, int maxId, boolean[] seen, int[] buffer) {
+        var count = 0;
+        for (var queryPos = 0; queryPos < query.length - k + 1; queryPos += k) {
+            final var key = (hash(query, queryPos) & ~idMask);
+            var index = lowerBound(key);
+            while (index < entries.length && (entries[index] & ~idMask) == key) {
+                final var id = (int) (entries[index] & idMask);
+                if (id >= maxId)
+                    break; // entries with the same key are sorted by id
+                if (!seen[id]) {
+                    seen[id] = true;
+                    buffer[count++] = id;
+                }
+                index++;
+            }
+        }
+        for (var i = 0; i < count; i++)
+            seen[buffer[i]] = false;
+        Arrays.sort(buffer, 0, count);
+        return count;
+    }
+
+    /**
+     * seed length
+     */
+    public int getK() {
+        return k;
+    }
+
+    /**
+     * number of index entries (distinct k-mers per contig, summed over all contigs)
+     */
+    public int size() {
+        return entries.length;
+    }
+
+    /**
+     * computes the entries for all k-mers of a contig, sorted and without duplicates
+     */
+    private long[] computeEntries(byte[] sequence, int id) {
+        if (sequence.length < k)
+            return new long[0];
+        final var result = new long[sequence.length - k + 1];
+
+        var power = 1L; // BASE^(k-1)
+        for (var i = 1; i < k; i++)
+            power *= BASE;
+
+        var h = 0L;
+        for (var i = 0; i < k; i++)
+            h = h * BASE + sequence[i];
+        result[0] = (mix(h) & ~idMask) | id;
+        for (var pos = 1; pos < result.length; pos++) {
+            h = (h - sequence[pos - 1] * power) * BASE + sequence[pos + k - 1];
+            result[pos] = (mix(h) & ~idMask) | id;
+        }
+        Arrays.sort(result);
+        var count = 0;
+        for (var i = 0; i < result.length; i++) {
+            if (i == 0 || result[i] != result[count - 1])
+                result[count++] = result[i];
+        }
+        return (count == result.length ? result : Arrays.copyOf(result, count));
+    }
+
+    /**
+     * hash of the k-mer starting at the given position, consistent with the rolling hash used in computeEntries
+     */
+    private long hash(byte[] sequence, int pos) {
+        var h = 0L;
+        for (var i = pos; i < pos + k; i++)
+            h = h * BASE + sequence[i];
+        return mix(h);
+    }
+
+    /**
+     * index of first entry that is greater or equal to the given key
+     */
+    private int lowerBound(long key) {
+        var low = 0;
+        var high = entries.length;
+        while (low < high) {
+            final var mid = (low + high) >>> 1;
+            if (entries[mid] < key)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    /**
+     * bijective bit mixer, spreads polynomial hash values over the high bits
+     */
+    private static long mix(long h) {
+        h ^= (h >>> 33);
+        h *= 0xff51afd7ed558ccdL;
+        h ^= (h >>> 33);
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= (h >>> 33);
+        return h;
+    }
+}
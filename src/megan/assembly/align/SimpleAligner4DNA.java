@@ -96,6 +96,16 @@ public class SimpleAligner4DNA {
         this.minPercentIdentity = minPercentIdentity;
     }
 
+    /**
+     * get the length of the smallest exact match that must be present between query and reference.
+     * Only query positions that are multiples of this length are used as seeds
+     *
+     * @return seed length
+     */
+    public int getSeedLength() {
+        return Math.max(10, (int) (100.0 / (100.0 - minPercentIdentity + 1)));
+    }
+
     /**
      * gets a position of the query in the reference, or reference.length if not contained
      *
@@ -110,7 +120,7 @@ public class SimpleAligner4DNA {
         int bestRefPos = 0;
         int bestScore = 0;
 
-        final int k = Math.max(10, (int) (100.0 / (100.0 - minPercentIdentity + 1))); // determine smallest exact match that must be present
+        final int k = getSeedLength();
         for (int queryPos = 0; queryPos < query.length - k + 1; queryPos += k) {
             BoyerMoore boyerMoore = new BoyerMoore(query, queryPos, k, 127);
             for (Iterator<Integer> it = boyerMoore.iterator(reference); it.hasNext(); ) {
@@ -58,17 +58,17 @@ public class BIOM1Importer {
 
         String[] names = biom1Data.getColumnIds();
 
-        Map<String, Map<Integer, Integer>> series2Classes2count;
+        final Map<Integer, float[]> targetClass2counts;
 
         String classificationName;
         if (type.equalsIgnoreCase("taxonomy") || biom1Data.isTaxonomyData() || biom1Data.isOTUData()) {
-            series2Classes2count = Biom1ImportTaxonomy.getSample2Class2Value(biom1Data, taxonomyIgnorePath);
+            targetClass2counts = Biom1ImportTaxonomy.getClass2Counts(biom1Data, taxonomyIgnorePath);
             classificationName = Classification.Taxonomy;
         } else if (type.equalsIgnoreCase("seed") || biom1Data.isSEEDData()) {
-            series2Classes2count = Biom1ImportSEED.getSeries2Classes2Value(biom1Data);
+            targetClass2counts = Biom1ImportSEED.getClass2Counts(biom1Data);
             classificationName = "SEED";
         } else if (type.equalsIgnoreCase("kegg") || biom1Data.isKEGGData()) {
-            series2Classes2count = Biom1ImportKEGG.getSeries2Classes2Value(biom1Data);
+            targetClass2counts = Biom1ImportKEGG.getClass2Counts(biom1Data);
             classificationName = "KEGG";
         } else
             throw new IOException("Unable to import this datatype: " + biom1Data.getType());
@@ -82,29 +82,13 @@ public class BIOM1Importer {
 
         doc.getActiveViewers().add(classificationName);
 
-        final Map<Integer, float[]> targetClass2counts = new HashMap<>();
-
         int totalReads = 0;
-        int numberOfSeries = series2Classes2count.keySet().size();
-        final float[] sizes = new float[numberOfSeries];
-
-        final Map<String, Integer> series2pid = new HashMap<>();
-        final String[] columnIds = biom1Data.getColumnIds();
-        for (int c = 0; c < columnIds.length; c++)
-            series2pid.put(columnIds[c], c);
-
-        for (String series : series2Classes2count.keySet()) {
-            int seriesId = series2pid.get(series);
-            final Map<Integer, Integer> class2count = series2Classes2count.get(series);
-            for (Integer classId : class2count.keySet()) {
-                Integer count = class2count.get(classId);
-                if (count == null)
-                    count = 0;
-
-                float[] counts = targetClass2counts.computeIfAbsent(classId, k -> new float[numberOfSeries]);
-                counts[seriesId] = count;
-                totalReads += count;
-                sizes[seriesId] += count;
+        final float[] sizes = new float[names.length];
+
+        for (float[] counts : targetClass2counts.values()) {
+            for (int seriesId = 0; seriesId < counts.length; seriesId++) {
+                totalReads += counts[seriesId];
+                sizes[seriesId] += counts[seriesId];
             }
         }
 
@@ -19,6 +19,9 @@
 package megan.biom.biom1;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 import jloda.swing.util.ProgramProperties;
 import jloda.util.StringUtils;
 
@@ -27,9 +30,8 @@ import java.io.Reader;
 import java.io.Writer;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.Map;
-import java.util.TimeZone;
+import java.util.*;
+import java.util.stream.IntStream;
 
 /**
  * biom data
@@ -127,6 +129,12 @@ data                : <list of lists>, counts of observations by sample
     private int[] shape;
     private float[][] data;
 
+    // non-zero matrix entries as (row, column, value) triples, filled by fromReader:
+    private transient int numberOfEntries;
+    private transient int[] entryRows = new int[0];
+    private transient int[] entryColumns = new int[0];
+    private transient float[] entryValues = new float[0];
+
     /**
      * default constructor
      */
@@ -191,16 +199,187 @@ data                : <list of lists>, counts of observations by sample
     }
 
     /**
-     * read
+     * read. The file is parsed token by token and the matrix is kept as triples of its non-zero entries,
+     * so that large dense or sparse matrices are never held as a tree of JSON objects
      *
 	 */
     public static Biom1Data fromReader(Reader reader) throws IOException {
-        Gson gson = new Gson();
-        Biom1Data biom1Data = gson.fromJson(reader, Biom1Data.class);
+        final Gson gson = new Gson();
+        final Biom1Data biom1Data = new Biom1Data();
+        boolean untypedData = false;
+
+        try (JsonReader jsonReader = new JsonReader(reader)) {
+            jsonReader.beginObject();
+            while (jsonReader.hasNext()) {
+                switch (jsonReader.nextName()) {
+                    case "comment" -> biom1Data.comment = nextStringOrNull(jsonReader);
+                    case "classification" -> biom1Data.classification = nextStringOrNull(jsonReader);
+                    case "id" -> biom1Data.id = nextStringOrNull(jsonReader);
+                    case "format" -> biom1Data.format = nextStringOrNull(jsonReader);
+                    case "format_url" -> biom1Data.format_url = nextStringOrNull(jsonReader);
+                    case "type" -> biom1Data.type = nextStringOrNull(jsonReader);
+                    case "generated_by" -> biom1Data.generated_by = nextStringOrNull(jsonReader);
+                    case "date" -> biom1Data.date = nextStringOrNull(jsonReader);
+                    case "rows" -> biom1Data.rows = gson.fromJson(jsonReader, Map[].class);
+                    case "columns" -> biom1Data.columns = gson.fromJson(jsonReader, Map[].class);
+                    case "matrix_type" -> biom1Data.matrix_type = nextStringOrNull(jsonReader);
+                    case "matrix_element_type" -> biom1Data.matrix_element_type = nextStringOrNull(jsonReader);
+                    case "shape" -> biom1Data.shape = gson.fromJson(jsonReader, int[].class);
+                    case "data" -> untypedData = !biom1Data.readData(jsonReader);
+                    default -> jsonReader.skipValue();
+                }
+            }
+            jsonReader.endObject();
+        } catch (IllegalStateException | NumberFormatException | JsonParseException ex) {
+            throw new IOException("Failed to parse BIOM1 file: " + ex.getMessage());
+        }
         biom1Data.check();
+        if (biom1Data.rows == null || biom1Data.columns == null)
+            throw new IOException("Failed to parse BIOM1 file: rows or columns missing");
+        if (untypedData) {
+            if (biom1Data.matrix_type.equalsIgnoreCase(AcceptableMatrixTypes.sparse.toString()))
+                biom1Data.convertToSparseTriples();
+            else
+                biom1Data.removeZeroEntries();
+        }
         return biom1Data;
     }
 
+    /**
+     * reads the data matrix. If the matrix type is not yet known, then all values are kept as (list, position, value)
+     * and must be interpreted once the type is known
+     *
+     * @return true, if the matrix type was known
+     */
+    private boolean readData(JsonReader jsonReader) throws IOException {
+        final boolean typed = (matrix_type != null);
+        final boolean sparse = typed && matrix_type.equalsIgnoreCase(AcceptableMatrixTypes.sparse.toString());
+
+        jsonReader.beginArray();
+        for (int list = 0; jsonReader.hasNext(); list++) {
+            jsonReader.beginArray();
+            if (sparse) {
+                final int row = (int) nextNumber(jsonReader);
+                final int col = (int) nextNumber(jsonReader);
+                final float value = (float) nextNumber(jsonReader);
+                while (jsonReader.hasNext())
+                    jsonReader.skipValue();
+                if (value != 0)
+                    addEntry(row, col, value);
+            } else {
+                for (int pos = 0; jsonReader.hasNext(); pos++) {
+                    final float value = (float) nextNumber(jsonReader);
+                    if (value != 0 || !typed)
+                        addEntry(list, pos, value);
+                }
+            }
+            jsonReader.endArray();
+        }
+        jsonReader.endArray();
+        return typed;
+    }
+
+    /**
+     * replaces (list, position, value) entries by the sparse triples that they encode
+     */
+    private void convertToSparseTriples() {
+        final int[] lists = entryRows;
+        final float[] values = entryValues;
+        final int count = numberOfEntries;
+
+        entryRows = new int[0];
+        entryColumns = new int[0];
+        entryValues = new float[0];
+        numberOfEntries = 0;
+
+        for (int k = 0; k < count; ) {
+            int end = k + 1;
+            while (end < count && lists[end] == lists[k])
+                end++;
+            if (end - k >= 3 && values[k + 2] != 0)
+                addEntry((int) values[k], (int) values[k + 1], values[k + 2]);
+            k = end;
+        }
+    }
+
+    private void removeZeroEntries() {
+        int count = 0;
+        for (int k = 0; k < numberOfEntries; k++) {
+            if (entryValues[k] != 0) {
+                entryRows[count] = entryRows[k];
+                entryColumns[count] = entryColumns[k];
+                entryValues[count++] = entryValues[k];
+            }
+        }
+        numberOfEntries = count;
+    }
+
+    private void addEntry(int row, int col, float value) {
+        if (numberOfEntries == entryRows.length) {
+            final int newLength = Math.max(1024, 2 * entryRows.length);
+            entryRows = Arrays.copyOf(entryRows, newLength);
+            entryColumns = Arrays.copyOf(entryColumns, newLength);
+            entryValues = Arrays.copyOf(entryValues, newLength);
+        }
+        entryRows[numberOfEntries] = row;
+        entryColumns[numberOfEntries] = col;
+        entryValues[numberOfEntries++] = value;
+    }
+
+    private static String nextStringOrNull(JsonReader jsonReader) throws IOException {
+        if (jsonReader.peek() == JsonToken.NULL) {
+            jsonReader.nextNull();
+            return null;
+        } else
+            return jsonReader.nextString();
+    }
+
+    private static double nextNumber(JsonReader jsonReader) throws IOException {
+        if (jsonReader.peek() == JsonToken.NULL) {
+            jsonReader.nextNull();
+            return 0;
+        } else
+            return jsonReader.nextDouble();
+    }
+
+    /**
+     * adds up the values of all rows that are assigned to the same class, for each column. Values are rounded to integers
+     *
+     * @param row2class class id for each row
+     * @return class id to counts per column
+     */
+    public Map<Integer, float[]> computeClass2Counts(int[] row2class) throws IOException {
+        final int numberOfColumns = columns.length;
+
+        final int[] classes = IntStream.of(row2class).distinct().sorted().toArray();
+        final int[] row2index = new int[row2class.length];
+        for (int row = 0; row < row2class.length; row++)
+            row2index[row] = Arrays.binarySearch(classes, row2class[row]);
+
+        final long[][] counts = new long[classes.length][];
+        for (int k = 0; k < numberOfEntries; k++) {
+            final int row = entryRows[k];
+            final int col = entryColumns[k];
+            if (row < 0 || row >= row2class.length || col < 0 || col >= numberOfColumns)
+                throw new IOException("Matrix entry out of range: row=" + row + ", column=" + col);
+            final int index = row2index[row];
+            if (counts[index] == null)
+                counts[index] = new long[numberOfColumns];
+            counts[index][col] += Math.round(entryValues[k]);
+        }
+
+        final Map<Integer, float[]> class2counts = new HashMap<>();
+        for (int index = 0; index < classes.length; index++) {
+            if (counts[index] != null) {
+                final float[] array = new float[numberOfColumns];
+                for (int col = 0; col < numberOfColumns; col++)
+                    array[col] = counts[index][col];
+                class2counts.put(classes[index], array);
+            }
+        }
+        return class2counts;
+    }
+
     /**
      * write
      *
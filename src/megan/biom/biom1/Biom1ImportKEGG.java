@@ -25,8 +25,8 @@ import megan.classification.Classification;
 import megan.classification.ClassificationManager;
 import megan.classification.IdMapper;
 
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -36,17 +36,15 @@ import java.util.Map;
  */
 class Biom1ImportKEGG {
     /**
-     * gets a series 2 classes to value map from the data
+     * gets the class to counts map from the data, counts indexed by column
      *
      * @return map
      */
-    public static Map<String, Map<Integer, Integer>> getSeries2Classes2Value(Biom1Data biom1Data) {
+    public static Map<Integer, float[]> getClass2Counts(Biom1Data biom1Data) throws IOException {
         final Classification classification = ClassificationManager.get("KEGG", true);
 
-        final Map<String, Map<Integer, Integer>> series2Classes2count = new HashMap<>();
-
         int numberOfRows = biom1Data.getRows().length;
-        final Integer[] row2class = new Integer[numberOfRows];
+        final int[] row2class = new int[numberOfRows];
         int rowCount = 0;
         for (Map row : biom1Data.getRows()) {
 			//System.err.println("Obj: "+obj);
@@ -87,57 +85,7 @@ class Biom1ImportKEGG {
             }
         }
 
-        int numberOfClasses = biom1Data.getColumns().length;
-        final String[] col2series = new String[numberOfClasses];
-        int colCount = 0;
-        for (Object obj : biom1Data.getColumns()) {
-            //System.err.println("Obj: "+obj);
-
-            String label = (String) ((Map<?, ?>) obj).get("id");
-            //System.err.println("Series: " + label);
-            col2series[colCount++] = label;
-        }
-
-        if (biom1Data.getMatrix_type().equalsIgnoreCase(Biom1Data.AcceptableMatrixTypes.dense.toString())) {
-            int row = 0;
-            for (Object obj : biom1Data.getData()) {
-                final int[] array = Biom1ImportTaxonomy.createIntArray(obj);
-                if (array == null)
-                    continue;
-
-                for (int col = 0; col < array.length; col++) {
-                    int value = array[col];
-                    Map<Integer, Integer> class2count = series2Classes2count.computeIfAbsent(col2series[col], k -> new HashMap<>());
-                    Integer previous = class2count.get(row2class[row]);
-                    if (previous != null)
-                        value += previous;
-                    // if (class2count.get(row2class[row]) == null) // need this to avoid reading the number for the same node  more than once
-                    class2count.put(row2class[row], value);
-                    // System.err.println(col2series[col] + " -> " + row2class[row] + " -> " + value);
-                }
-                row++;
-            }
-        } else if (biom1Data.getMatrix_type().equalsIgnoreCase(Biom1Data.AcceptableMatrixTypes.sparse.toString())) {
-            for (Object obj : biom1Data.getData()) {
-                final int[] array3 = Biom1ImportTaxonomy.createIntArray(obj);
-                if (array3 == null)
-                    continue;
-
-                int row = array3[0];
-                int col = array3[1];
-                int value = array3[2];
-                //System.err.println("Class: " + obj.getClass());
-                //System.err.println("Row: " + Basic.toString(array3));
-                Map<Integer, Integer> class2count = series2Classes2count.computeIfAbsent(col2series[col], k -> new HashMap<>());
-                Integer previous = class2count.get(row2class[row]);
-                if (previous != null)
-                    value += previous;
-                // if (class2count.get(row2class[row]) == null) // need this to avoid reading the number for the same node  more than once
-                class2count.put(row2class[row], value);
-                // System.err.println(col2series[col] + " -> " + row2class[row] + " -> " + value);
-            }
-        }
-        return series2Classes2count;
+        return biom1Data.computeClass2Counts(row2class);
     }
 
 }
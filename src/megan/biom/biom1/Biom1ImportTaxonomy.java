@@ -23,8 +23,8 @@ import jloda.util.StringUtils;
 import megan.classification.IdMapper;
 import megan.viewer.TaxonomyData;
 
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.Map;
 
 /**
@@ -33,15 +33,13 @@ import java.util.Map;
  */
 class Biom1ImportTaxonomy {
     /**
-     * gets a sample to class to value map from the data
+     * gets the class to counts map from the data, counts indexed by column
      *
      * @return map
      */
-    public static Map<String, Map<Integer, Integer>> getSample2Class2Value(Biom1Data biom1Data, boolean taxonomyIgnorePath) {
-        final Map<String, Map<Integer, Integer>> sample2class2value = new HashMap<>();
-
+    public static Map<Integer, float[]> getClass2Counts(Biom1Data biom1Data, boolean taxonomyIgnorePath) throws IOException {
         int numberOfRows = biom1Data.getRows().length;
-        final Integer[] row2class = new Integer[numberOfRows];
+        final int[] row2class = new int[numberOfRows];
         int rowCount = 0;
         for (Map row : biom1Data.getRows()) {
             //System.err.println("Obj: "+obj);
@@ -85,86 +83,6 @@ class Biom1ImportTaxonomy {
             }
         }
 
-        int numberOfClasses = biom1Data.getColumns().length;
-        String[] col2series = new String[numberOfClasses];
-        int colCount = 0;
-        for (Object obj : biom1Data.getColumns()) {
-            //System.err.println("Obj: "+obj);
-
-            String label = (String) ((Map<?, ?>) obj).get("id");
-            //System.err.println("Series: " + label);
-            col2series[colCount++] = label;
-        }
-
-        if (biom1Data.getMatrix_type().equalsIgnoreCase(Biom1Data.AcceptableMatrixTypes.dense.toString())) {
-            int row = 0;
-            for (Object obj : biom1Data.getData()) {
-                final int[] array = createIntArray(obj);
-                if (array == null)
-                    continue;
-
-                for (int col = 0; col < array.length; col++) {
-                    int value = array[col];
-                    Map<Integer, Integer> class2count = sample2class2value.computeIfAbsent(col2series[col], k -> new HashMap<>());
-                    Integer previous = class2count.get(row2class[row]);
-                    if (previous != null)
-                        value += previous;
-                    //  if (class2count.get(row2class[row]) == null) // need this to avoid reading the number for the same node  more than once
-                    class2count.put(row2class[row], value);
-                    // System.err.println(col2series[col] + " -> " + row2class[row] + " -> " + value);
-                }
-                row++;
-            }
-        } else if (biom1Data.getMatrix_type().equalsIgnoreCase(Biom1Data.AcceptableMatrixTypes.sparse.toString())) {
-            for (Object obj : biom1Data.getData()) {
-                final int[] array3 = createIntArray(obj);
-                if (array3 == null)
-                    continue;
-
-                int row = array3[0];
-                int col = array3[1];
-                int value = array3[2];
-                // System.err.println("Class: " + obj.getClass());
-                // System.err.println("Row: " + Basic.toString(array3));
-                Map<Integer, Integer> class2count = sample2class2value.computeIfAbsent(col2series[col], k -> new HashMap<>());
-                Integer previous = class2count.get(row2class[row]);
-                if (previous != null)
-                    value += previous;
-                // if (class2count.get(row2class[row]) == null) // need this to avoid reading the number for the same node  more than once
-                class2count.put(row2class[row], value);
-                // System.err.println(col2series[col] + " -> " + row2class[row] + " -> " + value);
-            }
-        }
-        return sample2class2value;
-    }
-
-    /**
-     * creates an int array from an object, if possible
-     *
-     * @return array or null
-     */
-    public static int[] createIntArray(Object obj) {
-        if (obj instanceof int[])
-            return (int[]) obj;
-        else if (obj instanceof float[]) {
-            float[] that = (float[]) obj;
-            int[] array = new int[that.length];
-            for (int i = 0; i < that.length; i++)
-                array[i] = Math.round(that[i]);
-            return array;
-        } else if (obj instanceof Integer[]) {
-            final Integer[] that = (Integer[]) obj;
-            int[] array = new int[that.length];
-            for (int i = 0; i < that.length; i++)
-                array[i] = Math.round(that[i]);
-            return array;
-        } else if (obj instanceof Float[]) {
-            final Float[] that = (Float[]) obj;
-            int[] array = new int[that.length];
-            for (int i = 0; i < that.length; i++)
-                array[i] = Math.round(that[i]);
-            return array;
-        } else
-            return null;
+        return biom1Data.computeClass2Counts(row2class);
     }
 }
@@ -25,8 +25,10 @@ import jloda.util.StringUtils;
 import megan.biom.biom1.QIIMETaxonParser;
 import megan.classification.IdMapper;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.stream.IntStream;
 
 class ImportBiom2Taxonomy {
     private final static String[] keys = {"taxonomy", "organism", "organisms"};
@@ -37,10 +39,6 @@ class ImportBiom2Taxonomy {
      * @return map
      */
     public static Map<Integer, float[]> getClass2Samples2Counts(IHDF5Reader reader, int numberOfSamples, boolean ignorePathAbove) {
-        int countLinesImported = 0;
-        int countLinesSkipped = 0;
-
-
         MDArray<String> pathArray = null;
         int[] dimensions = null;
 
@@ -59,33 +57,50 @@ class ImportBiom2Taxonomy {
         final int[] indices = reader.readIntArray("/sample/matrix/indices"); //  dataset containing the row indices (e.g., maps into observation/ids)
         final float[] data = reader.readFloatArray("/sample/matrix/data"); // dataset containing the actual matrix data
 
-        final Map<Integer, float[]> class2counts = new HashMap<>();
+        // resolve each observation to a taxon once, in parallel:
+        final int numberOfObservations = dimensions[0];
+        final int[] observation2taxon = new int[numberOfObservations];
+        final MDArray<String> paths = pathArray;
+        final int[] dims = dimensions;
+        IntStream.range(0, numberOfObservations).parallel().forEach(row -> {
+            if (dims.length == 1)
+                observation2taxon[row] = QIIMETaxonParser.parseTaxon(new String[]{paths.get(row)}, ignorePathAbove);
+            else if (dims.length == 2)
+                observation2taxon[row] = QIIMETaxonParser.parseTaxon(getPath(paths, row, dims[1]), ignorePathAbove);
+            else
+                observation2taxon[row] = IdMapper.UNASSIGNED_ID;
+        });
+
+        // number the taxa and give each observation the row of its taxon:
+        final int[] taxa = IntStream.of(observation2taxon).distinct().sorted().toArray();
+        final int[] observation2row = new int[numberOfObservations];
+        IntStream.range(0, numberOfObservations).parallel().forEach(row -> observation2row[row] = Arrays.binarySearch(taxa, observation2taxon[row]));
+
+        // allocate a row for each taxon that has an entry in the matrix:
+        final float[][] counts = new float[taxa.length][];
+        for (int j = 0; j < indptr[numberOfSamples]; j++) {
+            final int row = observation2row[indices[j]];
+            if (counts[row] == null)
+                counts[row] = new float[numberOfSamples];
+        }
 
-        // Loop over Samples
-        for (int i = 0; i < numberOfSamples; i++) {
-            // Add counts to this sample
+        // add up the counts, in parallel over samples, so that each task writes its own column:
+        IntStream.range(0, numberOfSamples).parallel().forEach(i -> {
             for (int j = indptr[i]; j < indptr[i + 1]; j++) {
-                final int taxonId;
-                if (dimensions.length == 1) {
-                    final String[] path = new String[]{pathArray.get(indices[j])};
-                    taxonId = QIIMETaxonParser.parseTaxon(path, ignorePathAbove);
-                } else if (dimensions.length == 2) {
-                    final String[] path = getPath(pathArray, indices[j], dimensions[1]);
-                    taxonId = QIIMETaxonParser.parseTaxon(path, ignorePathAbove);
-                    countLinesImported++;
-                } else {
-                    taxonId = IdMapper.UNASSIGNED_ID;
-                    countLinesSkipped++;
-                }
-
-                float[] array = class2counts.computeIfAbsent(taxonId, k -> new float[numberOfSamples]);
-                array[i] += data[j];
+                counts[observation2row[indices[j]]][i] += data[j];
             }
+        });
+
+        final Map<Integer, float[]> class2counts = new HashMap<>();
+        for (int row = 0; row < taxa.length; row++) {
+            if (counts[row] != null)
+                class2counts.put(taxa[row], counts[row]);
         }
 
-        System.err.printf("Lines imported:%,10d%n", countLinesImported);
-        if (countLinesSkipped > 0)
-            System.err.printf("Lines skipped: %,10d%n", countLinesSkipped);
+        if (dimensions.length <= 2)
+            System.err.printf("Lines imported:%,10d%n", numberOfObservations);
+        else
+            System.err.printf("Lines skipped: %,10d%n", numberOfObservations);
 
         return class2counts;
     }
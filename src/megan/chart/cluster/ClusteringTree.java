@@ -28,13 +28,14 @@ import jloda.util.Correlation;
 import jloda.util.Table;
 import megan.chart.gui.ChartSelection;
 import megan.chart.gui.SelectionGraphics;
-import megan.clusteranalysis.tree.Distances;
+import megan.clusteranalysis.tree.HierarchicalClustering;
 import megan.clusteranalysis.tree.Taxa;
 import megan.clusteranalysis.tree.UPGMA;
 
 import java.awt.*;
 import java.awt.geom.Point2D;
 import java.util.*;
+import java.util.stream.IntStream;
 
 /**
  * do clustering of series or class names
@@ -100,35 +101,29 @@ public class ClusteringTree {
                 previousRectangle = null;
 
                 final Taxa taxa;
-                final Distances distances;
+                final double[] distances;
                 switch (type) {
                     case SERIES -> {
                         final String[] series = seriesAndClass2Value.rowKeySet().toArray(new String[0]);
 
                         taxa = new Taxa();
-                        for (String seriesName : series)
+                        final ArrayList<ArrayList<Double>> values = new ArrayList<>(series.length);
+                        for (String seriesName : series) {
                             taxa.add(seriesName);
-                        distances = new Distances(taxa.size());
-
-                        for (int i = 0; i < series.length; i++) {
-                            for (int j = 0; j < series.length; j++) {
-                                distances.set(i + 1, j + 1, computeCorrelationDistanceBetweenSeries(series[i], series[j], seriesAndClass2Value));
-                            }
+                            values.add(getSeriesValues(seriesName, seriesAndClass2Value));
                         }
+                        distances = computeCorrelationDistances(values);
 					}
                     case CLASSES -> {
                         final String[] classes = seriesAndClass2Value.columnKeySet().toArray(new String[0]);
 
                         taxa = new Taxa();
-                        for (String className : classes)
+                        final ArrayList<ArrayList<Double>> values = new ArrayList<>(classes.length);
+                        for (String className : classes) {
                             taxa.add(className);
-                        distances = new Distances(taxa.size());
-
-                        for (int i = 0; i < classes.length; i++) {
-                            for (int j = 0; j < classes.length; j++) {
-                                distances.set(i + 1, j + 1, computeCorrelationDistanceBetweenClasses(classes[i], classes[j], seriesAndClass2Value));
-                            }
+                            values.add(getClassValues(className, seriesAndClass2Value));
                         }
+                        distances = computeCorrelationDistances(values);
 					}
                     default -> throw new RuntimeException("Invalid case: " + type);
                 }
@@ -168,15 +163,18 @@ public class ClusteringTree {
                         treeView.setLabel(root, labels[0]);
                         labelOrder.addAll(getLabelOrder(treeView));
                     } else {
-                        final Distances distances = new Distances(taxa.size());
-
-                        for (int i = 0; i < labels.length; i++) {
-                            final float[] iValues = getValuesRow(labels[i], matrix);
-                            for (int j = i + 1; j < labels.length; j++) {
-                                final float[] jValues = getValuesRow(labels[j], matrix);
-                                distances.set(i + 1, j + 1, computeCorrelationDistances(iValues.length, iValues, jValues));
-                            }
-                        }
+                        final float[][] values = new float[labels.length][];
+                        for (int i = 0; i < labels.length; i++)
+                            values[i] = getValuesRow(labels[i], matrix);
+
+                        // compute the condensed distance matrix, one row per thread:
+                        final int n = labels.length;
+                        final double[] distances = new double[HierarchicalClustering.size(n)];
+                        IntStream.range(0, n - 1).parallel().forEach(i -> {
+                            int pos = HierarchicalClustering.index(n, i, i + 1);
+                            for (int j = i + 1; j < n; j++)
+                                distances[pos++] = computeCorrelationDistances(values[i].length, values[i], values[j]);
+                        });
 
                         UPGMA.apply(taxa, distances, treeView);
                         // treeView.topologicallySortTreeLexicographically();
@@ -231,48 +229,58 @@ public class ClusteringTree {
     }
 
     /**
-     * compute correlation distance between two series
+     * get the values of a series for all classes
      *
-     * @return distance
+     * @return values
      */
-    private static double computeCorrelationDistanceBetweenSeries(String seriesA, String seriesB, Table<String, String, Double> seriesAndClass2Value) {
+    private static ArrayList<Double> getSeriesValues(String series, Table<String, String, Double> seriesAndClass2Value) {
         final Set<String> classes = seriesAndClass2Value.columnKeySet();
-        final ArrayList<Double> xValues = new ArrayList<>(classes.size());
-        final ArrayList<Double> yValues = new ArrayList<>(classes.size());
-
+        final ArrayList<Double> values = new ArrayList<>(classes.size());
         for (String className : classes) {
-            xValues.add(seriesAndClass2Value.get(seriesA, className));
-            yValues.add(seriesAndClass2Value.get(seriesB, className));
+            values.add(seriesAndClass2Value.get(series, className));
         }
-        return 1 - Correlation.computePersonsCorrelationCoefficent(classes.size(), xValues, yValues);
+        return values;
     }
 
     /**
-     * compute correlation distance between two series
+     * get the values of a class for all series
      *
-     * @return distance
+     * @return values
      */
-    private static double computeCorrelationDistances(int n, float[] seriesA, float[] seriesB) {
-        return 1 - Correlation.computePersonsCorrelationCoefficent(n, seriesA, seriesB);
+    private static ArrayList<Double> getClassValues(String className, Table<String, String, Double> seriesAndClass2Value) {
+        final Set<String> series = seriesAndClass2Value.rowKeySet();
+        final ArrayList<Double> values = new ArrayList<>(series.size());
+        for (String seriesName : series) {
+            values.add(seriesAndClass2Value.get(seriesName, className));
+        }
+        return values;
     }
 
     /**
-     * compute correlation distance between two classes
+     * compute the condensed matrix of correlation distances between all pairs of value lists, one row per thread
      *
-     * @return distance
+     * @return condensed distances
      */
-    private static double computeCorrelationDistanceBetweenClasses(String classA, String classB, Table<String, String, Double> seriesAndClass2Value) {
-        final Set<String> series = seriesAndClass2Value.rowKeySet();
-        final ArrayList<Double> xValues = new ArrayList<>(series.size());
-        final ArrayList<Double> yValues = new ArrayList<>(series.size());
-
-        for (String seriesName : series) {
-            xValues.add(seriesAndClass2Value.get(seriesName, classA));
-            yValues.add(seriesAndClass2Value.get(seriesName, classB));
-        }
-        return 1 - Correlation.computePersonsCorrelationCoefficent(series.size(), xValues, yValues);
+    private static double[] computeCorrelationDistances(ArrayList<ArrayList<Double>> values) {
+        final int n = values.size();
+        final double[] distances = new double[HierarchicalClustering.size(n)];
+        IntStream.range(0, Math.max(0, n - 1)).parallel().forEach(i -> {
+            int pos = HierarchicalClustering.index(n, i, i + 1);
+            for (int j = i + 1; j < n; j++) {
+                distances[pos++] = 1 - Correlation.computePersonsCorrelationCoefficent(values.get(j).size(), values.get(j), values.get(i));
+            }
+        });
+        return distances;
     }
 
+    /**
+     * compute correlation distance between two series
+     *
+     * @return distance
+     */
+    private static double computeCorrelationDistances(int n, float[] seriesA, float[] seriesB) {
+        return 1 - Correlation.computePersonsCorrelationCoefficent(n, seriesA, seriesB);
+    }
 
     public ArrayList<String> getLabelOrder() {
         return (ArrayList) labelOrder.clone();
@@ -0,0 +1,123 @@
+/*
+ * ChartDataMatrix.java Copyright (C) 2024 Daniel H. Huson
+ *
+ * (Some files contain contributions from other authors, who are then mentioned separately.)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package megan.chart.data;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * dense snapshot of the values of all enabled series and classes of chart data, indexed by series and class
+ * in the order in which they appear in the chart. Must not be modified
+ * Daniel Huson, 10.2026
+ */
+public class ChartDataMatrix {
+    private final String[] series;
+    private final String[] classNames;
+    private final double[][] values;
+    private final double[] seriesTotals;
+    private final Map<String, Integer> series2index = new HashMap<>();
+    private final Map<String, Integer> class2index = new HashMap<>();
+
+    /**
+     * constructor
+     *
+     * @param values       values, indexed by series and class
+     * @param seriesTotals total used to normalize each series
+     */
+    ChartDataMatrix(String[] series, String[] classNames, double[][] values, double[] seriesTotals) {
+        this.series = series;
+        this.classNames = classNames;
+        this.values = values;
+        this.seriesTotals = seriesTotals;
+        for (int s = 0; s < series.length; s++)
+            series2index.put(series[s], s);
+        for (int c = 0; c < classNames.length; c++)
+            class2index.put(classNames[c], c);
+    }
+
+    public int getNumberOfSeries() {
+        return series.length;
+    }
+
+    public int getNumberOfClasses() {
+        return classNames.length;
+    }
+
+    public String getSeries(int s) {
+        return series[s];
+    }
+
+    public String getClassName(int c) {
+        return classNames[c];
+    }
+
+    /**
+     * get index of series
+     *
+     * @return index or -1
+     */
+    public int getSeriesIndex(String series) {
+        final Integer index = series2index.get(series);
+        return index != null ? index : -1;
+    }
+
+    /**
+     * get index of class
+     *
+     * @return index or -1
+     */
+    public int getClassIndex(String className) {
+        final Integer index = class2index.get(className);
+        return index != null ? index : -1;
+    }
+
+    public double getValue(int s, int c) {
+        return values[s][c];
+    }
+
+    /**
+     * get the values of a series for all classes. Must not be modified
+     *
+     * @return values
+     */
+    public double[] getSeriesValues(int s) {
+        return values[s];
+    }
+
+    /**
+     * get the values of a class for all series
+     *
+     * @return new array
+     */
+    public double[] getClassValues(int c) {
+        final double[] column = new double[series.length];
+        for (int s = 0; s < series.length; s++)
+            column[s] = values[s][c];
+        return column;
+    }
+
+    /**
+     * get the total of a series, as used for normalization in the chart
+     *
+     * @return total
+     */
+    public double getSeriesTotal(int s) {
+        return seriesTotals[s];
+    }
+}
@@ -65,6 +65,8 @@ public class DefaultChartData implements IChartData {
 
     private PhyloTree tree;
 
+    private volatile ChartDataMatrix matrix; // dense view, computed on demand
+
     /**
      * constructor
      */
@@ -155,6 +157,7 @@ public class DefaultChartData implements IChartData {
     public void setAllSeries(Collection<String> allSeries) {
         this.seriesNames.clear();
         this.seriesNames.addAll(allSeries);
+        matrix = null;
     }
 
     /**
@@ -164,6 +167,7 @@ public class DefaultChartData implements IChartData {
     public void setAllSeriesTotalSizes(float... sizes) {
         for (int i = 0; i < sizes.length; i++)
             this.series2TotalSize.put(seriesNames.get(i), sizes[i]);
+        matrix = null;
     }
 
     /**
@@ -190,6 +194,7 @@ public class DefaultChartData implements IChartData {
     public void setClassNames(Collection<String> classNames) {
         this.classNames.clear();
         this.classNames.addAll(classNames);
+        matrix = null;
     }
 
     /**
@@ -266,6 +271,36 @@ public class DefaultChartData implements IChartData {
                 classesTooltips.put(className, String.format("%s: %.0f", className, classes2size.get(className)));
             }
         }
+        matrix = null;
+    }
+
+    /**
+     * gets a dense view of the values of all enabled series and classes. The view is recomputed after the data has changed
+     *
+     * @return matrix
+     */
+    public ChartDataMatrix getMatrix() {
+        ChartDataMatrix result = matrix;
+        if (result == null) {
+            final String[] series = seriesNames.toArray(new String[0]);
+            final String[] classes = classNames.toArray(new String[0]);
+            final double[][] values = new double[series.length][classes.length];
+            final double[] totals = new double[series.length];
+            for (int s = 0; s < series.length; s++) {
+                final Map<String, Number> class2Values = series2Class2Values.get(series[s]);
+                if (class2Values != null) {
+                    for (int c = 0; c < classes.length; c++) {
+                        final Number value = class2Values.get(classes[c]);
+                        if (value != null)
+                            values[s][c] = value.doubleValue();
+                    }
+                }
+                final Number total = (isUseTotalSize() ? series2TotalSize.get(series[s]) : series2size.get(series[s]));
+                totals[s] = (total != null ? total.doubleValue() : 0);
+            }
+            matrix = result = new ChartDataMatrix(series, classes, values, totals);
+        }
+        return result;
     }
 
     public Map<String, Number> getDataForSeries(String series) {
@@ -302,6 +337,7 @@ public class DefaultChartData implements IChartData {
         samplesTooltips.clear();
         classesTooltips.clear();
         range = null;
+        matrix = null;
     }
 
     /**
@@ -338,6 +374,7 @@ public class DefaultChartData implements IChartData {
         previous = classes2size.get(className);
         classes2size.put(className, previous == null ? value.doubleValue() : previous + value.doubleValue());
         classesTooltips.put(className, String.format("%s: %.0f", className, classes2size.get(className)));
+        matrix = null;
     }
 
     public double getTotalForSeries(String series) {
@@ -441,6 +478,7 @@ public class DefaultChartData implements IChartData {
                 series2size.put(series, total);
             }
         }
+        matrix = null;
     }
 
     public void setEnabledSeries(Collection<String> seriesNames) {
@@ -468,6 +506,7 @@ public class DefaultChartData implements IChartData {
             }
             classes2size.put(className, total);
         }
+        matrix = null;
     }
 
     public ChartSelection getChartSelection() {
@@ -500,6 +539,7 @@ public class DefaultChartData implements IChartData {
 
     public void setUseTotalSize(boolean useTotalSize) {
         this.useTotalSize = useTotalSize;
+        matrix = null;
     }
 
     public boolean hasTotalSize() {
@@ -72,6 +72,8 @@ public interface IChartData extends IData {
 
     Map<String, Number> getDataForSeries(String series);
 
+    ChartDataMatrix getMatrix();
+
     double getTotalForSeriesIncludingDisabledAttributes(String series);
 
     double getTotalForClassIncludingDisabledSeries(String className);
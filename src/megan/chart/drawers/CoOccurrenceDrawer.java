@@ -26,8 +26,10 @@ import jloda.util.APoint2D;
 import jloda.util.Basic;
 import jloda.util.StringUtils;
 import megan.chart.IChartDrawer;
+import megan.chart.data.ChartDataMatrix;
 import megan.chart.gui.ChartViewer;
 import megan.chart.gui.SelectionGraphics;
+import megan.stats.PairwiseStatistics;
 import megan.util.ScalingType;
 
 import javax.swing.*;
@@ -36,10 +38,10 @@ import java.awt.event.MouseEvent;
 import java.awt.geom.Line2D;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
-import java.util.HashMap;
+import java.util.ArrayList;
 import java.util.HashSet;
-import java.util.Map;
 import java.util.Set;
+import java.util.stream.IntStream;
 
 /**
  * draws a co-occurrence graph
@@ -48,7 +50,7 @@ import java.util.Set;
 public class CoOccurrenceDrawer extends BarChartDrawer implements IChartDrawer {
     public static final String NAME = "CoOccurrencePlot";
 
-    public enum Method {Jaccard, PearsonsR, KendallsTau}
+    public enum Method {Jaccard, PearsonsR, SpearmansRho, KendallsTau}
 
     private int maxRadius = ProgramProperties.get("COMaxRadius", 40);
     private final Graph graph;
@@ -275,128 +277,85 @@ public class CoOccurrenceDrawer extends BarChartDrawer implements IChartDrawer {
     private void updateGraph() {
         graph.clear();
 
-        Map<String, Node> className2Node = new HashMap<>();
+        final ChartDataMatrix matrix = getChartData().getMatrix();
+        final int n = matrix.getNumberOfSeries();
+
+        // percentage of each class in each series, indexed by class and series:
+        final double[][] percentages = new double[matrix.getNumberOfClasses()][n];
+        for (int s = 0; s < n; s++) {
+            final double total = matrix.getSeriesTotal(s);
+            for (int c = 0; c < matrix.getNumberOfClasses(); c++)
+                percentages[c][s] = 100.0 * matrix.getValue(s, c) / total;
+        }
 
         // setup nodes
-        for (String aClassName : getChartData().getClassNames()) {
+        final ArrayList<Node> nodes = new ArrayList<>();
+        final ArrayList<Integer> classIndices = new ArrayList<>();
+        for (int c = 0; c < matrix.getNumberOfClasses(); c++) {
             int numberOfSeriesContainingClass = 0;
-            for (String series : getChartData().getSeriesNames()) {
-                final double percentage = 100.0 * getChartData().getValue(series, aClassName).doubleValue() / getChartData().getTotalForSeries(series);
-                if (percentage >= getMinThreshold())
+            for (int s = 0; s < n; s++) {
+                if (percentages[c][s] >= getMinThreshold())
                     numberOfSeriesContainingClass++;
             }
-            final double percentageOfSeriesContainingClass = 100.0 * numberOfSeriesContainingClass / (double) getChartData().getNumberOfSeries();
+            final double percentageOfSeriesContainingClass = 100.0 * numberOfSeriesContainingClass / (double) n;
             if (percentageOfSeriesContainingClass >= getMinPrevalence() && percentageOfSeriesContainingClass <= getMaxPrevalence()) {
                 final Node v = graph.newNode();
                 final NodeData nodeData = new NodeData();
-                nodeData.setLabel(aClassName);
+                nodeData.setLabel(matrix.getClassName(c));
                 v.setData(nodeData);
-                className2Node.put(aClassName, v);
+                nodes.add(v);
+                classIndices.add(c);
                 nodeData.setPrevalence(numberOfSeriesContainingClass);
             }
         }
 
-        final String[] series = getChartData().getSeriesNames().toArray(new String[0]);
-        final int n = series.length;
-
         if (n >= 2) { // setup edges
-            for (Node v = graph.getFirstNode(); v != null; v = v.getNext()) {
-                final String classA = ((NodeData) v.getData()).getLabel();
-                for (Node w = v.getNext(); w != null; w = w.getNext()) {
-                    final String classB = ((NodeData) w.getData()).getLabel();
-
-                    final float score;
-                    switch (method) {
-                       default /*  case Jaccard  */ -> {
-                           final Set<String> intersection = new HashSet<>();
-                           final Set<String> union = new HashSet<>();
-                           for (String series1 : series) {
-                               double total = getChartData().getTotalForSeries(series1);
-                               double percentage1 = 100.0 * getChartData().getValue(series1, classA).doubleValue() / total;
-                               double percentage2 = 100.0 * getChartData().getValue(series1, classB).doubleValue() / total;
-                               if (percentage1 >= getMinThreshold() || percentage2 >= getMinThreshold()) {
-                                   union.add(series1);
-                               }
-                               if (percentage1 > getMinThreshold() && percentage2 >= getMinThreshold()) {
-                                    intersection.add(series1);
-                                }
-                            }
-                            if (!union.isEmpty()) {
+            final int size = nodes.size();
+            final double[][] values = new double[size][];
+            for (int k = 0; k < size; k++)
+                values[k] = matrix.getClassValues(classIndices.get(k));
+
+            final double[][] scores;
+            switch (method) {
+                default /*  case Jaccard  */ -> {
+                    // class present in series, and strictly present, as bit sets over the series:
+                    final long[][] present = new long[size][];
+                    final long[][] strictlyPresent = new long[size][];
+                    for (int k = 0; k < size; k++) {
+                        present[k] = PairwiseStatistics.toBitSet(percentages[classIndices.get(k)], p -> p >= getMinThreshold());
+                        strictlyPresent[k] = PairwiseStatistics.toBitSet(percentages[classIndices.get(k)], p -> p > getMinThreshold());
+                    }
+                    scores = new double[size][size];
+                    IntStream.range(0, size).parallel().forEach(k -> {
+                        for (int l = k + 1; l < size; l++) {
+                            final int union = PairwiseStatistics.countUnion(present[k], present[l]);
+                            final int intersection = PairwiseStatistics.countIntersection(strictlyPresent[k], present[l]);
+                            if (union > 0) {
                                 final boolean positive;
                                 if (isShowCoOccurring() && !isShowAntiOccurring())
                                     positive = true;
                                 else if (!isShowCoOccurring() && isShowAntiOccurring())
                                     positive = false;
                                 else
-                                    positive = (intersection.size() >= 0.5 * union.size());
+                                    positive = (intersection >= 0.5 * union);
                                 if (positive)
-                                    score = ((float) intersection.size() / (float) union.size());
+                                    scores[k][l] = ((float) intersection / (float) union);
                                 else
-                                    score = -((float) (union.size() - intersection.size()) / (float) union.size());
-                            } else
-                                score = 0;
-					   }
-                        case PearsonsR -> {
-                            double meanA = 0;
-                            double meanB = 0;
-                            for (String series1 : series) {
-                                meanA += getChartData().getValue(series1, classA).doubleValue();
-                                meanB += getChartData().getValue(series1, classB).doubleValue();
-                            }
-                            meanA /= n;
-                            meanB /= n;
-
-                            double valueTop = 0;
-                            double valueBottomA = 0;
-                            double valueBottomB = 0;
-
-                            for (String series1 : series) {
-                                final double a = getChartData().getValue(series1, classA).doubleValue();
-                                final double b = getChartData().getValue(series1, classB).doubleValue();
-                                valueTop += (a - meanA) * (b - meanB);
-                                valueBottomA += (a - meanA) * (a - meanA);
-                                valueBottomB += (b - meanB) * (b - meanB);
-                            }
-                            valueBottomA = Math.sqrt(valueBottomA);
-                            valueBottomB = Math.sqrt(valueBottomB);
-                            score = (float) (valueTop / (valueBottomA * valueBottomB));
-						}
-                        case KendallsTau -> {
-                            int countConcordant = 0;
-                            int countDiscordant = 0;
-
-                            for (int i = 0; i < series.length; i++) {
-                                String series1 = series[i];
-                                double aIn1 = getChartData().getValue(series1, classA).doubleValue();
-                                double bIn1 = getChartData().getValue(series1, classB).doubleValue();
-
-                                for (int j = i + 1; j < series.length; j++) {
-                                    String series2 = series[j];
-                                    double aIn2 = getChartData().getValue(series2, classA).doubleValue();
-                                    double bIn2 = getChartData().getValue(series2, classB).doubleValue();
-
-                                    if (aIn1 != aIn2 && bIn1 != bIn2) {
-                                        if ((aIn1 < aIn2) == (bIn1 < bIn2))
-                                            countConcordant++;
-                                        else
-                                            countDiscordant++;
-                                    }
-                                }
+                                    scores[k][l] = -((float) (union - intersection) / (float) union);
                             }
-
-                            if (countConcordant + countDiscordant > 0)
-                                score = (float) (countConcordant - countDiscordant) / (float) (countConcordant + countDiscordant);
-                            else
-                                score = 0;
-
-                            //System.err.println(classA+" vs "+classB+": conc: "+countConcordant+" disc: "+countDiscordant+" score: "+score);
-
                         }
-                    }
-
+                    });
+                }
+                case PearsonsR -> scores = PairwiseStatistics.computePearson(values);
+                case SpearmansRho -> scores = PairwiseStatistics.computeSpearman(values);
+                case KendallsTau -> scores = PairwiseStatistics.computeKendall(values);
+            }
 
+            for (int k = 0; k < size; k++) {
+                for (int l = k + 1; l < size; l++) {
+                    final float score = (float) scores[k][l];
                     if (showCoOccurring && 100 * score >= getMinProbability() || showAntiOccurring && -100 * score >= getMinProbability()) {
-                        Edge e = graph.newEdge(className2Node.get(classA), className2Node.get(classB));
+                        Edge e = graph.newEdge(nodes.get(k), nodes.get(l));
                         graph.setInfo(e, score);
                         edgeValue.put(e, score); // negative value indicates anticorrelated
                     }
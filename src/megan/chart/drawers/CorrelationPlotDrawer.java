@@ -22,12 +22,13 @@ import jloda.swing.util.BasicSwing;
 import jloda.swing.util.Geometry;
 import jloda.swing.util.ProgramProperties;
 import jloda.swing.window.IPopupMenuModifier;
-import jloda.util.Correlation;
 import jloda.util.Table;
 import megan.chart.IChartDrawer;
 import megan.chart.cluster.ClusteringTree;
+import megan.chart.data.ChartDataMatrix;
 import megan.chart.gui.ChartViewer;
 import megan.chart.gui.SelectionGraphics;
+import megan.stats.PairwiseStatistics;
 import megan.util.CallBack;
 import megan.util.PopupChoice;
 import megan.util.ScalingType;
@@ -747,10 +748,11 @@ public class CorrelationPlotDrawer extends BarChartDrawer implements IChartDrawe
             currentSeries = list.toArray(new String[0]);
         }
         if (!isTranspose()) {
+            final double[][] correlations = PairwiseStatistics.computePearson(getClassVectors(currentClasses));
             for (int i = 0; i < currentClasses.length; i++) {
                 dataMatrix.put(currentClasses[i], currentClasses[i], 1f);
                 for (int j = i + 1; j < currentClasses.length; j++) {
-                    final float value = computeCorrelationCoefficent(currentClasses[i], currentClasses[j]);
+                    final float value = (float) correlations[i][j];
                     dataMatrix.put(currentClasses[i], currentClasses[j], value);
                     dataMatrix.put(currentClasses[j], currentClasses[i], value);
                 }
@@ -765,10 +767,11 @@ public class CorrelationPlotDrawer extends BarChartDrawer implements IChartDrawe
             } else
                 classNames = currentClasses;
         } else {
+            final double[][] correlations = PairwiseStatistics.computePearson(getSeriesVectors(currentSeries));
             for (int i = 0; i < currentSeries.length; i++) {
                 dataMatrix.put(currentSeries[i], currentSeries[i], 1f);
                 for (int j = i + 1; j < currentSeries.length; j++) {
-                    final float value = computeCorrelationCoefficentTransposed(currentSeries[i], currentSeries[j]);
+                    final float value = (float) correlations[i][j];
                     dataMatrix.put(currentSeries[i], currentSeries[j], value);
                     dataMatrix.put(currentSeries[j], currentSeries[i], value);
                 }
@@ -787,35 +790,45 @@ public class CorrelationPlotDrawer extends BarChartDrawer implements IChartDrawe
     }
 
     /**
-     * return Pearson's correlation coefficient
+     * get the values of each of the given classes for all series
      *
-     * @return Pearson's correlation coefficient
+     * @return vectors
      */
-    private float computeCorrelationCoefficent(String classNameX, String classNameY) {
-        final ArrayList<Double> xValues = new ArrayList<>(getChartData().getSeriesNames().size());
-        final ArrayList<Double> yValues = new ArrayList<>(getChartData().getSeriesNames().size());
-
-        for (String sample : getChartData().getSeriesNames()) {
-            xValues.add(getChartData().getValueAsDouble(sample, classNameX));
-            yValues.add(getChartData().getValueAsDouble(sample, classNameY));
+    private double[][] getClassVectors(String[] classNames) {
+        final ChartDataMatrix matrix = getChartData().getMatrix();
+        final double[][] vectors = new double[classNames.length][];
+        for (int i = 0; i < classNames.length; i++) {
+            final int c = matrix.getClassIndex(classNames[i]);
+            if (c != -1)
+                vectors[i] = matrix.getClassValues(c);
+            else { // not currently enabled in the chart data
+                vectors[i] = new double[matrix.getNumberOfSeries()];
+                for (int s = 0; s < matrix.getNumberOfSeries(); s++)
+                    vectors[i][s] = getChartData().getValueAsDouble(matrix.getSeries(s), classNames[i]);
+            }
         }
-        return (float) Correlation.computePersonsCorrelationCoefficent(xValues.size(), xValues, yValues);
+        return vectors;
     }
 
     /**
-     * return Pearson's correlation coefficient
+     * get the values of each of the given series for all classes
      *
-     * @return Pearson's correlation coefficient
+     * @return vectors
      */
-    private float computeCorrelationCoefficentTransposed(String seriesNameX, String seriesNameY) {
-        final ArrayList<Double> xValues = new ArrayList<>(getChartData().getClassNames().size());
-        final ArrayList<Double> yValues = new ArrayList<>(getChartData().getClassNames().size());
-
-        for (String className : getChartData().getClassNames()) {
-            xValues.add(getChartData().getValueAsDouble(seriesNameX, className));
-            yValues.add(getChartData().getValueAsDouble(seriesNameY, className));
+    private double[][] getSeriesVectors(String[] seriesNames) {
+        final ChartDataMatrix matrix = getChartData().getMatrix();
+        final double[][] vectors = new double[seriesNames.length][];
+        for (int i = 0; i < seriesNames.length; i++) {
+            final int s = matrix.getSeriesIndex(seriesNames[i]);
+            if (s != -1)
+                vectors[i] = matrix.getSeriesValues(s);
+            else { // not currently enabled in the chart data
+                vectors[i] = new double[matrix.getNumberOfClasses()];
+                for (int c = 0; c < matrix.getNumberOfClasses(); c++)
+                    vectors[i][c] = getChartData().getValueAsDouble(seriesNames[i], matrix.getClassName(c));
+            }
         }
-        return (float) Correlation.computePersonsCorrelationCoefficent(xValues.size(), xValues, yValues);
+        return vectors;
     }
 
     private void updateClassesJList() {
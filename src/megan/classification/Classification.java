@@ -24,11 +24,15 @@ import jloda.util.FileUtils;
 import jloda.util.StringUtils;
 import jloda.util.progress.ProgressListener;
 import megan.classification.data.ClassificationFullTree;
+import megan.classification.data.ClassificationSnapshot;
+import megan.classification.data.IntIdSet;
 import megan.classification.data.Name2IdMap;
 import megan.core.Document;
 import megan.viewer.MainViewer;
 import megan.viewer.TaxonomyData;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Map;
 
@@ -45,6 +49,9 @@ public class Classification {
 
     private final IdMapper idMapper;
 
+    private IntIdSet knownIds;
+    private int knownIdsMapSize = -1;
+
     /**
      * constructor
      *
@@ -76,6 +83,21 @@ public class Classification {
 
 			Document.loadVersionInfo(cName + " tree", FileUtils.replaceFileSuffix(treeFile, ".info"));
 
+            File snapshotFile = null;
+            long key = 0;
+            if (ClassificationSnapshot.isEnabled()) {
+                try {
+                    key = ClassificationSnapshot.computeKey(treeFile, mapFile);
+                    snapshotFile = ClassificationSnapshot.getSnapshotFile(cName);
+                    if (fullTree.loadFromSnapshot(snapshotFile, key)) {
+                        progress.setProgress(2);
+                        return;
+                    }
+                } catch (IOException ex) {
+                    System.err.println("Snapshot ignored: " + ex.getMessage());
+                }
+            }
+
             name2IdMap.loadFromFile(mapFile);
 
             progress.setProgress(1);
@@ -87,6 +109,14 @@ public class Classification {
             }
             fullTree.loadFromFile(treeFile);
             progress.setProgress(2);
+
+            if (snapshotFile != null) {
+                try {
+                    fullTree.saveSnapshot(snapshotFile, key);
+                } catch (IOException ex) {
+                    System.err.println("Failed to save snapshot: " + ex.getMessage());
+                }
+            }
         } catch (Exception e) {
             Basic.caught(e);
             NotificationsInSwing.showError(MainViewer.getLastActiveFrame(), "Failed to open files: " + treeFile + " and " + mapFile + ": " + e.getMessage());
@@ -116,6 +146,21 @@ public class Classification {
         return fullTree;
     }
 
+    /**
+     * gets the set of all ids of this classification. This is built once and only rebuilt if the number of names has changed
+     *
+     * @return known ids, must not be modified
+     */
+    public IntIdSet getKnownIds() {
+        synchronized (name2IdMap) {
+            if (knownIds == null || knownIdsMapSize != name2IdMap.size()) {
+                knownIds = new IntIdSet(name2IdMap.getIds());
+                knownIdsMapSize = name2IdMap.size();
+            }
+            return knownIds;
+        }
+    }
+
     public Name2IdMap getName2IdMap() {
         return name2IdMap;
     }
@@ -18,13 +18,19 @@
  */
 package megan.classification;
 
+import jloda.fx.util.ProgramExecutorService;
+import jloda.util.CanceledException;
 import jloda.util.FileUtils;
+import jloda.util.Single;
 import jloda.util.StringUtils;
 import jloda.util.progress.ProgressListener;
 import jloda.util.progress.ProgressSilent;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 /**
  * manages classification data
@@ -34,7 +40,8 @@ public class ClassificationManager {
     private static final Set<String> allSupportedClassifications = new TreeSet<>();
     private static final Set<String> allSupportedClassificationsExcludingNCBITaxonomy = new TreeSet<>();
 
-    private static final Map<String, Classification> name2classification = new TreeMap<>();
+    private static final Map<String, Classification> name2classification = new ConcurrentHashMap<>();
+    private static final Map<String, Object> name2lock = new ConcurrentHashMap<>(); // each classification is loaded under its own lock
 
     private static final ArrayList<String> defaultClassificationsList = new ArrayList<>();
     private static final ArrayList<String> defaultClassificationsListExcludingNCBITaxonomy = new ArrayList<>();
@@ -70,7 +77,7 @@ public class ClassificationManager {
     public static Classification get(String name, boolean load) {
         Classification classification = name2classification.get(name);
         if (classification == null) {
-            synchronized (name2classification) {
+            synchronized (getLock(name)) {
                 classification = name2classification.get(name);
                 if (classification == null) {
                     if (load) {
@@ -105,17 +112,96 @@ public class ClassificationManager {
      * @return classification
      */
     public static Classification load(String name, String treeFile, String mapFile, ProgressListener progress) {
-        synchronized (name2classification) {
+        synchronized (getLock(name)) {
             Classification classification = name2classification.get(name);
             if (classification == null) {
                 classification = new Classification(name);
+                classification.load(treeFile, mapFile, progress);
+                // publish only once fully loaded, as get() returns published classifications without locking
                 name2classification.put(name, classification);
-            }
-            classification.load(treeFile, mapFile, progress);
+            } else
+                classification.load(treeFile, mapFile, progress);
             return classification;
         }
     }
 
+    private static Object getLock(String name) {
+        return name2lock.computeIfAbsent(name, k -> new Object());
+    }
+
+    /**
+     * loads the named classifications and their mapping files. Different classifications are loaded in parallel,
+     * the mapping files of one classification are loaded one after another, in the given order
+     *
+     * @param cName2MappingFiles maps each classification name to its mapping files, by type, see createMappingFiles
+     */
+    public static void preload(Map<String, Map<IdMapper.MapType, String>> cName2MappingFiles, ProgressListener progress) throws IOException, CanceledException {
+        var numberOfSteps = 0;
+        for (var mappingFiles : cName2MappingFiles.values()) {
+            numberOfSteps += 1 + mappingFiles.size();
+        }
+        progress.setSubtask("Loading classifications");
+        progress.setMaximum(numberOfSteps);
+        progress.setProgress(0);
+
+        final var numberOfThreads = Math.max(1, Math.min(cName2MappingFiles.size(), ProgramExecutorService.getNumberOfCoresToUse()));
+        final var service = Executors.newFixedThreadPool(numberOfThreads);
+        final var exception = new Single<Exception>();
+        try {
+            for (var entry : cName2MappingFiles.entrySet()) {
+                service.submit(() -> {
+                    try {
+                        final var idMapper = get(entry.getKey(), true).getIdMapper();
+                        incrementProgress(progress);
+                        for (var mappingFile : entry.getValue().entrySet()) {
+                            if (exception.get() != null)
+                                return;
+                            idMapper.loadMappingFile(mappingFile.getValue(), mappingFile.getKey(), false, new ProgressSilent());
+                            incrementProgress(progress);
+                        }
+                    } catch (Exception ex) {
+                        exception.setIfCurrentValueIsNull(ex);
+                    }
+                });
+            }
+        } finally {
+            service.shutdown();
+            try {
+                service.awaitTermination(1000, TimeUnit.DAYS);
+            } catch (InterruptedException e) {
+                exception.setIfCurrentValueIsNull(e);
+            }
+        }
+        if (exception.get() instanceof CanceledException)
+            throw (CanceledException) exception.get();
+        else if (exception.get() instanceof IOException)
+            throw (IOException) exception.get();
+        else if (exception.get() != null)
+            throw new IOException(exception.get());
+    }
+
+    private static void incrementProgress(ProgressListener progress) throws CanceledException {
+        synchronized (progress) {
+            progress.incrementProgress();
+        }
+    }
+
+    /**
+     * creates the mapping files argument for preload, ignoring files that are null or blank
+     *
+     * @return mapping files in the order in which they should be loaded
+     */
+    public static Map<IdMapper.MapType, String> createMappingFiles(String meganMapDBFile, String accessionFile, String synonymsFile) {
+        final var mappingFiles = new LinkedHashMap<IdMapper.MapType, String>();
+        if (StringUtils.notBlank(meganMapDBFile))
+            mappingFiles.put(IdMapper.MapType.MeganMapDB, meganMapDBFile);
+        if (StringUtils.notBlank(accessionFile))
+            mappingFiles.put(IdMapper.MapType.Accession, accessionFile);
+        if (StringUtils.notBlank(synonymsFile))
+            mappingFiles.put(IdMapper.MapType.Synonyms, synonymsFile);
+        return mappingFiles;
+    }
+
     /**
      * ensure that the tree and mapping for the named classification are loaded
      *
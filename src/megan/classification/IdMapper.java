@@ -63,7 +63,7 @@ public class IdMapper {
 
     private boolean useTextParsing;
 
-    private final Set<Integer> disabledIds = new HashSet<>();
+    private final IntIdSet disabledIds = new IntIdSet();
 
     private IString2IntegerMap accessionMap = null;
     private String2IntegerMap synonymsMap = null;
@@ -245,7 +245,7 @@ public class IdMapper {
         return name2IdMap;
     }
 
-    public Set<Integer> getDisabledIds() {
+    public IntIdSet getDisabledIds() {
         return disabledIds;
     }
 
@@ -261,6 +261,6 @@ public class IdMapper {
     }
 
     public boolean isDisabled(int id) {
-        return disabledIds.size() > 0 && disabledIds.contains(id);
+        return !disabledIds.isEmpty() && disabledIds.contains(id);
     }
 }
@@ -21,6 +21,7 @@ package megan.classification;
 import jloda.swing.util.ProgramProperties;
 import jloda.util.NumberUtils;
 import jloda.util.StringUtils;
+import megan.classification.data.IntIdSet;
 import megan.classification.data.Name2IdMap;
 import megan.classification.util.MultiWords;
 import megan.classification.util.TaggedValueIterator;
@@ -44,7 +45,7 @@ public class IdParser {
     private final IdMapper idMapper;
     private boolean useTextParsing;
     private Algorithm algorithm = Algorithm.First_Hit;
-    private final Set<Integer> disabledIds = new HashSet<>();
+    private final IntIdSet disabledIds;
 
     private final Map<Integer, Integer> id2count = new HashMap<>();
     private final Set<Integer> ids = new HashSet<>();
@@ -67,7 +68,7 @@ public class IdParser {
     public IdParser(IdMapper idMapper) {
         this.idMapper = idMapper;
         this.useTextParsing = idMapper.isUseTextParsing();
-        disabledIds.addAll(idMapper.getDisabledIds());
+        disabledIds = new IntIdSet(idMapper.getDisabledIds());
         isTaxonomy = idMapper.getCName().equals(Classification.Taxonomy);
 
         multiWords = new MultiWords();
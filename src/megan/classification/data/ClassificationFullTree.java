@@ -140,15 +140,55 @@ public class ClassificationFullTree extends PhyloTree {
             taxId = name2IdMap.get("Eukaryota");
             if (taxId > 0)
                 name2IdMap.setRank(taxId, 127);
+        }
+        disableTaxa();
 
-            // disable taxa
+        LCAAddressing.computeAddresses(this, id2Address, address2Id);
+        System.err.printf("%,9d%n", getNumberOfNodes());
+    }
+
+    /**
+     * load the tree, and the names map, from a binary snapshot, see ClassificationSnapshot
+     *
+     * @param key key of the source files that the snapshot must have been created from, see ClassificationSnapshot.computeKey
+     * @return true, if the snapshot exists and was created from the same source files
+     */
+    public boolean loadFromSnapshot(File file, long key) throws IOException {
+        clear();
+        System.err.print("Loading " + file.getName() + ": ");
+        try {
+            if (!ClassificationSnapshot.read(file, key, this, name2IdMap, id2Address, address2Id)) {
+                System.err.println("out of date");
+                clear();
+                return false;
+            }
+        } catch (IOException ex) {
+            clear();
+            throw ex;
+        }
+        disableTaxa();
+        System.err.printf("%,9d%n", getNumberOfNodes());
+        return true;
+    }
+
+    /**
+     * save the tree, and the names map, as a binary snapshot, see ClassificationSnapshot
+     *
+     * @param key key of the source files
+     */
+    public void saveSnapshot(File file, long key) throws IOException {
+        ClassificationSnapshot.write(file, key, this, name2IdMap);
+    }
+
+    /**
+     * disable all taxa listed in the program properties
+     */
+    private void disableTaxa() {
+        if (getName().equals(Classification.Taxonomy)) {
             for (int t : ProgramProperties.get(DISABLED_TAXA, new int[0])) {
                 TaxonomyData.getDisabledTaxa().add(t);
             }
         }
-
-        LCAAddressing.computeAddresses(this, id2Address, address2Id);
-        System.err.printf("%,9d%n", getNumberOfNodes());
     }
 
 
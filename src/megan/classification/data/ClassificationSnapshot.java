@@ -0,0 +1,298 @@
+/*
+ * ClassificationSnapshot.java Copyright (C) 2024 Daniel H. Huson
+ *
+ * (Some files contain contributions from other authors, who are then mentioned separately.)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package megan.classification.data;
+
+import jloda.graph.Node;
+import jloda.swing.util.ProgramProperties;
+import megan.algorithms.LCAAddressing;
+import megan.main.Version;
+import megan.resources.Resources;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * binary snapshot of a loaded classification: the tree as flat arrays of node ids and child offsets, the names,
+ * ranks and tooltips, and the LCA addresses. A snapshot is written after a classification has been parsed from its
+ * tree and map files and is used instead of them as long as the size and modification time of those files, and the program version,
+ * don't change. So starting the program never reads the source files, unless they have changed.
+ * Snapshots are read into memory in one go, so the file is not kept open or mapped, as, on Windows, a mapped file cannot be
+ * replaced. They are written to a temporary file that is then renamed, so that concurrently running programs never see a partial snapshot.
+ * <p>
+ * Layout (big endian): magic, version, key, number of nodes, node ids, node labeled flags, child offsets, children,
+ * root, addresses (node and address, in preorder), names, additional names, ranks, tooltips
+ * Daniel Huson, 10.2026
+ */
+public class ClassificationSnapshot {
+    private static final int MAGIC = 0x4d435353; // MCSS
+    private static final int VERSION = 1;
+
+    public static final String USE_SNAPSHOTS = "UseClassificationSnapshots";
+    public static final String SNAPSHOT_DIRECTORY = "ClassificationSnapshotDirectory";
+
+    /**
+     * are snapshots to be used?
+     */
+    public static boolean isEnabled() {
+        return ProgramProperties.get(USE_SNAPSHOTS, true);
+    }
+
+    /**
+     * gets the snapshot file for a classification
+     *
+     * @return file
+     */
+    public static File getSnapshotFile(String cName) {
+        final var directory = ProgramProperties.get(SNAPSHOT_DIRECTORY, System.getProperty("user.home") + File.separator + ".MEGAN-snapshots");
+        return new File(directory, cName.replaceAll("[^A-Za-z0-9_.-]", "_") + ".snapshot");
+    }
+
+    /**
+     * computes the key of the source files of a classification from the snapshot format version, the program version and
+     * the name, size and modification time of each file. The files are either files or resources, as when opened by the ResourceManager,
+     * and are not read
+     *
+     * @return key
+     */
+    public static long computeKey(String... fileNames) throws IOException {
+        final var buf = new StringBuilder();
+        buf.append(VERSION).append('\t').append(Version.SHORT_DESCRIPTION);
+        for (var fileName : fileNames) {
+            final var file = new File(fileName);
+            final long size;
+            final long lastModified;
+            if (file.isFile()) {
+                size = file.length();
+                lastModified = file.lastModified();
+            } else {
+                final var url = Resources.class.getResource("files/" + file.getName());
+                if (url == null)
+                    throw new IOException("not found: " + fileName);
+                final var connection = url.openConnection();
+                size = connection.getContentLengthLong();
+                lastModified = connection.getLastModified();
+            }
+            buf.append('\t').append(fileName).append('\t').append(size).append('\t').append(lastModified);
+        }
+        final var crc32 = new CRC32();
+        crc32.update(buf.toString().getBytes(StandardCharsets.UTF_8));
+        return crc32.getValue();
+    }
+
+    /**
+     * reads a snapshot into an empty tree and a names map
+     *
+     * @param key key of the current source files
+     * @return true, if the snapshot exists and has the given key
+     */
+    static boolean read(File file, long key, ClassificationFullTree tree, Name2IdMap name2IdMap, Map<Integer, String> id2Address, Map<String, Integer> address2Id) throws IOException {
+        if (!file.canRead())
+            return false;
+        final var buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        try {
+            if (buffer.capacity() < 16 || buffer.getInt() != MAGIC || buffer.getInt() != VERSION || buffer.getLong() != key)
+                return false;
+
+            // tree:
+            final var numberOfNodes = buffer.getInt();
+            final var ids = new int[numberOfNodes];
+            buffer.asIntBuffer().get(ids);
+            buffer.position(buffer.position() + 4 * numberOfNodes);
+            final var labeled = new byte[numberOfNodes];
+            buffer.get(labeled);
+            final var childOffsets = new int[numberOfNodes + 1];
+            buffer.asIntBuffer().get(childOffsets);
+            buffer.position(buffer.position() + 4 * (numberOfNodes + 1));
+            final var children = new int[childOffsets[numberOfNodes]];
+            buffer.asIntBuffer().get(children);
+            buffer.position(buffer.position() + 4 * children.length);
+            final var root = buffer.getInt();
+
+            final var nodes = new Node[numberOfNodes];
+            for (var i = 0; i < numberOfNodes; i++) {
+                final var v = nodes[i] = tree.newNode();
+                tree.setInfo(v, ids[i]);
+                if (labeled[i] != 0)
+                    tree.setLabel(v, Integer.toString(ids[i]));
+                tree.addId2Node(ids[i], v);
+            }
+            for (var i = 0; i < numberOfNodes; i++) {
+                for (var c = childOffsets[i]; c < childOffsets[i + 1]; c++)
+                    tree.newEdge(nodes[i], nodes[children[c]]);
+            }
+            tree.setRoot(nodes[root]);
+
+            // addresses, in the order in which they were computed:
+            var chars = new char[256];
+            for (var i = 0; i < numberOfNodes; i++) {
+                final var id = ids[buffer.getInt()];
+                final var length = buffer.getInt();
+                if (length > chars.length)
+                    chars = new char[2 * length];
+                buffer.asCharBuffer().get(chars, 0, length);
+                buffer.position(buffer.position() + 2 * length);
+                final var address = new String(chars, 0, length);
+                id2Address.put(id, address);
+                address2Id.put(address, id);
+            }
+
+            // names:
+            var bytes = new byte[256];
+            for (var pass = 0; pass < 2; pass++) { // second pass: names that are not the name of their id
+                final var count = buffer.getInt();
+                for (var i = 0; i < count; i++) {
+                    final var id = buffer.getInt();
+                    final var length = buffer.getInt();
+                    if (length > bytes.length)
+                        bytes = new byte[2 * length];
+                    buffer.get(bytes, 0, length);
+                    final var name = new String(bytes, 0, length, StandardCharsets.UTF_8);
+                    if (pass == 0)
+                        name2IdMap.put(name, id);
+                    else
+                        name2IdMap.getName2Id().put(name, id);
+                }
+            }
+            final var numberOfRanks = buffer.getInt();
+            for (var i = 0; i < numberOfRanks; i++) {
+                name2IdMap.setRank(buffer.getInt(), buffer.getInt());
+            }
+            final var numberOfToolTips = buffer.getInt();
+            for (var i = 0; i < numberOfToolTips; i++) {
+                final var id = buffer.getInt();
+                final var length = buffer.getInt();
+                if (length > bytes.length)
+                    bytes = new byte[2 * length];
+                buffer.get(bytes, 0, length);
+                name2IdMap.getId2ToolTip().put(id, new String(bytes, 0, length, StandardCharsets.UTF_8));
+            }
+            return true;
+        } catch (RuntimeException ex) { // buffer underflow etc
+            throw new IOException("Corrupt snapshot: " + file, ex);
+        }
+    }
+
+    /**
+     * writes a snapshot of a loaded tree and names map
+     *
+     * @param key key of the source files
+     */
+    static void write(File file, long key, ClassificationFullTree tree, Name2IdMap name2IdMap) throws IOException {
+        final var node2index = new HashMap<Node, Integer>();
+        for (var v = tree.getFirstNode(); v != null; v = v.getNext()) {
+            node2index.put(v, node2index.size());
+        }
+        final var preorder = new ArrayList<Node>(node2index.size());
+        final var addresses = new ArrayList<String>(node2index.size());
+        LCAAddressing.visitAddresses(tree, (v, address) -> {
+            preorder.add(v);
+            addresses.add(address);
+        });
+        if (tree.getRoot() == null || preorder.size() != node2index.size())
+            throw new IOException("Can't save snapshot, not a tree: " + tree.getName());
+
+        final var directory = file.getParentFile();
+        if (directory != null && !directory.exists() && !directory.mkdirs())
+            throw new IOException("Can't create directory: " + directory);
+        final var tmpFile = File.createTempFile(file.getName(), ".tmp", directory);
+
+        try {
+            try (var outs = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile), 1 << 20))) {
+                outs.writeInt(MAGIC);
+                outs.writeInt(VERSION);
+                outs.writeLong(key);
+
+                // tree:
+                outs.writeInt(node2index.size());
+                for (var v = tree.getFirstNode(); v != null; v = v.getNext()) {
+                    outs.writeInt((Integer) v.getInfo());
+                }
+                for (var v = tree.getFirstNode(); v != null; v = v.getNext()) {
+                    outs.writeByte(tree.getLabel(v) != null ? 1 : 0);
+                }
+                var offset = 0;
+                for (var v = tree.getFirstNode(); v != null; v = v.getNext()) {
+                    outs.writeInt(offset);
+                    offset += v.getOutDegree();
+                }
+                outs.writeInt(offset);
+                for (var v = tree.getFirstNode(); v != null; v = v.getNext()) {
+                    for (var e = v.getFirstOutEdge(); e != null; e = v.getNextOutEdge(e))
+                        outs.writeInt(node2index.get(e.getTarget()));
+                }
+                outs.writeInt(node2index.get(tree.getRoot()));
+
+                // addresses:
+                for (var i = 0; i < preorder.size(); i++) {
+                    outs.writeInt(node2index.get(preorder.get(i)));
+                    outs.writeInt(addresses.get(i).length());
+                    outs.writeChars(addresses.get(i));
+                }
+
+                // names, and then all names that don't map to an id that has the name:
+                final var id2name = name2IdMap.getId2Name();
+                outs.writeInt(id2name.size());
+                final var name2idReplayed = new HashMap<String, Integer>();
+                for (var entry : id2name.entrySet()) {
+                    writeString(outs, entry.getKey(), entry.getValue());
+                    name2idReplayed.put(entry.getValue(), entry.getKey());
+                }
+                final var additional = new ArrayList<Map.Entry<String, Integer>>();
+                for (var entry : name2IdMap.getName2Id().entrySet()) {
+                    if (!entry.getValue().equals(name2idReplayed.get(entry.getKey())))
+                        additional.add(entry);
+                }
+                outs.writeInt(additional.size());
+                for (var entry : additional) {
+                    writeString(outs, entry.getValue(), entry.getKey());
+                }
+
+                outs.writeInt(name2IdMap.getId2Rank().size());
+                for (var entry : name2IdMap.getId2Rank().entrySet()) {
+                    outs.writeInt(entry.getKey());
+                    outs.writeInt(entry.getValue());
+                }
+                outs.writeInt(name2IdMap.getId2ToolTip().size());
+                for (var entry : name2IdMap.getId2ToolTip().entrySet()) {
+                    writeString(outs, entry.getKey(), entry.getValue());
+                }
+            }
+            Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmpFile.toPath());
+        }
+    }
+
+    /**
+     * write an id and a string
+     */
+    private static void writeString(DataOutputStream outs, int id, String string) throws IOException {
+        final var bytes = string.getBytes(StandardCharsets.UTF_8);
+        outs.writeInt(id);
+        outs.writeInt(bytes.length);
+        outs.write(bytes);
+    }
+}
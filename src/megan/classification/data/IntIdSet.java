@@ -0,0 +1,205 @@
+/*
+ * IntIdSet.java Copyright (C) 2024 Daniel H. Huson
+ *
+ * (Some files contain contributions from other authors, who are then mentioned separately.)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package megan.classification.data;
+
+import java.util.*;
+
+/**
+ * set of classification ids, stored as bits in chunks of 2^16 ids, so that ids are never boxed and
+ * a membership test is two array lookups. Chunks are only allocated for ranges of ids that are used, so that
+ * sparse high ids are cheap, too. The few negative ids (such as unassigned) are kept in a separate set.
+ * Implements Set of Integer so that it can be used wherever such a set was used before.
+ * Not thread-safe for concurrent modification, but any number of threads may test membership while the set is not modified
+ * Daniel Huson, 10.2026
+ */
+public class IntIdSet extends AbstractSet<Integer> {
+    private static final int CHUNK_BITS = 16;
+    private static final int WORDS_PER_CHUNK = (1 << CHUNK_BITS) / 64;
+
+    private long[][] chunks = new long[0][];
+    private final Set<Integer> negativeIds = new HashSet<>();
+    private int size;
+
+    /**
+     * constructs an empty set
+     */
+    public IntIdSet() {
+    }
+
+    /**
+     * constructs a set containing the given ids
+     */
+    public IntIdSet(Collection<Integer> ids) {
+        addAll(ids);
+    }
+
+    /**
+     * does the set contain the given id?
+     *
+     * @return true, if contained
+     */
+    public boolean contains(int id) {
+        if (id >= 0) {
+            final int chunk = (id >>> CHUNK_BITS);
+            final long[][] chunks = this.chunks;
+            return chunk < chunks.length && chunks[chunk] != null && (chunks[chunk][(id & 0xffff) >>> 6] & (1L << id)) != 0;
+        } else
+            return negativeIds.size() > 0 && negativeIds.contains(id);
+    }
+
+    @Override
+    public boolean contains(Object object) {
+        return object instanceof Integer && contains(((Integer) object).intValue());
+    }
+
+    /**
+     * adds an id
+     *
+     * @return true, if not already contained
+     */
+    public boolean add(int id) {
+        if (id >= 0) {
+            final int chunk = (id >>> CHUNK_BITS);
+            if (chunk >= chunks.length)
+                chunks = Arrays.copyOf(chunks, chunk + 1);
+            if (chunks[chunk] == null)
+                chunks[chunk] = new long[WORDS_PER_CHUNK];
+            final int word = ((id & 0xffff) >>> 6);
+            final long bit = (1L << id);
+            if ((chunks[chunk][word] & bit) != 0)
+                return false;
+            chunks[chunk][word] |= bit;
+        } else if (!negativeIds.add(id))
+            return false;
+        size++;
+        return true;
+    }
+
+    @Override
+    public boolean add(Integer id) {
+        return add(id.intValue());
+    }
+
+    /**
+     * removes an id
+     *
+     * @return true, if was contained
+     */
+    public boolean remove(int id) {
+        if (id >= 0) {
+            if (!contains(id))
+                return false;
+            chunks[id >>> CHUNK_BITS][(id & 0xffff) >>> 6] &= ~(1L << id);
+        } else if (!negativeIds.remove(id))
+            return false;
+        size--;
+        return true;
+    }
+
+    @Override
+    public boolean remove(Object object) {
+        return object instanceof Integer && remove(((Integer) object).intValue());
+    }
+
+    @Override
+    public void clear() {
+        chunks = new long[0][];
+        negativeIds.clear();
+        size = 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * iterates over all ids, negative ones first, then non-negative ones in increasing order
+     */
+    @Override
+    public Iterator<Integer> iterator() {
+        return new Iterator<>() {
+            private final Iterator<Integer> negativeIterator = new ArrayList<>(negativeIds).iterator();
+            private int nextNonNegative = nextSetBit(0);
+            private Integer last;
+
+            @Override
+            public boolean hasNext() {
+                return negativeIterator.hasNext() || nextNonNegative != -1;
+            }
+
+            @Override
+            public Integer next() {
+                if (negativeIterator.hasNext())
+                    last = negativeIterator.next();
+                else if (nextNonNegative != -1) {
+                    last = nextNonNegative;
+                    nextNonNegative = nextSetBit(nextNonNegative + 1);
+                } else
+                    throw new NoSuchElementException();
+                return last;
+            }
+
+            @Override
+            public void remove() {
+                if (last == null)
+                    throw new IllegalStateException();
+                IntIdSet.this.remove(last.intValue());
+                last = null;
+            }
+        };
+    }
+
+    /**
+     * gets the smallest non-negative id that is at least from
+     *
+     * @return id or -1
+     */
+    public int nextSetBit(int from) {
+        if (from < 0)
+            return -1;
+        int chunk = (from >>> CHUNK_BITS);
+        if (chunk >= chunks.length)
+            return -1;
+        int word = ((from & 0xffff) >>> 6);
+        long bits = 0;
+        if (chunks[chunk] != null)
+            bits = (chunks[chunk][word] & (-1L << from));
+        else
+            word = WORDS_PER_CHUNK - 1; // move on to next chunk
+        while (true) {
+            if (bits != 0)
+                return (chunk << CHUNK_BITS) + (word << 6) + Long.numberOfTrailingZeros(bits);
+            if (++word == WORDS_PER_CHUNK) {
+                word = 0;
+                do {
+                    if (++chunk >= chunks.length)
+                        return -1;
+                }
+                while (chunks[chunk] == null);
+            }
+            bits = chunks[chunk][word];
+        }
+    }
+}
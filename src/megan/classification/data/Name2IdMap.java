@@ -71,6 +71,15 @@ public class Name2IdMap implements IName2IdMap {
         return id2name;
     }
 
+    /**
+     * get names to ids map
+     *
+     * @return name2id
+     */
+    Map<String, Integer> getName2Id() {
+        return name2id;
+    }
+
     /**
      * get the id for a name
      *
@@ -19,7 +19,6 @@
 
 package megan.clusteranalysis.indices;
 
-import jloda.graph.Node;
 import megan.clusteranalysis.tree.Distances;
 import megan.viewer.ClassificationViewer;
 
@@ -39,37 +38,20 @@ public class BrayCurtisDissimilarity {
     public static int apply(final ClassificationViewer viewer, final Distances distances) {
         System.err.println("Computing " + NAME + " distances");
 
-        final int nSamples = distances.getNtax();
-
-        final double[] total = new double[nSamples];
-        for (Node v : viewer.getSelectedNodes()) {
-            final float[] count = (v.getOutDegree() == 0 ? viewer.getNodeData(v).getSummarized() : viewer.getNodeData(v).getAssigned());
-            for (int s = 0; s < nSamples; s++)
-                total[s] += count[s];
-        }
-
-        final float[][] lesser = new float[nSamples][nSamples];
-        final float[][] sum = new float[nSamples][nSamples];
-
-        for (Node v : viewer.getSelectedNodes()) {
-            final float[] count = (v.getOutDegree() == 0 ? viewer.getNodeData(v).getSummarized() : viewer.getNodeData(v).getAssigned());
-            for (int s = 0; s < nSamples; s++) {
-                final double p = (total[s] > 0 ? count[s] / total[s] : 0);
-                for (int t = s + 1; t < nSamples; t++) {
-                    final double q = (total[t] > 0 ? count[t] / total[t] : 0);
-                    lesser[s][t] += Math.min(p, q);
-                    sum[s][t] += p + q;
-                }
-            }
-        }
-        for (int s = 0; s < nSamples; s++) {
-            for (int t = s + 1; t < nSamples; t++) {
-                if (sum[s][t] > 0)
-                    distances.set(s + 1, t + 1, 1 - 2 * lesser[s][t] / sum[s][t]);
-                else
-                    distances.set(s + 1, t + 1, 0);
-            }
-        }
+        final SampleProfiles profiles = SampleProfiles.createFromSelectedNodes(viewer, distances.getNtax(), false);
+        DistanceEngine.copy(compute(profiles), distances);
         return viewer.getSelectedNodes().size();
     }
+
+    /**
+     * compute the Bray Curtis dissimilarity for all pairs of samples
+     *
+     * @return condensed distance matrix
+     */
+    public static double[] compute(final SampleProfiles profiles) {
+        return DistanceEngine.compute(profiles.getNumberOfSamples(), (s, t) -> {
+            final double sum = profiles.getSumOfProportions(s) + profiles.getSumOfProportions(t);
+            return (sum > 0 ? 1 - 2 * DistanceEngine.sumOfMinima(profiles, s, t) / sum : 0);
+        });
+    }
 }
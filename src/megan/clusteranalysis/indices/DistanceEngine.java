@@ -0,0 +1,169 @@
+/*
+ * DistanceEngine.java Copyright (C) 2024 Daniel H. Huson
+ *
+ * (Some files contain contributions from other authors, who are then mentioned separately.)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package megan.clusteranalysis.indices;
+
+import megan.clusteranalysis.tree.Distances;
+import megan.clusteranalysis.tree.HierarchicalClustering;
+
+import java.util.function.DoubleBinaryOperator;
+import java.util.stream.IntStream;
+
+/**
+ * computes condensed distance matrices from sample profiles, in parallel, one row of sample pairs per task.
+ * Also provides the merge-joins over two sparse profiles that the ecological indices are built from
+ * Daniel Huson, 10.2026
+ */
+public class DistanceEngine {
+    /**
+     * distance between two samples
+     */
+    @FunctionalInterface
+    public interface PairDistance {
+        double apply(int s, int t);
+    }
+
+    /**
+     * computes the distance for all pairs of samples
+     *
+     * @return condensed distance matrix, in the layout of {@link HierarchicalClustering#index(int, int, int)}
+     */
+    public static double[] compute(int numberOfSamples, PairDistance distance) {
+        final var condensed = new double[HierarchicalClustering.size(numberOfSamples)];
+        IntStream.range(0, numberOfSamples - 1).parallel().forEach(s -> {
+            var pos = HierarchicalClustering.index(numberOfSamples, s, s + 1);
+            for (var t = s + 1; t < numberOfSamples; t++)
+                condensed[pos++] = distance.apply(s, t);
+        });
+        return condensed;
+    }
+
+    /**
+     * copies a condensed distance matrix into distances
+     */
+    public static void copy(double[] condensed, Distances distances) {
+        final var n = distances.getNtax();
+        for (int s = 0, pos = 0; s < n; s++) {
+            for (var t = s + 1; t < n; t++)
+                distances.set(s + 1, t + 1, condensed[pos++]);
+        }
+    }
+
+    /**
+     * sum of min(p,q) over all classes, where p and q are the proportions of the class in the two samples
+     */
+    public static double sumOfMinima(SampleProfiles profiles, int s, int t) {
+        final var classesS = profiles.getClasses(s);
+        final var classesT = profiles.getClasses(t);
+        final var p = profiles.getProportions(s);
+        final var q = profiles.getProportions(t);
+        var sum = 0.0;
+        for (int i = 0, j = 0; i < classesS.length && j < classesT.length; ) {
+            if (classesS[i] < classesT[j])
+                i++;
+            else if (classesS[i] > classesT[j])
+                j++;
+            else
+                sum += Math.min(p[i++], q[j++]);
+        }
+        return sum;
+    }
+
+    /**
+     * sum of p*q over all classes, where p and q are the proportions of the class in the two samples
+     */
+    public static double dotProduct(SampleProfiles profiles, int s, int t) {
+        final var classesS = profiles.getClasses(s);
+        final var classesT = profiles.getClasses(t);
+        final var p = profiles.getProportions(s);
+        final var q = profiles.getProportions(t);
+        var sum = 0.0;
+        for (int i = 0, j = 0; i < classesS.length && j < classesT.length; ) {
+            if (classesS[i] < classesT[j])
+                i++;
+            else if (classesS[i] > classesT[j])
+                j++;
+            else
+                sum += p[i++] * q[j++];
+        }
+        return sum;
+    }
+
+    /**
+     * sum of term(p,q) over all classes that have a non-zero count in at least one of the two samples, where p and q
+     * are the proportions of the class in the two samples
+     */
+    public static double sumOverUnion(SampleProfiles profiles, int s, int t, DoubleBinaryOperator term) {
+        final var classesS = profiles.getClasses(s);
+        final var classesT = profiles.getClasses(t);
+        final var p = profiles.getProportions(s);
+        final var q = profiles.getProportions(t);
+        var sum = 0.0;
+        var i = 0;
+        var j = 0;
+        while (i < classesS.length && j < classesT.length) {
+            if (classesS[i] < classesT[j])
+                sum += term.applyAsDouble(p[i++], 0);
+            else if (classesS[i] > classesT[j])
+                sum += term.applyAsDouble(0, q[j++]);
+            else
+                sum += term.applyAsDouble(p[i++], q[j++]);
+        }
+        while (i < classesS.length)
+            sum += term.applyAsDouble(p[i++], 0);
+        while (j < classesT.length)
+            sum += term.applyAsDouble(0, q[j++]);
+        return sum;
+    }
+
+    /**
+     * computes, for each sample, the bit set of all classes whose count is at least the given threshold
+     *
+     * @return bit sets, 64 classes per long
+     */
+    public static long[][] computeBitSets(SampleProfiles profiles, double threshold) {
+        final var words = (profiles.getNumberOfClasses() + 63) >>> 6;
+        final var bitSets = new long[profiles.getNumberOfSamples()][];
+        IntStream.range(0, bitSets.length).parallel().forEach(s -> {
+            final var bits = bitSets[s] = new long[words];
+            if (0 >= threshold) { // classes with count zero are also above the threshold
+                for (var c = 0; c < profiles.getNumberOfClasses(); c++)
+                    bits[c >>> 6] |= 1L << c;
+            }
+            final var classes = profiles.getClasses(s);
+            final var counts = profiles.getCounts(s);
+            for (var i = 0; i < classes.length; i++) {
+                if (counts[i] >= threshold)
+                    bits[classes[i] >>> 6] |= 1L << classes[i];
+                else
+                    bits[classes[i] >>> 6] &= ~(1L << classes[i]);
+            }
+        });
+        return bitSets;
+    }
+
+    /**
+     * size of the symmetric difference of two bit sets of the same length
+     */
+    public static int countSymmetricDifference(long[] a, long[] b) {
+        var count = 0;
+        for (var i = 0; i < a.length; i++)
+            count += Long.bitCount(a[i] ^ b[i]);
+        return count;
+    }
+}
@@ -19,12 +19,19 @@
 
 package megan.clusteranalysis.indices;
 
+import jloda.graph.Node;
 import jloda.util.CanceledException;
+import megan.classification.ClassificationManager;
+import megan.classification.data.ClassificationFullTree;
 import megan.clusteranalysis.tree.Distances;
 import megan.viewer.ClassificationViewer;
 import megan.viewer.MainViewer;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.function.Function;
 
 public class DistancesManager {
     private static String[] names;
@@ -58,6 +65,58 @@ public class DistancesManager {
         }
     }
 
+    /**
+     * apply the named method to the counts of a classification, without a viewer. All classes with positive ids are used,
+     * as if the whole classification were uncollapsed and selected in the viewer. Not available for Goodall's distance
+     *
+     * @param class2counts for each class, the counts for all samples
+     * @return condensed distance matrix
+     */
+    public static double[] apply(String method, String classificationName, Map<Integer, float[]> class2counts, int numberOfSamples) {
+        if (method.equalsIgnoreCase(UniFrac.UnweightedUniformUniFrac) || method.equalsIgnoreCase(UniFrac.WeightedUniformUniFrac)) {
+            final ClassificationFullTree tree = ClassificationManager.get(classificationName, true).getFullTree();
+            final ArrayList<Node> selected = new ArrayList<>();
+            for (Integer id : class2counts.keySet()) {
+                final Node v = (id > 0 ? tree.getANode(id) : null);
+                if (v != null)
+                    selected.add(v);
+            }
+            final float[] zeros = new float[numberOfSamples];
+            final Function<Node, float[]> counts = v -> class2counts.getOrDefault((Integer) v.getInfo(), zeros);
+            final SampleProfiles profiles = UniFrac.computeNodeProfiles(tree, selected, counts, counts, numberOfSamples);
+            System.err.println("Nodes used: " + profiles.getNumberOfClasses());
+            if (method.equalsIgnoreCase(UniFrac.UnweightedUniformUniFrac))
+                return UniFrac.computeUnweightedUniFrac(profiles, 1);
+            else
+                return UniFrac.computeWeightedUniFrac(profiles);
+        }
+
+        final ArrayList<float[]> classCounts = new ArrayList<>();
+        for (Integer id : new TreeSet<>(class2counts.keySet())) {
+            if (id > 0)
+                classCounts.add(class2counts.get(id));
+        }
+        final SampleProfiles profiles = new SampleProfiles(numberOfSamples, classCounts, null);
+        System.err.println("Samples: " + profiles.getNumberOfSamples() + " classes: " + profiles.getNumberOfClasses());
+
+        if (method.equalsIgnoreCase(JensenShannonDivergence.NAME)) {
+            return JensenShannonDivergence.compute(profiles);
+        } else if (method.equalsIgnoreCase(PearsonDistance.NAME)) {
+            return PearsonDistance.compute(profiles);
+        } else if (method.equalsIgnoreCase(EuclideanDistance.NAME)) {
+            return EuclideanDistance.compute(profiles);
+        } else if (method.equalsIgnoreCase(KulczynskiDistance.NAME)) {
+            return KulczynskiDistance.compute(profiles);
+        } else if (method.equalsIgnoreCase(ChiSquareDistance.NAME)) {
+            return ChiSquareDistance.compute(profiles);
+        } else if (method.equalsIgnoreCase(HellingerDistance.NAME)) {
+            return HellingerDistance.compute(profiles);
+        } else if (method.equalsIgnoreCase(BrayCurtisDissimilarity.NAME)) {
+            return BrayCurtisDissimilarity.compute(profiles);
+        } else
+            throw new IllegalArgumentException("Distance calculation not available without viewer: " + method);
+    }
+
     /**
      * get names of all known distance calculations
      *
@@ -19,7 +19,6 @@
 
 package megan.clusteranalysis.indices;
 
-import jloda.graph.Node;
 import megan.clusteranalysis.tree.Distances;
 import megan.viewer.ClassificationViewer;
 
@@ -39,37 +38,19 @@ public class HellingerDistance {
     public static int apply(final ClassificationViewer viewer, final Distances distances) {
         System.err.println("Computing " + NAME + " distances");
 
-        final int nTax = distances.getNtax();
-
-        final double[][] matrix = distances.getMatrix();
-        for (int s = 0; s < nTax; s++) {
-            for (int t = s + 1; t < nTax; t++) {
-                matrix[s][t] = 0;
-            }
-        }
-
-        final double[] total = new double[nTax];
-        for (Node v : viewer.getSelectedNodes()) {
-            final float[] count = (v.getOutDegree() == 0 ? viewer.getNodeData(v).getSummarized() : viewer.getNodeData(v).getAssigned());
-            for (int s = 0; s < nTax; s++)
-                total[s] += count[s];
-        }
-
-        for (Node v : viewer.getSelectedNodes()) {
-            final float[] count = (v.getOutDegree() == 0 ? viewer.getNodeData(v).getSummarized() : viewer.getNodeData(v).getAssigned());
-            for (int s = 0; s < nTax; s++) {
-                final double p = (total[s] > 0 ? count[s] / total[s] : 0);
-                for (int t = s + 1; t < nTax; t++) {
-                    final double q = (total[t] > 0 ? count[t] / total[t] : 0);
-                    matrix[s][t] += Math.pow(Math.sqrt(p) - Math.sqrt(q), 2);
-                }
-            }
-        }
-        for (int s = 0; s < nTax; s++) {
-            for (int t = s + 1; t < nTax; t++) {
-                matrix[s][t] = matrix[t][s] = Math.sqrt(matrix[s][t]);
-            }
-        }
+        final SampleProfiles profiles = SampleProfiles.createFromSelectedNodes(viewer, distances.getNtax(), false);
+        DistanceEngine.copy(compute(profiles), distances);
         return viewer.getSelectedNodes().size();
     }
+
+    /**
+     * compute the Hellinger metric for all pairs of samples
+     *
+     * @return condensed distance matrix
+     */
+    public static double[] compute(final SampleProfiles profiles) {
+        return DistanceEngine.compute(profiles.getNumberOfSamples(), (s, t) -> {
+            return Math.sqrt(DistanceEngine.sumOverUnion(profiles, s, t, (p, q) -> Math.pow(Math.sqrt(p) - Math.sqrt(q), 2)));
+        });
+    }
 }
@@ -18,10 +18,8 @@
  */
 package megan.clusteranalysis.indices;
 
-import jloda.graph.Node;
 import jloda.util.StringUtils;
 import megan.clusteranalysis.tree.Distances;
-import megan.core.Document;
 import megan.viewer.ViewerBase;
 
 /**
@@ -40,96 +38,34 @@ public class JensenShannonDivergence {
     public static int apply(final ViewerBase viewer, final Distances distances) {
 		System.err.println("Computing " + StringUtils.fromCamelCase(NAME) + " distances");
 
-        final double[][] profiles = computeProfiles(viewer.getDocument(), viewer);
+        final SampleProfiles profiles = SampleProfiles.createFromSelectedNodes(viewer, viewer.getDocument().getNumberOfSamples(), false);
 
-        System.err.println("Samples: " + profiles.length + " classes: " + profiles[0].length);
+        System.err.println("Samples: " + profiles.getNumberOfSamples() + " classes: " + profiles.getNumberOfClasses());
 
-        for (int x = 0; x < profiles.length; x++) {
-            distances.set(x + 1, x + 1, 0);
-            for (int y = x + 1; y < profiles.length; y++) {
-                distances.set(x + 1, y + 1, Math.sqrt(computeJSD(profiles[x], profiles[y])));
-                distances.set(y + 1, x + 1, distances.get(x + 1, y + 1));
-            }
-        }
-
-        return profiles[0].length;
-    }
-
-    /**
-     * compute the Jensen-Shannon divergence
-     *
-	 */
-    private static double computeJSD(double[] px, double[] py) {
-        double[] m = computeMean(px, py);
-
-        return 0.5 * (computeKLD(px, m) + computeKLD(py, m));
-    }
-
-    /**
-     * compute the  Kullback-Leibler divergence
-     *
-	 */
-    private static double computeKLD(double[] px, double[] py) {
-        double result = 0;
-        for (int i = 0; i < px.length; i++) {
-            double xi = Math.max(px[i], 0.0000000001);
-            double yi = Math.max(py[i], 0.0000000001);
-            result += xi * Math.log(xi / yi);
-        }
-        return result;
+        DistanceEngine.copy(compute(profiles), distances);
+        return profiles.getNumberOfClasses();
     }
 
     /**
-     * return mean of two profiles
+     * compute the square root of the Jensen-Shannon divergence for all pairs of samples. Profiles are normalized
+     * by their sum, classes that are absent from both samples do not contribute
      *
-     * @return mean
+     * @return condensed distance matrix
      */
-    private static double[] computeMean(double[] px, double[] py) {
-        double[] m = new double[px.length];
-        for (int i = 0; i < px.length; i++)
-            m[i] = 0.5 * (px[i] + py[i]);
-        return m;
+    public static double[] compute(final SampleProfiles profiles) {
+        return DistanceEngine.compute(profiles.getNumberOfSamples(), (s, t) -> Math.sqrt(DistanceEngine.sumOverUnion(profiles, s, t, JensenShannonDivergence::computeJSDTerm)));
     }
 
     /**
-     * compute profiles for  analysis
+     * compute the contribution of one class to the Jensen-Shannon divergence, that is, the mean of the contributions
+     * to the Kullback-Leibler divergences of the two profiles from their mean
      *
-     * @return profiles. First index is sample, second is class
+     * @return contribution
      */
-    private static double[][] computeProfiles(Document doc, ViewerBase graphView) {
-        final int totalSamples = doc.getNumberOfSamples();
-        int totalClasses = 0;
-
-        for (Node v = graphView.getGraph().getFirstNode(); v != null; v = v.getNext()) {
-            if (graphView.getSelected(v)) {
-                totalClasses++;
-            }
-        }
-
-        double[][] profiles = new double[totalSamples][totalClasses];
-
-        int classCount = 0;
-
-        for (Node v : graphView.getSelectedNodes()) {
-            float[] counts = (v.getOutDegree() == 0 ? graphView.getNodeData(v).getSummarized() : graphView.getNodeData(v).getAssigned());
-            for (int sampleCount = 0; sampleCount < totalSamples; sampleCount++) {
-                profiles[sampleCount][classCount] = counts[sampleCount];
-            }
-            classCount++;
-        }
-
-        for (double[] profile : profiles) {
-            double sum = 0;
-            for (double value : profile)
-                sum += value;
-            //System.err.println("Sum: "+sum);
-            if (sum > 0) {
-                for (int i = 0; i < profile.length; i++) {
-                    profile[i] /= sum;
-                }
-            }
-        }
-
-        return profiles;
+    private static double computeJSDTerm(double px, double py) {
+        final double m = Math.max(0.5 * (px + py), 0.0000000001);
+        final double xi = Math.max(px, 0.0000000001);
+        final double yi = Math.max(py, 0.0000000001);
+        return 0.5 * (xi * Math.log(xi / m) + yi * Math.log(yi / m));
     }
 }
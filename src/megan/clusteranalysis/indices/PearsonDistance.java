@@ -18,13 +18,9 @@
  */
 package megan.clusteranalysis.indices;
 
-import jloda.graph.Node;
 import megan.clusteranalysis.tree.Distances;
 import megan.viewer.ClassificationViewer;
 
-import java.util.HashSet;
-import java.util.LinkedList;
-
 /**
  * Pearson's correlation distance
  * Daniel Huson, 9.2012
@@ -40,94 +36,35 @@ public class PearsonDistance {
     public static int apply(final ClassificationViewer viewer, final Distances distances) {
         System.err.println("Computing " + NAME + " distances");
 
-        double[][] vectors = computeVectors(viewer, distances.getNtax());
-        int rank = distances.getNtax();
-        computeCorrelationMatrix(rank, vectors, distances);
-        convertCorrelationsToDistances(distances);
-
-        return vectors.length;
+        final SampleProfiles profiles = SampleProfiles.createFromSelectedNodes(viewer, distances.getNtax(), true);
+        DistanceEngine.copy(compute(profiles), distances);
+        return profiles.getNumberOfClasses();
     }
 
     /**
-     * compute vectors for  analysis
+     * computes 1-r^2 for all pairs of samples, where r is Pearson's correlation of the normalized profiles of the two
+     * samples over all classes. Means and standard deviations are obtained from the sparse profiles,
+     * taking classes with zero counts into account
      *
-     * @return vectors. First index is class, second is sample
+     * @return condensed distance matrix
      */
-    private static double[][] computeVectors(ClassificationViewer graphView, int numberOfSamples) {
-        double[] total = new double[numberOfSamples];
+    public static double[] compute(final SampleProfiles profiles) {
+        final int nSamples = profiles.getNumberOfSamples();
+        final int nClasses = profiles.getNumberOfClasses();
 
-        HashSet<Integer> seen = new HashSet<>();
-        LinkedList<double[]> rows = new LinkedList<>();
-        for (Node v = graphView.getGraph().getFirstNode(); v != null; v = v.getNext()) {
-            if (graphView.getSelected(v)) {
-                if (!seen.contains(v.getInfo())) {
-                    seen.add((Integer) v.getInfo());
-                    double[] row = new double[numberOfSamples];
-                    final float[] values = (v.getOutDegree() == 0 ? graphView.getNodeData(v).getSummarized() : graphView.getNodeData(v).getAssigned());
-                    for (int i = 0; i < values.length; i++) {
-                        row[i] = values[i];
-                        total[i] += row[i];
-                    }
-                    rows.add(row);
-                }
-            }
-        }
-        for (double[] row : rows) {
-            for (int i = 0; i < row.length; i++) {
-                if (total[i] > 0)
-                    row[i] /= total[i];
-            }
+        final double[] mean = new double[nSamples];
+        final double[] stddev = new double[nSamples];
+        for (int s = 0; s < nSamples; s++) {
+            mean[s] = profiles.getSumOfProportions(s) / nClasses;
+            double sumOfSquares = (double) (nClasses - profiles.getClasses(s).length) * mean[s] * mean[s];
+            for (double p : profiles.getProportions(s))
+                sumOfSquares += (p - mean[s]) * (p - mean[s]);
+            stddev[s] = Math.sqrt(sumOfSquares / nClasses);
         }
-        return rows.toArray(new double[rows.size()][]);
-    }
 
-    /**
-     * computes the pearson distances
-     *
-	 */
-    private static void computeCorrelationMatrix(int rank, double[][] vectors, Distances distances) {
-        // compute mean for each row
-        double[] mean = new double[rank];
-        for (double[] row : vectors) {
-            for (int col = 0; col < rank; col++) {
-                mean[col] += row[col];
-            }
-        }
-        for (int col = 0; col < rank; col++) {
-            mean[col] /= vectors.length;
-        }
-        double[] stddev = new double[rank];
-        for (double[] row : vectors) {
-            for (int col = 0; col < rank; col++) {
-                stddev[col] += (row[col] - mean[col]) * (row[col] - mean[col]);
-            }
-        }
-        for (int col = 0; col < rank; col++) {
-            stddev[col] = Math.sqrt(stddev[col] / vectors.length);
-        }
-
-        for (int di = 0; di < rank; di++) {
-            distances.set(di + 1, di + 1, 0);
-            for (int dj = di + 1; dj < rank; dj++) {
-                double cor = 0;
-                for (double[] row : vectors) {
-                    cor += (row[di] - mean[di]) * (row[dj] - mean[dj]) / (stddev[di] * stddev[dj]);
-                }
-                cor /= vectors.length;
-                distances.set(di + 1, dj + 1, cor);
-            }
-        }
-    }
-
-    /**
-     * convert correlations into distances by subtracting from 1 and dividing by 2
-     *
-	 */
-    private static void convertCorrelationsToDistances(Distances distances) {
-        for (int i = 1; i <= distances.getNtax(); i++) {
-            for (int j = i + 1; j <= distances.getNtax(); j++) {
-                distances.set(i, j, (1.0 - distances.get(i, j) * distances.get(i, j)));
-            }
-        }
+        return DistanceEngine.compute(nSamples, (s, t) -> {
+            final double cor = (DistanceEngine.dotProduct(profiles, s, t) / nClasses - mean[s] * mean[t]) / (stddev[s] * stddev[t]);
+            return 1.0 - cor * cor;
+        });
     }
 }
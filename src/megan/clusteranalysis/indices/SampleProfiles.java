@@ -0,0 +1,141 @@
+/*
+ * SampleProfiles.java Copyright (C) 2024 Daniel H. Huson
+ *
+ * (Some files contain contributions from other authors, who are then mentioned separately.)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package megan.clusteranalysis.indices;
+
+import jloda.graph.Node;
+import megan.viewer.ViewerBase;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.stream.IntStream;
+
+/**
+ * sparse samples x classes count matrix, as input for the distance engine. For each sample, holds the classes
+ * that have a non-zero count in increasing order, their counts and their proportions of the sample total
+ * Daniel Huson, 10.2026
+ */
+public class SampleProfiles {
+    private final int numberOfClasses;
+    private final int[][] classes;
+    private final double[][] counts;
+    private final double[][] proportions;
+    private final double[] totals;
+    private final double[] sumOfProportions;
+
+    /**
+     * constructor
+     *
+     * @param classCounts for each class, the counts for all samples
+     * @param totals      for each sample, the total that proportions are relative to, or null to use the sum of counts
+     */
+    public SampleProfiles(int numberOfSamples, Collection<float[]> classCounts, double[] totals) {
+        final var rows = classCounts.toArray(new float[0][]);
+        this.numberOfClasses = rows.length;
+        this.classes = new int[numberOfSamples][];
+        this.counts = new double[numberOfSamples][];
+        this.proportions = new double[numberOfSamples][];
+        this.totals = (totals != null ? totals : new double[numberOfSamples]);
+        this.sumOfProportions = new double[numberOfSamples];
+
+        IntStream.range(0, numberOfSamples).parallel().forEach(s -> {
+            var size = 0;
+            for (var row : rows) {
+                if (row[s] != 0)
+                    size++;
+            }
+            final var sampleClasses = classes[s] = new int[size];
+            final var sampleCounts = counts[s] = new double[size];
+            var total = 0.0;
+            for (int c = 0, i = 0; c < rows.length; c++) {
+                final var count = rows[c][s];
+                if (count != 0) {
+                    sampleClasses[i] = c;
+                    sampleCounts[i++] = count;
+                    total += count;
+                }
+            }
+            if (totals == null)
+                this.totals[s] = total;
+
+            final var sampleProportions = proportions[s] = new double[size];
+            final var sampleTotal = this.totals[s];
+            for (var i = 0; i < size; i++) {
+                sampleProportions[i] = (sampleTotal > 0 ? sampleCounts[i] / sampleTotal : 0);
+                sumOfProportions[s] += sampleProportions[i];
+            }
+        });
+    }
+
+    /**
+     * creates the profiles for the selected nodes of a viewer. For a leaf, the summarized count is used, for any
+     * other node, the assigned count
+     *
+     * @param oneNodePerClass if true, only the first selected node of each class is used
+     */
+    public static SampleProfiles createFromSelectedNodes(ViewerBase viewer, int numberOfSamples, boolean oneNodePerClass) {
+        final var seen = new HashSet<Integer>();
+        final var classCounts = new ArrayList<float[]>();
+        for (Node v = viewer.getGraph().getFirstNode(); v != null; v = v.getNext()) {
+            if (viewer.getSelected(v) && (!oneNodePerClass || seen.add((Integer) v.getInfo())))
+                classCounts.add(v.getOutDegree() == 0 ? viewer.getNodeData(v).getSummarized() : viewer.getNodeData(v).getAssigned());
+        }
+        return new SampleProfiles(numberOfSamples, classCounts, null);
+    }
+
+    public int getNumberOfSamples() {
+        return classes.length;
+    }
+
+    /**
+     * number of classes, including those that have zero counts in all samples
+     */
+    public int getNumberOfClasses() {
+        return numberOfClasses;
+    }
+
+    /**
+     * classes with non-zero count in the given sample, in increasing order. Must not be modified
+     */
+    public int[] getClasses(int s) {
+        return classes[s];
+    }
+
+    /**
+     * counts of the classes returned by getClasses(s). Must not be modified
+     */
+    public double[] getCounts(int s) {
+        return counts[s];
+    }
+
+    /**
+     * counts of the classes returned by getClasses(s), divided by the total of the sample, or 0, if the total is 0. Must not be modified
+     */
+    public double[] getProportions(int s) {
+        return proportions[s];
+    }
+
+    public double getTotal(int s) {
+        return totals[s];
+    }
+
+    public double getSumOfProportions(int s) {
+        return sumOfProportions[s];
+    }
+}
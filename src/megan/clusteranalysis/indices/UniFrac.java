@@ -20,15 +20,17 @@ package megan.clusteranalysis.indices;
 
 import jloda.graph.*;
 import jloda.phylo.PhyloTree;
-import jloda.util.CanceledException;
 import jloda.util.StringUtils;
-import jloda.util.progress.ProgressListener;
 import megan.clusteranalysis.tree.Distances;
 import megan.viewer.ClassificationViewer;
 import megan.viewer.MainViewer;
 import megan.viewer.TaxonomicLevels;
 import megan.viewer.TaxonomyData;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.function.Function;
+
 /**
  * unweighted and weighted distance
  * Daniel Huson, 9.2012, 11.2017, 6.2018
@@ -44,58 +46,17 @@ public class UniFrac {
      * @param distances for each pair of samples i and j, the proportion of ranked nodes in which either sample i or j has a none-zero count, but not both
      * @return number of nodes used to compute value
      */
-    public static int applyUnweightedUniformUniFrac(final MainViewer viewer, final int threshold, final Distances distances) throws CanceledException {
+    public static int applyUnweightedUniformUniFrac(final MainViewer viewer, final int threshold, final Distances distances) {
 		System.err.println("Computing " + StringUtils.fromCamelCase(UnweightedUniformUniFrac) + " distances");
 
-        final int nTax = distances.getNtax();
-
-        int countNodesUsed = 0;
-
-        final PhyloTree tree = viewer.getTree();
-
-        final NodeSet inducedNodes = new NodeSet(tree);
-        inducedNodes.addAll(viewer.getSelectedNodes());
-
-        final NodeArray<float[]> summarized = new NodeArray<>(tree);
+        final SampleProfiles profiles = computeNodeProfiles(viewer.getTree(), viewer.getSelectedNodes(), v -> viewer.getNodeData(v).getAssigned(),
+                v -> viewer.getNodeData(v).getSummarized(), distances.getNtax());
+        DistanceEngine.copy(computeUnweightedUniFrac(profiles, threshold), distances);
 
-        computeSummarizedCountsOnInducedTreeRec(tree.getRoot(), inducedNodes, viewer, summarized, nTax);
-
-        removeRootNodeAndNodesOnPathLeadingToIt(tree.getRoot(), inducedNodes);
-
-        int[][] diff = new int[nTax][nTax];
-
-        final ProgressListener progress = viewer.getDocument().getProgressListener();
-        progress.setTasks("Computing", "Unweighted uniform UniFrac");
-        progress.setProgress(0);
-        progress.setMaximum(inducedNodes.size());
-
-        for (Node v : inducedNodes) {
-            final int taxonId = (Integer) v.getInfo();
-            if (taxonId > 0 && TaxonomicLevels.isMajorRank(TaxonomyData.getTaxonomicRank(taxonId)))  // only use proper nodes
-            {
-                countNodesUsed++;
-                final float[] counts = summarized.get(v);
-
-                for (int s = 0; s < nTax; s++) {
-                    for (int t = s + 1; t < nTax; t++) {
-                        if ((counts[s] >= threshold) != (counts[t] >= threshold))
-                            diff[s][t]++;
-                    }
-                }
-            }
-            progress.incrementProgress();
-        }
-        for (int s = 0; s < nTax; s++) {
-            for (int t = s + 1; t < nTax; t++) {
-                distances.set(s + 1, t + 1, (countNodesUsed > 0 ? (double) diff[s][t] / (double) countNodesUsed : 0));
-            }
-        }
-
-        System.err.println("Nodes used: " + countNodesUsed);
-        return countNodesUsed;
+        System.err.println("Nodes used: " + profiles.getNumberOfClasses());
+        return profiles.getNumberOfClasses();
     }
 
-
     /**
      * apply the named computation to the taxonomy
      *
@@ -103,69 +64,79 @@ public class UniFrac {
      *                  such that two identical profiles get distance 0 and two disjoint profiles get distance 1
      * @return number of nodes used to compute value
 	 */
-    public static int applyWeightedUniformUniFrac(final ClassificationViewer viewer, final Distances distances) throws CanceledException {
+    public static int applyWeightedUniformUniFrac(final ClassificationViewer viewer, final Distances distances) {
 		System.err.println("Computing " + StringUtils.fromCamelCase(WeightedUniformUniFrac) + " distances");
 
-        final int nTax = distances.getNtax();
+        final SampleProfiles profiles = computeNodeProfiles(viewer.getTree(), viewer.getSelectedNodes(), v -> viewer.getNodeData(v).getAssigned(),
+                v -> viewer.getNodeData(v).getSummarized(), distances.getNtax());
+        DistanceEngine.copy(computeWeightedUniFrac(profiles), distances);
+        return profiles.getNumberOfClasses();
+    }
 
-        int countNodesUsed = 0;
+    /**
+     * computes the unweighted uniform UniFrac distances from node profiles, using bit sets of the nodes
+     * whose count reaches the threshold
+     *
+     * @param profiles node profiles, as computed by computeNodeProfiles
+     * @return condensed distance matrix
+     */
+    public static double[] computeUnweightedUniFrac(final SampleProfiles profiles, final int threshold) {
+        final int countNodesUsed = profiles.getNumberOfClasses();
+        final long[][] bitSets = DistanceEngine.computeBitSets(profiles, threshold);
+        return DistanceEngine.compute(profiles.getNumberOfSamples(), (s, t) ->
+                (countNodesUsed > 0 ? (double) DistanceEngine.countSymmetricDifference(bitSets[s], bitSets[t]) / (double) countNodesUsed : 0));
+    }
 
-        final PhyloTree tree = viewer.getTree();
+    /**
+     * computes the weighted uniform UniFrac distances from node profiles
+     *
+     * @param profiles node profiles, as computed by computeNodeProfiles
+     * @return condensed distance matrix
+     */
+    public static double[] computeWeightedUniFrac(final SampleProfiles profiles) {
+        return DistanceEngine.compute(profiles.getNumberOfSamples(), (s, t) -> {
+            final double sum = profiles.getSumOfProportions(s) + profiles.getSumOfProportions(t); // largest possible difference between two samples
+            return (sum > 0 ? DistanceEngine.sumOverUnion(profiles, s, t, (p, q) -> Math.abs(p - q)) / sum : 0);
+        });
+    }
 
+    /**
+     * computes the profiles used by UniFrac: the classes are the ranked nodes of the tree induced by the selected nodes,
+     * without the root path, their counts are the summarized counts on the induced tree, and the total of a sample is the
+     * number of reads summarized below the root
+     *
+     * @param assigned   assigned counts of a node
+     * @param summarized summarized counts of a node, used for selected nodes that have no selected node below them
+     * @return node profiles
+     */
+    public static SampleProfiles computeNodeProfiles(final PhyloTree tree, final Collection<Node> selected, final Function<Node, float[]> assigned,
+                                                     final Function<Node, float[]> summarized, final int nTax) {
         final NodeSet inducedNodes = new NodeSet(tree);
-        inducedNodes.addAll(viewer.getSelectedNodes());
+        inducedNodes.addAll(selected);
 
-        final NodeArray<float[]> summarized = new NodeArray<>(tree);
+        final NodeArray<float[]> summarizedCounts = new NodeArray<>(tree);
 
-        computeSummarizedCountsOnInducedTreeRec(tree.getRoot(), inducedNodes, viewer, summarized, nTax);
-
-        final ProgressListener progress = viewer.getDocument().getProgressListener();
-        progress.setTasks("Computing", "Weighted uniform UniFrac");
-        progress.setProgress(0);
-        progress.setMaximum(2L * inducedNodes.size());
+        computeSummarizedCountsOnInducedTreeRec(tree.getRoot(), inducedNodes, assigned, summarized, summarizedCounts, nTax);
 
         final Node root = removeRootNodeAndNodesOnPathLeadingToIt(tree.getRoot(), inducedNodes);
 
         // setup total number of reads in each sample summarized below the root
         final double[] total = new double[nTax];
-        {
-            for (Edge e : root.outEdges()) {
-                final Node w = e.getTarget();
-                if (inducedNodes.contains(w)) {
-                    for (int s = 0; s < nTax; s++)
-                        total[s] += summarized.get(w)[s];
-                }
+        for (Edge e : root.outEdges()) {
+            final Node w = e.getTarget();
+            if (inducedNodes.contains(w)) {
+                for (int s = 0; s < nTax; s++)
+                    total[s] += summarizedCounts.get(w)[s];
             }
         }
 
-        final double[][] diff = new double[nTax][nTax]; // difference between two samples
-        final double[][] sum = new double[nTax][nTax]; // largest possible difference between two samples
-
+        final ArrayList<float[]> nodeCounts = new ArrayList<>();
         for (Node v : inducedNodes) {
             final int taxonId = (Integer) v.getInfo();
             if (taxonId > 0 && TaxonomicLevels.isMajorRank(TaxonomyData.getTaxonomicRank(taxonId)))  // only use proper nodes
-            {
-                countNodesUsed++;
-                final float[] count = summarized.get(v); // total number of reads that "descend" from node v
-                for (int s = 0; s < nTax; s++) {
-                    final double p = (total[s] > 0 ? count[s] / total[s] : 0);
-                    for (int t = s + 1; t < nTax; t++) {
-                        final double q = (total[t] > 0 ? count[t] / total[t] : 0);
-
-                        diff[s][t] += Math.abs(p - q); // normalized differences between datasets
-                        sum[s][t] += (p + q);
-                    }
-                }
-            }
-            progress.incrementProgress();
+                nodeCounts.add(summarizedCounts.get(v)); // total number of reads that "descend" from node v
         }
-
-        for (int s = 0; s < nTax; s++) {
-            for (int t = s + 1; t < nTax; t++) {
-                distances.set(s + 1, t + 1, (sum[s][t] > 0 ? diff[s][t] / sum[s][t] : 0));
-            }
-        }
-        return countNodesUsed;
+        return new SampleProfiles(nTax, nodeCounts, total);
     }
 
     /**
@@ -173,36 +144,35 @@ public class UniFrac {
      *
      * @return true, if selected nodes on or below v
      */
-    private static boolean computeSummarizedCountsOnInducedTreeRec(Node v, NodeSet selected, ClassificationViewer viewer, NodeArray<float[]> summarized, int ntax) {
+    private static boolean computeSummarizedCountsOnInducedTreeRec(Node v, NodeSet selected, Function<Node, float[]> assigned, Function<Node, float[]> summarized,
+                                                                   NodeArray<float[]> summarizedCounts, int ntax) {
         float[] currentSummarized = null;
 
         for (Edge e : v.outEdges()) {
-            if (computeSummarizedCountsOnInducedTreeRec(e.getTarget(), selected, viewer, summarized, ntax)) {
+            if (computeSummarizedCountsOnInducedTreeRec(e.getTarget(), selected, assigned, summarized, summarizedCounts, ntax)) {
                 if (currentSummarized == null) {
                     currentSummarized = new float[ntax];
                 }
-                final float[] childSummarized = summarized.get(e.getTarget());
+                final float[] childSummarized = summarizedCounts.get(e.getTarget());
                 for (int s = 0; s < ntax; s++) {
                     currentSummarized[s] += childSummarized[s];
                 }
             }
         }
 
-        final NodeData nodeData = viewer.getNodeData(v);
-
         if (currentSummarized != null) { // has selected below
+            final float[] assignedCounts = assigned.apply(v);
             for (int s = 0; s < ntax; s++) // add counts for current node
-                currentSummarized[s] += nodeData.getAssigned()[s];
-            summarized.put(v, currentSummarized);
+                currentSummarized[s] += assignedCounts[s];
+            summarizedCounts.put(v, currentSummarized);
             selected.add(v);
             return true;
         } else if (selected.contains(v)) { // nothing selected below, but this node is selected, so it is a selection leaf
-            summarized.put(v, nodeData.getSummarized());
+            summarizedCounts.put(v, summarized.apply(v));
             return true;
         } else
             return false;
     }
-
     /**
      * remove the root node and root path
      *
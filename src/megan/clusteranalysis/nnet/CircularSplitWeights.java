@@ -23,6 +23,7 @@ import megan.clusteranalysis.tree.Distances;
 
 import java.util.Arrays;
 import java.util.BitSet;
+import java.util.stream.IntStream;
 
 /**
  * Given a circular ordering and a distance matrix,
@@ -41,6 +42,10 @@ import java.util.BitSet;
 class CircularSplitWeights {
     /* Epsilon constant for the conjugate gradient algorithm */
     private static final double CG_EPSILON = 0.0001;
+    /* Epsilon constant for the conjugate gradient algorithm, once the gradient condition holds, to confirm it */
+    private static final double FINISH_CG_EPSILON = 0.00001;
+    /* Number of taxa from which on the row sums of matrix-vector products are computed in parallel */
+    private static final int PARALLEL_THRESHOLD = 256;
 
     static public SplitSystem compute(int[] ordering, Distances dist, boolean constrained, double cutoff) {
         final int ntax = dist.getNtax();
@@ -257,13 +262,17 @@ class CircularSplitWeights {
         Arrays.fill(old_x, 1.0);
 
         boolean first_pass = true;
+        double epsilon = CG_EPSILON;
+        double old_fit = Double.MAX_VALUE;
+        int releaseCount = npairs;
+        final double[] violated = new double[npairs];
 
         while (true) {
             while (true) {
                 if(first_pass)
                     first_pass=false;
                 else
-                    CircularSplitWeights.circularConjugateGrads(ntax, npairs, r, w, p, y, W, AtWd, active, x);
+                    CircularSplitWeights.circularConjugateGrads(ntax, npairs, r, w, p, y, W, AtWd, active, x, epsilon);
 
                 final int[] entriesToContract = worstIndices(x, 0.6);
                 if (entriesToContract != null) {
@@ -271,7 +280,7 @@ class CircularSplitWeights {
                         x[index] = 0.0;
                         active[index] = true;
                     }
-                    CircularSplitWeights.circularConjugateGrads(ntax, npairs, r, w, p, y, W, AtWd, active, x);
+                    CircularSplitWeights.circularConjugateGrads(ntax, npairs, r, w, p, y, W, AtWd, active, x, epsilon);
                 }
                 int min_i = -1;
                 double min_xi = -1.0;
@@ -298,53 +307,94 @@ class CircularSplitWeights {
             }
 
             calculateAb(ntax, x, y);
-            for (int i = 0; i < npairs; i++)
+            double fit = 0.0;
+            for (int i = 0; i < npairs; i++) {
+                fit += W[i] * (y[i] - d[i]) * (y[i] - d[i]);
                 y[i] *= W[i];
+            }
             calculateAtx(ntax, y, r); /* r = AtWAx */
 
-            int min_i = -1;
-            double min_grad = 1.0;
+            int numberOfViolated = 0;
             for (int i = 0; i < npairs; i++) {
                 r[i] -= AtWd[i];
                 r[i] *= 2.0;
-                if (active[i]) {
-                    double grad_ij = r[i];
-                    if ((min_i == -1) || (grad_ij < min_grad)) {
-                        min_i = i;
+                if (active[i] && r[i] <= -0.0001)
+                    violated[numberOfViolated++] = r[i];
+            }
 
-                        min_grad = grad_ij;
-                    }
-                }
+            /* The gradient condition is only confirmed once it also holds after solving more accurately */
+            if (numberOfViolated == 0) {
+                if (epsilon == FINISH_CG_EPSILON)
+                    return;
+                epsilon = FINISH_CG_EPSILON;
+                continue;
             }
 
-            if ((min_i == -1) || (min_grad > -0.0001))
-                return;
+            /* Releasing one constraint per round takes a number of rounds that grows quadratically in the number of taxa.
+             So we release the constraints with the most negative gradients, doubling their number while the fit improves,
+             and dividing it by four otherwise, down to one constraint, as in the original implementation */
+            if (fit >= old_fit)
+                releaseCount = Math.max(1, releaseCount / 4);
             else
-                active[min_i] = false;
+                releaseCount = (int) Math.min(npairs, 2L * releaseCount);
+            old_fit = fit;
+
+            final double threshold;
+            if (releaseCount >= numberOfViolated)
+                threshold = -0.0001;
+            else {
+                Arrays.sort(violated, 0, numberOfViolated);
+                threshold = violated[releaseCount - 1];
+            }
+            int released = 0;
+            for (int i = 0; i < npairs && released < releaseCount; i++) {
+                if (active[i] && r[i] <= threshold) {
+                    active[i] = false;
+                    released++;
+                }
+            }
         }
     }
 
-    /* Compute the row sum in d. */
+    /**
+     * the rows 0..n-2 of the canonical ordering of pairs, as a stream that is processed in parallel for large n
+     */
+    static private IntStream rows(int n) {
+        final IntStream rows = IntStream.range(0, n - 1);
+        return (n >= PARALLEL_THRESHOLD ? rows.parallel() : rows);
+    }
 
-    static private double rowSum(int n, double[] d, int k) {
-        double r = 0;
-        int index = 0;
+    /**
+     * index of the pair (i,i+1)
+     */
+    static private int rowStart(int n, int i) {
+        return (int) ((long) i * (2 * n - i - 1) / 2);
+    }
 
-        if (k > 0) {
-            index = k - 1;
-            for (int i = 0; i < k; i++) {
-                r += d[index];
-                index += (n - i - 2);
+    /**
+     * Computes, for each taxon k, the sum of all entries of d for pairs that contain k. The pairs are visited row by row,
+     * so that d is read sequentially, and, for large n, blocks of rows are processed in parallel
+     *
+     * @param n number of taxa
+     * @param d vector indexed by pairs
+     * @return sums, indexed by taxa
+     */
+    static private double[] computeRowSums(int n, double[] d) {
+        return rows(n).collect(() -> new double[n], (sums, i) -> {
+            double rowSum = 0;
+            int index = rowStart(n, i);
+            for (int j = i + 1; j < n; j++) {
+                final double value = d[index++];
+                rowSum += value;
+                sums[j] += value;
             }
-            index++;
-        }
-        for (int j = k + 1; j < n; j++)
-            r += d[index++];
-
-        return r;
+            sums[i] += rowSum;
+        }, (sums, other) -> {
+            for (int k = 0; k < n; k++)
+                sums[k] += other[k];
+        });
     }
 
-
     /**
      * Computes p = A^Td, where A is the topological matrix for the
      * splits with circular ordering 0,1,2,....,ntax-1
@@ -355,23 +405,19 @@ class CircularSplitWeights {
      * @param p the result
      */
     static private void calculateAtx(int n, double[] d, double[] p) {
-        int index = 0;
-        for (int i = 0; i < n - 1; i++) {
-            p[index] = rowSum(n, d, i + 1);
-            index += (n - i - 1);
-        }
+        final double[] rowSums = computeRowSums(n, d);
 
-        index = 1;
-        for (int i = 0; i < n - 2; i++) {
-             p[index] = p[index - 1] + p[index + (n - i - 2)] - 2 * d[index + (n - i - 2)];
-            index += (n - i - 2) + 1;
-        }
-
-        for (int k = 3; k <= n - 1; k++) {
-            index = k - 1;
-            for (int i = 0; i < n - k; i++) {
+        /* each entry depends on the previous entry in its row and on the row below, so rows are filled bottom up */
+        for (int i = n - 2; i >= 0; i--) {
+            int index = rowStart(n, i);
+            p[index] = rowSums[i + 1];
+            if (i < n - 2) {
+                index++;
+                p[index] = p[index - 1] + p[index + (n - i - 2)] - 2 * d[index + (n - i - 2)];
+            }
+            for (int j = i + 3; j < n; j++) {
+                index++;
                 p[index] = p[index - 1] + p[index + n - i - 2] - p[index + n - i - 3] - 2.0 * d[index + n - i - 2];
-                index += (n - i - 2) + 1;
             }
         }
     }
@@ -385,39 +431,19 @@ class CircularSplitWeights {
      * @param d pairwise distances from split weights
      */
     static private void calculateAb(int n, double[] b, double[] d) {
+        final double[] rowSums = computeRowSums(n, b);
 
-        {
-            int dindex = 0;
-            for (int i = 0; i < n - 1; i++) {
-                double d_ij = 0.0;
-                int index = i - 1;
-                for (int k = 0; k < i; k++) {
-                    d_ij += b[index];
-                    index += (n - k - 2);
-                }
+        /* each entry depends on the previous entry in its row and on the row below, so rows are filled bottom up */
+        for (int i = n - 2; i >= 0; i--) {
+            int index = rowStart(n, i);
+            d[index] = rowSums[i];
+            if (i < n - 2) {
                 index++;
-                for (int k = i + 1; k < n ; k++)
-                    d_ij += b[index++];
-
-                d[dindex] = d_ij;
-                dindex += (n - i - 2) + 1;
-            }
-        }
-
-        {
-            int index = 1;
-            for (int i = 0; i <= n - 3; i++) {
                 d[index] = d[index - 1] + d[index + (n - i - 2)] - 2 * b[index - 1];
-                index += 1 + (n - i - 2);
             }
-        }
-
-
-        for (int k = 3; k <n ; k++) {
-            int index = k - 1;
-            for (int i = 0; i < n - k; i++) {
+            for (int j = i + 3; j < n; j++) {
+                index++;
                 d[index] = d[index - 1] + d[index + (n - i - 2)] - d[index + (n - i - 2) - 1] - 2.0 * b[index - 1];
-                index += 1 + (n - i - 2);
             }
         }
     }
@@ -454,11 +480,12 @@ class CircularSplitWeights {
      * @param b      the b matrix
      * @param active the active constraints
      * @param x      the x matrix
+     * @param epsilon relative tolerance for the residual
      */
     static private void circularConjugateGrads(int ntax, int npairs,
                                                double[] r, double[] w, double[] p, double[] y,
                                                double[] W, double[] b,
-                                               boolean[] active, double[] x) {
+                                               boolean[] active, double[] x, double epsilon) {
         int kmax = ntax * (ntax - 1) / 2;
 
         calculateAb(ntax, x, y);
@@ -476,7 +503,7 @@ class CircularSplitWeights {
         double rho = norm(r);
         double rho_old = 0;
 
-        double e_0 = CG_EPSILON * Math.sqrt(norm(b));
+        double e_0 = epsilon * Math.sqrt(norm(b));
         int k = 0;
 
         while ((rho > e_0 * e_0) && (k < kmax)) {
@@ -496,21 +523,21 @@ class CircularSplitWeights {
                 y[i] *= W[i];
 
             calculateAtx(ntax, y, w);
-            for (int i = 0; i < npairs; i++)
+            double alpha = 0.0;
+            for (int i = 0; i < npairs; i++) {
                 if (active[i])
                     w[i] = 0.0;
-
-            double alpha = 0.0;
-            for (int i = 0; i < npairs; i++)
                 alpha += p[i] * w[i];
+            }
             alpha = rho / alpha;
 
+            rho_old = rho;
+            rho = 0.0;
             for (int i = 0; i < npairs; i++) {
                 x[i] += alpha * p[i];
                 r[i] -= alpha * w[i];
+                rho += r[i] * r[i];
             }
-            rho_old = rho;
-            rho = norm(r);
         }
     }
 }
@@ -23,8 +23,8 @@ import jloda.util.progress.ProgressListener;
 import megan.clusteranalysis.tree.Distances;
 import megan.clusteranalysis.tree.Taxa;
 
-import java.util.Objects;
 import java.util.Stack;
+import java.util.stream.IntStream;
 
 /**
  * the neighbor-net algorithm
@@ -58,21 +58,18 @@ public class NeighborNet {
     }
 
     /**
-     * Sets up the working matrix. The original distance matrix is enlarged to
-     * handle the maximum number of nodes
+     * Sets up the working matrix. Rows and columns are indexed by the slots of the nodes. A node created by
+     * an agglomeration takes over the slot of one of the nodes it replaces, so the matrix never needs to be larger
+     * than the number of taxa
      *
      * @param dist Distance block
      * @return a working matrix of appropriate cardinality
      */
     private static double[][] setupMatrix(Distances dist) {
         final int ntax = dist.getNtax();
-        final int max_num_nodes = Math.max(3, 3 * ntax - 5);
-        final double[][] mat = new double[max_num_nodes][max_num_nodes];
-        /* Copy the distance matrix into a larger, scratch distance matrix */
-        for (int i = 1; i <= ntax; i++) {
-            for (int j = 1; j <= ntax; j++)
-                mat[i][j] = dist.get(i, j);
-        }
+        final double[][] mat = new double[ntax][];
+        for (int i = 0; i < ntax; i++)
+            mat[i] = dist.getMatrix()[i].clone();
         return mat;
     }
 
@@ -86,6 +83,7 @@ public class NeighborNet {
         for (int i = ntax; i >= 1; i--) /* Initially, all singleton nodes are active */ {
             NetNode taxNode = new NetNode();
             taxNode.id = i;
+            taxNode.slot = i - 1;
             taxNode.next = netNodes.next;
             netNodes.next = taxNode;
         }
@@ -100,7 +98,9 @@ public class NeighborNet {
     }
 
     /**
-     * Agglomerates the nodes
+     * Agglomerates the nodes. In each round, the clusters are copied to arrays, in the order of the list of active nodes,
+     * and the sums s_i and the best pair of clusters are computed in parallel, one cluster per task. Sums are accumulated
+     * and ties are broken in the same order as when visiting the linked list of nodes
      */
     private Stack<NetNode> joinNodes (ProgressListener progressListener, double[][] mat, NetNode netNodes, int num_nodes) throws CanceledException {
         //System.err.println("joinNodes");
@@ -109,6 +109,13 @@ public class NeighborNet {
         int num_active = num_nodes;
         int num_clusters = num_nodes;
 
+        final NetNode[] clusters = new NetNode[num_nodes];
+        final int[] slot = new int[num_nodes];
+        final int[] nbrSlot = new int[num_nodes];
+        final double[] sums = new double[num_nodes];
+        final double[] rowBest = new double[num_nodes];
+        final int[] rowBestIndex = new int[num_nodes];
+
         while (num_active > 3) {
             /* Special case
             If we let this one go then we get a divide by zero when computing Qpq */
@@ -119,7 +126,7 @@ public class NeighborNet {
                     q = p.next;
                 else
                     q = p.next.next;
-                if (mat[p.id][q.id] + mat[p.nbr.id][q.nbr.id] < mat[p.id][q.nbr.id] + mat[p.nbr.id][q.id]) {
+                if (mat[p.slot][q.slot] + mat[p.nbr.slot][q.nbr.slot] < mat[p.slot][q.nbr.slot] + mat[p.nbr.slot][q.slot]) {
                     join3way(p, q, q.nbr, joins, mat, netNodes, num_nodes);
                 } else {
                     join3way(p, q.nbr, q, joins, mat, netNodes, num_nodes);
@@ -127,80 +134,72 @@ public class NeighborNet {
                 break;
             }
 
-            /* Compute the "averaged" sums s_i from each cluster to every other cluster.
-
-      To Do: 2x speedup by using symmetry*/
-
-            for (NetNode p = netNodes.next; p != null; p = p.next)
-                p.Sx = 0.0;
-
+            /* Collect one node per cluster, the one with the smaller id */
+            int count = 0;
             for (NetNode p = netNodes.next; p != null; p = p.next) {
                 if (p.nbr == null || p.nbr.id > p.id) {
-                    for (NetNode q = p.next; q != null; q = q.next) {
-                        if (q.nbr == null || (q.nbr.id > q.id) && (q.nbr != p)) {
-                            final double dpq;
-                            if ((p.nbr == null) && (q.nbr == null))
-                                dpq = mat[p.id][q.id];
-                            else if ((p.nbr != null) && (q.nbr == null))
-                                dpq = (mat[p.id][q.id] + mat[p.nbr.id][q.id]) / 2.0;
-                            else if (p.nbr == null)
-                                dpq = (mat[p.id][q.id] + mat[p.id][q.nbr.id]) / 2.0;
-                            else
-                                dpq = (mat[p.id][q.id] + mat[p.id][q.nbr.id] + mat[p.nbr.id][q.id] + mat[p.nbr.id][q.nbr.id]) / 4.0;
-
-                            p.Sx += dpq;
-                            if (p.nbr != null)
-                                p.nbr.Sx += dpq;
-                            q.Sx += dpq;
-                            if (q.nbr != null)
-                                q.nbr.Sx += dpq;
-                        }
-                    }
-                    if (progressListener != null)
-                        progressListener.checkForCancel();
+                    clusters[count] = p;
+                    slot[count] = p.slot;
+                    nbrSlot[count] = (p.nbr != null ? p.nbr.slot : -1);
+                    count++;
                 }
             }
+            final int numClusters = count;
+
+            /* Compute the "averaged" sums s_i from each cluster to every other cluster, adding the distances in
+            the order in which the pairs of clusters appear in the list */
+            IntStream.range(0, numClusters).parallel().forEach(i -> {
+                double sum = 0.0;
+                for (int j = 0; j < numClusters; j++) {
+                    if (j < i)
+                        sum += averageDistance(mat, slot[j], nbrSlot[j], slot[i], nbrSlot[i]);
+                    else if (j > i)
+                        sum += averageDistance(mat, slot[i], nbrSlot[i], slot[j], nbrSlot[j]);
+                }
+                sums[i] = sum;
+            });
+            if (progressListener != null)
+                progressListener.checkForCancel();
 
-            NetNode Cx=null;
-            NetNode Cy = null;
-            /* Now minimize (m-2) D[C_i,C_k] - Sx - Sy */
-            double best = 0;
-            for (NetNode p = netNodes.next; p != null; p = p.next) {
-                if ((p.nbr != null) && (p.nbr.id < p.id)) /* We only evaluate one node per cluster */
-                    continue;
-                for (NetNode q = netNodes.next; q != p; q = q.next) {
-                    if ((q.nbr != null) && (q.nbr.id < q.id)) /* We only evaluate one node per cluster */
-                        continue;
-                    if (q.nbr == p) /* We only evaluate nodes in different clusters */
-                        continue;
-                        final double Dpq;
-                    if ((p.nbr == null) && (q.nbr == null))
-                        Dpq = mat[p.id][q.id];
-                    else if ((p.nbr != null) && (q.nbr == null))
-                        Dpq = (mat[p.id][q.id] + mat[p.nbr.id][q.id]) / 2.0;
-                    else if (p.nbr == null)
-                        Dpq = (mat[p.id][q.id] + mat[p.id][q.nbr.id]) / 2.0;
-                    else
-                        Dpq = (mat[p.id][q.id] + mat[p.id][q.nbr.id] + mat[p.nbr.id][q.id] + mat[p.nbr.id][q.nbr.id]) / 4.0;
-                    final double Qpq = ((double) num_clusters - 2.0) * Dpq - p.Sx - q.Sx;
-                    /* Check if this is the best so far */
-                    if ((Cx == null || (Qpq < best)) && (p.nbr != q)) {
-                        Cx = p;
-                        Cy = q;
+            /* Now minimize (m-2) D[C_i,C_k] - Sx - Sy, first for each cluster against all clusters before it */
+            final double factor = (double) num_clusters - 2.0;
+            IntStream.range(1, numClusters).parallel().forEach(i -> {
+                int bestIndex = -1;
+                double best = 0;
+                for (int j = 0; j < i; j++) {
+                    final double Qpq = factor * averageDistance(mat, slot[i], nbrSlot[i], slot[j], nbrSlot[j]) - sums[i] - sums[j];
+                    if (bestIndex == -1 ? !Double.isNaN(Qpq) : Qpq < best) {
+                        bestIndex = j;
                         best = Qpq;
                     }
                 }
+                rowBestIndex[i] = bestIndex;
+                rowBest[i] = best;
+            });
+
+            /* The first pair is taken unconditionally, after that, only strict improvements */
+            int bestI = 1;
+            int bestJ = 0;
+            double best = factor * averageDistance(mat, slot[1], nbrSlot[1], slot[0], nbrSlot[0]) - sums[1] - sums[0];
+            for (int i = 1; i < numClusters; i++) {
+                if (rowBestIndex[i] != -1 && rowBest[i] < best) {
+                    bestI = i;
+                    bestJ = rowBestIndex[i];
+                    best = rowBest[i];
+                }
             }
+            final NetNode Cx = clusters[bestI];
+            final NetNode Cy = clusters[bestJ];
 
             /* Find the node in each cluster */
             NetNode x = Cx;
             NetNode y = Cy;
 
-            if (Objects.requireNonNull(Cx).nbr != null || Objects.requireNonNull(Cy).nbr != null) {
+            if (Cx.nbr != null || Cy.nbr != null) {
                 Cx.Rx = ComputeRx(Cx, Cx, Cy, mat, netNodes);
                 if (Cx.nbr != null)
                     Cx.nbr.Rx = ComputeRx(Cx.nbr, Cx, Cy, mat, netNodes);
-                Objects.requireNonNull(Cy).Rx = ComputeRx(Cy, Cx, Cy, mat, netNodes);
+                Cy.Rx = ComputeRx(Cy, Cx, Cy, mat, netNodes);
                 if (Cy.nbr != null)
                     Cy.nbr.Rx = ComputeRx(Cy.nbr, Cx, Cy, mat, netNodes);
             }
@@ -211,9 +210,9 @@ public class NeighborNet {
             if (Cy.nbr != null)
                 m++;
 
-            best = ((double) m - 2.0) * mat[Cx.id][Cy.id] - Cx.Rx - Cy.Rx;
+            best = ((double) m - 2.0) * mat[Cx.slot][Cy.slot] - Cx.Rx - Cy.Rx;
             if (Cx.nbr != null) {
-                final double Qpq = ((double) m - 2.0) * mat[Cx.nbr.id][Cy.id] - Cx.nbr.Rx - Cy.Rx;
+                final double Qpq = ((double) m - 2.0) * mat[Cx.nbr.slot][Cy.slot] - Cx.nbr.Rx - Cy.Rx;
                 if (Qpq < best) {
                     x = Cx.nbr;
                     y = Cy;
@@ -221,7 +220,7 @@ public class NeighborNet {
                 }
             }
             if (Cy.nbr != null) {
-                final double Qpq = ((double) m - 2.0) * mat[Cx.id][Cy.nbr.id] - Cx.Rx - Cy.nbr.Rx;
+                final double Qpq = ((double) m - 2.0) * mat[Cx.slot][Cy.nbr.slot] - Cx.Rx - Cy.nbr.Rx;
                 if (Qpq < best) {
                     x = Cx;
                     y = Cy.nbr;
@@ -229,7 +228,7 @@ public class NeighborNet {
                 }
             }
             if ((Cx.nbr != null) && (Cy.nbr != null)) {
-                final double Qpq = ((double) m - 2.0) * mat[Cx.nbr.id][Cy.nbr.id] - Cx.nbr.Rx - Cy.nbr.Rx;
+                final double Qpq = ((double) m - 2.0) * mat[Cx.nbr.slot][Cy.nbr.slot] - Cx.nbr.Rx - Cy.nbr.Rx;
                 if (Qpq < best) {
                     x = Cx.nbr;
                     y = Cy.nbr;
@@ -237,7 +236,7 @@ public class NeighborNet {
             }
 
             /* We perform an agglomeration... one of three types */
-            if ((null == Objects.requireNonNull(x).nbr) && (null == Objects.requireNonNull(y).nbr)) {   /* Both vertices are isolated...add edge {x,y} */
+            if ((null == x.nbr) && (null == y.nbr)) {   /* Both vertices are isolated...add edge {x,y} */
                 join2way(x, y);
                 num_clusters--;
             } else if (null == x.nbr) {     /* X is isolated,  Y  is not isolated*/
@@ -245,7 +244,7 @@ public class NeighborNet {
                 num_nodes += 2;
                 num_active--;
                 num_clusters--;
-            } else if ((null == Objects.requireNonNull(y).nbr) || (num_active == 4)) { /* Y is isolated,  X is not isolated
+            } else if ((null == y.nbr) || (num_active == 4)) { /* Y is isolated,  X is not isolated
                                                         OR theres only four active nodes and none are isolated */
                 join3way(y, x, x.nbr, joins, mat, netNodes, num_nodes);
                 num_nodes += 2;
@@ -260,6 +259,21 @@ public class NeighborNet {
         return joins;
     }
 
+    /**
+     * distance between two clusters, each given by the slot of a node and the slot of its neighbor, or -1. The
+     * distances are added up in the same order as in the original formulation
+     */
+    private static double averageDistance(double[][] mat, int p, int pNbr, int q, int qNbr) {
+        if (pNbr == -1 && qNbr == -1)
+            return mat[p][q];
+        else if (pNbr != -1 && qNbr == -1)
+            return (mat[p][q] + mat[pNbr][q]) / 2.0;
+        else if (pNbr == -1)
+            return (mat[p][q] + mat[p][qNbr]) / 2.0;
+        else
+            return (mat[p][q] + mat[p][qNbr] + mat[pNbr][q] + mat[pNbr][qNbr]) / 4.0;
+    }
+
     /**
      * agglomerate 2 nodes
      *
@@ -325,13 +339,17 @@ public class NeighborNet {
         u.nbr = v;
         v.nbr = u;
 
-        /* Update distance matrix */
+        /* Update distance matrix, u takes over the slot of x and v the slot of z */
+        u.slot = x.slot;
+        v.slot = z.slot;
 
         for (NetNode p = netNodes.next; p != null; p = p.next) {
-            mat[u.id][p.id] = mat[p.id][u.id] = (2.0 / 3.0) * mat[x.id][p.id] + mat[y.id][p.id] / 3.0;
-            mat[v.id][p.id] = mat[p.id][v.id] = (2.0 / 3.0) * mat[z.id][p.id] + mat[y.id][p.id] / 3.0;
+            if (p != u && p != v) {
+                mat[u.slot][p.slot] = mat[p.slot][u.slot] = (2.0 / 3.0) * mat[x.slot][p.slot] + mat[y.slot][p.slot] / 3.0;
+                mat[v.slot][p.slot] = mat[p.slot][v.slot] = (2.0 / 3.0) * mat[z.slot][p.slot] + mat[y.slot][p.slot] / 3.0;
+            }
         }
-        mat[u.id][u.id] = mat[v.id][v.id] = 0.0;
+        mat[u.slot][u.slot] = mat[v.slot][v.slot] = mat[u.slot][v.slot] = mat[v.slot][u.slot] = 0.0;
 
         joins.push(u);
 
@@ -375,9 +393,9 @@ public class NeighborNet {
 
         for (NetNode p = netNodes.next; p != null; p = p.next) {
             if (p == Cx || p == Cx.nbr || p == Cy || p == Cy.nbr || p.nbr == null)
-                Rx += mat[z.id][p.id];
+                Rx += mat[z.slot][p.slot];
             else /* p.nbr != null */
-                Rx += mat[z.id][p.id] / 2.0; /* We take the average of the distances */
+                Rx += mat[z.slot][p.slot] / 2.0; /* We take the average of the distances */
         }
         return Rx;
     }
@@ -451,13 +469,13 @@ public class NeighborNet {
 
 class NetNode {
     int id = 0;
+    int slot = 0; // row of distance matrix
     NetNode nbr = null; // adjacent node
     NetNode ch1 = null; // first child
     NetNode ch2 = null; // second child
     NetNode next = null; // next in list of active nodes
     NetNode prev = null; // prev in list of active nodes
     double Rx = 0;
-    double Sx = 0;
 
     public String toString() {
         String str = "[id=" + id;
@@ -467,7 +485,6 @@ class NetNode {
         str += " prev=" + (prev == null ? "null" : ("" + prev.id));
         str += " next=" + (next == null ? "null" : ("" + next.id));
         str += " Rx=" + Rx;
-        str += " Sx=" + Sx;
         str += "]";
         return str;
     }
@@ -0,0 +1,447 @@
+/*
+ * HierarchicalClustering.java Copyright (C) 2024 Daniel H. Huson
+ *
+ * (Some files contain contributions from other authors, who are then mentioned separately.)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package megan.clusteranalysis.tree;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * hierarchical clustering on a condensed distance matrix, that is, the upper triangle of a symmetric n x n matrix
+ * stored row by row in an array of length n(n-1)/2.
+ * UPGMA and the other linkages cache the nearest neighbor of each row, neighbor joining prunes the search for
+ * the closest pair using rows sorted by distance (as in RapidNJ). Both report the same merges, in the same order, as the
+ * textbook algorithms that scan the whole matrix in each step
+ * Daniel Huson, 10.2026
+ */
+public class HierarchicalClustering {
+    public enum Linkage {Average, Complete, Single}
+
+    /**
+     * size of a condensed matrix
+     *
+     * @param n number of taxa
+     * @return n(n-1)/2
+     */
+    public static int size(int n) {
+        final var size = (long) n * (n - 1) / 2;
+        if (size > Integer.MAX_VALUE - 8)
+            throw new IllegalArgumentException("Too many taxa for distance matrix: " + n);
+        return (int) size;
+    }
+
+    /**
+     * index of a pair in a condensed matrix
+     *
+     * @param i between 0 and n-1
+     * @param j between 0 and n-1, different from i
+     * @return index
+     */
+    public static int index(int n, int i, int j) {
+        if (i > j) {
+            final var tmp = i;
+            i = j;
+            j = tmp;
+        }
+        return (int) ((long) i * (2 * n - i - 1) / 2) + (j - i - 1);
+    }
+
+    /**
+     * computes the condensed matrix of a distance matrix
+     *
+     * @param symmetrize use the mean of d(i,j) and d(j,i), otherwise use d(i,j) for i<j
+     * @return condensed matrix
+     */
+    public static double[] condense(Distances distances, boolean symmetrize) {
+        final var n = distances.getNtax();
+        final var condensed = new double[size(n)];
+        IntStream.range(0, n).parallel().forEach(i -> {
+            var pos = (i + 1 < n ? index(n, i, i + 1) : 0);
+            for (var j = i + 1; j < n; j++) {
+                condensed[pos++] = (symmetrize ? (distances.get(i + 1, j + 1) + distances.get(j + 1, i + 1)) / 2.0 : distances.get(i + 1, j + 1));
+            }
+        });
+        return condensed;
+    }
+
+    /**
+     * runs UPGMA or one of the other linkage methods. This is the textbook algorithm that merges the closest pair and
+     * moves the last row of the matrix into the row that becomes free, but the nearest neighbor of each row is cached
+     * and only recomputed when it is affected by a merge, which takes O(n^2) time in practice
+     *
+     * @param n         number of taxa
+     * @param distances condensed matrix, is overwritten
+     * @return the n-1 merges, the last one merges the final two clusters
+     */
+    public static Merges runLinkage(int n, double[] distances, Linkage linkage) {
+        final var merges = new Merges(n, Math.max(0, n - 1), false);
+        if (n < 2)
+            return merges;
+
+        final var slot2node = new int[n];
+        final var sizes = new int[n];
+        for (var i = 0; i < n; i++) {
+            slot2node[i] = i;
+            sizes[i] = 1;
+        }
+        // nearest neighbor of each row among the later rows, the first one in case of a tie:
+        final var neighbor = new int[n];
+        final var neighborDistance = new double[n];
+        IntStream.range(0, n).parallel().forEach(i -> updateNeighbor(n, distances, i, n, neighbor, neighborDistance));
+
+        for (var actual = n; actual > 1; actual--) {
+            final var last = actual - 1;
+
+            // find the closest pair, the first in row-major order in case of a tie:
+            var i_min = 0;
+            var j_min = 1;
+            var d_min = distances[index(n, 0, 1)];
+            for (var i = 0; i < last; i++) {
+                if (neighbor[i] != -1 && neighborDistance[i] < d_min) {
+                    i_min = i;
+                    j_min = neighbor[i];
+                    d_min = neighborDistance[i];
+                }
+            }
+
+            final var k = n - actual;
+            merges.left[k] = slot2node[i_min];
+            merges.right[k] = slot2node[j_min];
+            merges.distance[k] = d_min;
+            if (actual == 2)
+                break;
+
+            final var size_i = sizes[i_min];
+            final var size_j = sizes[j_min];
+            for (var l = 0; l < actual; l++) {
+                if (l != i_min && l != j_min) {
+                    final var li = index(n, l, i_min);
+                    final var d_li = distances[li];
+                    final var d_lj = distances[index(n, l, j_min)];
+                    distances[li] = switch (linkage) {
+                        case Average -> (d_li * size_i + d_lj * size_j) / ((double) (size_i + size_j));
+                        case Complete -> Math.max(d_li, d_lj);
+                        case Single -> Math.min(d_li, d_lj);
+                    };
+                }
+            }
+            slot2node[i_min] = n + k;
+            sizes[i_min] = size_i + size_j;
+
+            // move the last row into the free row:
+            if (j_min < last) {
+                for (var l = 0; l < last; l++) {
+                    if (l != j_min)
+                        distances[index(n, j_min, l)] = distances[index(n, last, l)];
+                }
+                slot2node[j_min] = slot2node[last];
+                sizes[j_min] = sizes[last];
+            }
+
+            // update the cached nearest neighbors of all rows that are affected:
+            for (var l = 0; l < last; l++) {
+                if (l == i_min || l == j_min || neighbor[l] == i_min || neighbor[l] == j_min || neighbor[l] == last)
+                    updateNeighbor(n, distances, l, last, neighbor, neighborDistance);
+                else {
+                    if (i_min > l)
+                        offerNeighbor(l, i_min, distances[index(n, l, i_min)], neighbor, neighborDistance);
+                    if (j_min > l && j_min < last)
+                        offerNeighbor(l, j_min, distances[index(n, l, j_min)], neighbor, neighborDistance);
+                }
+            }
+        }
+        return merges;
+    }
+
+    /**
+     * recomputes the nearest neighbor of row i among rows i+1..actual-1
+     */
+    private static void updateNeighbor(int n, double[] distances, int i, int actual, int[] neighbor, double[] neighborDistance) {
+        var best = -1;
+        var bestDistance = Double.POSITIVE_INFINITY;
+        if (i + 1 < actual) {
+            var pos = index(n, i, i + 1);
+            for (var j = i + 1; j < actual; j++) {
+                final var d = distances[pos++];
+                if (d < bestDistance) {
+                    best = j;
+                    bestDistance = d;
+                }
+            }
+        }
+        neighbor[i] = best;
+        neighborDistance[i] = bestDistance;
+    }
+
+    /**
+     * offers row j as nearest neighbor of row i
+     */
+    private static void offerNeighbor(int i, int j, double d, int[] neighbor, double[] neighborDistance) {
+        if (d < neighborDistance[i] || (d == neighborDistance[i] && j < neighbor[i])) {
+            neighbor[i] = j;
+            neighborDistance[i] = d;
+        }
+    }
+
+    /**
+     * runs neighbor joining
+     *
+     * @param n         number of taxa
+     * @param distances condensed matrix, is overwritten
+     * @param diagonal  diagonal of the distance matrix, usually all 0, is overwritten
+     * @return the n-2 joins, with the lengths of the two new edges, and then the final edge between the last two clusters,
+     * whose length is given as distance
+     */
+    public static Merges runNJ(int n, double[] distances, double[] diagonal) {
+        if (n < 2)
+            return new Merges(n, 0, true);
+
+        final var active = new boolean[n];
+        Arrays.fill(active, true);
+        final var slot2node = new int[n];
+        for (var i = 0; i < n; i++)
+            slot2node[i] = i;
+
+        final var b = new double[n];
+        for (var i = 0; i < n; i++) {
+            for (var j = 0; j < n; j++)
+                b[i] += (i == j ? diagonal[i] : distances[index(n, i, j)]);
+        }
+
+        // rows[s] contains all clusters that were active when row s was last computed, sorted by distance to s.
+        // An entry is stale once the cluster has been removed or replaced, the pair is then found in the newer row
+        final var rows = new int[n][];
+        final var rowStart = new int[n];
+        final var rowStep = new int[n];
+        IntStream.range(0, n).parallel().forEach(s -> rows[s] = computeSortedRow(n, distances, active, s));
+
+        final var merges = new Merges(n, n - 1, true);
+
+        for (var actual = n; actual > 2; actual--) {
+            final var step = n - actual + 1;
+            final var r = actual - 2;
+
+            var maxB = Double.NEGATIVE_INFINITY;
+            for (var s = 0; s < n; s++) {
+                if (active[s] && b[s] > maxB)
+                    maxB = b[s];
+            }
+
+            // find the pair that minimizes Q(i,j)=d(i,j)-(b(i)+b(j))/r, the first in row-major order in case of a tie:
+            var d_min = Double.MAX_VALUE;
+            var i_min = -1;
+            var j_min = -1;
+            for (var s = 0; s < n; s++) {
+                if (!active[s])
+                    continue;
+                final var row = rows[s];
+                var p = rowStart[s];
+                while (p < row.length && (!active[row[p]] || rowStep[row[p]] > rowStep[s]))
+                    p++;
+                rowStart[s] = p;
+                final var bound = b[s] + maxB;
+                for (; p < row.length; p++) {
+                    final var t = row[p];
+                    if (!active[t] || rowStep[t] > rowStep[s])
+                        continue;
+                    final var d = distances[index(n, s, t)];
+                    if (d - bound / r > d_min)
+                        break; // no remaining entry of this row can be better
+                    final var i = Math.min(s, t);
+                    final var j = Math.max(s, t);
+                    final var q = d - ((b[i] + b[j]) / r);
+                    if (q < d_min || (q == d_min && i_min != -1 && (i < i_min || (i == i_min && j < j_min)))) {
+                        d_min = q;
+                        i_min = i;
+                        j_min = j;
+                    }
+                }
+            }
+            if (i_min == -1) { // only for NaN or infinite distances
+                i_min = 0;
+                while (!active[i_min])
+                    i_min++;
+                j_min = i_min + 1;
+                while (!active[j_min])
+                    j_min++;
+            }
+
+            final var d_ij = distances[index(n, i_min, j_min)];
+            final var dist_e = 0.5 * (d_ij + b[i_min] / r - b[j_min] / r);
+            final var dist_f = 0.5 * (d_ij + b[j_min] / r - b[i_min] / r);
+
+            active[j_min] = false;
+            rows[j_min] = null;
+            b[i_min] = 0.0;
+            b[j_min] = 0.0;
+
+            for (var k = 0; k < n; k++) {
+                if (!active[k])
+                    continue;
+                final var ki = (k == i_min ? -1 : index(n, k, i_min));
+                final var d_ki = (k == i_min ? diagonal[i_min] : distances[ki]);
+                final var d_kj = distances[index(n, k, j_min)];
+                final var temp = (d_ki + d_kj - dist_e - dist_f) / 2;
+                if (k != i_min)
+                    b[k] = b[k] - d_ki - d_kj + temp;
+                b[i_min] += temp;
+                if (k == i_min)
+                    diagonal[i_min] = temp;
+                else
+                    distances[ki] = temp;
+            }
+
+            final var k = step - 1;
+            merges.left[k] = slot2node[i_min];
+            merges.right[k] = slot2node[j_min];
+            merges.leftLength[k] = dist_e;
+            merges.rightLength[k] = dist_f;
+            slot2node[i_min] = n + k;
+
+            rowStep[i_min] = step;
+            rowStart[i_min] = 0;
+            rows[i_min] = computeSortedRow(n, distances, active, i_min);
+        }
+
+        var i = 0;
+        while (!active[i])
+            i++;
+        var j = i + 1;
+        while (!active[j])
+            j++;
+        merges.left[n - 2] = slot2node[i];
+        merges.right[n - 2] = slot2node[j];
+        merges.distance[n - 2] = distances[index(n, i, j)];
+        return merges;
+    }
+
+    /**
+     * computes all active clusters other than s, sorted by their distance to s
+     */
+    private static int[] computeSortedRow(int n, double[] distances, boolean[] active, int s) {
+        var count = 0;
+        for (var t = 0; t < n; t++) {
+            if (active[t] && t != s)
+                count++;
+        }
+        final var row = new int[count];
+        final var keys = new long[count];
+        count = 0;
+        for (var t = 0; t < n; t++) {
+            if (active[t] && t != s) {
+                row[count] = t;
+                final var bits = Double.doubleToLongBits(distances[index(n, s, t)]);
+                keys[count++] = bits ^ ((bits >> 63) & Long.MAX_VALUE); // orders as doubles do, NaN last
+            }
+        }
+        sort(keys, row, 0, count);
+        return row;
+    }
+
+    /**
+     * sorts values by keys, in the range from (inclusive) to (exclusive)
+     */
+    private static void sort(long[] keys, int[] values, int from, int to) {
+        while (to - from > 16) {
+            final var a = keys[from];
+            final var b = keys[(from + to) >>> 1];
+            final var c = keys[to - 1];
+            final var pivot = Math.max(Math.min(a, b), Math.min(Math.max(a, b), c));
+            var i = from;
+            var j = to - 1;
+            while (i <= j) {
+                while (keys[i] < pivot)
+                    i++;
+                while (keys[j] > pivot)
+                    j--;
+                if (i <= j) {
+                    swap(keys, values, i++, j--);
+                }
+            }
+            if (j - from < to - i) {
+                sort(keys, values, from, j + 1);
+                from = i;
+            } else {
+                sort(keys, values, i, to);
+                to = j + 1;
+            }
+        }
+        for (var i = from + 1; i < to; i++) {
+            for (var j = i; j > from && keys[j - 1] > keys[j]; j--)
+                swap(keys, values, j - 1, j);
+        }
+    }
+
+    private static void swap(long[] keys, int[] values, int i, int j) {
+        final var key = keys[i];
+        keys[i] = keys[j];
+        keys[j] = key;
+        final var value = values[i];
+        values[i] = values[j];
+        values[j] = value;
+    }
+
+    /**
+     * the merges computed by a clustering. Nodes 0..n-1 are the taxa, node n+k is the cluster created by merge k
+     */
+    public static class Merges {
+        private final int numberOfTaxa;
+        private final int[] left;
+        private final int[] right;
+        private final double[] distance;
+        private final double[] leftLength;
+        private final double[] rightLength;
+
+        private Merges(int numberOfTaxa, int numberOfMerges, boolean hasLengths) {
+            this.numberOfTaxa = numberOfTaxa;
+            left = new int[numberOfMerges];
+            right = new int[numberOfMerges];
+            distance = new double[numberOfMerges];
+            leftLength = (hasLengths ? new double[numberOfMerges] : null);
+            rightLength = (hasLengths ? new double[numberOfMerges] : null);
+        }
+
+        public int getNumberOfTaxa() {
+            return numberOfTaxa;
+        }
+
+        public int size() {
+            return left.length;
+        }
+
+        public int getLeft(int k) {
+            return left[k];
+        }
+
+        public int getRight(int k) {
+            return right[k];
+        }
+
+        public double getDistance(int k) {
+            return distance[k];
+        }
+
+        public double getLeftLength(int k) {
+            return leftLength[k];
+        }
+
+        public double getRightLength(int k) {
+            return rightLength[k];
+        }
+    }
+}
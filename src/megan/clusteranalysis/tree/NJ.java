@@ -27,7 +27,6 @@ import jloda.swing.graphview.PhyloTreeView;
 import jloda.swing.util.Geometry;
 import jloda.util.Basic;
 
-import java.util.HashMap;
 import java.util.Random;
 
 /**
@@ -46,160 +45,43 @@ public class NJ {
     }
 
     /**
-     * run the UPGMA algorithm
+     * run the NJ algorithm
      *
 	 */
     private void computeNJ(Taxa taxa, Distances dist, PhyloTree tree) {
         tree.clear();
         try {
-
-            HashMap<String, Node> TaxaHashMap = new HashMap<>();
-            int nbNtax = dist.getNtax();
-            StringBuffer[] tax = new StringBuffer[nbNtax + 1];
-            //Taxalabels are saved as a StringBuffer array
-
-            for (int i = 1; i <= nbNtax; i++) {
-                tax[i] = new StringBuffer();
-                tax[i].append(taxa.getLabel(i));
-                Node v = tree.newNode(); // create newNode for each Taxon
-                tree.setLabel(v, tax[i].toString());
-                TaxaHashMap.put(tax[i].toString(), v);
-            }
-
-            double[][] h = new double[nbNtax + 1][nbNtax + 1];// distance matix
-            double[] b = new double[nbNtax + 1];// the b variable in Neighbor Joining
-            int i_min = 0, j_min = 0; // needed for manipulation of h and b
-            double temp, dist_e, dist_f;//new edge weights
-            StringBuilder tax_old_i; //labels of taxa that are being merged
-            StringBuilder tax_old_j;
-            Node v;
-            Edge e, f; //from tax_old to new=merged edge
-
-            for (int i = 0; i <= nbNtax; i++) {
-                h[0][i] = 1.0; // with 1.0 marked columns indicate columns/rows
-                h[i][0] = 1.0;// that haven't been deleted after merging
-            }
-            for (int i = 1; i <= nbNtax; i++) {
-                for (int j = 1; j <= nbNtax; j++) { //fill up the
-                    if (i < j)
-                        h[i][j] = dist.get(i, j);// distance matix h
-                    else
-                        h[i][j] = dist.get(j, i);
-                }
+            final int nbNtax = dist.getNtax();
+            final double[] diagonal = new double[nbNtax];
+            for (int i = 0; i < nbNtax; i++)
+                diagonal[i] = dist.get(i + 1, i + 1);
+            final HierarchicalClustering.Merges merges = HierarchicalClustering.runNJ(nbNtax, HierarchicalClustering.condense(dist, false), diagonal);
+
+            final Node[] nodes = new Node[Math.max(0, 2 * nbNtax - 2)];
+            for (int i = 0; i < nbNtax; i++) {
+                nodes[i] = tree.newNode(); // create newNode for each Taxon
+                tree.setLabel(nodes[i], taxa.getLabel(i + 1));
             }
+            if (nbNtax < 2)
+                return;
 
-            // calculate b:
-            for (int i = 1; i <= nbNtax; i++) {
-                for (int j = 1; j <= nbNtax; j++) {
-                    b[i] += h[i][j];
-                }
-            }
-            // recall: int i_min=0, j_min=0;
-
-            // actual for (finding all nearest Neighbors)
-            for (int actual = nbNtax; actual > 2; actual--) {
-                // find: min D (h, b, b)
-                double d_min = Double.MAX_VALUE;
-                for (int i = 1; i < nbNtax; i++) {
-                    if (h[0][i] == 0.0) continue;
-                    for (int j = i + 1; j <= nbNtax; j++) {
-                        if (h[0][j] == 0.0)
-                            continue;
-                        if (h[i][j] - ((b[i] + b[j]) / (actual - 2)) < d_min) {
-                            d_min = h[i][j] - ((b[i] + b[j]) / (actual - 2));
-                            i_min = i;
-                            j_min = j;
-                        }
-                    }
-                }
-                dist_e = 0.5 * (h[i_min][j_min] + b[i_min] / (actual - 2)
-                        - b[j_min] / (actual - 2));
-                dist_f = 0.5 * (h[i_min][j_min] + b[j_min] / (actual - 2)
-                        - b[i_min] / (actual - 2));
-
-                h[j_min][0] = 0.0;// marking
-                h[0][j_min] = 0.0;
-
-                // tax taxa rescan:
-                tax_old_i = new StringBuilder(tax[i_min].toString());
-                tax_old_j = new StringBuilder(tax[j_min].toString());
-                tax[i_min].insert(0, "(");
-                tax[i_min].append(",");
-                tax[i_min].append(tax[j_min]);
-                tax[i_min].append(")");
-                tax[j_min].delete(0, tax[j_min].length());
-
-                // b rescan:
-
-                b[i_min] = 0.0;
-                b[j_min] = 0.0;
-
-                // fusion of h
-                // double h_min = h[i_min][j_min];
-
-                for (int i = 1; i <= nbNtax; i++) {
-                    if (h[0][i] == 0.0)
-                        continue;
-                    //temp=(h[i][i_min] + h[i][j_min] - h_min)/2; This is incorrect
-                    temp = (h[i][i_min] + h[i][j_min] - dist_e - dist_f) / 2; // correct NJ
-
-
-                    if (i != i_min) {
-                        b[i] = b[i] - h[i][i_min] - h[i][j_min] + temp;
-                    }
-                    b[i_min] += temp;
-                    h[i][i_min] = temp;
-                    b[j_min] = 0.0;
-                }
-
-                for (int i = 0; i <= nbNtax; i++) {
-                    h[i_min][i] = h[i][i_min];
-                    h[i][j_min] = 0.0;
-                    h[j_min][i] = 0.0;
-                }
-
+            for (int k = 0; k < nbNtax - 2; k++) {
                 // generate new Node for merged Taxa:
-                v = tree.newNode();
-                TaxaHashMap.put(tax[i_min].toString(), v);
+                final Node v = nodes[nbNtax + k] = tree.newNode();
 
                 // generate Edges from two Taxa that are merged to one:
-                e = tree.newEdge(TaxaHashMap.get(tax_old_i.toString()), v);
-                tree.setWeight(e, Math.max(dist_e, 0.0));
-                f = tree.newEdge(TaxaHashMap.get(tax_old_j.toString()), v);
-                tree.setWeight(f, Math.max(dist_f, 0.0));
+                final Edge e = tree.newEdge(nodes[merges.getLeft(k)], v);
+                tree.setWeight(e, Math.max(merges.getLeftLength(k), 0.0));
+                final Edge f = tree.newEdge(nodes[merges.getRight(k)], v);
+                tree.setWeight(f, Math.max(merges.getRightLength(k), 0.0));
             }
 
             // evaluating last two nodes:
-            for (int i = 1; i <= nbNtax; i++) {
-                if (h[0][i] == 1.0) {
-                    i_min = i;
-                    i++;
-
-                    for (; i <= nbNtax; i++) {
-                        if (h[0][i] == 1.0) {
-                            j_min = i;
-                        }
-                    }
-                }
-            }
-            tax_old_i = new StringBuilder(tax[i_min].toString());
-            tax_old_j = new StringBuilder(tax[j_min].toString());
-
-            tax[i_min].insert(0, "(");
-            tax[i_min].append(",");
-            tax[i_min].append(tax[j_min]);
-            tax[i_min].append(")");
-            tax[j_min].delete(0, tax[j_min].length()); //not neces. but sets content to NULL
-
-            // generate new Node for merged Taxa:
-            // generate Edges from two Taxa that are merged to one:
-            e = tree.newEdge(TaxaHashMap.get
-                    (tax_old_i.toString()), TaxaHashMap.get(tax_old_j.toString()));
-            tree.setWeight(e, Math.max(h[i_min][j_min], 0.0));
+            final Edge e = tree.newEdge(nodes[merges.getLeft(nbNtax - 2)], nodes[merges.getRight(nbNtax - 2)]);
+            tree.setWeight(e, Math.max(merges.getDistance(nbNtax - 2), 0.0));
         } catch (Exception ex) {
             Basic.caught(ex);
         }
-        //System.err.println(tree.toString());
     }
 
     /**
@@ -39,108 +39,68 @@ public class UPGMA {
      *
 	 */
     public static void apply(Taxa taxa, Distances distances, PhyloTreeView treeView) {
+        apply(taxa, HierarchicalClustering.condense(distances, true), treeView);
+    }
+
+    /**
+     * apply the UPGMA algorithm to a condensed distance matrix, see HierarchicalClustering
+     *
+     * @param distances condensed distances, are overwritten
+     */
+    public static void apply(Taxa taxa, double[] distances, PhyloTreeView treeView) {
         if (instance == null)
             instance = new UPGMA();
-        instance.computeUPMATree(taxa, distances, treeView.getPhyloTree());
+        instance.computeUPMATree(taxa, HierarchicalClustering.runLinkage(taxa.size(), distances, HierarchicalClustering.Linkage.Average), treeView.getPhyloTree());
         embedTree(treeView);
     }
 
     /**
-     * run the UPGMA algorithm
+     * build the UPGMA tree from the merges
      *
 	 */
-    private void computeUPMATree(Taxa taxa, Distances dist, PhyloTree tree) {
+    private void computeUPMATree(Taxa taxa, HierarchicalClustering.Merges merges, PhyloTree tree) {
         tree.clear();
 
-        int ntax = dist.getNtax();
+        final int ntax = merges.getNumberOfTaxa();
 
-        Node[] subtrees = new Node[ntax + 1];
-        int[] sizes = new int[ntax + 1];
-        double[] heights = new double[ntax + 1];
+        final Node[] nodes = new Node[Math.max(0, 2 * ntax - 1)];
+        final double[] heights = new double[nodes.length];
 
-        for (int i = 1; i <= ntax; i++) {
-            subtrees[i] = tree.newNode();
-            tree.setLabel(subtrees[i], taxa.getLabel(i));
-            sizes[i] = 1;
+        for (int i = 0; i < ntax; i++) {
+            nodes[i] = tree.newNode();
+            tree.setLabel(nodes[i], taxa.getLabel(i + 1));
         }
-
-        double[][] d = new double[ntax + 1][ntax + 1];// distance matix
-
-        //Initialise d
-        //Compute the closest values for each taxa.
-        for (int i = 1; i <= ntax; i++) {
-            for (int j = i + 1; j <= ntax; j++) {
-                double dij = (dist.get(i, j) + dist.get(j, i)) / 2.0;// distance matix h
-                d[i][j] = d[j][i] = dij;
-
-            }
+        if (ntax < 2) {
+            if (ntax == 1)
+                tree.setRoot(nodes[0]);
+            return;
         }
 
-        for (int actual = ntax; actual > 2; actual--) {
-
-            int i_min = 0, j_min = 0;
-            //Find closest pair.
-            double d_min = Double.MAX_VALUE;
-            for (int i = 1; i <= actual; i++) {
-                for (int j = i + 1; j <= actual; j++) {
-                    double dij = d[i][j];
-                    if (i_min == 0 || dij < d_min) {
-                        i_min = i;
-                        j_min = j;
-                        d_min = dij;
-                    }
-                }
-
-            }
-
-
-            double height = d_min / 2.0;
-
-            Node v = tree.newNode();
-            Edge e = tree.newEdge(v, subtrees[i_min]);
-            tree.setWeight(e, Math.max(height - heights[i_min], 0.0));
-            Edge f = tree.newEdge(v, subtrees[j_min]);
-            tree.setWeight(f, Math.max(height - heights[j_min], 0.0));
-
-            subtrees[i_min] = v;
-            subtrees[j_min] = null;
-            heights[i_min] = height;
-
-
-            int size_i = sizes[i_min];
-            int size_j = sizes[j_min];
-            sizes[i_min] = size_i + size_j;
-
-            for (int k = 1; k <= ntax; k++) {
-                if ((k == i_min) || k == j_min) continue;
-                double dki = (d[k][i_min] * size_i + d[k][j_min] * size_j) / ((double) (size_i + size_j));
-                d[k][i_min] = d[i_min][k] = dki;
-            }
-
-            //Copy the top row of the matrix and arrays into the empty j_min row/column.
-            if (j_min < actual) {
-                for (int k = 1; k <= actual; k++) {
-                    d[j_min][k] = d[k][j_min] = d[actual][k];
-                }
-                d[j_min][j_min] = 0.0;
-                subtrees[j_min] = subtrees[actual];
-                sizes[j_min] = sizes[actual];
-                heights[j_min] = heights[actual];
-            }
+        for (int k = 0; k < ntax - 2; k++) {
+            final int left = merges.getLeft(k);
+            final int right = merges.getRight(k);
+            final double height = merges.getDistance(k) / 2.0;
+
+            final Node v = nodes[ntax + k] = tree.newNode();
+            final Edge e = tree.newEdge(v, nodes[left]);
+            tree.setWeight(e, Math.max(height - heights[left], 0.0));
+            final Edge f = tree.newEdge(v, nodes[right]);
+            tree.setWeight(f, Math.max(height - heights[right], 0.0));
+            heights[ntax + k] = height;
         }
 
-        int sister = 2;
-        while (subtrees[sister] == null)
-            sister++;
+        // the last merge gives the root:
+        final int first = merges.getLeft(ntax - 2);
+        final int sister = merges.getRight(ntax - 2);
 
         Node root = tree.newNode();
         tree.setRoot(root);
 
         double w1, w2;
-        double delta = Math.abs(heights[1] - heights[sister]);
-        double distance = d[1][sister] - delta;
+        double delta = Math.abs(heights[first] - heights[sister]);
+        double distance = merges.getDistance(ntax - 2) - delta;
 
-        if (heights[1] <= heights[sister]) {
+        if (heights[first] <= heights[sister]) {
             w1 = 0.5 * distance + delta;
             w2 = 0.5 * distance;
         } else {
@@ -148,9 +108,9 @@ public class UPGMA {
             w2 = 0.5 * distance + delta;
         }
 
-        Edge e1 = tree.newEdge(root, subtrees[1]);
+        Edge e1 = tree.newEdge(root, nodes[first]);
         tree.setWeight(e1, w1);
-        Edge e2 = tree.newEdge(root, subtrees[sister]);
+        Edge e2 = tree.newEdge(root, nodes[sister]);
         tree.setWeight(e2, w2);
     }
 
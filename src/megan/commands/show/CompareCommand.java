@@ -33,6 +33,7 @@ import megan.core.Document;
 import megan.core.MeganFile;
 import megan.dialogs.compare.CompareWindow;
 import megan.dialogs.compare.Comparer;
+import megan.dialogs.compare.StreamingComparer;
 import megan.main.MeganProperties;
 import megan.util.MeganFileFilter;
 import megan.util.MeganizedDAAFileFilter;
@@ -66,9 +67,12 @@ public class CompareCommand extends CommandBase implements ICommand {
         doc.neverOpenedReads = false;
         np.matchIgnoreCase("compare");
         final Comparer comparer = new Comparer();
+        final StreamingComparer streamingComparer = new StreamingComparer();
         if (np.peekMatchIgnoreCase("mode")) {
 			np.matchIgnoreCase("mode=");
-			comparer.setMode(np.getWordMatchesIgnoringCase(StringUtils.toString(Comparer.COMPARISON_MODE.values(), " ")));
+			final String mode = np.getWordMatchesIgnoringCase(StringUtils.toString(Comparer.COMPARISON_MODE.values(), " "));
+			comparer.setMode(mode);
+			streamingComparer.setMode(mode);
         }
         Document.ReadAssignmentMode readAssignmentMode = Document.ReadAssignmentMode.readCount;
         if (np.peekMatchIgnoreCase("readAssignmentMode")) {
@@ -78,12 +82,16 @@ public class CompareCommand extends CommandBase implements ICommand {
 
         if (np.peekMatchIgnoreCase("keep1")) {
             np.matchIgnoreCase("keep1=");
-            comparer.setKeep1(np.getBoolean());
+            final boolean keep1 = np.getBoolean();
+            comparer.setKeep1(keep1);
+            streamingComparer.setKeep1(keep1);
         }
 
         if (np.peekMatchIgnoreCase("ignoreUnassigned")) {
             np.matchIgnoreCase("ignoreUnassigned=");
-            comparer.setIgnoreUnassigned(np.getBoolean());
+            final boolean ignoreUnassigned = np.getBoolean();
+            comparer.setIgnoreUnassigned(ignoreUnassigned);
+            streamingComparer.setIgnoreUnassigned(ignoreUnassigned);
         }
         final java.util.List<Director> toDelete = new LinkedList<>();
         try {
@@ -119,25 +127,33 @@ public class CompareCommand extends CommandBase implements ICommand {
                 } while (!np.peekMatchIgnoreCase(";"));
                 np.matchIgnoreCase(";");
 
-                progress.setProgress(0);
-                progress.setMaximum(files.size());
-                for (String fileName : files) {
-                    progress.setTasks("Comparison", "Loading files");
-                    final Director newDir = Director.newProject(false, true);
-                    newDir.executeImmediately("open file='" + fileName + "' readOnly=true;update;", newDir.getMainViewer().getCommandManager());
-                    if (newDir.getDocument().getNumberOfReads() == 0) {
-                        throw new IOException("No reads found in file: '" + fileName + "'");
+                if (comparer.getDirs().isEmpty()) { // only files, no need to open them in viewers
+                    for (String fileName : files)
+                        streamingComparer.addFile(fileName);
+                } else {
+                    progress.setProgress(0);
+                    progress.setMaximum(files.size());
+                    for (String fileName : files) {
+                        progress.setTasks("Comparison", "Loading files");
+                        final Director newDir = Director.newProject(false, true);
+                        newDir.executeImmediately("open file='" + fileName + "' readOnly=true;update;", newDir.getMainViewer().getCommandManager());
+                        if (newDir.getDocument().getNumberOfReads() == 0) {
+                            throw new IOException("No reads found in file: '" + fileName + "'");
+                        }
+                        comparer.addDirector(newDir);
+                        toDelete.add(newDir);
+                        progress.incrementProgress();
                     }
-                    comparer.addDirector(newDir);
-                    toDelete.add(newDir);
-                    progress.incrementProgress();
                 }
             }
             doc.getMeganFile().setFileName(ProjectManager.getUniqueName("Comparison.megan"));
 
             doc.clearReads();
             doc.setReadAssignmentMode(readAssignmentMode);
-            comparer.computeComparison(doc.getSampleAttributeTable(), doc.getDataTable(), progress);
+            if (streamingComparer.getFileNames().size() > 0)
+                streamingComparer.computeComparison(doc.getSampleAttributeTable(), doc.getDataTable(), progress);
+            else
+                comparer.computeComparison(doc.getSampleAttributeTable(), doc.getDataTable(), progress);
             doc.setNumberReads(doc.getDataTable().getTotalReads());
             doc.processReadHits();
             doc.setTopPercent(100);
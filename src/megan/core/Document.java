@@ -85,7 +85,7 @@ public class Document {
         }
     }
 
-    private final static Map<String, String> name2versionInfo = new HashMap<>(); // used to track versions of tree etc
+    private final static Map<String, String> name2versionInfo = Collections.synchronizedMap(new HashMap<>()); // used to track versions of tree etc, classifications may be loaded in parallel
 
     private long numberReads = 0;
     private long additionalReads = 0;
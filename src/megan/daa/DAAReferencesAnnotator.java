@@ -41,7 +41,7 @@ import java.util.concurrent.Executors;
  * adds reference annotations to DAA file
  * Daniel Huson, 8.2105
  */
-class DAAReferencesAnnotator {
+public class DAAReferencesAnnotator {
     /**
      * add reference annotations to a DAA file
      *
@@ -63,6 +63,66 @@ class DAAReferencesAnnotator {
             cNames = fNamesList.toArray(new String[0]);
         }
 
+        final var cName2ref2class = computeReferenceAnnotations(header, cNames, progress);
+
+        final var service = Executors.newCachedThreadPool();
+        try {
+            // get all  bytes:
+            final var cName2Bytes = new byte[cNames.length][];
+            final var cName2Size = new int[cNames.length];
+
+            final var countDownLatch2 = new CountDownLatch(cNames.length);
+            for (var t = 0; t < cNames.length; t++) {
+                final var task = t;
+                service.submit(() -> {
+                    try {
+                        final var outs = new ByteOutputStream(1048576);
+                        final var w = new OutputWriterLittleEndian(outs);
+                        w.writeNullTerminatedString(cNames[task].getBytes());
+                        final var ref2class = cName2ref2class[task];
+
+                        if (task == 0) {
+                            progress.setSubtask("Writing");
+                            progress.setMaximum(ref2class.length);
+                            progress.setProgress(0);
+                        }
+
+                        for (var classId : ref2class) {
+                            w.writeInt(classId);
+                            if (task == 0)
+                                progress.incrementProgress();
+                        }
+
+                        cName2Bytes[task] = outs.getBytes();
+                        cName2Size[task] = outs.size();
+                    } catch (Exception ex) {
+                        System.err.println("Exception during preparation of block: " + cNames[task]);
+                        Basic.caught(ex);
+                    } finally {
+                        countDownLatch2.countDown();
+                    }
+                });
+            }
+            try {
+                countDownLatch2.await();
+            } catch (InterruptedException e) {
+                Basic.caught(e);
+            }
+
+            DAAModifier.appendBlocks(header, BlockType.megan_ref_annotations, cName2Bytes, cName2Size);
+            progress.reportTaskCompleted();
+        } finally {
+            service.shutdownNow();
+        }
+    }
+
+    /**
+     * computes the annotations of all references of a DAA file, for each of the given classifications.
+     * The references must have been loaded
+     *
+     * @return array of classification ids, indexed by classification and then by reference
+     */
+    public static int[][] computeReferenceAnnotations(DAAHeader header, String[] cNames, ProgressListener progress) throws IOException {
         final var cName2ref2class = new int[cNames.length][header.getNumberOfReferences()];
 
         final var service = Executors.newCachedThreadPool();
@@ -200,54 +260,10 @@ class DAAReferencesAnnotator {
                 else
                     throw new IOException(exception.get());
             }
-
-            // get all  bytes:
-            final var cName2Bytes = new byte[cNames.length][];
-            final var cName2Size = new int[cNames.length];
-
-            final var countDownLatch2 = new CountDownLatch(cNames.length);
-            for (var t = 0; t < cNames.length; t++) {
-                final var task = t;
-                service.submit(() -> {
-                    try {
-                        final var outs = new ByteOutputStream(1048576);
-                        final var w = new OutputWriterLittleEndian(outs);
-                        w.writeNullTerminatedString(cNames[task].getBytes());
-                        final var ref2class = cName2ref2class[task];
-
-                        if (task == 0) {
-                            progress.setSubtask("Writing");
-                            progress.setMaximum(ref2class.length);
-                            progress.setProgress(0);
-                        }
-
-                        for (var classId : ref2class) {
-                            w.writeInt(classId);
-                            if (task == 0)
-                                progress.incrementProgress();
-                        }
-
-                        cName2Bytes[task] = outs.getBytes();
-                        cName2Size[task] = outs.size();
-                    } catch (Exception ex) {
-                        System.err.println("Exception during preparation of block: " + cNames[task]);
-                        Basic.caught(ex);
-                    } finally {
-                        countDownLatch2.countDown();
-                    }
-                });
-            }
-            try {
-                countDownLatch2.await();
-            } catch (InterruptedException e) {
-                Basic.caught(e);
-            }
-
-            DAAModifier.appendBlocks(header, BlockType.megan_ref_annotations, cName2Bytes, cName2Size);
-            progress.reportTaskCompleted();
         } finally {
             service.shutdownNow();
         }
+        return cName2ref2class;
     }
 
     private static String getFirstWord(byte[] bytes) {
@@ -47,6 +47,8 @@ public class DAAConnector implements IConnector {
 
     private boolean longReads = false;
 
+    private volatile DAAQueryIndex queryIndex; // collected while streaming all queries, or loaded from the file
+
     public static boolean reuseReadBlockInGetter=true;
 
 
@@ -65,6 +67,7 @@ public class DAAConnector implements IConnector {
         this.fileName = file;
         this.daaHeader = new DAAHeader(fileName);
         daaHeader.load();
+        this.queryIndex = null;
     }
 
     @Override
@@ -84,7 +87,32 @@ public class DAAConnector implements IConnector {
 
     @Override
     public IReadBlockIterator getAllReadsIterator(float minScore, float maxExpected, boolean wantReadSequence, boolean wantMatches) throws IOException {
-        return new AllReadsIterator(new ReadBlockGetterDAA(daaHeader, wantReadSequence, wantMatches, minScore, maxExpected, true, false, longReads));
+        final ReadBlockGetterDAA readBlockGetter = new ReadBlockGetterDAA(daaHeader, wantReadSequence, wantMatches, minScore, maxExpected, true, false, longReads);
+        return new AllReadsIterator(readBlockGetter) {
+            @Override
+            public void close() {
+                if (queryIndex == null) // keep the query index, if all queries were streamed, for example while binning
+                    queryIndex = readBlockGetter.getQueryIndex();
+                super.close();
+            }
+        };
+    }
+
+    /**
+     * get iterators over disjoint ranges of queries, using the query index collected while streaming all queries, or read from the file
+     */
+    @Override
+    public IReadBlockIterator[] getAllReadsIterators(int numberOfParts, float minScore, float maxExpected, boolean wantReadSequence, boolean wantMatches) throws IOException {
+        if (queryIndex == null)
+            queryIndex = DAAQueryIndex.loadOrCompute(daaHeader);
+        final ArrayList<DAAQueryIndex.Range> ranges = queryIndex.computeRanges(numberOfParts);
+        if (ranges.size() <= 1)
+            return new IReadBlockIterator[]{getAllReadsIterator(minScore, maxExpected, wantReadSequence, wantMatches)};
+        final IReadBlockIterator[] iterators = new IReadBlockIterator[ranges.size()];
+        for (int i = 0; i < ranges.size(); i++) {
+            iterators[i] = new AllReadsIterator(new ReadBlockGetterDAA(daaHeader, wantReadSequence, wantMatches, minScore, maxExpected, false, longReads, ranges.get(i)));
+        }
+        return iterators;
     }
 
     @Override
@@ -94,10 +122,25 @@ public class DAAConnector implements IConnector {
 
     @Override
     public IReadBlockIterator getReadsIteratorForListOfClassIds(String classification, Collection<Integer> classIds, float minScore, float maxExpected, boolean wantReadSequence, boolean wantMatches) throws IOException {
+        return getReadsIteratorForListOfClassIds(classification, classIds, minScore, maxExpected, wantReadSequence, wantMatches, reuseReadBlockInGetter);
+    }
+
+    @Override
+    public IReadBlockIterator getReadsIteratorForListOfClassIds(String classification, Collection<Integer> classIds, float minScore, float maxExpected, boolean wantReadSequence, boolean wantMatches, boolean reuseReadBlocks) throws IOException {
         var list = AccessClassificationsDAA.loadQueryLocations(daaHeader, classification, classIds);
         if (list == null)
             list = new ListOfLongs();
-        return new ReadBlockIterator(list.iterator(), list.size(), getReadBlockGetter(minScore, maxExpected, wantReadSequence, wantMatches));
+        return new ReadBlockIterator(list.iterator(), list.size(), getReadBlockGetter(minScore, maxExpected, wantReadSequence, wantMatches, reuseReadBlocks));
+    }
+
+    /**
+     * get an iterator over the reads of all given classes, in the order of their location in the file
+     */
+    @Override
+    public IClassReadBlockIterator getClassReadsIterator(String classification, Map<Integer, Integer> class2group, float minScore, float maxExpected, boolean wantReadSequence, boolean wantMatches) throws IOException {
+        final var iterator = new ClassReadBlockIterator(getReadBlockGetter(minScore, maxExpected, wantReadSequence, wantMatches));
+        AccessClassificationsDAA.loadQueryLocations(daaHeader, classification, class2group.keySet(), (classId, location) -> iterator.add(class2group.get(classId), location));
+        return iterator;
     }
 
     @Override
@@ -107,7 +150,16 @@ public class DAAConnector implements IConnector {
 
     @Override
     public IReadBlockGetter getReadBlockGetter(float minScore, float maxExpected, boolean wantReadSequence, boolean wantMatches) throws IOException {
-        return new ReadBlockGetterDAA(daaHeader, wantReadSequence, wantMatches, minScore, maxExpected, false, reuseReadBlockInGetter, longReads);
+        return getReadBlockGetter(minScore, maxExpected, wantReadSequence, wantMatches, reuseReadBlockInGetter);
+    }
+
+    private IReadBlockGetter getReadBlockGetter(float minScore, float maxExpected, boolean wantReadSequence, boolean wantMatches, boolean reuseReadBlock) throws IOException {
+        if (ReadBlockCache.isEnabled()) {
+            return ReadBlockCache.getInstance().getReadBlockGetter(fileName, longReads, minScore, maxExpected, wantReadSequence, wantMatches,
+                    () -> new ReadBlockGetterDAA(daaHeader, wantReadSequence, wantMatches, minScore, maxExpected, false, false, longReads),
+                    readBlock -> ((ReadBlockDAA) readBlock).copy());
+        }
+        return new ReadBlockGetterDAA(daaHeader, wantReadSequence, wantMatches, minScore, maxExpected, false, reuseReadBlock, longReads);
     }
 
     @Override
@@ -175,7 +227,17 @@ public class DAAConnector implements IConnector {
                 progressListener.incrementProgress();
             }
         }
-        ModifyClassificationsDAA.saveClassifications(daaHeader, cNames, fName2ClassId2Location, fName2ClassId2Weight);
+        ModifyClassificationsDAA.saveClassifications(daaHeader, cNames, fName2ClassId2Location, fName2ClassId2Weight, queryIndex);
+    }
+
+    /**
+     * rescan classifications after running the data processor, one classification at a time
+     */
+    @Override
+    public void updateClassifications(String[] cNames, UpdateItemFile updateItems, ProgressListener progressListener) throws IOException {
+        progressListener.setMaximum(cNames.length);
+        progressListener.setProgress(0);
+        ModifyClassificationsDAA.saveClassifications(daaHeader, cNames, updateItems, queryIndex, progressListener);
     }
 
     @Override
@@ -23,18 +23,19 @@ import jloda.util.ByteOutputBuffer;
 import jloda.util.StringUtils;
 import megan.classification.IdParser;
 import megan.daa.io.*;
+import megan.data.ClassificationOrdinals;
 import megan.data.IMatchBlock;
 import megan.parsers.sam.SAMMatch;
 
 import java.io.StringWriter;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 /**
  * matchblock for DAA
  * Daniel Huson, 6.2015
  */
 public class MatchBlockDAA implements IMatchBlock {
+    private static final int UNSET = Integer.MIN_VALUE;
     private static long countUids = 0;
     private static final Object sync = new Object();
 
@@ -42,7 +43,7 @@ public class MatchBlockDAA implements IMatchBlock {
     private DAAMatchRecord matchRecord;
 
     private long uid;
-    private final Map<String, Integer> fName2Id = new HashMap<>();
+    private int[] overriddenIds; // only allocated if ids are set explicitly, indexed by classification ordinal
     private int taxonId;
 
     /**
@@ -52,11 +53,8 @@ public class MatchBlockDAA implements IMatchBlock {
         this.daaParser = daaParser;
         this.matchRecord = matchRecord;
 
+        // classification ids are not copied, but looked up in the reference annotations of the header, when needed
         final DAAHeader header = daaParser.getHeader();
-
-        for (int f = 0; f < header.getNumberOfRefAnnotations(); f++) {
-            fName2Id.put(header.getRefAnnotationName(f), header.getRefAnnotation(f, matchRecord.getSubjectId()));
-        }
         taxonId = header.getRefAnnotation(header.getRefAnnotationIndexForTaxonomy(), matchRecord.getSubjectId());
 
         synchronized (sync) {
@@ -64,13 +62,33 @@ public class MatchBlockDAA implements IMatchBlock {
         }
     }
 
+    /**
+     * copy constructor, sharing the match record, which is not modified
+     */
+    private MatchBlockDAA(MatchBlockDAA that) {
+        this.daaParser = that.daaParser;
+        this.matchRecord = that.matchRecord;
+        this.uid = that.uid;
+        this.overriddenIds = (that.overriddenIds != null ? that.overriddenIds.clone() : null);
+        this.taxonId = that.taxonId;
+    }
+
+    /**
+     * gets a copy
+     *
+     * @return copy
+     */
+    public MatchBlockDAA copy() {
+        return new MatchBlockDAA(this);
+    }
+
     /**
      * erase the block (for reuse)
      */
     public void clear() {
         uid = 0;
         matchRecord = null;
-        fName2Id.clear();
+        overriddenIds = null;
         taxonId = 0;
     }
 
@@ -101,8 +119,17 @@ public class MatchBlockDAA implements IMatchBlock {
     }
 
     public int getId(String cName) {
-        final Integer id = fName2Id.get(cName);
-        return id != null ? id : 0;
+        return getId(ClassificationOrdinals.get(cName));
+    }
+
+    @Override
+    public int getId(int classificationOrdinal) {
+        if (overriddenIds != null && classificationOrdinal < overriddenIds.length && overriddenIds[classificationOrdinal] != UNSET)
+            return overriddenIds[classificationOrdinal];
+        if (matchRecord == null)
+            return 0;
+        final DAAHeader header = daaParser.getHeader();
+        return header.getRefAnnotation(header.getRefAnnotationIndexForOrdinal(classificationOrdinal), matchRecord.getSubjectId());
     }
 
     /**
@@ -119,7 +146,18 @@ public class MatchBlockDAA implements IMatchBlock {
     }
 
     public void setId(String cName, Integer id) {
-        fName2Id.put(cName, id);
+        setId(ClassificationOrdinals.get(cName), id != null ? id : 0);
+    }
+
+    @Override
+    public void setId(int classificationOrdinal, int id) {
+        if (overriddenIds == null || classificationOrdinal >= overriddenIds.length) {
+            final int oldLength = (overriddenIds == null ? 0 : overriddenIds.length);
+            final int newLength = Math.max(classificationOrdinal + 1, ClassificationOrdinals.size());
+            overriddenIds = (overriddenIds == null ? new int[newLength] : Arrays.copyOf(overriddenIds, newLength));
+            Arrays.fill(overriddenIds, oldLength, newLength, UNSET);
+        }
+        overriddenIds[classificationOrdinal] = id;
     }
 
     /**
@@ -309,8 +347,11 @@ public class MatchBlockDAA implements IMatchBlock {
         StringWriter w = new StringWriter();
 
         w.write("Match uid: " + uid + "--------\n");
-        for (String cName : fName2Id.keySet())
-            w.write(String.format("%4s: ", cName) + fName2Id.get(cName));
+        final DAAHeader header = daaParser.getHeader();
+        for (int f = 0; f < header.getNumberOfRefAnnotations(); f++) {
+            final String cName = header.getRefAnnotationName(f);
+            w.write(String.format("%4s: ", cName) + getId(cName));
+        }
         w.write("\n");
         if (getBitScore() != 0)
             w.write("bitScore: " + getBitScore() + "\n");
@@ -362,6 +403,16 @@ public class MatchBlockDAA implements IMatchBlock {
         return matchRecord.getTotalSubjectLen();
     }
 
+    @Override
+    public int getAlignedSubjectStart() {
+        return matchRecord.getSubjectBegin() + 1;
+    }
+
+    @Override
+    public int getAlignedSubjectEnd() {
+        return matchRecord.getSubjectBegin() + matchRecord.getSubjectLen();
+    }
+
 
     /**
      * compute the BLAST frame
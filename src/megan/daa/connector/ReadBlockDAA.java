@@ -44,6 +44,27 @@ public class ReadBlockDAA implements IReadBlock {
     public ReadBlockDAA() {
     }
 
+    /**
+     * gets a copy, including copies of the query record and of all match blocks
+     *
+     * @return copy
+     */
+    public ReadBlockDAA copy() {
+        final ReadBlockDAA copy = new ReadBlockDAA();
+        copy.wantReadSequences = wantReadSequences;
+        copy.queryRecord = (queryRecord != null ? queryRecord.copy() : null);
+        copy.numberOfMatches = numberOfMatches;
+        copy.readWeight = readWeight;
+        if (matchBlocks != null) {
+            copy.matchBlocks = matchBlocks.clone();
+            for (int i = 0; i < copy.matchBlocks.length; i++) {
+                if (copy.matchBlocks[i] instanceof MatchBlockDAA matchBlock)
+                    copy.matchBlocks[i] = matchBlock.copy();
+            }
+        }
+        return copy;
+    }
+
     /**
      * get the unique identifier for this read (unique within a dataset).
      * In an RMA file, this is always the file position for the read
@@ -46,6 +46,7 @@ public class ReadBlockGetterDAA implements IReadBlockGetter {
 
     private final long start;
     private final long end;
+    private final long count;
 
     private final InputReaderLittleEndian reader;
     private final InputReaderLittleEndian refReader;
@@ -55,11 +56,26 @@ public class ReadBlockGetterDAA implements IReadBlockGetter {
 
     private final boolean longReads;
 
+    private final DAAQueryIndex.Builder queryIndexBuilder; // only used when streaming all queries
+
     /**
      * constructor
      *
 	 */
     public ReadBlockGetterDAA(DAAHeader daaHeader, boolean wantReadSequences, boolean wantMatches, float minScore, float maxExpected, boolean streamOnly, boolean reuseReadBlockObject, boolean longReads) throws IOException {
+        this(daaHeader, wantReadSequences, wantMatches, minScore, maxExpected, streamOnly, reuseReadBlockObject, longReads, null);
+    }
+
+    /**
+     * constructor for streaming a range of queries
+     *
+     * @param range range of queries to stream, or null for all queries
+     */
+    public ReadBlockGetterDAA(DAAHeader daaHeader, boolean wantReadSequences, boolean wantMatches, float minScore, float maxExpected, boolean reuseReadBlockObject, boolean longReads, DAAQueryIndex.Range range) throws IOException {
+        this(daaHeader, wantReadSequences, wantMatches, minScore, maxExpected, true, reuseReadBlockObject, longReads, range);
+    }
+
+    private ReadBlockGetterDAA(DAAHeader daaHeader, boolean wantReadSequences, boolean wantMatches, float minScore, float maxExpected, boolean streamOnly, boolean reuseReadBlockObject, boolean longReads, DAAQueryIndex.Range range) throws IOException {
         this.daaParser = new DAAParser(daaHeader);
         if (daaHeader.getNumberOfReferences() == 0)
             daaHeader.loadReferences(!streamOnly || !wantMatches);
@@ -82,7 +98,8 @@ public class ReadBlockGetterDAA implements IReadBlockGetter {
         //reader = new InputReaderLittleEndian(new FileRandomAccessReadOnlyAdapter(daaHeader.getFileName()));
 
         if (streamOnly)
-            reader.seek(start);
+            reader.seek(range != null ? range.getFileOffset() : start);
+        this.count = (range != null ? range.getNumberOfQueries() : daaHeader.getQueryRecords());
 
         if (reuseReadBlockObject)
             reuseableReadBlock = new ReadBlockDAA();
@@ -90,6 +107,8 @@ public class ReadBlockGetterDAA implements IReadBlockGetter {
             reuseableReadBlock = null;
 
         this.longReads = longReads;
+
+        queryIndexBuilder = (streamOnly && range == null ? new DAAQueryIndex.Builder(daaHeader, DAAQueryIndex.DEFAULT_STEP) : null);
     }
 
     /**
@@ -113,6 +132,8 @@ public class ReadBlockGetterDAA implements IReadBlockGetter {
         if (reader.getPosition() < end) {
             if (uid >= 0) {
             }
+            if (queryIndexBuilder != null)
+                queryIndexBuilder.add(reader.getPosition());
             final ReadBlockDAA readBlock = (reuseableReadBlock == null ? new ReadBlockDAA() : reuseableReadBlock);
 
             final Pair<DAAQueryRecord, DAAMatchRecord[]> pair = daaParser.readQueryAndMatches(reader, refReader, wantMatches, daaMatchRecords.length, inputBuffer, daaMatchRecords, longReads);
@@ -152,17 +173,26 @@ public class ReadBlockGetterDAA implements IReadBlockGetter {
         }
     }
 
+    /**
+     * gets the query index collected while streaming all queries
+     *
+     * @return index, or null, if not streaming all queries or not all queries have been read
+     */
+    public DAAQueryIndex getQueryIndex() {
+        return queryIndexBuilder != null ? queryIndexBuilder.build() : null;
+    }
+
     public DAAHeader getDAAHeader() {
         return daaParser.getHeader();
     }
 
     /**
-     * get total number of reads
+     * get total number of reads, or number of reads in range, when streaming a range
      *
      * @return total number of reads
      */
     @Override
     public long getCount() {
-        return daaParser.getHeader().getQueryRecords();
+        return count;
     }
 }
@@ -26,6 +26,8 @@ import megan.io.FileRandomAccessReadOnlyAdapter;
 
 import java.io.IOException;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
 
 /**
  * access classifications in a DAA file
@@ -38,6 +40,22 @@ public class AccessClassificationsDAA {
      *
 	 */
     public static ListOfLongs loadQueryLocations(DAAHeader daaHeader, String classificationName, Collection<Integer> classIds) throws IOException {
+        final ListOfLongs list = new ListOfLongs(100000);
+        if (loadQueryLocations(daaHeader, classificationName, classIds, (classId, location) -> list.add(location)))
+            return list;
+        else
+            return null;
+    }
+
+    /**
+     * load all query locations for a given classification and class ids, reporting the class of each location. The locations
+     * of a class are reported consecutively
+     *
+     * @return true, if the classification was found
+     */
+    public static boolean loadQueryLocations(DAAHeader daaHeader, String classificationName, Collection<Integer> classIds, ClassLocationConsumer consumer) throws IOException {
+        final Set<Integer> classIdSet = (classIds instanceof Set ? (Set<Integer>) classIds : new HashSet<>(classIds));
+
         for (int i = 0; i < daaHeader.getBlockTypeRankArrayLength() - 1; i++) {
             final int j = i + 1;
             if (daaHeader.getBlockType(i) == BlockType.megan_classification_key_block && daaHeader.getBlockType(j) == BlockType.megan_classification_dump_block) {
@@ -48,7 +66,6 @@ public class AccessClassificationsDAA {
 
                     if (cName.equals(classificationName)) {
                         final int numberOfClasses = insKey.readInt();
-                        final ListOfLongs list = new ListOfLongs(100000);
 
                         try (InputReaderLittleEndian insDump = new InputReaderLittleEndian(new FileRandomAccessReadOnlyAdapter(daaHeader.getFileName()))) {
                             final long dumpBase = daaHeader.computeBlockStart(j);
@@ -61,20 +78,27 @@ public class AccessClassificationsDAA {
                                 insKey.skip(4); //  weight
                                 int size = insKey.readInt();
                                 final long offset = insKey.readLong();
-                                if (classIds.contains(classId)) {
+                                if (classIdSet.contains(classId)) {
                                     insDump.seek(dumpBase + offset);
                                     for (int n = 0; n < size; n++) {
-                                        list.add(insDump.readLong());
+                                        consumer.accept(classId, insDump.readLong());
                                     }
                                 }
                             }
                         }
-                        return list;
+                        return true;
                     }
                 }
             }
         }
-        return null;
+        return false;
+    }
+
+    /**
+     * receives the locations of the reads of a class
+     */
+    public interface ClassLocationConsumer {
+        void accept(int classId, long location);
     }
 
     /**
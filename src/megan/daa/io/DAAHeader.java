@@ -22,6 +22,7 @@ package megan.daa.io;
 import jloda.util.Basic;
 import jloda.util.StringUtils;
 import megan.classification.Classification;
+import megan.data.ClassificationOrdinals;
 import megan.io.FileInputStreamAdapter;
 import megan.io.FileRandomAccessReadOnlyAdapter;
 import megan.io.FileRandomAccessReadWriteAdapter;
@@ -82,6 +83,7 @@ public class DAAHeader {
     private final int[][] refAnnotations = new int[256][];
     private final String[] refAnnotationNames = new String[256];
     private int refAnnotationIndexForTaxonomy = -1;
+    private volatile int[] ordinal2RefAnnotationIndex = new int[0];
 
     // helper variables:
     private String scoreMatrixName;
@@ -267,6 +269,7 @@ public class DAAHeader {
     public void loadRefAnnotations() throws IOException {
         numberOfRefAnnotations = 0;
         refAnnotationIndexForTaxonomy = -1;
+        ordinal2RefAnnotationIndex = new int[0];
 
         try (InputReaderLittleEndian ins = new InputReaderLittleEndian(new FileInputStreamAdapter(fileName))) {
             for (int b = 0; b < blockTypeRank.length; b++) {
@@ -518,6 +521,26 @@ public class DAAHeader {
         return -1;
     }
 
+    /**
+     * gets the index of the reference annotation for a classification given by its ordinal, see ClassificationOrdinals
+     *
+     * @return index or -1
+     */
+    public int getRefAnnotationIndexForOrdinal(int classificationOrdinal) {
+        int[] array = ordinal2RefAnnotationIndex;
+        if (classificationOrdinal >= array.length) {
+            synchronized (this) {
+                array = new int[Math.max(classificationOrdinal + 1, ClassificationOrdinals.size())];
+                for (int i = 0; i < array.length; i++) {
+                    final String cName = ClassificationOrdinals.getName(i);
+                    array[i] = (cName != null ? getRefAnnotationIndex(cName) : -1);
+                }
+                ordinal2RefAnnotationIndex = array;
+            }
+        }
+        return array[classificationOrdinal];
+    }
+
     public int getRefAnnotationIndexForTaxonomy() {
         return refAnnotationIndexForTaxonomy;
     }
@@ -528,7 +551,7 @@ public class DAAHeader {
      * @return reference annotation
      */
     public int getRefAnnotation(int refAnnotationIndex, int refNumber) {
-        if (refAnnotationIndex < 0 || refAnnotationIndex >= refAnnotations.length)
+        if (refAnnotationIndex < 0 || refAnnotationIndex >= numberOfRefAnnotations)
             return 0;
         return refAnnotations[refAnnotationIndex][refNumber];
     }
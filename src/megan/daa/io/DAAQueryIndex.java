@@ -0,0 +1,220 @@
+/*
+ * DAAQueryIndex.java Copyright (C) 2024 Daniel H. Huson
+ *
+ * (Some files contain contributions from other authors, who are then mentioned separately.)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package megan.daa.io;
+
+import jloda.swing.util.ProgramProperties;
+import megan.io.FileInputStreamAdapter;
+import megan.io.FileRandomAccessReadOnlyAdapter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * sampled index of the query records in the alignments block of a DAA file: the file offset of every step-th query.
+ * The index allows a file to be split into disjoint ranges of queries that can be read independently. It is collected
+ * while all queries are streamed, for example during meganization, and is only written to the file as a MEGAN block,
+ * if WriteDAAQueryIndex is set: older versions of MEGAN don't know the block type and, when meganizing the file again,
+ * truncate its data, but not its entry in the header, which corrupts the file.
+ * <p>
+ * Block layout (little endian): step (int), number of queries (long), number of offsets (int), offsets (long each)
+ * Daniel Huson, 10.2026
+ */
+public class DAAQueryIndex {
+    public static final String WRITE_DAA_QUERY_INDEX = "WriteDAAQueryIndex";
+    public static final int DEFAULT_STEP = 4096;
+
+    private final int step;
+    private final long numberOfQueries;
+    private final long[] offsets;
+
+    private DAAQueryIndex(int step, long numberOfQueries, long[] offsets) {
+        this.step = step;
+        this.numberOfQueries = numberOfQueries;
+        this.offsets = offsets;
+    }
+
+    /**
+     * computes the index by walking the size prefixes of all query records
+     *
+     * @param step record the offset of every step-th query
+     * @return index
+     */
+    public static DAAQueryIndex compute(DAAHeader header, int step) throws IOException {
+        final Builder builder = new Builder(header, step);
+
+        try (InputReaderLittleEndian ins = new InputReaderLittleEndian(new FileInputStreamAdapter(header.getFileName()))) {
+            ins.seek(header.computeBlockStart(header.getAlignmentsBlockIndex()));
+            for (long q = 0; q < header.getQueryRecords(); q++) {
+                builder.add(ins.getPosition());
+                ins.skip(ins.readInt());
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * loads the index from the DAA file
+     *
+     * @return index or null, if the file does not contain one, or it is out of date
+     */
+    public static DAAQueryIndex load(DAAHeader header) throws IOException {
+        final int index = header.getIndexForBlockType(BlockType.megan_query_index);
+        if (index == -1)
+            return null;
+        try (InputReaderLittleEndian ins = new InputReaderLittleEndian(new FileRandomAccessReadOnlyAdapter(header.getFileName()))) {
+            ins.seek(header.computeBlockStart(index));
+            final int step = ins.readInt();
+            final long numberOfQueries = ins.readLong();
+            final long[] offsets = new long[ins.readInt()];
+            for (int i = 0; i < offsets.length; i++)
+                offsets[i] = ins.readLong();
+            if (numberOfQueries != header.getQueryRecords())
+                return null;
+            return new DAAQueryIndex(step, numberOfQueries, offsets);
+        }
+    }
+
+    /**
+     * loads the index from the DAA file, or computes it, if the file doesn't contain one
+     *
+     * @return index
+     */
+    public static DAAQueryIndex loadOrCompute(DAAHeader header) throws IOException {
+        final DAAQueryIndex queryIndex = load(header);
+        return queryIndex != null ? queryIndex : compute(header, DEFAULT_STEP);
+    }
+
+    /**
+     * should the index be written to the DAA file during meganization?
+     */
+    public static boolean isWriteEnabled() {
+        return ProgramProperties.get(WRITE_DAA_QUERY_INDEX, false);
+    }
+
+    /**
+     * appends the index as a new block to the DAA file
+     */
+    public void save(DAAHeader header) throws IOException {
+        final ByteOutputStream outputStream = new ByteOutputStream(16 + 8 * offsets.length);
+        final OutputWriterLittleEndian writer = new OutputWriterLittleEndian(outputStream);
+        writer.writeInt(step);
+        writer.writeLong(numberOfQueries);
+        writer.writeInt(offsets.length);
+        for (long offset : offsets)
+            writer.writeLong(offset);
+        DAAModifier.appendBlocks(header, new BlockType[]{BlockType.megan_query_index}, new byte[][]{outputStream.getBytes()}, new int[]{outputStream.size()});
+    }
+
+    /**
+     * splits all queries into at most the given number of disjoint ranges of consecutive queries, of roughly equal size.
+     * Ranges start at sampled queries
+     *
+     * @return list of ranges, each given as file offset of first query and number of queries
+     */
+    public ArrayList<Range> computeRanges(int numberOfParts) {
+        final ArrayList<Range> ranges = new ArrayList<>();
+        final int samplesPerPart = Math.max(1, (offsets.length + numberOfParts - 1) / Math.max(1, numberOfParts));
+        for (int i = 0; i < offsets.length; i += samplesPerPart) {
+            final long firstQuery = (long) i * step;
+            final long lastQuery = Math.min(numberOfQueries, (long) (i + samplesPerPart) * step); // exclusive
+            ranges.add(new Range(offsets[i], firstQuery, lastQuery - firstQuery));
+        }
+        return ranges;
+    }
+
+    public int getStep() {
+        return step;
+    }
+
+    public long getNumberOfQueries() {
+        return numberOfQueries;
+    }
+
+    /**
+     * file offset of the given sampled query
+     *
+     * @param sample index of sample, the query number is sample*step
+     */
+    public long getOffset(int sample) {
+        return offsets[sample];
+    }
+
+    public int getNumberOfSamples() {
+        return offsets.length;
+    }
+
+    /**
+     * collects the index from the offsets of all query records, in file order
+     */
+    public static class Builder {
+        private final int step;
+        private final long expectedQueries;
+        private final long[] offsets;
+        private long numberOfQueries = 0;
+
+        public Builder(DAAHeader header, int step) {
+            this.step = step;
+            this.expectedQueries = header.getQueryRecords();
+            this.offsets = new long[(int) ((expectedQueries + step - 1) / step)];
+        }
+
+        /**
+         * adds the file offset of the next query record
+         */
+        public void add(long offset) {
+            if (numberOfQueries < expectedQueries && numberOfQueries % step == 0)
+                offsets[(int) (numberOfQueries / step)] = offset;
+            numberOfQueries++;
+        }
+
+        /**
+         * @return index, or null, if not all query records have been added
+         */
+        public DAAQueryIndex build() {
+            return numberOfQueries == expectedQueries ? new DAAQueryIndex(step, numberOfQueries, offsets) : null;
+        }
+    }
+
+    /**
+     * a range of consecutive queries
+     */
+    public static class Range {
+        private final long fileOffset;
+        private final long firstQuery;
+        private final long numberOfQueries;
+
+        public Range(long fileOffset, long firstQuery, long numberOfQueries) {
+            this.fileOffset = fileOffset;
+            this.firstQuery = firstQuery;
+            this.numberOfQueries = numberOfQueries;
+        }
+
+        public long getFileOffset() {
+            return fileOffset;
+        }
+
+        public long getFirstQuery() {
+            return firstQuery;
+        }
+
+        public long getNumberOfQueries() {
+            return numberOfQueries;
+        }
+    }
+}
@@ -50,6 +50,21 @@ public class DAAQueryRecord {
         this.setDaaParser(daaParser);
     }
 
+    /**
+     * gets a copy, sharing the sequence arrays, which are not modified once parsed
+     *
+     * @return copy
+     */
+    public DAAQueryRecord copy() {
+        final DAAQueryRecord copy = new DAAQueryRecord(daaParser);
+        copy.queryName = queryName;
+        copy.sourceSequence = sourceSequence;
+        System.arraycopy(context, 0, copy.context, 0, context.length);
+        copy.queryLength = queryLength;
+        copy.location = location;
+        return copy;
+    }
+
     /**
      * parses a buffer
      */
@@ -20,6 +20,8 @@
 package megan.daa.io;
 
 import jloda.util.ListOfLongs;
+import jloda.util.progress.ProgressListener;
+import megan.data.UpdateItemFile;
 
 import java.io.IOException;
 import java.util.Map;
@@ -33,42 +35,63 @@ public class ModifyClassificationsDAA {
     /**
      * update the classifications
      *
+     * @param queryIndex query index collected while binning, or null
 	 */
-    public static void saveClassifications(DAAHeader header, String[] cNames, Map<Integer, ListOfLongs>[] fName2ClassId2Location, Map<Integer, Float>[] fName2ClassId2Weight) throws IOException {
+    public static void saveClassifications(DAAHeader header, String[] cNames, Map<Integer, ListOfLongs>[] fName2ClassId2Location, Map<Integer, Float>[] fName2ClassId2Weight, DAAQueryIndex queryIndex) throws IOException {
         DAAModifier.removeMEGANClassificationData(header);
 
         for (int c = 0; c < cNames.length; c++) {
-            final String cName = cNames[c];
+            saveClassification(header, cNames[c], fName2ClassId2Location[c], fName2ClassId2Weight[c]);
+        }
+
+        // sampled query offsets, so that the alignments can be split into ranges that are read in parallel:
+        if (queryIndex != null && DAAQueryIndex.isWriteEnabled())
+            queryIndex.save(header);
+    }
+
+    /**
+     * update the classifications from updates that were written to a file, one classification at a time
+     */
+    public static void saveClassifications(DAAHeader header, String[] cNames, UpdateItemFile updateItems, DAAQueryIndex queryIndex, ProgressListener progress) throws IOException {
+        DAAModifier.removeMEGANClassificationData(header);
 
-            final ByteOutputStream outputStreamClassKeys = new ByteOutputStream(1000000);
-            final OutputWriterLittleEndian writerClassKeys = new OutputWriterLittleEndian(outputStreamClassKeys);
+        for (int c = 0; c < cNames.length; c++) {
+            saveClassification(header, cNames[c], updateItems.getClassId2Locations(c), updateItems.getClassIdToWeightMap(c));
+            progress.incrementProgress();
+        }
+
+        // sampled query offsets, so that the alignments can be split into ranges that are read in parallel:
+        if (queryIndex != null && DAAQueryIndex.isWriteEnabled())
+            queryIndex.save(header);
+    }
 
-            final ByteOutputStream outputStreamClassReadLocationsDump = new ByteOutputStream(1000000);
-            final OutputWriterLittleEndian writerClassReadLocationsDump = new OutputWriterLittleEndian(outputStreamClassReadLocationsDump);
+    private static void saveClassification(DAAHeader header, String cName, Map<Integer, ListOfLongs> id2locations, Map<Integer, Float> id2weight) throws IOException {
+        final ByteOutputStream outputStreamClassKeys = new ByteOutputStream(1000000);
+        final OutputWriterLittleEndian writerClassKeys = new OutputWriterLittleEndian(outputStreamClassKeys);
 
-            final Map<Integer, ListOfLongs> id2locations = fName2ClassId2Location[c];
+        final ByteOutputStream outputStreamClassReadLocationsDump = new ByteOutputStream(1000000);
+        final OutputWriterLittleEndian writerClassReadLocationsDump = new OutputWriterLittleEndian(outputStreamClassReadLocationsDump);
 
-            writerClassKeys.writeNullTerminatedString(cName.getBytes());
-            writerClassKeys.writeInt(id2locations.size());
+        writerClassKeys.writeNullTerminatedString(cName.getBytes());
+        writerClassKeys.writeInt(id2locations.size());
 
-            writerClassReadLocationsDump.writeNullTerminatedString(cName.getBytes());
+        writerClassReadLocationsDump.writeNullTerminatedString(cName.getBytes());
 
-            for (int classId : id2locations.keySet()) {
-                writerClassKeys.writeInt(classId);
-                float weight = fName2ClassId2Weight[c].get(classId);
-                writerClassKeys.writeInt((int) weight);
-                final ListOfLongs list = id2locations.get(classId);
-                writerClassKeys.writeInt(list.size());
-                writerClassKeys.writeLong(writerClassReadLocationsDump.getPosition()); // offset
-                for (int i = 0; i < list.size(); i++) {
-                    writerClassReadLocationsDump.writeLong(list.get(i));
-                }
+        for (int classId : id2locations.keySet()) {
+            writerClassKeys.writeInt(classId);
+            float weight = id2weight.get(classId);
+            writerClassKeys.writeInt((int) weight);
+            final ListOfLongs list = id2locations.get(classId);
+            writerClassKeys.writeInt(list.size());
+            writerClassKeys.writeLong(writerClassReadLocationsDump.getPosition()); // offset
+            for (int i = 0; i < list.size(); i++) {
+                writerClassReadLocationsDump.writeLong(list.get(i));
             }
-
-            DAAModifier.appendBlocks(header,
-                    new BlockType[]{BlockType.megan_classification_key_block, BlockType.megan_classification_dump_block},
-                    new byte[][]{outputStreamClassKeys.getBytes(), outputStreamClassReadLocationsDump.getBytes()},
-                    new int[]{outputStreamClassKeys.size(), outputStreamClassReadLocationsDump.size()});
         }
+
+        DAAModifier.appendBlocks(header,
+                new BlockType[]{BlockType.megan_classification_key_block, BlockType.megan_classification_dump_block},
+                new byte[][]{outputStreamClassKeys.getBytes(), outputStreamClassReadLocationsDump.getBytes()},
+                new int[]{outputStreamClassKeys.size(), outputStreamClassReadLocationsDump.size()});
     }
 }
@@ -0,0 +1,117 @@
+/*
+ * ClassByClassReadBlockIterator.java Copyright (C) 2024 Daniel H. Huson
+ *
+ * (Some files contain contributions from other authors, who are then mentioned separately.)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package megan.data;
+
+import jloda.util.Basic;
+import jloda.util.FunctionWithIOException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * iterator over the reads of groups of classes that visits one group after the other, for connectors that cannot
+ * order the reads by their location in the file
+ * Daniel Huson, 10.2026
+ */
+public class ClassByClassReadBlockIterator implements IClassReadBlockIterator {
+    private final ArrayList<Integer> groups;
+    private final ArrayList<List<Integer>> groupClassIds;
+    private final FunctionWithIOException<List<Integer>, IReadBlockIterator> classesIteratorFunction;
+    private int whichGroup = -1;
+    private IReadBlockIterator current;
+    private int group;
+    private int countReads = 0;
+
+    /**
+     * constructor
+     *
+     * @param group2classIds          the classes of each group
+     * @param classesIteratorFunction provides the iterator over the reads of a list of classes
+     */
+    public ClassByClassReadBlockIterator(Map<Integer, List<Integer>> group2classIds, FunctionWithIOException<List<Integer>, IReadBlockIterator> classesIteratorFunction) {
+        this.groups = new ArrayList<>(group2classIds.keySet());
+        this.groupClassIds = new ArrayList<>(group2classIds.values());
+        this.classesIteratorFunction = classesIteratorFunction;
+    }
+
+    @Override
+    public int getGroup() {
+        return group;
+    }
+
+    @Override
+    public String getStats() {
+        return "Reads: " + countReads;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (current != null)
+            current.close();
+    }
+
+    @Override
+    public long getMaximumProgress() {
+        return groups.size();
+    }
+
+    @Override
+    public long getProgress() {
+        return Math.max(0, whichGroup);
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (current == null || !current.hasNext()) {
+            if (current != null) {
+                try {
+                    current.close();
+                } catch (IOException ignored) {
+                }
+                current = null;
+            }
+            if (++whichGroup >= groups.size()) {
+                whichGroup = groups.size();
+                return false;
+            }
+            try {
+                current = classesIteratorFunction.apply(groupClassIds.get(whichGroup));
+            } catch (IOException e) {
+                Basic.caught(e);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public IReadBlock next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        countReads++;
+        group = groups.get(whichGroup);
+        return current.next();
+    }
+
+    @Override
+    public void remove() {
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * ClassReadBlockIterator.java Copyright (C) 2024 Daniel H. Huson
+ *
+ * (Some files contain contributions from other authors, who are then mentioned separately.)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package megan.data;
+
+import jloda.util.Basic;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * iterator over the reads of groups of classes, in the order of their locations in the file, so that the file is read in
+ * one sequential pass. The locations are added class by class and are then merged using a heap over the classes.
+ * The locations are held in pages of fixed size, requiring 8 bytes per location, so a selection of 100 million reads
+ * requires about 800 MB
+ * Daniel Huson, 10.2026
+ */
+public class ClassReadBlockIterator implements IClassReadBlockIterator {
+    private static final int PAGE_BITS = 16;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+    private final IReadBlockGetter readBlockGetter;
+
+    private long[][] pages = new long[16][];
+    private long numberOfLocations = 0;
+    private int[] segmentGroups = new int[16]; // a segment is a run of locations added consecutively for the same group
+    private long[] segmentStarts = new long[17];
+    private int numberOfSegments = 0;
+
+    private long[] cursors; // next location of each segment
+    private int[] heap; // segments ordered by the location at their cursor
+    private int heapSize;
+
+    private long countReads = 0;
+    private int group;
+    private long previousLocation = -1;
+    private IReadBlock previous;
+
+    /**
+     * constructor
+     */
+    public ClassReadBlockIterator(IReadBlockGetter readBlockGetter) {
+        this.readBlockGetter = readBlockGetter;
+    }
+
+    /**
+     * adds the location of a read of a class in the given group. All locations of a class must be added consecutively,
+     * and all locations must be added before iteration starts
+     */
+    public void add(int group, long location) {
+        if (numberOfSegments == 0 || segmentGroups[numberOfSegments - 1] != group) {
+            if (numberOfSegments == segmentGroups.length) {
+                segmentGroups = Arrays.copyOf(segmentGroups, 2 * numberOfSegments);
+                segmentStarts = Arrays.copyOf(segmentStarts, 2 * numberOfSegments + 1);
+            }
+            segmentGroups[numberOfSegments++] = group;
+        }
+        final int page = (int) (numberOfLocations >>> PAGE_BITS);
+        if (page == pages.length)
+            pages = Arrays.copyOf(pages, 2 * pages.length);
+        if (pages[page] == null)
+            pages[page] = new long[PAGE_SIZE];
+        pages[page][(int) (numberOfLocations & PAGE_MASK)] = location;
+        segmentStarts[numberOfSegments] = ++numberOfLocations;
+    }
+
+    private long get(long i) {
+        return pages[(int) (i >>> PAGE_BITS)][(int) (i & PAGE_MASK)];
+    }
+
+    private void set(long i, long location) {
+        pages[(int) (i >>> PAGE_BITS)][(int) (i & PAGE_MASK)] = location;
+    }
+
+    /**
+     * sorts the locations of a segment, unless they are already sorted, as is usually the case
+     */
+    private void sortSegment(int s) {
+        final long start = segmentStarts[s];
+        final long end = segmentStarts[s + 1];
+        for (long i = start + 1; i < end; i++) {
+            if (get(i - 1) > get(i)) {
+                final long[] array = new long[(int) (end - start)];
+                for (int j = 0; j < array.length; j++)
+                    array[j] = get(start + j);
+                Arrays.sort(array);
+                for (int j = 0; j < array.length; j++)
+                    set(start + j, array[j]);
+                return;
+            }
+        }
+    }
+
+    /**
+     * sorts the locations of each segment and sets up the heap
+     */
+    private void setup() {
+        cursors = new long[numberOfSegments];
+        heap = new int[numberOfSegments];
+        for (int s = 0; s < numberOfSegments; s++) {
+            sortSegment(s);
+            cursors[s] = segmentStarts[s];
+            if (cursors[s] < segmentStarts[s + 1])
+                heap[heapSize++] = s;
+        }
+        for (int i = heapSize / 2 - 1; i >= 0; i--)
+            siftDown(i);
+    }
+
+    private void siftDown(int i) {
+        final int s = heap[i];
+        final long location = get(cursors[s]);
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= heapSize)
+                break;
+            if (child + 1 < heapSize && get(cursors[heap[child + 1]]) < get(cursors[heap[child]]))
+                child++;
+            if (get(cursors[heap[child]]) >= location)
+                break;
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = s;
+    }
+
+    @Override
+    public int getGroup() {
+        return group;
+    }
+
+    @Override
+    public boolean isReadsConsecutive() {
+        return true;
+    }
+
+    @Override
+    public String getStats() {
+        return "Reads: " + countReads;
+    }
+
+    @Override
+    public void close() {
+        readBlockGetter.close();
+    }
+
+    @Override
+    public long getMaximumProgress() {
+        return numberOfLocations;
+    }
+
+    @Override
+    public long getProgress() {
+        return countReads;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (heap == null)
+            setup();
+        return heapSize > 0;
+    }
+
+    @Override
+    public IReadBlock next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        final int s = heap[0];
+        final long location = get(cursors[s]++);
+        if (cursors[s] == segmentStarts[s + 1])
+            heap[0] = heap[--heapSize];
+        if (heapSize > 0)
+            siftDown(0);
+
+        countReads++;
+        group = segmentGroups[s];
+        if (location != previousLocation) { // a read assigned to several classes is only fetched once
+            try {
+                previous = readBlockGetter.getReadBlock(location);
+            } catch (IOException e) {
+                Basic.caught(e);
+                previous = null;
+            }
+            previousLocation = location;
+        }
+        return previous;
+    }
+
+    @Override
+    public void remove() {
+    }
+}
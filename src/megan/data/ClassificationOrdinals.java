@@ -0,0 +1,91 @@
+/*
+ * ClassificationOrdinals.java Copyright (C) 2024 Daniel H. Huson
+ *
+ * (Some files contain contributions from other authors, who are then mentioned separately.)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package megan.data;
+
+import megan.classification.Classification;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * registry that assigns a small, fixed ordinal to each classification name, so that match blocks can store
+ * classification ids in an int array rather than a map. Ordinals are never reused, taxonomy always has ordinal 0.
+ * Look up the ordinals once per file or algorithm and then use IMatchBlock.getId(int).
+ * Names are looked up without locking: registering a name publishes a new, immutable copy of the table
+ * Daniel Huson, 10.2026
+ */
+public class ClassificationOrdinals {
+    public static final int TAXONOMY = 0;
+
+    private static final ConcurrentHashMap<String, Integer> name2ordinal = new ConcurrentHashMap<>();
+    private static final Object sync = new Object();
+    private static volatile String[] ordinal2name = new String[0];
+
+    static {
+        get(Classification.Taxonomy);
+    }
+
+    /**
+     * gets the ordinal for a classification name, registering the name, if it is new
+     *
+     * @return ordinal
+     */
+    public static int get(String cName) {
+        final Integer ordinal = name2ordinal.get(cName);
+        if (ordinal != null)
+            return ordinal;
+        synchronized (sync) {
+            return name2ordinal.computeIfAbsent(cName, k -> {
+                final String[] table = Arrays.copyOf(ordinal2name, ordinal2name.length + 1);
+                table[table.length - 1] = k;
+                ordinal2name = table;
+                return table.length - 1;
+            });
+        }
+    }
+
+    /**
+     * gets the ordinals for an array of classification names
+     *
+     * @return ordinals, in the same order
+     */
+    public static int[] get(String[] cNames) {
+        final int[] ordinals = new int[cNames.length];
+        for (int i = 0; i < cNames.length; i++)
+            ordinals[i] = get(cNames[i]);
+        return ordinals;
+    }
+
+    /**
+     * gets the classification name for an ordinal
+     *
+     * @return name or null, if ordinal unknown
+     */
+    public static String getName(int ordinal) {
+        final String[] table = ordinal2name;
+        return ordinal >= 0 && ordinal < table.length ? table[ordinal] : null;
+    }
+
+    /**
+     * number of ordinals assigned so far
+     */
+    public static int size() {
+        return ordinal2name.length;
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * IClassReadBlockIterator.java Copyright (C) 2024 Daniel H. Huson
+ *
+ * (Some files contain contributions from other authors, who are then mentioned separately.)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package megan.data;
+
+/**
+ * iterator over the reads of a set of classes that also reports the group that the class of each read belongs to.
+ * A read that is assigned to more than one of the classes is returned once per class. Either all occurrences of a read are
+ * returned consecutively, see isReadsConsecutive(), or all reads of a group are returned consecutively
+ * Daniel Huson, 10.2026
+ */
+public interface IClassReadBlockIterator extends IReadBlockIterator {
+    /**
+     * gets the group of the read most recently returned by next(). A read that is assigned to more than one of the
+     * classes is returned once per class
+     *
+     * @return group
+     */
+    int getGroup();
+
+    /**
+     * are all occurrences of a read returned consecutively? If not, all reads of a group are returned consecutively,
+     * and a read may occur more than once in the same group, but not consecutively
+     *
+     * @return true, if all occurrences of a read are returned consecutively
+     */
+    default boolean isReadsConsecutive() {
+        return false;
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * IClassificationUpdates.java Copyright (C) 2024 Daniel H. Huson
+ *
+ * (Some files contain contributions from other authors, who are then mentioned separately.)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package megan.data;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * the class assignments of all reads computed during binning, to be saved to a file
+ * Daniel Huson, 10.2026
+ */
+public interface IClassificationUpdates {
+    /**
+     * add the assignment of a read
+     */
+    void addItem(long readUid, float readWeight, int[] classIds) throws IOException;
+
+    /**
+     * gets the mapping of class ids to sizes for a given classification
+     *
+     * @return class-id to size map
+     */
+    Map<Integer, Float> getClassIdToWeightMap(int classificationId);
+
+    /**
+     * gets the set of class ids defined for a given classification
+     */
+    Set<Integer> getClassIds(int classificationId);
+
+    /**
+     * get the weighted size of a class for a given classification
+     */
+    float getWeight(int classificationId, int classId);
+
+    /**
+     * append the src class to the target class
+     */
+    void appendClass(int classificationId, int srcClassId, int tarClassId);
+}
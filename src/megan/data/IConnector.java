@@ -22,9 +22,11 @@ import jloda.util.Single;
 import jloda.util.progress.ProgressListener;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
 /**
  * connection to RMA file, remote RMA file or database
@@ -64,6 +66,17 @@ public interface IConnector {
 	 */
     IReadBlockIterator getAllReadsIterator(float minScore, float maxExpected, boolean wantReadSequence, boolean wantMatches) throws IOException;
 
+    /**
+     * get iterators over disjoint ranges of reads that together cover all reads, so that the reads can be processed in parallel.
+     * The default implementation returns a single iterator over all reads
+     *
+     * @param numberOfParts desired number of iterators, fewer may be returned
+     * @return iterators, each to be used by one thread only
+     */
+    default IReadBlockIterator[] getAllReadsIterators(int numberOfParts, float minScore, float maxExpected, boolean wantReadSequence, boolean wantMatches) throws IOException {
+        return new IReadBlockIterator[]{getAllReadsIterator(minScore, maxExpected, wantReadSequence, wantMatches)};
+    }
+
     /**
      * get getLetterCodeIterator over all reads for given classification and classId. If minScore=0 and topPercent=0, no filtering
      *
@@ -80,6 +93,34 @@ public interface IConnector {
     IReadBlockIterator getReadsIteratorForListOfClassIds(String classification, Collection<Integer> classIds, float minScore,
                                                          float maxExpected, boolean wantReadSequence, boolean wantMatches) throws IOException;
 
+    /**
+     * get iterator over all reads for given classification and a collection of classids.
+     * Connectors whose iterators may return the same read block object for each read must override this
+     *
+     * @param reuseReadBlocks if false, each read block returned stays valid after the next call, so that it can be queued
+     * @return iterator over reads filtered by given parameters
+     */
+    default IReadBlockIterator getReadsIteratorForListOfClassIds(String classification, Collection<Integer> classIds, float minScore,
+                                                                 float maxExpected, boolean wantReadSequence, boolean wantMatches, boolean reuseReadBlocks) throws IOException {
+        return getReadsIteratorForListOfClassIds(classification, classIds, minScore, maxExpected, wantReadSequence, wantMatches);
+    }
+
+    /**
+     * get an iterator over the reads of the given classes that reports the group of each read. Connectors that can, return the
+     * reads in the order of their location in the file, so that all groups are processed in one sequential pass.
+     * The default implementation visits one group after the other, using one reads iterator per group
+     *
+     * @param class2group maps each class of interest to the non-negative group that its reads are reported for
+     */
+    default IClassReadBlockIterator getClassReadsIterator(String classification, Map<Integer, Integer> class2group, float minScore,
+                                                          float maxExpected, boolean wantReadSequence, boolean wantMatches) throws IOException {
+        final Map<Integer, List<Integer>> group2classIds = new TreeMap<>();
+        for (Map.Entry<Integer, Integer> entry : class2group.entrySet()) {
+            group2classIds.computeIfAbsent(entry.getValue(), k -> new ArrayList<>()).add(entry.getKey());
+        }
+        return new ClassByClassReadBlockIterator(group2classIds, classIds -> getReadsIteratorForListOfClassIds(classification, classIds, minScore, maxExpected, wantReadSequence, wantMatches));
+    }
+
     /**
      * gets a read block accessor
      *
@@ -124,6 +165,17 @@ public interface IConnector {
 	 */
     void updateClassifications(final String[] classificationNames, final List<UpdateItem> updateItems, ProgressListener progressListener) throws IOException;
 
+    /**
+     * updates the classId values using updates that were written to a file.
+     * The default implementation reads all updates into memory
+     *
+     * @param classificationNames names of classifications in the order that their values will appear in
+     * @param updateItems         rescan items written to a file
+     */
+    default void updateClassifications(final String[] classificationNames, final UpdateItemFile updateItems, ProgressListener progressListener) throws IOException {
+        updateClassifications(classificationNames, updateItems.toUpdateItemList(), progressListener);
+    }
+
     /**
      * get all reads that match the given expression
      *
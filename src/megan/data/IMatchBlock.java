@@ -18,6 +18,10 @@
  */
 package megan.data;
 
+import megan.util.BlastParsingUtils;
+
+import java.io.IOException;
+
 /**
  * matchblock interface
  * Daniel Huson, 4.2010
@@ -113,6 +117,23 @@ public interface IMatchBlock {
 
     int[] getIds(String[] cNames);
 
+    /**
+     * get the id for a classification, addressed by its ordinal, see ClassificationOrdinals
+     *
+     * @return id or 0
+     */
+    default int getId(int classificationOrdinal) {
+        final String cName = ClassificationOrdinals.getName(classificationOrdinal);
+        return cName != null ? getId(cName) : 0;
+    }
+
+    /**
+     * set the id for a classification, addressed by its ordinal, see ClassificationOrdinals
+     */
+    default void setId(int classificationOrdinal, int id) {
+        setId(ClassificationOrdinals.getName(classificationOrdinal), id);
+    }
+
     /**
      * get the start position of the alignment in the query
      *
@@ -133,4 +154,35 @@ public interface IMatchBlock {
      * @return reference sequence length
      */
     int getRefLength();
+
+    /**
+     * get the name of the reference sequence. The default implementation returns the first word of the text
+     *
+     * @return reference name
+     */
+    default String getRefName() {
+        return getTextFirstWord();
+    }
+
+    /**
+     * get the start position of the alignment in the reference. The default implementation parses the text
+     *
+     * @return reference start position
+     */
+    default int getAlignedSubjectStart() {
+        return BlastParsingUtils.getStartSubject(getText());
+    }
+
+    /**
+     * get the end position of the alignment in the reference. The default implementation parses the text
+     *
+     * @return reference end position
+     */
+    default int getAlignedSubjectEnd() {
+        try {
+            return BlastParsingUtils.getEndSubject(getText());
+        } catch (IOException e) {
+            return 0;
+        }
+    }
 }
@@ -57,6 +57,16 @@ public class MatchBlockWithLocationAdapter implements IMatchBlock, IMatchBlockWi
         matchBlock.setId(cName, id);
     }
 
+    @Override
+    public int getId(int classificationOrdinal) {
+        return matchBlock.getId(classificationOrdinal);
+    }
+
+    @Override
+    public void setId(int classificationOrdinal, int id) {
+        matchBlock.setId(classificationOrdinal, id);
+    }
+
     /**
      * gets all defined ids
      *
@@ -153,5 +163,19 @@ public class MatchBlockWithLocationAdapter implements IMatchBlock, IMatchBlockWi
     public int getRefLength() {
         return matchBlock.getRefLength();
     }
-}
 
+    @Override
+    public String getRefName() {
+        return matchBlock.getRefName();
+    }
+
+    @Override
+    public int getAlignedSubjectStart() {
+        return matchBlock.getAlignedSubjectStart();
+    }
+
+    @Override
+    public int getAlignedSubjectEnd() {
+        return matchBlock.getAlignedSubjectEnd();
+    }
+}
@@ -0,0 +1,293 @@
+/*
+ * ReadBlockCache.java Copyright (C) 2024 Daniel H. Huson
+ *
+ * (Some files contain contributions from other authors, who are then mentioned separately.)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package megan.data;
+
+import jloda.swing.util.ProgramProperties;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Objects;
+import java.util.function.UnaryOperator;
+
+/**
+ * memory-bounded cache of decoded read blocks, shared by all connectors that opt into it.
+ * Read blocks are keyed by file, uid, score thresholds and whether sequences and matches were requested.
+ * The least recently used read blocks are evicted when the estimated size of all cached read blocks exceeds the limit.
+ * Cached read blocks are never handed out, each call returns a copy, so callers may modify the read blocks that they get
+ * Daniel Huson, 10.2026
+ */
+public class ReadBlockCache {
+    public static final String USE_READ_BLOCK_CACHE = "UseReadBlockCache";
+    public static final String READ_BLOCK_CACHE_MB = "ReadBlockCacheMB";
+
+    private static final int BYTES_PER_READ = 128;
+    private static final int BYTES_PER_MATCH = 96;
+
+    private static ReadBlockCache instance;
+
+    private final LinkedHashMap<Key, Entry> key2entry = new LinkedHashMap<>(1024, 0.75f, true);
+    private long maxBytes;
+    private long bytes = 0;
+
+    /**
+     * constructor
+     *
+     * @param maxBytes maximum estimated size of all cached read blocks
+     */
+    public ReadBlockCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * the cache shared by all connectors
+     */
+    public static synchronized ReadBlockCache getInstance() {
+        if (instance == null)
+            instance = new ReadBlockCache(1024L * 1024L * ProgramProperties.get(READ_BLOCK_CACHE_MB, 256));
+        return instance;
+    }
+
+    /**
+     * do connectors use the shared cache?
+     */
+    public static boolean isEnabled() {
+        return ProgramProperties.get(USE_READ_BLOCK_CACHE, false);
+    }
+
+    /**
+     * gets a read block getter that first looks in the cache. The underlying getter is only created on the first miss.
+     * The underlying getter must return a new read block object for each call
+     *
+     * @param longReads whether the file is read in long-read mode, which changes the read blocks returned
+     * @param factory   creates the underlying getter
+     * @param copier    creates a copy of a read block returned by the underlying getter, including its match blocks
+     * @return caching getter
+     */
+    public IReadBlockGetter getReadBlockGetter(String fileName, boolean longReads, float minScore, float maxExpected, boolean wantReadSequence, boolean wantMatches, GetterFactory factory, UnaryOperator<IReadBlock> copier) {
+        final var file = new File(fileName);
+        final var source = new Source(file.getPath(), file.lastModified(), longReads, minScore, maxExpected, wantReadSequence, wantMatches);
+        return new CachingReadBlockGetter(source, factory, copier);
+    }
+
+    /**
+     * gets a cached read block
+     *
+     * @return read block or null
+     */
+    private synchronized IReadBlock get(Key key) {
+        final var entry = key2entry.get(key);
+        return entry != null ? entry.readBlock : null;
+    }
+
+    /**
+     * adds a read block, evicting least recently used read blocks as necessary. The read block must not be used elsewhere
+     *
+     * @return true, if added
+     */
+    private boolean put(Key key, IReadBlock readBlock) {
+        final var size = estimateSize(readBlock);
+        synchronized (this) {
+            if (size > maxBytes)
+                return false;
+            final var previous = key2entry.put(key, new Entry(readBlock, size));
+            if (previous != null)
+                bytes -= previous.size;
+            bytes += size;
+            evict();
+            return true;
+        }
+    }
+
+    private void evict() {
+        for (Iterator<Entry> it = key2entry.values().iterator(); bytes > maxBytes && it.hasNext(); ) {
+            bytes -= it.next().size;
+            it.remove();
+        }
+    }
+
+    public synchronized void clear() {
+        key2entry.clear();
+        bytes = 0;
+    }
+
+    public synchronized void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        evict();
+    }
+
+    public synchronized long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public synchronized int size() {
+        return key2entry.size();
+    }
+
+    /**
+     * estimates the number of bytes used by a read block from the lengths of its strings.
+     * The text of a match is computed lazily and is not requested here, instead the size of a match is estimated from the
+     * aligned part of the query, which stands for the query, midline and reference lines of the alignment
+     */
+    private static long estimateSize(IReadBlock readBlock) {
+        long size = BYTES_PER_READ + 2L * length(readBlock.getReadHeader()) + 2L * length(readBlock.getReadSequence());
+        for (var i = 0; i < readBlock.getNumberOfAvailableMatchBlocks(); i++) {
+            final var matchBlock = readBlock.getMatchBlock(i);
+            size += BYTES_PER_MATCH + 6L * (Math.abs(matchBlock.getAlignedQueryEnd() - matchBlock.getAlignedQueryStart()) + 1);
+        }
+        return size;
+    }
+
+    private static int length(String string) {
+        return string != null ? string.length() : 0;
+    }
+
+    /**
+     * creates a read block getter
+     */
+    public interface GetterFactory {
+        IReadBlockGetter create() throws IOException;
+    }
+
+    /**
+     * a file and the parameters used to read from it
+     */
+    private static class Source {
+        private final String path;
+        private final long lastModified;
+        private final boolean longReads;
+        private final float minScore;
+        private final float maxExpected;
+        private final boolean wantReadSequence;
+        private final boolean wantMatches;
+
+        Source(String path, long lastModified, boolean longReads, float minScore, float maxExpected, boolean wantReadSequence, boolean wantMatches) {
+            this.path = path;
+            this.lastModified = lastModified;
+            this.longReads = longReads;
+            this.minScore = minScore;
+            this.maxExpected = maxExpected;
+            this.wantReadSequence = wantReadSequence;
+            this.wantMatches = wantMatches;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (!(o instanceof Source that))
+                return false;
+            return lastModified == that.lastModified && longReads == that.longReads && Float.compare(minScore, that.minScore) == 0 && Float.compare(maxExpected, that.maxExpected) == 0
+                   && wantReadSequence == that.wantReadSequence && wantMatches == that.wantMatches && path.equals(that.path);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(path, lastModified, longReads, minScore, maxExpected, wantReadSequence, wantMatches);
+        }
+    }
+
+    private static class Key {
+        private final Source source;
+        private final long uid;
+
+        Key(Source source, long uid) {
+            this.source = source;
+            this.uid = uid;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key that && uid == that.uid && source.equals(that.source);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * source.hashCode() + Long.hashCode(uid);
+        }
+    }
+
+    private static class Entry {
+        private final IReadBlock readBlock;
+        private final long size;
+
+        Entry(IReadBlock readBlock, long size) {
+            this.readBlock = readBlock;
+            this.size = size;
+        }
+    }
+
+    /**
+     * read block getter that looks up read blocks in the cache before using the underlying getter
+     */
+    private class CachingReadBlockGetter implements IReadBlockGetter {
+        private final Source source;
+        private final GetterFactory factory;
+        private final UnaryOperator<IReadBlock> copier;
+        private IReadBlockGetter getter;
+
+        CachingReadBlockGetter(Source source, GetterFactory factory, UnaryOperator<IReadBlock> copier) {
+            this.source = source;
+            this.factory = factory;
+            this.copier = copier;
+        }
+
+        @Override
+        public IReadBlock getReadBlock(long uid) throws IOException {
+            if (uid == -1) // streaming, not cached
+                return getGetter().getReadBlock(uid);
+            final var key = new Key(source, uid);
+            final var cached = get(key);
+            if (cached != null)
+                return copier.apply(cached);
+            final var readBlock = getGetter().getReadBlock(uid);
+            if (readBlock != null && put(key, readBlock))
+                return copier.apply(readBlock);
+            return readBlock;
+        }
+
+        @Override
+        public void close() {
+            if (getter != null) {
+                getter.close();
+                getter = null;
+            }
+        }
+
+        @Override
+        public long getCount() {
+            try {
+                return getGetter().getCount();
+            } catch (IOException e) {
+                return 0;
+            }
+        }
+
+        private IReadBlockGetter getGetter() throws IOException {
+            if (getter == null)
+                getter = factory.create();
+            return getter;
+        }
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * UpdateItemFile.java Copyright (C) 2024 Daniel H. Huson
+ *
+ * (Some files contain contributions from other authors, who are then mentioned separately.)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package megan.data;
+
+import jloda.util.ListOfLongs;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * class assignments of all reads, written to a temporary file rather than kept in memory as update items.
+ * While reads are added, only the weights of the classes are kept in memory. Appending classes (as done by the min-support filter)
+ * only records the change. The read locations of all classes of one classification are then obtained by reading the file,
+ * in the same order as by {@link UpdateItemList}: in the order in which the reads were added, sorted for classes that other classes were appended to.
+ * Limit: the file is read once per classification, and the locations of all reads of one classification are held in memory (8 bytes per read)
+ * Daniel Huson, 10.2026
+ */
+public class UpdateItemFile implements IClassificationUpdates, Closeable {
+    private final int numberOfClassifications;
+    private final File file;
+    private DataOutputStream outs;
+    private long numberOfItems = 0;
+
+    private final Map<Integer, Float>[] weights;
+    private final Map<Integer, Integer>[] original2current; // class that the reads of an original class now belong to
+    private final Map<Integer, ArrayList<Integer>>[] current2originals; // original classes whose reads now belong to a class
+
+    /**
+     * constructor
+     *
+     * @param tempDirectory directory for the temporary file, or null for default temporary directory
+     */
+    @SuppressWarnings("unchecked")
+    public UpdateItemFile(int numberOfClassifications, File tempDirectory) throws IOException {
+        this.numberOfClassifications = numberOfClassifications;
+        file = File.createTempFile("megan-binning-", ".tmp", tempDirectory);
+        file.deleteOnExit();
+        outs = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 20));
+
+        weights = new HashMap[numberOfClassifications];
+        original2current = new HashMap[numberOfClassifications];
+        current2originals = new HashMap[numberOfClassifications];
+        for (int i = 0; i < numberOfClassifications; i++) {
+            weights[i] = new HashMap<>(10000);
+            original2current[i] = new HashMap<>();
+            current2originals[i] = new HashMap<>();
+        }
+    }
+
+    /**
+     * add an item
+     */
+    public void addItem(final long readUid, float readWeight, final int[] classIds) throws IOException {
+        if (classIds.length != numberOfClassifications)
+            throw new IOException("classIds has wrong length: " + classIds.length + ", should be: " + numberOfClassifications);
+        if (outs == null)
+            throw new IOException("UpdateItemFile: already read");
+
+        if (readWeight == 0)
+            readWeight = 1;
+
+        outs.writeLong(readUid);
+        outs.writeFloat(readWeight);
+        for (int i = 0; i < numberOfClassifications; i++) {
+            final int id = classIds[i];
+            outs.writeInt(id);
+            if (id != 0)
+                weights[i].merge(id, readWeight, Float::sum);
+        }
+        numberOfItems++;
+    }
+
+    public Map<Integer, Float> getClassIdToWeightMap(int classificationId) {
+        return weights[classificationId];
+    }
+
+    public Set<Integer> getClassIds(int classificationId) {
+        return weights[classificationId].keySet();
+    }
+
+    public float getWeight(int classificationId, int classId) {
+        return Objects.requireNonNullElse(weights[classificationId].get(classId), 0f);
+    }
+
+    /**
+     * append the src class to the target class
+     */
+    public void appendClass(int classificationId, int srcClassId, int tarClassId) {
+        final float newSize = getWeight(classificationId, srcClassId) + getWeight(classificationId, tarClassId);
+
+        if (newSize > 0) {
+            if (!weights[classificationId].containsKey(srcClassId)) {
+                System.err.println("Warning: srcClassId=" + srcClassId + ", tarClassId=" + tarClassId + " firstItemSrc=null");
+                return;
+            }
+            final ArrayList<Integer> srcOriginals = removeOriginals(classificationId, srcClassId);
+            ArrayList<Integer> tarOriginals = current2originals[classificationId].get(tarClassId);
+            if (tarOriginals == null) {
+                tarOriginals = removeOriginals(classificationId, tarClassId);
+                current2originals[classificationId].put(tarClassId, tarOriginals);
+            }
+            for (Integer original : srcOriginals) {
+                original2current[classificationId].put(original, tarClassId);
+            }
+            tarOriginals.addAll(srcOriginals);
+
+            weights[classificationId].put(tarClassId, newSize);
+            weights[classificationId].remove(srcClassId);
+        }
+    }
+
+    /**
+     * removes and returns the original classes whose reads currently belong to the given class
+     */
+    private ArrayList<Integer> removeOriginals(int classificationId, int classId) {
+        ArrayList<Integer> originals = current2originals[classificationId].remove(classId);
+        if (originals == null) {
+            originals = new ArrayList<>();
+            if (!original2current[classificationId].containsKey(classId)) { // reads of the original class are still in the class
+                original2current[classificationId].put(classId, classId);
+                originals.add(classId);
+            }
+        }
+        return originals;
+    }
+
+    /**
+     * gets the read locations of all classes of a classification, by reading the file.
+     * Holds the locations of all reads assigned in the classification in memory
+     *
+     * @return class id to locations
+     */
+    public Map<Integer, ListOfLongs> getClassId2Locations(int classificationId) throws IOException {
+        if (outs != null) {
+            outs.close();
+            outs = null;
+        }
+
+        final Map<Integer, ListOfLongs> classId2locations = new HashMap<>(2 * weights[classificationId].size());
+        for (Integer classId : weights[classificationId].keySet()) {
+            classId2locations.put(classId, new ListOfLongs());
+        }
+        final Map<Integer, Integer> original2current = this.original2current[classificationId];
+
+        try (DataInputStream ins = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 20))) {
+            for (long i = 0; i < numberOfItems; i++) {
+                final long readUid = ins.readLong();
+                ins.skipBytes(4 + 4 * classificationId);
+                final int id = ins.readInt();
+                ins.skipBytes(4 * (numberOfClassifications - classificationId - 1));
+                if (id != 0) {
+                    final ListOfLongs locations = classId2locations.get(original2current.getOrDefault(id, id));
+                    if (locations != null)
+                        locations.add(readUid);
+                }
+            }
+        }
+
+        // UpdateItemList sorts the reads of a class by location when another class is appended to it
+        for (Integer classId : current2originals[classificationId].keySet()) {
+            final ListOfLongs locations = classId2locations.get(classId);
+            if (locations != null && locations.size() > 1) {
+                final long[] sorted = new long[locations.size()];
+                for (int i = 0; i < sorted.length; i++)
+                    sorted[i] = locations.get(i);
+                Arrays.sort(sorted);
+                locations.clear();
+                for (long location : sorted)
+                    locations.add(location);
+            }
+        }
+        return classId2locations;
+    }
+
+    /**
+     * reads all items into an update item list, for connectors that can only be updated from such a list
+     *
+     * @return update item list
+     */
+    public UpdateItemList toUpdateItemList() throws IOException {
+        if (outs != null) {
+            outs.close();
+            outs = null;
+        }
+        final UpdateItemList updateItemList = new UpdateItemList(numberOfClassifications);
+        final int[] classIds = new int[numberOfClassifications];
+        try (DataInputStream ins = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 20))) {
+            for (long i = 0; i < numberOfItems; i++) {
+                final long readUid = ins.readLong();
+                final float readWeight = ins.readFloat();
+                for (int c = 0; c < numberOfClassifications; c++) {
+                    final int id = ins.readInt();
+                    classIds[c] = original2current[c].getOrDefault(id, id);
+                }
+                updateItemList.addItem(readUid, readWeight, classIds);
+            }
+        }
+        return updateItemList;
+    }
+
+    public long getNumberOfItems() {
+        return numberOfItems;
+    }
+
+    /**
+     * deletes the temporary file
+     */
+    public void close() throws IOException {
+        if (outs != null) {
+            outs.close();
+            outs = null;
+        }
+        if (file.exists() && !file.delete())
+            System.err.println("Failed to delete temporary file: " + file);
+    }
+}
@@ -25,7 +25,7 @@ import java.util.*;
  * list of necessary updates to RMA file
  * Daniel Huson, 1.2009
  */
-public class UpdateItemList extends LinkedList<UpdateItem> {
+public class UpdateItemList extends LinkedList<UpdateItem> implements IClassificationUpdates {
     private final int numberOfClassifications;
     private final Map<Integer, UpdateItem>[] first;
     private final Map<Integer, UpdateItem>[] last;
@@ -0,0 +1,154 @@
+package megan.data.merge;
+
+import megan.classification.util.Tools;
+import megan.data.IClassificationBlock;
+
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * class id to read count and weighted read count, for summing the classification blocks of a bundle.
+ * Uses open addressing on primitive arrays, so that the totals of hundreds of files can be added up without boxing
+ * Daniel Huson, 10.2026
+ */
+class ClassTotals {
+	private int[] keys;
+	private boolean[] used;
+	private int[] sums;
+	private float[] weights;
+	private int mask;
+	private int size;
+
+	ClassTotals() {
+		allocate(64);
+	}
+
+	/**
+	 * adds all sums and weighted sums of a classification block
+	 */
+	void add(IClassificationBlock classificationBlock) {
+		for(var id:classificationBlock.getKeySet()) {
+			add(id,classificationBlock.getSum(id),classificationBlock.getWeightedSum(id));
+		}
+	}
+
+	/**
+	 * adds all totals of another map
+	 */
+	void add(ClassTotals other) {
+		for(var i=0;i<other.keys.length;i++) {
+			if(other.used[i])
+				add(other.keys[i],other.sums[i],other.weights[i]);
+		}
+	}
+
+	void add(int id, int sum, float weight) {
+		var i=find(id);
+		if(!used[i]) {
+			if(2*(size+1)>keys.length) {
+				rehash(2*keys.length);
+				i=find(id);
+			}
+			used[i]=true;
+			keys[i]=id;
+			size++;
+		}
+		sums[i]+=sum;
+		weights[i]+=weight;
+	}
+
+	int getSum(int id) {
+		var i=find(id);
+		return used[i]?sums[i]:0;
+	}
+
+	float getWeightedSum(int id) {
+		var i=find(id);
+		return used[i]?weights[i]:0f;
+	}
+
+	int size() {
+		return size;
+	}
+
+	/**
+	 * read-only view of all class ids
+	 */
+	Set<Integer> keySet() {
+		return new AbstractSet<>() {
+			@Override
+			public Iterator<Integer> iterator() {
+				return new Iterator<>() {
+					private int i=advance(0);
+
+					private int advance(int i) {
+						while(i<keys.length && !used[i])
+							i++;
+						return i;
+					}
+
+					@Override
+					public boolean hasNext() {
+						return i<keys.length;
+					}
+
+					@Override
+					public Integer next() {
+						if(i>=keys.length)
+							throw new NoSuchElementException();
+						var id=keys[i];
+						i=advance(i+1);
+						return id;
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+
+			@Override
+			public boolean contains(Object o) {
+				return o instanceof Integer id && used[find(id)];
+			}
+		};
+	}
+
+	/**
+	 * slot of the given id, or of the free slot at which it would be inserted
+	 */
+	private int find(int id) {
+		var i=Tools.phiMix(id)&mask;
+		while(used[i] && keys[i]!=id)
+			i=(i+1)&mask;
+		return i;
+	}
+
+	private void allocate(int capacity) {
+		keys=new int[capacity];
+		used=new boolean[capacity];
+		sums=new int[capacity];
+		weights=new float[capacity];
+		mask=capacity-1;
+	}
+
+	private void rehash(int capacity) {
+		final var oldKeys=keys;
+		final var oldUsed=used;
+		final var oldSums=sums;
+		final var oldWeights=weights;
+		allocate(capacity);
+		for(var j=0;j<oldKeys.length;j++) {
+			if(oldUsed[j]) {
+				var i=find(oldKeys[j]);
+				used[i]=true;
+				keys[i]=oldKeys[j];
+				sums[i]=oldSums[j];
+				weights[i]=oldWeights[j];
+			}
+		}
+	}
+}
@@ -0,0 +1,189 @@
+package megan.data.merge;
+
+import jloda.fx.util.ProgramExecutorService;
+import jloda.util.FunctionWithIOException;
+import megan.core.MeganFile;
+import megan.data.IReadBlock;
+import megan.data.IReadBlockIterator;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * iterates over all reads in a bundle, decoding several files concurrently.
+ * Worker threads take the files in order and put their reads into bounded queues. If ordered, there is one queue per file
+ * and the reads are returned file by file, exactly as by MergeReadIterator. Otherwise, all workers share one queue and the reads
+ * of different files are interleaved. The workers are daemon threads taken from a pool shared by all instances, and
+ * they stop once the iterator is closed, even if they are waiting for space in a full queue.
+ * The reads are queued, so the file iterators must return a new read block object for each read.
+ * If a file cannot be read, the error is queued in place of the remaining reads of the file and then thrown by hasNext()
+ * Daniel Huson, 10.2026
+ */
+public class ConcurrentMergeReadIterator implements IReadBlockIterator {
+	public static final int DEFAULT_QUEUE_SIZE=1000;
+
+	private static final Object SENTINEL=new Object(); // end of a file if ordered, end of all files otherwise
+	private static final long OFFER_TIMEOUT_MILLISECONDS=100; // how often a waiting worker checks whether the iterator has been closed
+
+	private static final ExecutorService service=Executors.newCachedThreadPool(runnable->{
+		var thread=new Thread(runnable,"ConcurrentMergeReadIterator");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final boolean ordered;
+	private final int numberOfFiles;
+	private final BlockingQueue<Object>[] queues;
+	private final CountDownLatch workersDone;
+	private final AtomicInteger nextFile=new AtomicInteger();
+	private final AtomicInteger filesDone=new AtomicInteger();
+	private volatile boolean closed=false;
+
+	private int whichQueue=0;
+	private IReadBlock next;
+	private boolean done=false;
+	private long countReads=0;
+
+	public ConcurrentMergeReadIterator(List<MeganFile> files, FunctionWithIOException<MeganFile,IReadBlockIterator> fileIteratorFunction, boolean ordered) {
+		this(files,fileIteratorFunction,ordered,ProgramExecutorService.getNumberOfCoresToUse(),DEFAULT_QUEUE_SIZE);
+	}
+
+	/**
+	 * constructor
+	 *
+	 * @param ordered         return reads in file order, or in the order in which they are decoded
+	 * @param numberOfThreads maximum number of files decoded at the same time
+	 * @param queueSize       maximum number of reads buffered per worker
+	 */
+	public ConcurrentMergeReadIterator(List<MeganFile> files, FunctionWithIOException<MeganFile,IReadBlockIterator> fileIteratorFunction, boolean ordered, int numberOfThreads, int queueSize) {
+		this.ordered=ordered;
+		this.numberOfFiles=files.size();
+		numberOfThreads=Math.max(1,Math.min(numberOfThreads,numberOfFiles));
+
+		queues=new BlockingQueue[ordered?numberOfFiles:1];
+		for(var i=0;i<queues.length;i++) {
+			queues[i]=(ordered?new LinkedBlockingQueue<>(queueSize):new ArrayBlockingQueue<>(numberOfThreads*queueSize));
+		}
+		if(numberOfFiles==0) {
+			done=true;
+			workersDone=new CountDownLatch(0);
+			return;
+		}
+
+		final var runningWorkers=new AtomicInteger(numberOfThreads);
+		workersDone=new CountDownLatch(numberOfThreads);
+		for(var t=0;t<numberOfThreads;t++) {
+			service.submit(()->{
+				try {
+					while(!closed) {
+						final var f=nextFile.getAndIncrement();
+						if(f>=numberOfFiles)
+							break;
+						final var queue=queues[ordered?f:0];
+						try(var it=fileIteratorFunction.apply(files.get(f))) {
+							while(it!=null && !closed && it.hasNext()) {
+								var readBlock=it.next();
+								if(readBlock!=null)
+									put(queue,readBlock);
+							}
+						} catch (IOException ex) {
+							put(queue,new Failure(new UncheckedIOException("Error reading file: "+files.get(f).getFileName(),ex)));
+							break;
+						} catch (RuntimeException ex) {
+							put(queue,new Failure(ex));
+							break;
+						}
+						filesDone.incrementAndGet();
+						if(ordered)
+							put(queue,SENTINEL);
+					}
+					if(!ordered && runningWorkers.decrementAndGet()==0)
+						put(queues[0],SENTINEL);
+				} catch (InterruptedException ignored) {
+				} finally {
+					workersDone.countDown();
+				}
+			});
+		}
+	}
+
+	/**
+	 * puts an item into a queue, waiting for space until the iterator is closed
+	 *
+	 * @return true, if put, false, if closed
+	 */
+	private boolean put(BlockingQueue<Object> queue,Object item) throws InterruptedException {
+		while(!closed) {
+			if(queue.offer(item,OFFER_TIMEOUT_MILLISECONDS,TimeUnit.MILLISECONDS))
+				return true;
+		}
+		return false;
+	}
+
+	private record Failure(RuntimeException exception) {
+	}
+
+	@Override
+	public void close() throws IOException {
+		closed=true;
+		try {
+			workersDone.await(1,TimeUnit.MINUTES);
+		} catch (InterruptedException ignored) {
+		}
+		done=true;
+		next=null;
+	}
+
+	@Override
+	public long getMaximumProgress() {
+		return numberOfFiles;
+	}
+
+	@Override
+	public long getProgress() {
+		return filesDone.get();
+	}
+
+	@Override
+	public String getStats() {
+		return "Reads: " + countReads;
+	}
+
+	@Override
+	public boolean hasNext() {
+		if(next!=null)
+			return true;
+		try {
+			while(!done) {
+				var item=queues[whichQueue].take();
+				if(item instanceof Failure failure) {
+					close();
+					throw failure.exception();
+				}
+				if(item!=SENTINEL) {
+					next=(IReadBlock)item;
+					return true;
+				}
+				if(!ordered || ++whichQueue==numberOfFiles)
+					done=true;
+			}
+		} catch (InterruptedException | IOException e) {
+			done=true;
+		}
+		return false;
+	}
+
+	@Override
+	public IReadBlock next() {
+		if(!hasNext())
+			throw new NoSuchElementException();
+		var result=next;
+		next=null;
+		countReads++;
+		return result;
+	}
+}
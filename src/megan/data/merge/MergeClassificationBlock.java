@@ -8,8 +8,7 @@ import java.util.*;
 
 public class MergeClassificationBlock implements IClassificationBlock {
 	private final ArrayList<MeganFile> files=new ArrayList<>();
-	private  Map<Integer, Integer> id2sum;
-	private  Map<Integer, Float> id2weight;
+	private volatile ClassTotals totals;
 	private String classificationName;
 
 	public MergeClassificationBlock(String classificationName, Collection<MeganFile> files0) {
@@ -17,21 +16,28 @@ public class MergeClassificationBlock implements IClassificationBlock {
 		files.addAll(files0);
 	}
 
-	@Override
-	public int getSum(Integer key) {
-		if(id2sum==null) {
-			id2sum=new HashMap<>();
-			for(var file:files) {
-				try {
-					var classificationBlock = file.getConnector().getClassificationBlock(classificationName);
-					for(var a:classificationBlock.getKeySet()) {
-						id2sum.put(a,id2sum.getOrDefault(a,0)+classificationBlock.getSum(a));
-					}
-				} catch (IOException ignored) {
+	/**
+	 * sums the classification blocks of all files, reading the files in parallel
+	 */
+	private ClassTotals getTotals() {
+		if(totals==null) {
+			synchronized (this) {
+				if(totals==null) {
+					totals=files.parallelStream().collect(ClassTotals::new, (sum, file) -> {
+						try {
+							sum.add(file.getConnector().getClassificationBlock(classificationName));
+						} catch (IOException ignored) {
+						}
+					}, ClassTotals::add);
 				}
 			}
 		}
-		return id2sum.getOrDefault(key,0);
+		return totals;
+	}
+
+	@Override
+	public int getSum(Integer key) {
+		return getTotals().getSum(key);
 	}
 
 	@Override
@@ -41,19 +47,7 @@ public class MergeClassificationBlock implements IClassificationBlock {
 
 	@Override
 	public float getWeightedSum(Integer key) {
-		if(id2weight==null) {
-			id2weight=new HashMap<>();
-			for(var file:files) {
-				try {
-					var classificationBlock = file.getConnector().getClassificationBlock(classificationName);
-					for(var a:classificationBlock.getKeySet()) {
-						id2weight.put(a,id2weight.getOrDefault(a,0f)+classificationBlock.getWeightedSum(a));
-					}
-				} catch (IOException ignored) {
-				}
-			}
-		}
-		return id2weight.getOrDefault(key,0f);
+		return getTotals().getWeightedSum(key);
 	}
 
 	@Override
@@ -74,19 +68,6 @@ public class MergeClassificationBlock implements IClassificationBlock {
 
 	@Override
 	public Set<Integer> getKeySet() {
-
-		if(id2sum==null) {
-			id2sum=new HashMap<>();
-			for(var file:files) {
-				try {
-					var classificationBlock = file.getConnector().getClassificationBlock(classificationName);
-					for(var a:classificationBlock.getKeySet()) {
-						id2sum.put(a,id2sum.getOrDefault(a,0)+classificationBlock.getSum(a));
-					}
-				} catch (IOException ignored) {
-				}
-			}
-		}
-		return id2sum.keySet();
+		return getTotals().keySet();
 	}
 }
@@ -11,11 +11,13 @@ import megan.core.SampleAttributeTable;
 import megan.core.SyncArchiveAndDataTable;
 import megan.data.*;
 
+import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
+import java.util.stream.IntStream;
 
 /**
  * opens a set of DAA or RMA files as a merged summary file
@@ -77,30 +79,54 @@ public class MergeConnector implements IConnector {
 		numberOfReads=0;
 		numberOfMatches=0;
 
+		// open all files in parallel, then add them up in the given order
+		final var names=new ArrayList<>(inputFiles);
+		final var opened=new OpenedFile[names.size()];
+		final var exception=new Single<IOException>();
+		IntStream.range(0,names.size()).parallel().forEach(i->{
+			var meganFile = new MeganFile();
+			meganFile.setFileFromExistingFile(names.get(i), true);
+			if (meganFile.hasDataConnector()) {
+				try {
+					var connector=meganFile.getConnector();
+					var cNames=connector.getAllClassificationNames();
+					var sizes=new int[cNames.length];
+					for(var c=0;c<cNames.length;c++)
+						sizes[c]=connector.getClassificationSize(cNames[c]);
+					opened[i]=new OpenedFile(meganFile,connector.getNumberOfReads(),connector.getNumberOfMatches(),cNames,sizes);
+				} catch (IOException ex) {
+					exception.setIfCurrentValueIsNull(ex);
+				}
+			}
+		});
+		if(exception.isNotNull())
+			throw exception.get();
+
 		var classificationNames=new ArrayList<String>();
-		for(var name:inputFiles) {
-					var meganFile = new MeganFile();
-					meganFile.setFileFromExistingFile(name, true);
-					if (meganFile.hasDataConnector()) {
-						files.add(meganFile);
-						var connector=meganFile.getConnector();
-						numberOfReads+=connector.getNumberOfReads();
-						numberOfMatches+=connector.getNumberOfMatches();
-						for(var cName:connector.getAllClassificationNames()) {
-							var size=connector.getClassificationSize(cName);
-							classificationSizeMap.put(cName,classificationSizeMap.getOrDefault(cName,0)+size);
-							if(!classificationNames.contains(cName))
-								classificationNames.add(cName);
-						}
-					}
-					else {
-						System.err.println("Not a DAA or RMA file, skipped: "+name);
-					}
+		for(var i=0;i<names.size();i++) {
+			var file=opened[i];
+			if (file!=null) {
+				files.add(file.meganFile());
+				numberOfReads+=file.numberOfReads();
+				numberOfMatches+=file.numberOfMatches();
+				for(var c=0;c<file.classificationNames().length;c++) {
+					var cName=file.classificationNames()[c];
+					classificationSizeMap.put(cName,classificationSizeMap.getOrDefault(cName,0)+file.classificationSizes()[c]);
+					if(!classificationNames.contains(cName))
+						classificationNames.add(cName);
 				}
-			allClassificationNames=classificationNames.toArray(new String[0]);
-			if(files.size()==0)
-				throw new IOException("Bundle does not contain any existing DAA or RMA files: "+fileName);
+			}
+			else {
+				System.err.println("Not a DAA or RMA file, skipped: "+names.get(i));
+			}
 		}
+		allClassificationNames=classificationNames.toArray(new String[0]);
+		if(files.size()==0)
+			throw new IOException("Bundle does not contain any existing DAA or RMA files: "+fileName);
+	}
+
+	private record OpenedFile(MeganFile meganFile, int numberOfReads, int numberOfMatches, String[] classificationNames, int[] classificationSizes) {
+	}
 
 	@Override
 	public boolean isReadOnly() {
@@ -114,17 +140,54 @@ public class MergeConnector implements IConnector {
 
 	@Override
 	public IReadBlockIterator getAllReadsIterator(float minScore, float maxExpected, boolean wantReadSequence, boolean wantMatches) throws IOException {
-		return new MergeReadIterator(files, f->f.getConnector().getAllReadsIterator(minScore,maxExpected,wantReadSequence,wantMatches));
+		return new ConcurrentMergeReadIterator(files, f->f.getConnector().getAllReadsIterator(minScore,maxExpected,wantReadSequence,wantMatches),true);
+	}
+
+	/**
+	 * get iterators over disjoint sets of files, balanced by file size. If more parts than files are requested, each file is split into parts
+	 */
+	@Override
+	public IReadBlockIterator[] getAllReadsIterators(int numberOfParts, float minScore, float maxExpected, boolean wantReadSequence, boolean wantMatches) throws IOException {
+		numberOfParts=Math.max(1,numberOfParts);
+		if(numberOfParts>files.size()) {
+			var partsPerFile=(numberOfParts+files.size()-1)/files.size();
+			var iterators=new ArrayList<IReadBlockIterator>();
+			for(var file:files) {
+				iterators.addAll(Arrays.asList(file.getConnector().getAllReadsIterators(partsPerFile,minScore,maxExpected,wantReadSequence,wantMatches)));
+			}
+			return iterators.toArray(new IReadBlockIterator[0]);
+		}
+		else {
+			var parts=new ArrayList<ArrayList<MeganFile>>();
+			var partSizes=new long[numberOfParts];
+			for(var p=0;p<numberOfParts;p++)
+				parts.add(new ArrayList<>());
+			var bySize=new ArrayList<>(files);
+			bySize.sort(Comparator.comparingLong(f -> -(new File(f.getFileName())).length()));
+			for(var file:bySize) {
+				var smallest=0;
+				for(var p=1;p<numberOfParts;p++) {
+					if(partSizes[p]<partSizes[smallest])
+						smallest=p;
+				}
+				parts.get(smallest).add(file);
+				partSizes[smallest]+=(new File(file.getFileName())).length();
+			}
+			return parts.stream().filter(part->part.size()>0)
+					.map(part->new MergeReadIterator(part, f->f.getConnector().getAllReadsIterator(minScore,maxExpected,wantReadSequence,wantMatches)))
+					.toArray(IReadBlockIterator[]::new);
+		}
 	}
 
 	@Override
 	public IReadBlockIterator getReadsIterator(String classification, int classId, float minScore, float maxExpected, boolean wantReadSequence, boolean wantMatches) throws IOException {
-		return new MergeReadIterator(files, f->f.getConnector().getReadsIterator(classification,classId,minScore,maxExpected,wantReadSequence,wantMatches));
+		return getReadsIteratorForListOfClassIds(classification,List.of(classId),minScore,maxExpected,wantReadSequence,wantMatches);
 	}
 
 	@Override
 	public IReadBlockIterator getReadsIteratorForListOfClassIds(String classification, Collection<Integer> classIds, float minScore, float maxExpected, boolean wantReadSequence, boolean wantMatches) throws IOException {
-		return new MergeReadIterator(files, f->f.getConnector().getReadsIteratorForListOfClassIds(classification,classIds,minScore,maxExpected,wantReadSequence,wantMatches));
+		// the reads are queued, so the per-file iterators must return a new read block for each read
+		return new ConcurrentMergeReadIterator(files, f->f.getConnector().getReadsIteratorForListOfClassIds(classification,classIds,minScore,maxExpected,wantReadSequence,wantMatches,false),true);
 	}
 
 	@Override
@@ -144,10 +207,17 @@ public class MergeConnector implements IConnector {
 
 	@Override
 	public int getClassSize(String classificationName, int classId) throws IOException {
-		var size = 0;
-		for (var file : files) {
-			size+=file.getConnector().getClassSize(classificationName,classId);
-		}
+		final var exception=new Single<IOException>();
+		var size=files.parallelStream().mapToInt(file->{
+			try {
+				return file.getConnector().getClassSize(classificationName,classId);
+			} catch (IOException ex) {
+				exception.setIfCurrentValueIsNull(ex);
+				return 0;
+			}
+		}).sum();
+		if(exception.isNotNull())
+			throw exception.get();
 		return size;
 	}
 
@@ -168,7 +238,7 @@ public class MergeConnector implements IConnector {
 
 	@Override
 	public IReadBlockIterator getFindAllReadsIterator(String regEx, FindSelection findSelection, Single<Boolean> canceled) throws IOException {
-		return new MergeReadIterator(files, f->f.getConnector().getFindAllReadsIterator(regEx,findSelection,canceled));
+		return new ConcurrentMergeReadIterator(files, f->f.getConnector().getFindAllReadsIterator(regEx,findSelection,canceled),false);
 	}
 
 	@Override
@@ -201,19 +271,38 @@ public class MergeConnector implements IConnector {
 
 	public static Map<String, byte[]> createAuxiliaryData(String fileName,Collection<MeganFile> inputFiles) throws IOException {
 		var auxiliaryData=new HashMap<String,byte[]>();
+
+		// read and parse the auxiliary data of all files in parallel
+		final var files=new ArrayList<>(inputFiles);
+		final var label2dataList=new ArrayList<Map<String,byte[]>>(Collections.nCopies(files.size(),null));
+		final var tables=new DataTable[files.size()];
+		final var exception=new Single<IOException>();
+		IntStream.range(0,files.size()).parallel().forEach(i->{
+			try {
+				var label2data = files.get(i).getConnector().getAuxiliaryData();
+				var table=new DataTable();
+				SyncArchiveAndDataTable.syncAux2Summary(fileName, label2data.get(SampleAttributeTable.USER_STATE), table);
+				label2dataList.set(i,label2data);
+				tables[i]=table;
+			} catch (IOException ex) {
+				exception.setIfCurrentValueIsNull(ex);
+			}
+		});
+		if(exception.isNotNull())
+			throw exception.get();
+
 			var table = new DataTable();
-			for(var file:inputFiles) {
-				var label2data = file.getConnector().getAuxiliaryData();
+			for(var i=0;i<files.size();i++) {
+				var label2data = label2dataList.get(i);
 				if(table.getNumberOfSamples()==0) {
-					SyncArchiveAndDataTable.syncAux2Summary(fileName, label2data.get(SampleAttributeTable.USER_STATE), table);
+					table=tables[i];
 					if (label2data.containsKey(SampleAttributeTable.SAMPLE_ATTRIBUTES)) {
 						auxiliaryData.put(SampleAttributeTable.SAMPLE_ATTRIBUTES, label2data.get(SampleAttributeTable.SAMPLE_ATTRIBUTES));
 					}
 				}
 				else {
 					// add counts:
-					var otherTable=new DataTable();
-					SyncArchiveAndDataTable.syncAux2Summary(fileName, label2data.get(SampleAttributeTable.USER_STATE), otherTable);
+					var otherTable=tables[i];
 					for(var classification:otherTable.getClassification2Class2Counts().keySet()){
 						var classMap=table.getClass2Counts(classification);
 						var otherMap=otherTable.getClass2Counts(classification);
@@ -6,8 +6,8 @@ import megan.data.IReadBlock;
 import megan.data.IReadBlockIterator;
 
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
 
 /**
@@ -21,7 +21,7 @@ public class MergeReadIterator implements IReadBlockIterator {
 
 	private long countReads =0;
 
-	public MergeReadIterator(ArrayList<MeganFile> files, FunctionWithIOException<MeganFile,IReadBlockIterator> fileIteratorFunction){
+	public MergeReadIterator(List<MeganFile> files, FunctionWithIOException<MeganFile,IReadBlockIterator> fileIteratorFunction){
 		numberOfFiles =files.size();
 
 		metaIterator =new Iterator<>() {
@@ -0,0 +1,396 @@
+/*
+ * StreamingComparer.java Copyright (C) 2024 Daniel H. Huson
+ *
+ * (Some files contain contributions from other authors, who are then mentioned separately.)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package megan.dialogs.compare;
+
+import jloda.fx.util.ProgramExecutorService;
+import jloda.graph.NodeData;
+import jloda.seq.BlastMode;
+import jloda.util.CollectionUtils;
+import jloda.util.FileUtils;
+import jloda.util.ProgramProperties;
+import jloda.util.Single;
+import jloda.util.progress.ProgressListener;
+import megan.classification.Classification;
+import megan.classification.ClassificationManager;
+import megan.core.*;
+import megan.viewer.gui.NodeDrawer;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * comparison of multiple files that does not require open documents, directors or viewers.
+ * Each file is read in turn by a worker thread, using only its auxiliary and classification blocks,
+ * and only its summarized counts are kept, so no documents are held in memory. The workers do not share any tables:
+ * once all files have been read, the counts of all files are added to the data table and then normalized in place.
+ * Produces the same data table as {@link Comparer}
+ * Daniel Huson, 10.2026
+ */
+public class StreamingComparer {
+    private final List<String> fileNames = new ArrayList<>();
+
+    private Comparer.COMPARISON_MODE mode = Comparer.COMPARISON_MODE.ABSOLUTE;
+    private boolean ignoreUnassigned = false;
+    private boolean keep1 = false;
+    private int numberOfThreads = ProgramExecutorService.getNumberOfCoresToUse();
+
+    /**
+     * add a file to be compared
+     */
+    public void addFile(String fileName) {
+        fileNames.add(fileName);
+    }
+
+    /**
+     * compute a comparison
+     */
+    public void computeComparison(SampleAttributeTable sampleAttributeTable, final DataTable result, final ProgressListener progressListener) throws IOException {
+        final var numberOfSamples = fileNames.size();
+
+        System.err.println("Computing comparison: ");
+        result.setCreator(ProgramProperties.getProgramName());
+        result.setCreationDate((new Date()).toString());
+
+        final var samples = new Sample[numberOfSamples];
+
+        // read all files, keeping their counts
+        {
+            progressListener.setTasks("Computing comparison", "Reading files");
+            progressListener.setMaximum(numberOfSamples);
+            progressListener.setProgress(0);
+
+            final var service = Executors.newFixedThreadPool(Math.max(1, Math.min(getNumberOfThreads(), numberOfSamples)));
+            final var exception = new Single<Exception>();
+
+            try {
+                for (var pos = 0; pos < numberOfSamples; pos++) {
+                    final var which = pos;
+                    service.execute(() -> {
+                        if (exception.isNull()) {
+                            try {
+                                samples[which] = Sample.read(fileNames.get(which), isIgnoreUnassigned());
+                                synchronized (progressListener) {
+                                    progressListener.incrementProgress();
+                                }
+                            } catch (Exception ex) {
+                                exception.setIfCurrentValueIsNull(ex);
+                            }
+                        }
+                    });
+                }
+            } finally {
+                service.shutdown();
+            }
+
+            try {
+                if (!service.awaitTermination(1000, TimeUnit.DAYS))
+                    exception.setIfCurrentValueIsNull(new IOException("timed out"));
+            } catch (InterruptedException ex) {
+                exception.setIfCurrentValueIsNull(ex);
+            } finally {
+                service.shutdownNow();
+            }
+            if (exception.isNotNull())
+                throw new IOException("Comparison computation failed: " + exception.get().getMessage(), exception.get());
+        }
+
+        // add the counts of all files to the data table
+        for (var pos = 0; pos < numberOfSamples; pos++) {
+            samples[pos].addCounts(result, pos, numberOfSamples);
+        }
+
+        final var names = new String[numberOfSamples];
+        final var uids = new Long[numberOfSamples];
+        final var originalNumberOfReads = new float[numberOfSamples];
+        final var blastModes = new BlastMode[numberOfSamples];
+        final var sample2source = new HashMap<String, Object>();
+
+        for (var pos = 0; pos < numberOfSamples; pos++) {
+            final var sample = samples[pos];
+            names[pos] = getUniqueName(names, pos, FileUtils.getFileBaseName(FileUtils.getFileNameWithoutPath(sample.getFileName())));
+            uids[pos] = sample.getUid();
+            originalNumberOfReads[pos] = sample.getNumberOfReads();
+            blastModes[pos] = sample.getBlastMode();
+            if (sample.getAttributes2Value() != null)
+                sampleAttributeTable.addSample(names[pos], sample.getAttributes2Value(), false, true);
+            sample2source.put(names[pos], sample.getFileName());
+        }
+        sampleAttributeTable.addAttribute(SampleAttributeTable.HiddenAttribute.Source.toString(), sample2source, true, true);
+
+        final var useRelative = (getMode() == Comparer.COMPARISON_MODE.RELATIVE);
+
+        final double newSampleSize;
+        {
+            var calculateNewSampleSize = 0.0;
+            if (useRelative) {
+                for (var sample : samples) {
+                    final var numberOfReads = sample.getNumberOfReadsForNormalization();
+                    if (calculateNewSampleSize == 0 || numberOfReads < calculateNewSampleSize)
+                        calculateNewSampleSize = numberOfReads;
+                }
+                System.err.printf("Normalizing to: %,.0f reads per sample%n", calculateNewSampleSize);
+            }
+            newSampleSize = calculateNewSampleSize;
+        }
+
+        var parameters = "mode=" + getMode();
+        if (useRelative)
+            parameters += " normalizedTo=" + newSampleSize;
+        if (isIgnoreUnassigned())
+            parameters += " ignoreUnassigned=true";
+        result.setParameters(parameters);
+
+        if (useRelative) {
+            final var factors = new double[numberOfSamples];
+            for (var pos = 0; pos < numberOfSamples; pos++) {
+                final var numberOfReads = samples[pos].getNumberOfReadsForNormalization();
+                factors[pos] = (numberOfReads > 0 ? newSampleSize / numberOfReads : 1.0);
+            }
+
+            progressListener.setTasks("Computing comparison", "Normalizing counts");
+            progressListener.setMaximum(result.getClassification2Class2Counts().size());
+            progressListener.setProgress(0);
+
+            for (var class2counts : result.getClassification2Class2Counts().values()) {
+                class2counts.values().parallelStream().forEach(counts -> {
+                    for (var pos = 0; pos < counts.length; pos++) {
+                        if (counts[pos] != 0) {
+                            counts[pos] = (float) (counts[pos] * factors[pos]);
+                            if (counts[pos] == 0 && isKeep1())
+                                counts[pos] = 1;
+                        }
+                    }
+                });
+                try {
+                    progressListener.incrementProgress();
+                } catch (Exception ignored) {
+                }
+            }
+        }
+
+        final var sizes = new float[numberOfSamples];
+        if (result.getClassification2Class2Counts().containsKey(Classification.Taxonomy)) {
+            for (var counts : result.getClass2Counts(Classification.Taxonomy).values()) {
+                for (var i = 0; i < counts.length; i++)
+                    sizes[i] += counts[i];
+            }
+        }
+
+        result.setSamples(names, uids, sizes, blastModes);
+        sampleAttributeTable.removeAttribute(SampleAttributeTable.HiddenAttribute.Label.toString());
+
+        for (var classificationName : result.getClassification2Class2Counts().keySet()) {
+            result.setNodeStyle(classificationName, NodeDrawer.Style.PieChart.toString());
+        }
+
+        if (useRelative) {
+            System.err.printf("Total assigned: %,12d normalized%n", (long) CollectionUtils.getSum(sizes));
+        } else {
+            System.err.printf("Total assigned: %,12d%n", (long) CollectionUtils.getSum(sizes));
+        }
+
+        result.setTotalReads((int) CollectionUtils.getSum(originalNumberOfReads));
+    }
+
+    /**
+     * modifies given name so that it does not match any of names[0],..,names[pos-1]
+     *
+     * @return name or new name
+     */
+    private String getUniqueName(String[] names, int pos, String name) {
+        var ok = false;
+        var count = 0;
+        var newName = name;
+        while (!ok && count < 1000) {
+            ok = true;
+            for (var i = 0; i < pos; i++) {
+                if (newName.equalsIgnoreCase(names[i])) {
+                    ok = false;
+                    break;
+                }
+            }
+            if (!ok)
+                newName = name + "." + (++count);
+        }
+        return newName;
+    }
+
+    public List<String> getFileNames() {
+        return fileNames;
+    }
+
+    public void setMode(String modeName) {
+        this.mode = Comparer.COMPARISON_MODE.valueOfIgnoreCase(modeName);
+    }
+
+    private Comparer.COMPARISON_MODE getMode() {
+        return mode;
+    }
+
+    private boolean isIgnoreUnassigned() {
+        return ignoreUnassigned;
+    }
+
+    public void setIgnoreUnassigned(boolean ignoreUnassigned) {
+        this.ignoreUnassigned = ignoreUnassigned;
+    }
+
+    private boolean isKeep1() {
+        return keep1;
+    }
+
+    public void setKeep1(boolean keep1) {
+        this.keep1 = keep1;
+    }
+
+    public int getNumberOfThreads() {
+        return numberOfThreads;
+    }
+
+    public void setNumberOfThreads(int numberOfThreads) {
+        this.numberOfThreads = numberOfThreads;
+    }
+
+    /**
+     * the properties of one input file that are needed once its counts have been added to the data table
+     */
+    private static class Sample {
+        private final String fileName;
+        private Long uid;
+        private float numberOfReads;
+        private BlastMode blastMode;
+        private Map<String, Object> attributes2Value;
+        private double numberOfReadsForNormalization;
+        private Map<String, Map<Integer, Float>> classification2class2count = new HashMap<>();
+
+        private Sample(String fileName) {
+            this.fileName = fileName;
+        }
+
+        /**
+         * reads the summarized counts of a file.
+         * For RMA and DAA files, only the auxiliary block and classification blocks are read
+         */
+        static Sample read(String fileName, boolean ignoreUnassigned) throws IOException {
+            final var sample = new Sample(fileName);
+
+            final var doc = new Document();
+            doc.getMeganFile().setFileFromExistingFile(fileName, true);
+            doc.getMeganFile().checkFileOkToRead();
+
+            if (!doc.getMeganFile().isMeganSummaryFile() && doc.getMeganFile().hasDataConnector()) {
+                final var connector = doc.getConnector();
+                SyncArchiveAndDataTable.syncArchive2Summary(null, fileName, connector, doc.getDataTable(), doc.getSampleAttributeTable());
+                doc.setNumberReads(doc.getDataTable().getTotalReads());
+                try {
+                    sample.uid = connector.getUId();
+                } catch (Exception e) {
+                    sample.uid = 0L;
+                }
+            } else
+                doc.loadMeganFile();
+
+            sample.numberOfReads = (int) doc.getNumberOfReads();
+            if (sample.numberOfReads == 0)
+                throw new IOException("No reads found in file: '" + fileName + "'");
+            sample.blastMode = doc.getBlastMode();
+
+            if (doc.getSampleAttributeTable().getNumberOfSamples() == 1) {
+                final var oSample = doc.getSampleAttributeTable().getSampleSet().iterator().next();
+                sample.attributes2Value = doc.getSampleAttributeTable().getAttributesToValues(oSample);
+            }
+
+            final var table = doc.getDataTable();
+            sample.numberOfReadsForNormalization = computeNumberOfReadsForNormalization(table.getClass2Counts(ClassificationType.Taxonomy.toString()), doc.getNumberOfSamples(), ignoreUnassigned);
+
+            for (var classificationName : table.getClassification2Class2Counts().keySet()) {
+                final var class2countsSrc = table.getClass2Counts(classificationName);
+                final var class2count = new HashMap<Integer, Float>();
+                for (var classId : class2countsSrc.keySet()) {
+                    if (!ignoreUnassigned || classId > 0)
+                        class2count.put(classId, CollectionUtils.getSum(class2countsSrc.get(classId)));
+                }
+                sample.classification2class2count.put(classificationName, class2count);
+            }
+            return sample;
+        }
+
+        /**
+         * adds the counts of this file to the given column of the data table and then releases them
+         */
+        void addCounts(DataTable result, int pos, int numberOfSamples) {
+            for (var entry : classification2class2count.entrySet()) {
+                final var class2countsTarget = result.getClassification2Class2Counts().computeIfAbsent(entry.getKey(), k -> new HashMap<>());
+                for (var classEntry : entry.getValue().entrySet()) {
+                    class2countsTarget.computeIfAbsent(classEntry.getKey(), k -> new float[numberOfSamples])[pos] = classEntry.getValue();
+                }
+            }
+            classification2class2count = null;
+        }
+
+        /**
+         * the number of reads that the counts of a file are normalized by, computed on the taxonomy as in the main viewer,
+         * which {@link Comparer} uses: the number of assigned reads, if unassigned reads are ignored, otherwise the summarized count of the root
+         */
+        private static double computeNumberOfReadsForNormalization(Map<Integer, float[]> taxonomyClass2counts, int numberOfDatasets, boolean ignoreUnassigned) {
+            if (taxonomyClass2counts == null)
+                return 0;
+            final var fullTree = ClassificationManager.get(Classification.Taxonomy, true).getFullTree();
+            final var id2data = new HashMap<Integer, NodeData>();
+            fullTree.computeId2Data(numberOfDatasets, taxonomyClass2counts, id2data);
+            if (ignoreUnassigned) {
+                var totalAssignedReads = 0.0;
+                for (var id : id2data.keySet()) {
+                    if (id > 0)
+                        totalAssignedReads += id2data.get(id).getCountAssigned();
+                }
+                return totalAssignedReads;
+            } else {
+                final var rootData = id2data.get((Integer) fullTree.getRoot().getInfo());
+                return (rootData != null ? rootData.getCountSummarized() : 0);
+            }
+        }
+
+        String getFileName() {
+            return fileName;
+        }
+
+        Long getUid() {
+            return uid;
+        }
+
+        float getNumberOfReads() {
+            return numberOfReads;
+        }
+
+        BlastMode getBlastMode() {
+            return blastMode;
+        }
+
+        Map<String, Object> getAttributes2Value() {
+            return attributes2Value;
+        }
+
+        double getNumberOfReadsForNormalization() {
+            return numberOfReadsForNormalization;
+        }
+    }
+}
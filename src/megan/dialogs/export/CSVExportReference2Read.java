@@ -32,8 +32,6 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.List;
 import java.util.Map;
 
 /**
@@ -57,66 +55,56 @@ class CSVExportReference2Read {
 
             boolean eachReadOnceOnly = ProgramProperties.get("each-read-once-only", false);
 
-            Map<String, List<String>> reference2reads = new HashMap<>();
+            final long maxBytesPerRun = 1024L * 1024L * ProgramProperties.get("reference2read-memory-mb", 256);
 
-            if (taxonIds.isEmpty()) {
-                try (IReadBlockIterator it = connector.getAllReadsIterator(doc.getMinScore(), doc.getMaxExpected(), true, false)) {
-                    progressListener.setMaximum(it.getMaximumProgress());
-                    progressListener.setProgress(0);
+            try (Reference2ReadsSorter sorter = new Reference2ReadsSorter(null, maxBytesPerRun)) {
+                if (taxonIds.isEmpty()) {
+                    try (IReadBlockIterator it = connector.getAllReadsIterator(doc.getMinScore(), doc.getMaxExpected(), true, false)) {
+                        progressListener.setMaximum(it.getMaximumProgress());
+                        progressListener.setProgress(0);
 
-                    while (it.hasNext()) {
-                        IReadBlock readBlock = it.next();
-                        for (int i = 0; i < readBlock.getNumberOfAvailableMatchBlocks(); i++) {
-                            IMatchBlock matchBlock = readBlock.getMatchBlock(i);
-                            if (matchBlock.getBitScore() >= doc.getMinScore() && matchBlock.getExpected() <= doc.getMaxExpected() &&
-                                    (matchBlock.getPercentIdentity() == 0 || matchBlock.getPercentIdentity() >= doc.getMinPercentIdentity())) {
-								String reference = StringUtils.getFirstLine(matchBlock.getText());
-								List<String> list = reference2reads.computeIfAbsent(reference, k -> new LinkedList<>());
-                                list.add(readBlock.getReadName());
-                                if (eachReadOnceOnly)
-                                    break;
+                        while (it.hasNext()) {
+                            IReadBlock readBlock = it.next();
+                            for (int i = 0; i < readBlock.getNumberOfAvailableMatchBlocks(); i++) {
+                                IMatchBlock matchBlock = readBlock.getMatchBlock(i);
+                                if (matchBlock.getBitScore() >= doc.getMinScore() && matchBlock.getExpected() <= doc.getMaxExpected() &&
+                                        (matchBlock.getPercentIdentity() == 0 || matchBlock.getPercentIdentity() >= doc.getMinPercentIdentity())) {
+                                    sorter.add(StringUtils.getFirstLine(matchBlock.getText()), readBlock.getReadName());
+                                    if (eachReadOnceOnly)
+                                        break;
+                                }
                             }
+                            progressListener.setProgress(it.getProgress());
                         }
-                        progressListener.setProgress(it.getProgress());
                     }
-                }
-            } else {
-                int maxProgress = taxonIds.size();
-                progressListener.setMaximum(maxProgress);
-                progressListener.setProgress(0);
-
-                for (int id : taxonIds) {
-                    if (classificationBlock.getSum(id) > 0) {
-                        try (IReadBlockIterator it = connector.getReadsIterator(ClassificationType.Taxonomy.toString(), id, doc.getMinScore(), doc.getMaxExpected(), true, false)) {
-                            progressListener.setMaximum(it.getMaximumProgress());
-                            progressListener.setProgress(0);
-                            while (it.hasNext()) {
-                                final IReadBlock readBlock = it.next();
-                                for (int i = 0; i < readBlock.getNumberOfAvailableMatchBlocks(); i++) {
-                                    IMatchBlock matchBlock = readBlock.getMatchBlock(i);
-                                    if (matchBlock.getBitScore() >= doc.getMinScore() && matchBlock.getExpected() <= doc.getMaxExpected() && matchBlock.getPercentIdentity() >= doc.getMinPercentIdentity()) {
-										String reference = StringUtils.getFirstLine(matchBlock.getText());
-										List<String> list = reference2reads.computeIfAbsent(reference, k -> new LinkedList<>());
-                                        list.add(readBlock.getReadName());
-                                        if (eachReadOnceOnly)
-                                            break;
-                                    }
+                } else {
+                    final Map<Integer, Integer> class2group = new HashMap<>();
+                    for (int id : taxonIds) {
+                        if (classificationBlock.getSum(id) > 0)
+                            class2group.put(id, id);
+                    }
+                    try (IReadBlockIterator it = connector.getClassReadsIterator(ClassificationType.Taxonomy.toString(), class2group, doc.getMinScore(), doc.getMaxExpected(), true, false)) {
+                        progressListener.setMaximum(it.getMaximumProgress());
+                        progressListener.setProgress(0);
+                        while (it.hasNext()) {
+                            final IReadBlock readBlock = it.next();
+                            if (readBlock == null)
+                                continue;
+                            for (int i = 0; i < readBlock.getNumberOfAvailableMatchBlocks(); i++) {
+                                IMatchBlock matchBlock = readBlock.getMatchBlock(i);
+                                if (matchBlock.getBitScore() >= doc.getMinScore() && matchBlock.getExpected() <= doc.getMaxExpected() && matchBlock.getPercentIdentity() >= doc.getMinPercentIdentity()) {
+                                    sorter.add(StringUtils.getFirstLine(matchBlock.getText()), readBlock.getReadName());
+                                    if (eachReadOnceOnly)
+                                        break;
                                 }
-                                progressListener.setProgress(it.getProgress());
                             }
+                            progressListener.setProgress(it.getProgress());
                         }
                     }
                 }
+                progressListener.setSubtask("writing");
+                totalLines = sorter.write(w, separator, progressListener);
             }
-            progressListener.setSubtask("writing");
-            progressListener.setMaximum(reference2reads.size());
-            progressListener.setProgress(0);
-            for (String reference : reference2reads.keySet()) {
-				w.write(reference + separator + StringUtils.toString(reference2reads.get(reference), "" + separator) + "\n");
-				progressListener.incrementProgress();
-                totalLines++;
-            }
-
         } catch (CanceledException e) {
             System.err.println("USER CANCELED");
         }
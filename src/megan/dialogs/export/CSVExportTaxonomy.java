@@ -31,6 +31,7 @@ import megan.viewer.TaxonomicLevels;
 import megan.viewer.TaxonomyData;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
 /**
@@ -49,33 +50,24 @@ class CSVExportTaxonomy {
 
         try (var w = new BufferedWriter(new FileWriter(file))) {
             final var connector = viewer.getDir().getDocument().getConnector();
-            final var taxonIds = viewer.getSelectedNodeIds();
+            final var taxonIds = new ArrayList<>(viewer.getSelectedNodeIds());
+            final var class2taxonIndex = computeClass2TaxonIndex(viewer, taxonIds);
+            final var lengths = new long[taxonIds.size()];
 
             progressListener.setSubtask("Taxa to total length");
-            progressListener.setMaximum(taxonIds.size());
-            progressListener.setProgress(0);
-
-            for (var taxonId : taxonIds) {
-                final Collection<Integer> allBelow;
-                final var v = viewer.getTaxId2Node(taxonId);
-                if (v.getOutDegree() == 0)
-                    allBelow = TaxonomyData.getTree().getAllDescendants(taxonId);
-                else
-                    allBelow = Collections.singletonList(taxonId);
-
-                final var name = getTaxonLabelSource(format, taxonId);
-                w.write(name);
-                long length = 0L;
-
-                try (var it = connector.getReadsIteratorForListOfClassIds(viewer.getClassName(), allBelow, 0, 10000, true, false)) {
-                    while (it.hasNext()) {
-                        length += it.next().getReadLength();
-                        progressListener.checkForCancel();
-                    }
-                    w.write(separator + "" + length + "\n");
-                    totalLines++;
+            try (var it = connector.getClassReadsIterator(viewer.getClassName(), class2taxonIndex, 0, 10000, true, false)) {
+                progressListener.setMaximum(it.getMaximumProgress());
+                progressListener.setProgress(0);
+                while (it.hasNext()) {
+                    final var readBlock = it.next();
+                    if (readBlock != null)
+                        lengths[it.getGroup()] += readBlock.getReadLength();
+                    progressListener.setProgress(it.getProgress());
                 }
-                progressListener.incrementProgress();
+            }
+            for (var t = 0; t < taxonIds.size(); t++) {
+                w.write(getTaxonLabelSource(format, taxonIds.get(t)) + separator + lengths[t] + "\n");
+                totalLines++;
             }
         } catch (CanceledException canceled) {
             System.err.println("USER CANCELED");
@@ -156,37 +148,27 @@ class CSVExportTaxonomy {
 
         try (var w = new BufferedWriter(new FileWriter(file))) {
             final var connector = viewer.getDir().getDocument().getConnector();
-            final var taxonIds = viewer.getSelectedNodeIds();
-
-            progressListener.setSubtask("Read names to taxa");
-            progressListener.setMaximum(taxonIds.size());
-            progressListener.setProgress(0);
+            final var taxonIds = new ArrayList<>(viewer.getSelectedNodeIds());
+            final var class2taxonIndex = computeClass2TaxonIndex(viewer, taxonIds);
 
             final var wantMatches = (format.endsWith("PathKPCOFGS")); // PathPercent has been disabled
 
-            for (var taxonId : taxonIds) {
-                final var seen = new HashSet<Long>();
-                final Collection<Integer> allBelow;
-                var v = viewer.getTaxId2Node(taxonId);
-                if (v.getOutDegree() == 0)
-                    allBelow = TaxonomyData.getTree().getAllDescendants(taxonId);
-                else
-                    allBelow = Collections.singletonList(taxonId);
-
-                try (var it = connector.getReadsIteratorForListOfClassIds(viewer.getClassName(), allBelow, 0, 10000, true, wantMatches)) {
-                    while (it.hasNext()) {
-                        final var readBlock = it.next();
-                        final var uid = readBlock.getUId();
-                        if (!seen.contains(uid)) {
-                            if (uid != 0)
-                                seen.add(uid);
+            progressListener.setSubtask("Read names to taxa");
+            try (var it = connector.getClassReadsIterator(viewer.getClassName(), class2taxonIndex, 0, 10000, true, wantMatches)) {
+                progressListener.setMaximum(it.getMaximumProgress());
+                progressListener.setProgress(0);
+                final var seen = new SeenReadTaxa(it.isReadsConsecutive());
+                while (it.hasNext()) {
+                    final var readBlock = it.next();
+                    if (readBlock != null) {
+                        final var taxonId = taxonIds.get(it.getGroup());
+                        if (seen.add(readBlock.getUId(), taxonId)) {
                             w.write(readBlock.getReadName() + separator + getTaxonLabelTarget(dir, format, taxonId, readBlock) + "\n");
                             totalLines++;
                         }
-                        progressListener.checkForCancel();
                     }
+                    progressListener.setProgress(it.getProgress());
                 }
-                progressListener.incrementProgress();
             }
         } catch (CanceledException canceled) {
             System.err.println("USER CANCELED");
@@ -212,32 +194,21 @@ class CSVExportTaxonomy {
             progressListener.setSubtask("Read names to matches");
 
             if (taxonIds.size() > 0) {
-                progressListener.setMaximum(taxonIds.size());
-                progressListener.setProgress(0);
+                final var taxa = new ArrayList<>(taxonIds);
+                final var class2taxonIndex = computeClass2TaxonIndex(viewer, taxa);
 
-                for (var taxonId : taxonIds) {
-                    final var seen = new HashSet<Long>();
-                    final Collection<Integer> allBelow;
-                    final var v = viewer.getTaxId2Node(taxonId);
-                    if (v.getOutDegree() == 0)
-                        allBelow = TaxonomyData.getTree().getAllDescendants(taxonId);
-                    else
-                        allBelow = Collections.singletonList(taxonId);
-
-                    try (var it = connector.getReadsIteratorForListOfClassIds(viewer.getClassName(), allBelow, 0, 10000, true, true)) {
-                        while (it.hasNext()) {
-                            final var readBlock = it.next();
-                            final var uid = readBlock.getUId();
-                            if (!seen.contains(uid)) {
-                                if (uid != 0)
-                                    seen.add(uid);
-                                writeMatches(separator, readBlock.getReadName(), readBlock, w);
-                                totalLines++;
-                            }
-                            progressListener.checkForCancel();
+                try (var it = connector.getClassReadsIterator(viewer.getClassName(), class2taxonIndex, 0, 10000, true, true)) {
+                    progressListener.setMaximum(it.getMaximumProgress());
+                    progressListener.setProgress(0);
+                    final var seen = new SeenReadTaxa(it.isReadsConsecutive());
+                    while (it.hasNext()) {
+                        final var readBlock = it.next();
+                        if (readBlock != null && seen.add(readBlock.getUId(), taxa.get(it.getGroup()))) {
+                            writeMatches(separator, readBlock.getReadName(), readBlock, w);
+                            totalLines++;
                         }
+                        progressListener.setProgress(it.getProgress());
                     }
-                    progressListener.incrementProgress();
                 }
             } else // process all reads:
             {
@@ -280,38 +251,50 @@ class CSVExportTaxonomy {
      * @return lines written
      */
     public static int exportTaxon2ReadNames(String format, Director dir, File file, char separator, ProgressListener progressListener) throws IOException {
-        int totalLines = 0;
-        final MainViewer viewer = dir.getMainViewer();
-
-        try (final var w = new BufferedWriter(new FileWriter(file))) {
-            final var connector = viewer.getDir().getDocument().getConnector();
-            final var taxonIds = viewer.getSelectedNodeIds();
-
-            progressListener.setSubtask("Taxa to read names");
-            progressListener.setMaximum(taxonIds.size());
-            progressListener.setProgress(0);
+        return exportTaxon2ReadNames(format, dir, file, separator, "Taxa to read names", progressListener);
+    }
 
-            for (var taxonId : taxonIds) {
-                final Collection<Integer> allBelow;
-                final var v = viewer.getTaxId2Node(taxonId);
-                if (v.getOutDegree() == 0)
-                    allBelow = TaxonomyData.getTree().getAllDescendants(taxonId);
-                else
-                    allBelow = Collections.singletonList(taxonId);
+    /**
+     * export taxon-path to number of reads assigned
+     *
+     * @return lines written
+	 */
+    public static int exportTaxon2ReadIds(String format, Director dir, File file, char separator, ProgressListener progressListener) throws IOException {
+        return exportTaxon2ReadNames(format, dir, file, separator, "Taxa to read Ids", progressListener);
+    }
 
-                final var name = getTaxonLabelSource(format, taxonId);
-                w.write(name);
+    /**
+     * export taxon to read names, collecting the names of all selected taxa in one pass through the file
+     *
+     * @return lines written
+     */
+    private static int exportTaxon2ReadNames(String format, Director dir, File file, char separator, String subtask, ProgressListener progressListener) throws IOException {
+        var totalLines = 0;
+        final var viewer = dir.getMainViewer();
 
-                try (var it = connector.getReadsIteratorForListOfClassIds(viewer.getClassName(), allBelow, 0, 10000, true, false)) {
+        try (var w = new BufferedWriter(new FileWriter(file))) {
+            final var connector = viewer.getDir().getDocument().getConnector();
+            final var taxonIds = new ArrayList<>(viewer.getSelectedNodeIds());
+            final var class2taxonIndex = computeClass2TaxonIndex(viewer, taxonIds);
+
+            progressListener.setSubtask(subtask);
+            try (var buffer = new ReadNamesBuffer(taxonIds.size())) {
+                try (var it = connector.getClassReadsIterator(viewer.getClassName(), class2taxonIndex, 0, 10000, false, false)) {
+                    progressListener.setMaximum(it.getMaximumProgress());
+                    progressListener.setProgress(0);
                     while (it.hasNext()) {
-                        var readId = it.next().getReadName();
-                        w.write(separator + readId);
-                        progressListener.checkForCancel();
+                        final var readBlock = it.next();
+                        if (readBlock != null)
+                            buffer.add(it.getGroup(), separator + readBlock.getReadName());
+                        progressListener.setProgress(it.getProgress());
                     }
+                }
+                for (var t = 0; t < taxonIds.size(); t++) {
+                    w.write(getTaxonLabelSource(format, taxonIds.get(t)));
+                    buffer.write(t, w);
                     w.write("\n");
                     totalLines++;
                 }
-                progressListener.incrementProgress();
             }
         } catch (CanceledException canceled) {
             System.err.println("USER CANCELED");
@@ -320,48 +303,134 @@ class CSVExportTaxonomy {
     }
 
     /**
-     * export taxon-path to number of reads assigned
+     * maps each class to the index of the selected taxon that its reads are reported for. A selected node that is a leaf
+     * of the viewer covers all taxa below it, any other selected node only covers itself
      *
-     * @return lines written
-	 */
-    public static int exportTaxon2ReadIds(String format, Director dir, File file, char separator, ProgressListener progressListener) throws IOException {
-        var totalLines = 0;
-        final var viewer = dir.getMainViewer();
+     * @return class to taxon index
+     */
+    private static Map<Integer, Integer> computeClass2TaxonIndex(MainViewer viewer, List<Integer> taxonIds) {
+        final var class2taxonIndex = new HashMap<Integer, Integer>();
+        for (var t = 0; t < taxonIds.size(); t++) {
+            final var taxonId = taxonIds.get(t);
+            final var v = viewer.getTaxId2Node(taxonId);
+            if (v != null && v.getOutDegree() == 0) {
+                for (var id : TaxonomyData.getTree().getAllDescendants(taxonId))
+                    class2taxonIndex.putIfAbsent(id, t);
+            } else
+                class2taxonIndex.putIfAbsent(taxonId, t);
+        }
+        return class2taxonIndex;
+    }
 
-        try (var w = new BufferedWriter(new FileWriter(file))) {
-            final var connector = viewer.getDir().getDocument().getConnector();
-            final var taxonIds = viewer.getSelectedNodeIds();
+    /**
+     * keeps track of the reads reported for each taxon. If the iterator returns all occurrences of a read consecutively,
+     * only the taxa of the current read are kept, otherwise, the iterator returns one taxon after the other and the reads of
+     * the current taxon are kept
+     */
+    private static class SeenReadTaxa {
+        private final boolean readsConsecutive;
+        private long uid = 0;
+        private final Set<Integer> taxa = new HashSet<>();
+        private int taxonId = 0;
+        private final Set<Long> uids = new HashSet<>();
+
+        SeenReadTaxa(boolean readsConsecutive) {
+            this.readsConsecutive = readsConsecutive;
+        }
 
-            progressListener.setSubtask("Taxa to read Ids");
-            progressListener.setMaximum(taxonIds.size());
-            progressListener.setProgress(0);
+        /**
+         * @return true, if the read has not yet been reported for the taxon. Reads without uid are always reported
+         */
+        boolean add(long uid, int taxonId) {
+            if (uid == 0)
+                return true;
+            if (readsConsecutive) {
+                if (uid != this.uid) {
+                    this.uid = uid;
+                    taxa.clear();
+                }
+                return taxa.add(taxonId);
+            } else {
+                if (taxonId != this.taxonId) {
+                    this.taxonId = taxonId;
+                    uids.clear();
+                }
+                return uids.add(uid);
+            }
+        }
+    }
 
-            for (var taxonId : taxonIds) {
-                final Collection<Integer> allBelow;
-                final var v = viewer.getTaxId2Node(taxonId);
-                if (v.getOutDegree() == 0)
-                    allBelow = TaxonomyData.getTree().getAllDescendants(taxonId);
-                else
-                    allBelow = Collections.singletonList(taxonId);
+    /**
+     * collects the read names of each taxon, using bounded memory: when too many characters are buffered, all buffers are
+     * appended to a temporary file and the position of each chunk is recorded
+     */
+    private static class ReadNamesBuffer implements Closeable {
+        private static final int MAX_BUFFERED_CHARS = 32 * 1024 * 1024;
+
+        private final StringBuilder[] buffers;
+        private final ListOfLongs[] chunks; // start and length of each chunk written to the temporary file
+        private int bufferedChars = 0;
+        private File tmpFile;
+        private RandomAccessFile raf;
+
+        ReadNamesBuffer(int numberOfTaxa) {
+            buffers = new StringBuilder[numberOfTaxa];
+            chunks = new ListOfLongs[numberOfTaxa];
+        }
 
-                final var name = getTaxonLabelSource(format, taxonId);
-                w.write(name);
+        void add(int t, String text) throws IOException {
+            if (buffers[t] == null)
+                buffers[t] = new StringBuilder();
+            buffers[t].append(text);
+            bufferedChars += text.length();
+            if (bufferedChars >= MAX_BUFFERED_CHARS)
+                spill();
+        }
 
-                try (var it = connector.getReadsIteratorForListOfClassIds(viewer.getClassName(), allBelow, 0, 10000, true, false)) {
-                    while (it.hasNext()) {
-                        var readId = it.next().getReadName();
-                        w.write(separator + readId);
-                        progressListener.checkForCancel();
-                    }
-                    w.write("\n");
-                    totalLines++;
+        private void spill() throws IOException {
+            if (raf == null) {
+                tmpFile = File.createTempFile("megan-export-", ".tmp");
+                tmpFile.deleteOnExit();
+                raf = new RandomAccessFile(tmpFile, "rw");
+            }
+            for (var t = 0; t < buffers.length; t++) {
+                if (buffers[t] != null && buffers[t].length() > 0) {
+                    final var bytes = buffers[t].toString().getBytes(StandardCharsets.UTF_8);
+                    if (chunks[t] == null)
+                        chunks[t] = new ListOfLongs();
+                    chunks[t].add(raf.getFilePointer());
+                    chunks[t].add(bytes.length);
+                    raf.write(bytes);
+                    buffers[t] = null;
                 }
-                progressListener.incrementProgress();
             }
-        } catch (CanceledException canceled) {
-            System.err.println("USER CANCELED");
+            bufferedChars = 0;
+        }
+
+        /**
+         * writes all text collected for the given taxon
+         */
+        void write(int t, Writer w) throws IOException {
+            if (chunks[t] != null) {
+                for (var i = 0; i < chunks[t].size(); i += 2) {
+                    final var bytes = new byte[(int) chunks[t].get(i + 1)];
+                    raf.seek(chunks[t].get(i));
+                    raf.readFully(bytes);
+                    w.write(new String(bytes, StandardCharsets.UTF_8));
+                }
+            }
+            if (buffers[t] != null)
+                w.append(buffers[t]);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (raf != null) {
+                raf.close();
+                if (tmpFile.exists() && !tmpFile.delete())
+                    System.err.println("Failed to delete temporary file: " + tmpFile);
+            }
         }
-        return totalLines;
     }
 
     /**
@@ -123,9 +123,11 @@ public class ExportAlignedReads2GFF3Format {
 			if (classificationToReport.equals("all")) {
 				var read2taxonId = new HashMap<String, Integer>();
 				for (var taxonId : connector.getClassificationBlock(Classification.Taxonomy).getKeySet()) {
-					for (var it = connector.getReadsIterator(Classification.Taxonomy, taxonId, document.getMinScore(), document.getMaxExpected(), false, false); it.hasNext(); ) {
-						read2taxonId.put(it.next().getReadName(), taxonId);
-						progressListener.incrementProgress();
+					try (var it = connector.getReadsIterator(Classification.Taxonomy, taxonId, document.getMinScore(), document.getMaxExpected(), false, false)) {
+						while (it.hasNext()) {
+							read2taxonId.put(it.next().getReadName(), taxonId);
+							progressListener.incrementProgress();
+						}
 					}
 				}
 				progressListener.setProgress(0);
@@ -133,20 +135,22 @@ public class ExportAlignedReads2GFF3Format {
 				progressListener.setMaximum(document.getNumberOfReads());
 
 				final Set<Long> seen = new HashSet<>();
-				for (var it = connector.getAllReadsIterator(document.getMinScore(), document.getMaxExpected(), true, true); it.hasNext(); ) {
-					var readBlock = it.next();
-					var taxonId = read2taxonId.getOrDefault(readBlock.getReadName(), 0);
-					final long uid = readBlock.getUId();
-					if (!seen.contains(uid)) {
-						if (uid != 0)
-							seen.add(uid);
-						final String string = createGFFLines(document.getBlastMode(), readBlock, cNames, classificationToReport, taxonId, excludeIncompatible, excludeDominated);
-						w.write(string);
-						countAlignments += StringUtils.countOccurrences(string, '\n');
-						if (string.length() > 0)
-							countReads++;
+				try (var it = connector.getAllReadsIterator(document.getMinScore(), document.getMaxExpected(), true, true)) {
+					while (it.hasNext()) {
+						var readBlock = it.next();
+						var taxonId = read2taxonId.getOrDefault(readBlock.getReadName(), 0);
+						final long uid = readBlock.getUId();
+						if (!seen.contains(uid)) {
+							if (uid != 0)
+								seen.add(uid);
+							final String string = createGFFLines(document.getBlastMode(), readBlock, cNames, classificationToReport, taxonId, excludeIncompatible, excludeDominated);
+							w.write(string);
+							countAlignments += StringUtils.countOccurrences(string, '\n');
+							if (string.length() > 0)
+								countReads++;
+						}
+						progressListener.incrementProgress();
 					}
-					progressListener.incrementProgress();
 				}
 				progressListener.reportTaskCompleted();
 			} else {
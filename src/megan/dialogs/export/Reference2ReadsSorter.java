@@ -0,0 +1,307 @@
+/*
+ * Reference2ReadsSorter.java Copyright (C) 2024 Daniel H. Huson
+ *
+ * (Some files contain contributions from other authors, who are then mentioned separately.)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package megan.dialogs.export;
+
+import jloda.util.CanceledException;
+import jloda.util.progress.ProgressListener;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * collects reference to read name pairs and writes the read names of each reference on one line, using bounded memory:
+ * the pairs are collected in runs of bounded size, each run is sorted by reference and written to a temporary file,
+ * together with its reference names, and then all runs are merged. The reference names of a run are held once per run
+ * and are counted against the memory bound, so no data is kept across runs.
+ * References are written in lexicographic order, the read names of a reference keep their input order
+ * Daniel Huson, 10.2026
+ */
+class Reference2ReadsSorter implements Closeable {
+    private static final int BYTES_OVERHEAD_PER_PAIR = 24;
+    private static final int BYTES_OVERHEAD_PER_REFERENCE = 96;
+
+    private final File tempDirectory;
+    private final long maxBytesPerRun;
+
+    private final ArrayList<File> runFiles = new ArrayList<>();
+    private long numberOfPairs = 0;
+
+    // the current run: the references seen in the run, the reference index of each pair and its read name, as UTF-8 in one array
+    private final Map<String, Integer> runReference2index = new HashMap<>();
+    private final ArrayList<String> runReferenceNames = new ArrayList<>();
+    private long runReferenceBytes = 0;
+    private int[] runReferences = new int[1024];
+    private int[] runStarts = new int[1025];
+    private byte[] runNames = new byte[65536];
+    private int runSize = 0;
+
+    /**
+     * constructor
+     *
+     * @param tempDirectory  directory for run files, or null for default temporary directory
+     * @param maxBytesPerRun approximate maximal number of bytes held in memory per run
+     */
+    Reference2ReadsSorter(File tempDirectory, long maxBytesPerRun) {
+        this.tempDirectory = tempDirectory;
+        this.maxBytesPerRun = Math.max(1024, Math.min(maxBytesPerRun, 1L << 30));
+    }
+
+    /**
+     * add a read name for a reference
+     */
+    void add(String reference, String readName) throws IOException {
+        final int index = runReference2index.computeIfAbsent(reference, k -> {
+            runReferenceNames.add(k);
+            runReferenceBytes += 2L * k.length() + BYTES_OVERHEAD_PER_REFERENCE;
+            return runReferenceNames.size() - 1;
+        });
+        final byte[] bytes = readName.getBytes(StandardCharsets.UTF_8);
+
+        if (runSize == runReferences.length) {
+            runReferences = Arrays.copyOf(runReferences, 2 * runSize);
+            runStarts = Arrays.copyOf(runStarts, 2 * runSize + 1);
+        }
+        final int start = runStarts[runSize];
+        if (start + bytes.length > runNames.length)
+            runNames = Arrays.copyOf(runNames, Math.max(2 * runNames.length, start + bytes.length));
+        System.arraycopy(bytes, 0, runNames, start, bytes.length);
+        runReferences[runSize] = index;
+        runStarts[++runSize] = start + bytes.length;
+        numberOfPairs++;
+
+        if (runStarts[runSize] + (long) BYTES_OVERHEAD_PER_PAIR * runSize + runReferenceBytes >= maxBytesPerRun)
+            spill();
+    }
+
+    /**
+     * the pairs of the current run, sorted by reference name and then by input order
+     *
+     * @return sorted positions in the current run
+     */
+    private int[] sortRun() {
+        final Integer[] references = new Integer[runReferenceNames.size()];
+        for (int r = 0; r < references.length; r++)
+            references[r] = r;
+        Arrays.sort(references, Comparator.comparing(runReferenceNames::get));
+        final int[] rank = new int[references.length];
+        for (int r = 0; r < references.length; r++)
+            rank[references[r]] = r;
+
+        final long[] keys = new long[runSize];
+        for (int i = 0; i < runSize; i++)
+            keys[i] = ((long) rank[runReferences[i]] << 32) | i;
+        Arrays.sort(keys);
+        final int[] order = new int[runSize];
+        for (int i = 0; i < runSize; i++)
+            order[i] = (int) keys[i];
+        return order;
+    }
+
+    /**
+     * sorts the current run and writes it to a temporary file. Each reference is written once, followed by the number of
+     * its read names and the read names
+     */
+    private void spill() throws IOException {
+        if (runSize == 0)
+            return;
+        final File file = File.createTempFile("megan-reference2reads-", ".tmp", tempDirectory);
+        file.deleteOnExit();
+        runFiles.add(file);
+        try (DataOutputStream outs = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+            final int[] order = sortRun();
+            for (int first = 0; first < order.length; ) {
+                final int reference = runReferences[order[first]];
+                int last = first + 1;
+                while (last < order.length && runReferences[order[last]] == reference)
+                    last++;
+                final byte[] bytes = runReferenceNames.get(reference).getBytes(StandardCharsets.UTF_8);
+                outs.writeInt(bytes.length);
+                outs.write(bytes);
+                outs.writeInt(last - first);
+                for (int p = first; p < last; p++) {
+                    final int i = order[p];
+                    outs.writeInt(runStarts[i + 1] - runStarts[i]);
+                    outs.write(runNames, runStarts[i], runStarts[i + 1] - runStarts[i]);
+                }
+                first = last;
+            }
+        }
+        runReference2index.clear();
+        runReferenceNames.clear();
+        runReferenceBytes = 0;
+        runSize = 0;
+    }
+
+    /**
+     * merges all runs and writes one line per reference, consisting of the reference and all its read names
+     *
+     * @return number of lines written
+     */
+    int write(Writer w, char separator, ProgressListener progressListener) throws IOException, CanceledException {
+        progressListener.setMaximum(numberOfPairs);
+        progressListener.setProgress(0);
+
+        // runs on disk come before the run held in memory, ties are broken by run so that input order is kept
+        final PriorityQueue<Run> queue = new PriorityQueue<>(runFiles.size() + 1, Comparator.comparing((Run r) -> r.reference).thenComparingInt(r -> r.rank));
+        try {
+            for (int r = 0; r < runFiles.size(); r++) {
+                final Run run = new FileRun(r, runFiles.get(r));
+                if (run.advance())
+                    queue.add(run);
+                else
+                    run.close();
+            }
+            final Run memoryRun = new MemoryRun(runFiles.size(), sortRun());
+            if (memoryRun.advance())
+                queue.add(memoryRun);
+
+            int lines = 0;
+            String previous = null;
+            while (!queue.isEmpty()) {
+                final Run run = queue.poll();
+                if (!run.reference.equals(previous)) {
+                    if (previous != null) {
+                        w.write('\n');
+                        lines++;
+                    }
+                    w.write(run.reference);
+                    previous = run.reference;
+                }
+                w.write(separator);
+                w.write(run.readName);
+                progressListener.incrementProgress();
+                if (run.advance())
+                    queue.add(run);
+                else
+                    run.close();
+            }
+            if (previous != null) {
+                w.write('\n');
+                lines++;
+            }
+            return lines;
+        } finally {
+            for (Run run : queue)
+                run.close();
+        }
+    }
+
+    /**
+     * deletes all run files
+     */
+    @Override
+    public void close() {
+        for (File file : runFiles) {
+            if (file.exists() && !file.delete())
+                System.err.println("Failed to delete temporary file: " + file);
+        }
+        runFiles.clear();
+    }
+
+    /**
+     * a sorted run of pairs
+     */
+    private abstract static class Run implements Closeable {
+        final int rank;
+        String reference;
+        String readName;
+
+        Run(int rank) {
+            this.rank = rank;
+        }
+
+        /**
+         * moves to the next pair
+         *
+         * @return false, if the run is exhausted
+         */
+        abstract boolean advance() throws IOException;
+
+        @Override
+        public void close() throws IOException {
+        }
+    }
+
+    /**
+     * the sorted run still held in memory
+     */
+    private class MemoryRun extends Run {
+        private final int[] order;
+        private int next = 0;
+
+        MemoryRun(int rank, int[] order) {
+            super(rank);
+            this.order = order;
+        }
+
+        @Override
+        boolean advance() {
+            if (next == order.length)
+                return false;
+            final int i = order[next++];
+            reference = runReferenceNames.get(runReferences[i]);
+            readName = new String(runNames, runStarts[i], runStarts[i + 1] - runStarts[i], StandardCharsets.UTF_8);
+            return true;
+        }
+    }
+
+    /**
+     * a sorted run read back from a temporary file
+     */
+    private static class FileRun extends Run {
+        private final DataInputStream ins;
+        private byte[] buffer = new byte[256];
+        private int remaining = 0; // number of read names of the current reference not yet read
+
+        FileRun(int rank, File file) throws IOException {
+            super(rank);
+            ins = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+        }
+
+        @Override
+        boolean advance() throws IOException {
+            if (remaining == 0) {
+                final int length;
+                try {
+                    length = ins.readInt();
+                } catch (EOFException ex) {
+                    return false;
+                }
+                reference = readString(length);
+                remaining = ins.readInt();
+            }
+            readName = readString(ins.readInt());
+            remaining--;
+            return true;
+        }
+
+        private String readString(int length) throws IOException {
+            if (length > buffer.length)
+                buffer = new byte[Math.max(length, 2 * buffer.length)];
+            ins.readFully(buffer, 0, length);
+            return new String(buffer, 0, length, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public void close() throws IOException {
+            ins.close();
+        }
+    }
+}
@@ -20,6 +20,7 @@ package megan.genes;
 
 import jloda.util.StringUtils;
 import jloda.util.interval.Interval;
+import megan.io.IByteGetter;
 import megan.io.InputReader;
 import megan.io.OutputWriter;
 
@@ -144,6 +145,30 @@ public class GeneItem {
         reverse = (ins.read() == 1);
     }
 
+    /**
+     * read from a memory-mapped file
+     *
+     * @return position following the item
+     */
+    public long read(IByteGetter getter, long pos) throws IOException {
+        int length = getter.getInt(pos);
+        pos += 4;
+        if (length == 0)
+            proteinId = null;
+        else {
+            proteinId = new byte[length];
+            if (getter.get(pos, proteinId, 0, length) != length)
+                throw new IOException("read failed");
+            pos += length;
+        }
+        for (int i = 0; i < creator.numberOfClassifications(); i++) {
+            ids[i] = getter.getInt(pos);
+            pos += 4;
+        }
+        reverse = (getter.get(pos++) == 1);
+        return pos;
+    }
+
     /**
      * get the annotation string
      *
@@ -24,57 +24,74 @@ import jloda.util.interval.Interval;
 import jloda.util.interval.IntervalTree;
 import jloda.util.progress.ProgressPercentage;
 import megan.classification.IdMapper;
+import megan.io.ByteFileGetterMappedMemory;
 import megan.io.InputReader;
 import megan.tools.AAdderBuild;
 import megan.tools.AAdderRun;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
- * class used to access gene items
+ * class used to access gene items.
+ * The dbx file is memory mapped, so that threads can decode interval trees concurrently without locking.
+ * Decoded trees are kept in a direct-mapped cache of bounded size
  * Daniel Huson, 6.2018
  */
-public class GeneItemAccessor {
+public class GeneItemAccessor implements AutoCloseable {
+    public static final int DEFAULT_CACHE_BITS = 16;
+
     private final int size;
     private final long[] refIndex2FilePos;
-    private final IntervalTree<GeneItem>[] refIndex2Intervals;
     private final String[] index2ref;
-    private final RandomAccessFile dbRaf;
+    private final Map<String, Integer> ref2index;
+    private final ByteFileGetterMappedMemory dbxGetter;
 
     private final GeneItemCreator creator;
 
-    private final int syncBits = 1023;
-    private final Object[] syncObjects = new Object[syncBits + 1];  // use lots of objects to synchronize on so that threads don't in each others way
+    private final int cacheMask;
+    private final AtomicReferenceArray<CacheEntry> cache;
+
+    private final LongAdder countCacheHits = new LongAdder();
+    private final LongAdder countCacheMisses = new LongAdder();
 
     /**
      * construct the gene table from the gene-table index file
      *
 	 */
     public GeneItemAccessor(File indexFile, File dbFile) throws IOException {
-        // create the synchronization objects
-        for (int i = 0; i < (syncBits + 1); i++) {
-            syncObjects[i] = new Object();
-        }
+        this(indexFile, dbFile, DEFAULT_CACHE_BITS);
+    }
 
+    /**
+     * construct the gene table from the gene-table index file
+     *
+     * @param cacheBits the cache holds at most 2^cacheBits decoded interval trees
+     */
+    public GeneItemAccessor(File indexFile, File dbFile, int cacheBits) throws IOException {
         try (InputReader ins = new InputReader(indexFile); ProgressPercentage progress = new ProgressPercentage("Reading file: " + indexFile)) {
             AAdderRun.readAndVerifyMagicNumber(ins, AAdderBuild.MAGIC_NUMBER_IDX);
             final String creator = ins.readString();
-            if (!creator.equals("MALT"))
-                throw new IOException("Gene Item index not created by MALT");
+            if (!creator.equals("MALT") && !creator.equals(AAdderBuild.INDEX_CREATOR))
+                throw new IOException("Gene Item index not created by MALT or AAdderBuild");
             size = ins.readInt();
             progress.setMaximum(size);
             refIndex2FilePos = new long[size];
             index2ref = new String[size];
+            ref2index = new HashMap<>(2 * size);
             for (int i = 0; i < size; i++) {
                 index2ref[i] = ins.readString();
+                ref2index.put(index2ref[i], i);
                 final long pos = ins.readLong();
                 refIndex2FilePos[i] = pos;
                 progress.incrementProgress();
             }
         }
-        refIndex2Intervals = (IntervalTree<GeneItem>[]) new IntervalTree[size];
 
         try (InputReader dbxIns = new InputReader(dbFile)) {
             AAdderRun.readAndVerifyMagicNumber(dbxIns, AAdderBuild.MAGIC_NUMBER_DBX);
@@ -85,49 +102,79 @@ public class GeneItemAccessor {
             }
             creator = new GeneItemCreator(cNames, new IdMapper[0]);
         }
-        dbRaf = new RandomAccessFile(dbFile, "r");
+        dbxGetter = new ByteFileGetterMappedMemory(dbFile);
+
+        final int cacheSize = (1 << Math.max(0, Math.min(30, cacheBits)));
+        cacheMask = cacheSize - 1;
+        cache = new AtomicReferenceArray<>(cacheSize);
     }
 
-    private int warned = 0;
+    private final AtomicInteger warned = new AtomicInteger(0);
+
+    /**
+     * get intervals for a given reference name
+     *
+     * @return intervals or null, if reference unknown or has no intervals
+     */
+    public IntervalTree<GeneItem> getIntervals(String ref) {
+        final Integer refIndex = ref2index.get(ref);
+        return refIndex == null ? null : getIntervals(refIndex);
+    }
 
     /**
      * get intervals for a given ref index
      *
      * @return intervals or null
 	 */
-    private IntervalTree<GeneItem> getIntervals(int refIndex) {
-        synchronized (syncObjects[refIndex & syncBits]) {
-            if (refIndex < refIndex2Intervals.length && refIndex2Intervals[refIndex] == null && refIndex2FilePos[refIndex] != 0) {
-                synchronized (dbRaf) {
-                    try {
-                        final long pos = refIndex2FilePos[refIndex];
-                        dbRaf.seek(pos);
-                        int intervalsLength = dbRaf.readInt();
-                        if (intervalsLength > 0) {
-                            IntervalTree<GeneItem> intervals = new IntervalTree<>();
-                            for (int i = 0; i < intervalsLength; i++) {
-                                int start = dbRaf.readInt();
-                                int end = dbRaf.readInt();
-                                GeneItem geneItem = new GeneItem(creator);
-                                geneItem.read(dbRaf);
-                                intervals.add(start, end, geneItem);
-                                //System.err.println(refIndex+"("+start+"-"+end+") -> "+geneItem);
-                            }
-                            refIndex2Intervals[refIndex] = intervals;
-                        }
-                    } catch (IOException ex) {
-                        if (warned < 10) {
-                            Basic.caught(ex);
-                            if (++warned == 0) {
-                                System.err.println("Suppressing all further such exceptions");
-                            }
-                        }
-                    }
-                }
+    public IntervalTree<GeneItem> getIntervals(int refIndex) {
+        if (refIndex < 0 || refIndex >= size || refIndex2FilePos[refIndex] == 0)
+            return null;
+
+        final int slot = (refIndex & cacheMask);
+        final CacheEntry entry = cache.get(slot);
+        if (entry != null && entry.refIndex == refIndex) {
+            countCacheHits.increment();
+            return entry.intervals;
+        }
+        countCacheMisses.increment();
+
+        // two threads may decode the same tree at the same time, in which case one of the results is simply dropped
+        final IntervalTree<GeneItem> intervals = readIntervals(refIndex2FilePos[refIndex]);
+        cache.set(slot, new CacheEntry(refIndex, intervals));
+        return intervals;
+    }
 
+    /**
+     * decode the interval tree stored at the given position in the dbx file
+     *
+     * @return tree or null, if empty
+     */
+    private IntervalTree<GeneItem> readIntervals(long pos) {
+        try {
+            final int intervalsLength = dbxGetter.getInt(pos);
+            pos += 4;
+            if (intervalsLength > 0) {
+                final IntervalTree<GeneItem> intervals = new IntervalTree<>();
+                for (int i = 0; i < intervalsLength; i++) {
+                    final int start = dbxGetter.getInt(pos);
+                    final int end = dbxGetter.getInt(pos + 4);
+                    final GeneItem geneItem = new GeneItem(creator);
+                    pos = geneItem.read(dbxGetter, pos + 8);
+                    intervals.add(start, end, geneItem);
+                }
+                // build the tree now, as it is shared between threads once it has been published through the cache
+                intervals.build();
+                return intervals;
+            }
+        } catch (IOException ex) {
+            if (warned.get() < 10) {
+                Basic.caught(ex);
+                if (warned.incrementAndGet() == 10) {
+                    System.err.println("Suppressing all further such exceptions");
+                }
             }
-            return refIndex2Intervals[refIndex];
         }
+        return null;
     }
 
     /**
@@ -151,11 +198,44 @@ public class GeneItemAccessor {
         return referenceHeader;
     }
 
+    /**
+     * does the index contain the named reference?
+     */
+    public boolean containsReference(String ref) {
+        return ref2index.containsKey(ref);
+    }
+
+    public long getCountCacheHits() {
+        return countCacheHits.sum();
+    }
+
+    public long getCountCacheMisses() {
+        return countCacheMisses.sum();
+    }
+
     private String getIndex2ref(int i) {
         return index2ref[i];
     }
 
-    private int size() {
+    public int size() {
         return size;
     }
+
+    @Override
+    public void close() {
+        dbxGetter.close();
+    }
+
+    /**
+     * immutable cache entry, so that a slot can be replaced atomically
+     */
+    private static class CacheEntry {
+        private final int refIndex;
+        private final IntervalTree<GeneItem> intervals;
+
+        CacheEntry(int refIndex, IntervalTree<GeneItem> intervals) {
+            this.refIndex = refIndex;
+            this.intervals = intervals;
+        }
+    }
 }
@@ -0,0 +1,127 @@
+/*
+ * BlockGZipCompressor.java Copyright (C) 2024 Daniel H. Huson
+ *
+ * (Some files contain contributions from other authors, who are then mentioned separately.)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package megan.io;
+
+import java.io.ByteArrayOutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * compresses data into BGZF blocks, that is, independent gzip members of at most 64kb, each carrying its size in a "BC" extra field.
+ * As the blocks are independent, many threads can compress consecutive parts of a file, and the concatenation of their output,
+ * followed by EOF_BLOCK, is a valid gzip file that can also be read by samtools and htslib.
+ * An instance is not thread-safe, use one per thread, and close it to release the native deflater
+ * Daniel Huson, 10.2026
+ */
+public class BlockGZipCompressor implements AutoCloseable {
+    /**
+     * maximal number of uncompressed bytes per block, chosen so that the compressed block always fits into 64kb
+     */
+    public static final int MAX_BLOCK_INPUT = 0xff00;
+
+    /**
+     * empty block that marks the end of a BGZF file
+     */
+    public static final byte[] EOF_BLOCK = {0x1f, (byte) 0x8b, 0x08, 0x04, 0x00, 0x00, 0x00, 0x00, 0x00, (byte) 0xff, 0x06, 0x00, 0x42, 0x43,
+            0x02, 0x00, 0x1b, 0x00, 0x03, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00};
+
+    private static final int HEADER_SIZE = 18;
+    private static final int FOOTER_SIZE = 8;
+
+    private final Deflater deflater;
+    private final CRC32 crc32 = new CRC32();
+    private final byte[] buffer = new byte[HEADER_SIZE + 2 * MAX_BLOCK_INPUT + FOOTER_SIZE];
+
+    /**
+     * constructor
+     *
+     * @param level compression level, see Deflater
+     */
+    public BlockGZipCompressor(int level) {
+        deflater = new Deflater(level, true);
+    }
+
+    /**
+     * compresses the given data into as many blocks as needed
+     *
+     * @return concatenated blocks
+     */
+    public byte[] compress(byte[] data, int offset, int length) {
+        final var out = new ByteArrayOutputStream(length / 3 + HEADER_SIZE + FOOTER_SIZE);
+        for (var pos = offset; pos < offset + length; pos += MAX_BLOCK_INPUT) {
+            final var blockLength = Math.min(MAX_BLOCK_INPUT, offset + length - pos);
+            out.write(buffer, 0, compressBlock(data, pos, blockLength));
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * compresses at most MAX_BLOCK_INPUT bytes into a single block, written to the internal buffer
+     *
+     * @return size of block
+     */
+    private int compressBlock(byte[] data, int offset, int length) {
+        deflater.reset();
+        deflater.setInput(data, offset, length);
+        deflater.finish();
+        var compressedSize = 0;
+        while (!deflater.finished()) {
+            compressedSize += deflater.deflate(buffer, HEADER_SIZE + compressedSize, buffer.length - FOOTER_SIZE - HEADER_SIZE - compressedSize);
+        }
+        final var blockSize = HEADER_SIZE + compressedSize + FOOTER_SIZE;
+
+        buffer[0] = 0x1f;
+        buffer[1] = (byte) 0x8b;
+        buffer[2] = 0x08; // deflate
+        buffer[3] = 0x04; // extra field present
+        buffer[4] = buffer[5] = buffer[6] = buffer[7] = 0; // time
+        buffer[8] = 0;
+        buffer[9] = (byte) 0xff; // unknown OS
+        buffer[10] = 6; // length of extra field
+        buffer[11] = 0;
+        buffer[12] = 'B';
+        buffer[13] = 'C';
+        buffer[14] = 2;
+        buffer[15] = 0;
+        writeShortLittleEndian(blockSize - 1, buffer, 16);
+
+        crc32.reset();
+        crc32.update(data, offset, length);
+        writeIntLittleEndian((int) crc32.getValue(), buffer, HEADER_SIZE + compressedSize);
+        writeIntLittleEndian(length, buffer, HEADER_SIZE + compressedSize + 4);
+        return blockSize;
+    }
+
+    @Override
+    public void close() {
+        deflater.end();
+    }
+
+    private static void writeShortLittleEndian(int value, byte[] bytes, int pos) {
+        bytes[pos] = (byte) value;
+        bytes[pos + 1] = (byte) (value >>> 8);
+    }
+
+    private static void writeIntLittleEndian(int value, byte[] bytes, int pos) {
+        bytes[pos] = (byte) value;
+        bytes[pos + 1] = (byte) (value >>> 8);
+        bytes[pos + 2] = (byte) (value >>> 16);
+        bytes[pos + 3] = (byte) (value >>> 24);
+    }
+}
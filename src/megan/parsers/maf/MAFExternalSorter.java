@@ -0,0 +1,358 @@
+/*
+ * MAFExternalSorter.java Copyright (C) 2024 Daniel H. Huson
+ *
+ * (Some files contain contributions from other authors, who are then mentioned separately.)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package megan.parsers.maf;
+
+import jloda.util.StringUtils;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * sorts MAF alignments by the rank of their query and then by decreasing score, using bounded memory:
+ * alignments are collected in runs of bounded size, each run is sorted and written to a temporary file by a worker thread,
+ * and then all runs are merged. The memory limit is shared by the run being collected and the runs waiting to be written.
+ * If there are more than MAX_FAN_IN runs, groups of runs are first merged into longer runs, so that only a bounded number
+ * of files is open at any time. Alignments that have the same query and score keep their input order
+ * Daniel Huson, 10.2026
+ */
+public class MAFExternalSorter implements Closeable {
+    private static final int BYTES_OVERHEAD_PER_ALIGNMENT = 96;
+    private static final int MAX_FAN_IN = 64;
+
+    private final File tempDirectory;
+    private final long maxBytesPerRun;
+    private final boolean compressRuns;
+    private final int numberOfThreads;
+    private final ExecutorService service;
+
+    private final ArrayList<File> runFiles = new ArrayList<>();
+    private final ArrayList<Future<?>> pendingRuns = new ArrayList<>();
+
+    private ArrayList<Alignment> run = new ArrayList<>();
+    private long runBytes = 0;
+    private long count = 0;
+
+    /**
+     * constructor
+     *
+     * @param tempDirectory directory for run files, or null for default temporary directory
+     * @param maxBytes      approximate maximal number of bytes of alignment text held in memory by all runs
+     * @param compressRuns  compress run files
+     */
+    public MAFExternalSorter(File tempDirectory, long maxBytes, boolean compressRuns, int numberOfThreads) {
+        this.tempDirectory = tempDirectory;
+        this.compressRuns = compressRuns;
+        this.numberOfThreads = Math.max(1, numberOfThreads);
+        // one run is collected while at most numberOfThreads runs are sorted and written:
+        this.maxBytesPerRun = Math.max(1, maxBytes / (this.numberOfThreads + 1));
+        this.service = Executors.newFixedThreadPool(this.numberOfThreads);
+    }
+
+    /**
+     * add an alignment
+     *
+     * @param queryRank rank of the query in the output
+     * @param lines     the three lines of the alignment
+     */
+    public void add(int queryRank, byte[][] lines) throws IOException {
+        run.add(new Alignment(queryRank, parseScore(lines[0]), count++, lines));
+        for (var line : lines)
+            runBytes += line.length;
+        runBytes += BYTES_OVERHEAD_PER_ALIGNMENT;
+        if (runBytes >= maxBytesPerRun)
+            spill();
+    }
+
+    /**
+     * sorts and writes the current run in a worker thread. Waits for earlier runs, if too many are pending, to bound memory
+     */
+    private void spill() throws IOException {
+        if (run.isEmpty())
+            return;
+        final var toWrite = run;
+        run = new ArrayList<>();
+        runBytes = 0;
+
+        final var file = createRunFile();
+        pendingRuns.add(service.submit(() -> {
+            toWrite.sort(Alignment.COMPARATOR);
+            try (var outs = new DataOutputStream(createOutputStream(file))) {
+                for (var alignment : toWrite) {
+                    alignment.write(outs);
+                }
+            }
+            return null;
+        }));
+        while (pendingRuns.size() > numberOfThreads) {
+            waitFor(pendingRuns.remove(0));
+        }
+    }
+
+    /**
+     * merge all runs and write all alignments in sorted order
+     *
+     * @return number of queries and number of alignments written
+     */
+    public long[] merge(Writer w) throws IOException {
+        spill();
+        waitForPendingRuns();
+
+        while (runFiles.size() > MAX_FAN_IN)
+            mergeGroupsOfRuns();
+
+        final var counts = new long[2]; // queries, alignments
+        final var previousRank = new int[]{-1};
+        mergeRuns(runFiles, alignment -> {
+            for (var line : alignment.lines) {
+                w.write(StringUtils.toString(line));
+                w.write('\n');
+            }
+            w.write('\n');
+            counts[1]++;
+            if (alignment.queryRank != previousRank[0]) {
+                counts[0]++;
+                previousRank[0] = alignment.queryRank;
+            }
+        });
+        return counts;
+    }
+
+    /**
+     * merges groups of at most MAX_FAN_IN runs into longer runs, in worker threads, and deletes the merged runs
+     */
+    private void mergeGroupsOfRuns() throws IOException {
+        final var runs = new ArrayList<>(runFiles);
+        for (var start = 0; start < runs.size(); start += MAX_FAN_IN) {
+            final var group = runs.subList(start, Math.min(runs.size(), start + MAX_FAN_IN));
+            final var file = createRunFile();
+            pendingRuns.add(service.submit(() -> {
+                try (var outs = new DataOutputStream(createOutputStream(file))) {
+                    mergeRuns(group, alignment -> alignment.write(outs));
+                }
+                return null;
+            }));
+        }
+        waitForPendingRuns();
+
+        for (var file : runs) {
+            runFiles.remove(file);
+            if (!file.delete())
+                System.err.println("Failed to delete temporary file: " + file);
+        }
+    }
+
+    /**
+     * merges the given runs and passes all alignments in sorted order to the consumer
+     */
+    private void mergeRuns(List<File> runs, AlignmentConsumer consumer) throws IOException {
+        final var queue = new PriorityQueue<RunReader>(Math.max(1, runs.size()), Comparator.comparing(r -> r.next, Alignment.COMPARATOR));
+        try {
+            for (var file : runs) {
+                final var reader = new RunReader(new DataInputStream(createInputStream(file)));
+                if (reader.advance())
+                    queue.add(reader);
+                else
+                    reader.close();
+            }
+            while (!queue.isEmpty()) {
+                final var reader = queue.poll();
+                consumer.accept(reader.next);
+                if (reader.advance())
+                    queue.add(reader);
+                else
+                    reader.close();
+            }
+        } finally {
+            for (var reader : queue)
+                reader.close();
+        }
+    }
+
+    /**
+     * number of runs written
+     */
+    public int getNumberOfRuns() {
+        return runFiles.size();
+    }
+
+    /**
+     * deletes all run files
+     */
+    @Override
+    public void close() {
+        service.shutdownNow();
+        for (var file : runFiles) {
+            if (file.exists() && !file.delete())
+                System.err.println("Failed to delete temporary file: " + file);
+        }
+        runFiles.clear();
+    }
+
+    private File createRunFile() throws IOException {
+        final var file = File.createTempFile("maf-run-", ".tmp", tempDirectory);
+        file.deleteOnExit();
+        runFiles.add(file);
+        return file;
+    }
+
+    private OutputStream createOutputStream(File file) throws IOException {
+        final OutputStream outs = new FileOutputStream(file);
+        if (compressRuns)
+            return new DeflaterOutputStream(outs, new Deflater(Deflater.BEST_SPEED), 1 << 16);
+        else
+            return new BufferedOutputStream(outs, 1 << 16);
+    }
+
+    private InputStream createInputStream(File file) throws IOException {
+        final InputStream ins = new FileInputStream(file);
+        if (compressRuns)
+            return new InflaterInputStream(ins, new Inflater(), 1 << 16);
+        else
+            return new BufferedInputStream(ins, 1 << 16);
+    }
+
+    private void waitForPendingRuns() throws IOException {
+        for (var future : pendingRuns)
+            waitFor(future);
+        pendingRuns.clear();
+    }
+
+    private static void waitFor(Future<?> future) throws IOException {
+        try {
+            future.get();
+        } catch (Exception ex) {
+            throw new IOException("Failed to write sorted run", ex);
+        }
+    }
+
+    /**
+     * parses the score from the first line of an alignment, e.g. a score=159 EG2=1e-08 E=4.3e-17
+     *
+     * @return score or 0
+     */
+    public static int parseScore(byte[] line) {
+        var a = 0;
+        while (a < line.length && line[a] != '=')
+            a++;
+        a++;
+        var negative = false;
+        if (a < line.length && line[a] == '-') {
+            negative = true;
+            a++;
+        }
+        var score = 0;
+        while (a < line.length && line[a] >= '0' && line[a] <= '9') {
+            score = 10 * score + (line[a++] - '0');
+        }
+        return negative ? -score : score;
+    }
+
+    private interface AlignmentConsumer {
+        void accept(Alignment alignment) throws IOException;
+    }
+
+    /**
+     * an alignment with its sort keys
+     */
+    private static class Alignment {
+        static final Comparator<Alignment> COMPARATOR = (a, b) -> {
+            if (a.queryRank != b.queryRank)
+                return Integer.compare(a.queryRank, b.queryRank);
+            else if (a.score != b.score)
+                return Integer.compare(b.score, a.score);
+            else
+                return Long.compare(a.number, b.number);
+        };
+
+        private final int queryRank;
+        private final int score;
+        private final long number;
+        private final byte[][] lines;
+
+        Alignment(int queryRank, int score, long number, byte[][] lines) {
+            this.queryRank = queryRank;
+            this.score = score;
+            this.number = number;
+            this.lines = lines;
+        }
+
+        void write(DataOutputStream outs) throws IOException {
+            outs.writeInt(queryRank);
+            outs.writeInt(score);
+            outs.writeLong(number);
+            outs.writeByte(lines.length);
+            for (var line : lines) {
+                outs.writeInt(line.length);
+                outs.write(line);
+            }
+        }
+
+        static Alignment read(DataInputStream ins) throws IOException {
+            final int queryRank;
+            try {
+                queryRank = ins.readInt();
+            } catch (EOFException ex) {
+                return null;
+            }
+            final var score = ins.readInt();
+            final var number = ins.readLong();
+            final var lines = new byte[ins.readByte()][];
+            for (var i = 0; i < lines.length; i++) {
+                lines[i] = new byte[ins.readInt()];
+                ins.readFully(lines[i]);
+            }
+            return new Alignment(queryRank, score, number, lines);
+        }
+    }
+
+    /**
+     * reads the alignments of one sorted run
+     */
+    private static class RunReader implements Closeable {
+        private final DataInputStream ins;
+        private Alignment next;
+
+        RunReader(DataInputStream ins) {
+            this.ins = ins;
+        }
+
+        boolean advance() throws IOException {
+            next = Alignment.read(ins);
+            return next != null;
+        }
+
+        @Override
+        public void close() {
+            try {
+                ins.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
@@ -1155,6 +1155,24 @@ public class SAMMatch implements megan.rma3.IMatch {
         return alignedQueryEnd;
     }
 
+    /**
+     * get the first position of the alignment in the reference
+     *
+     * @return reference start, 1-based
+     */
+    public int getAlignedSubjectStart() {
+        return getPos();
+    }
+
+    /**
+     * get the last position of the alignment in the reference, computed from the cigar
+     *
+     * @return reference end, 1-based
+     */
+    public int getAlignedSubjectEnd() {
+        return getPos() + (getCigar() != null ? getCigar().getReferenceLength() : 0) - 1;
+    }
+
     public int getRefLength() {
         Object obj = optionalFields.get("ZL");
         if (obj instanceof Integer)
@@ -19,6 +19,7 @@
 package megan.rma6;
 
 import jloda.util.ListOfLongs;
+import megan.data.ClassReadBlockIterator;
 import megan.data.IClassificationBlock;
 import megan.io.IInputReader;
 import megan.io.IOutputWriter;
@@ -164,6 +165,27 @@ public class ClassificationBlockRMA6 implements IClassificationBlock {
         list.size();
     }
 
+    /**
+     * read all locations for a given set of classes in one pass and adds them to the iterator, with the group of their class
+     *
+     */
+    public void readLocations(long position, IInputReader reader, Map<Integer, Integer> class2group, ClassReadBlockIterator iterator) throws IOException {
+        reader.seek(position);
+        final int numberOfClasses = reader.readInt();
+        for (int i = 0; i < numberOfClasses; i++) {
+            final int currentId = reader.readInt();
+            reader.readInt(); // weight
+            final int count = reader.readInt();
+            final Integer group = class2group.get(currentId);
+            if (group != null) {
+                for (int z = 0; z < count; z++) {
+                    iterator.add(group, reader.readLong());
+                }
+            } else
+                reader.skipBytes(count * 8); // skip all locations, 8 bytes each
+        }
+    }
+
     /**
      * human readable representation
      *
@@ -20,14 +20,15 @@ package megan.rma6;
 
 import jloda.util.Single;
 import jloda.util.StringUtils;
-import megan.classification.Classification;
 import megan.classification.IdParser;
+import megan.data.ClassificationOrdinals;
 import megan.data.IMatchBlock;
+import megan.io.IInputReader;
 import megan.parsers.sam.SAMMatch;
 
+import java.io.IOException;
 import java.io.StringWriter;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 /**
  * matchblock for RMA6
@@ -40,7 +41,7 @@ public class MatchBlockRMA6 implements IMatchBlock {
     private long uid;
     private float percentIdentity;
     private String text;
-    private final Map<String, Integer> fName2Id = new HashMap<>();
+    private int[] ids = new int[ClassificationOrdinals.size()]; // indexed by classification ordinal
 
     private SAMMatch samMatch; // major update: we now keep the sam match and only compute text if necessary
 
@@ -65,6 +66,21 @@ public class MatchBlockRMA6 implements IMatchBlock {
         }
     }
 
+    /**
+     * gets a copy, sharing the SAM match, which is not modified
+     *
+     * @return copy
+     */
+    public MatchBlockRMA6 copy() {
+        final MatchBlockRMA6 copy = new MatchBlockRMA6();
+        copy.uid = uid;
+        copy.percentIdentity = percentIdentity;
+        copy.text = text;
+        copy.ids = ids.clone();
+        copy.samMatch = samMatch;
+        return copy;
+    }
+
     /**
      * erase the block (for reuse)
      */
@@ -73,7 +89,7 @@ public class MatchBlockRMA6 implements IMatchBlock {
         uid = 0;
         percentIdentity = 0;
         text = null;
-        fName2Id.clear();
+        Arrays.fill(ids, 0);
     }
 
     /**
@@ -95,16 +111,20 @@ public class MatchBlockRMA6 implements IMatchBlock {
      *
 	 */
     public int getTaxonId() {
-        return getId(Classification.Taxonomy);
+        return getId(ClassificationOrdinals.TAXONOMY);
     }
 
     public void setTaxonId(int taxonId) {
-        setId(Classification.Taxonomy, taxonId);
+        setId(ClassificationOrdinals.TAXONOMY, taxonId);
     }
 
     public int getId(String cName) {
-        Integer id = fName2Id.get(cName);
-        return id != null ? id : 0;
+        return getId(ClassificationOrdinals.get(cName));
+    }
+
+    @Override
+    public int getId(int classificationOrdinal) {
+        return classificationOrdinal < ids.length ? ids[classificationOrdinal] : 0;
     }
 
     /**
@@ -121,7 +141,25 @@ public class MatchBlockRMA6 implements IMatchBlock {
     }
 
     public void setId(String cName, Integer id) {
-        fName2Id.put(cName, id);
+        setId(ClassificationOrdinals.get(cName), id != null ? id : 0);
+    }
+
+    @Override
+    public void setId(int classificationOrdinal, int id) {
+        if (classificationOrdinal >= ids.length)
+            ids = Arrays.copyOf(ids, Math.max(classificationOrdinal + 1, ClassificationOrdinals.size()));
+        ids[classificationOrdinal] = id;
+    }
+
+    /**
+     * reads one int id per classification, as stored in an RMA6 file
+     *
+     * @param classificationOrdinals the ordinals of the classifications, in the order in which their ids are stored
+     */
+    public void readIds(IInputReader reader, int[] classificationOrdinals) throws IOException {
+        for (int classificationOrdinal : classificationOrdinals) {
+            setId(classificationOrdinal, reader.readInt());
+        }
     }
 
     /**
@@ -229,8 +267,10 @@ public class MatchBlockRMA6 implements IMatchBlock {
         StringWriter w = new StringWriter();
 
         w.write("Match uid: " + uid + "--------\n");
-        for (String cName : fName2Id.keySet())
-            w.write(String.format(" %s: ", cName) + fName2Id.get(cName));
+        for (int i = 0; i < ids.length; i++) {
+            if (ids[i] != 0)
+                w.write(String.format(" %s: ", ClassificationOrdinals.getName(i)) + ids[i]);
+        }
         w.write("\n");
         if (getBitScore() != 0)
             w.write("bitScore: " + getBitScore() + "\n");
@@ -276,4 +316,19 @@ public class MatchBlockRMA6 implements IMatchBlock {
     public int getRefLength() {
         return samMatch.getRefLength();
     }
+
+    @Override
+    public String getRefName() {
+        return samMatch.getRefName();
+    }
+
+    @Override
+    public int getAlignedSubjectStart() {
+        return samMatch.getAlignedSubjectStart();
+    }
+
+    @Override
+    public int getAlignedSubjectEnd() {
+        return samMatch.getAlignedSubjectEnd();
+    }
 }
@@ -79,6 +79,11 @@ public class RMA6Connector implements IConnector {
 
     @Override
     public IReadBlockIterator getReadsIteratorForListOfClassIds(String classification, Collection<Integer> classIds, float minScore, float maxExpected, boolean wantReadSequence, boolean wantMatches) throws IOException {
+        return getReadsIteratorForListOfClassIds(classification, classIds, minScore, maxExpected, wantReadSequence, wantMatches, reuseReadBlockInGetter);
+    }
+
+    @Override
+    public IReadBlockIterator getReadsIteratorForListOfClassIds(String classification, Collection<Integer> classIds, float minScore, float maxExpected, boolean wantReadSequence, boolean wantMatches, boolean reuseReadBlocks) throws IOException {
         try (final RMA6File rma6File = new RMA6File(fileName, RMA6File.READ_ONLY)) {
             final ClassificationBlockRMA6 block = new ClassificationBlockRMA6(classification);
             final long start = rma6File.getFooterSectionRMA6().getStartClassification(classification);
@@ -89,14 +94,37 @@ public class RMA6Connector implements IConnector {
                     block.readLocations(start, rma6File.getReader(), classId, list);
                 }
             }
-            return new ReadBlockIterator(list.iterator(), list.size(), getReadBlockGetter(minScore, maxExpected, wantReadSequence, wantMatches));
+            return new ReadBlockIterator(list.iterator(), list.size(), getReadBlockGetter(minScore, maxExpected, wantReadSequence, wantMatches, reuseReadBlocks));
+        }
+    }
+
+    /**
+     * get an iterator over the reads of all given classes, in the order of their location in the file
+     */
+    @Override
+    public IClassReadBlockIterator getClassReadsIterator(String classification, Map<Integer, Integer> class2group, float minScore, float maxExpected, boolean wantReadSequence, boolean wantMatches) throws IOException {
+        final ClassReadBlockIterator iterator = new ClassReadBlockIterator(getReadBlockGetter(minScore, maxExpected, wantReadSequence, wantMatches));
+        try (final RMA6File rma6File = new RMA6File(fileName, RMA6File.READ_ONLY)) {
+            final Long start = rma6File.getFooterSectionRMA6().getStartClassification(classification);
+            if (start != null)
+                new ClassificationBlockRMA6(classification).readLocations(start, rma6File.getReader(), class2group, iterator);
         }
+        return iterator;
     }
 
     @Override
     public IReadBlockGetter getReadBlockGetter(float minScore, float maxExpected, boolean wantReadSequence, boolean wantMatches) throws IOException {
+        return getReadBlockGetter(minScore, maxExpected, wantReadSequence, wantMatches, reuseReadBlockInGetter);
+    }
+
+    private IReadBlockGetter getReadBlockGetter(float minScore, float maxExpected, boolean wantReadSequence, boolean wantMatches, boolean reuseReadBlock) throws IOException {
+        if (ReadBlockCache.isEnabled()) {
+            return ReadBlockCache.getInstance().getReadBlockGetter(fileName, false, minScore, maxExpected, wantReadSequence, wantMatches,
+                    () -> new ReadBlockGetterRMA6(new RMA6File(fileName, RMA6File.READ_ONLY), wantReadSequence, wantMatches, minScore, maxExpected, false, false),
+                    readBlock -> ((ReadBlockRMA6) readBlock).copy());
+        }
         final RMA6File rma6File = new RMA6File(fileName, RMA6File.READ_ONLY);
-        return new ReadBlockGetterRMA6(rma6File, wantReadSequence, wantMatches, minScore, maxExpected, false, reuseReadBlockInGetter);
+        return new ReadBlockGetterRMA6(rma6File, wantReadSequence, wantMatches, minScore, maxExpected, false, reuseReadBlock);
     }
 
     @Override
@@ -176,6 +204,18 @@ public class RMA6Connector implements IConnector {
         }
     }
 
+    /**
+     * rescan classifications after running the data processor, one classification at a time
+     */
+    @Override
+    public void updateClassifications(String[] cNames, UpdateItemFile updateItems, ProgressListener progressListener) throws IOException {
+        progressListener.setMaximum(cNames.length);
+        progressListener.setProgress(0);
+        try (RMA6FileModifier rma6Modifier = new RMA6FileModifier(fileName)) {
+            rma6Modifier.updateClassifications(cNames, updateItems, progressListener);
+        }
+    }
+
     @Override
     public IReadBlockIterator getFindAllReadsIterator(String regEx, FindSelection findSelection, Single<Boolean> canceled) throws IOException {
         return new FindAllReadsIterator(regEx, findSelection, getAllReadsIterator(0, 10, true, true), canceled);
@@ -20,6 +20,8 @@ package megan.rma6;
 
 import jloda.util.ListOfLongs;
 import jloda.util.StringUtils;
+import jloda.util.progress.ProgressListener;
+import megan.data.UpdateItemFile;
 import megan.io.InputOutputReaderWriter;
 
 import java.io.Closeable;
@@ -48,28 +50,48 @@ public class RMA6FileModifier extends RMA6File implements Closeable {
      *
 	 */
     public void updateClassifications(String[] cNames, Map<Integer, ListOfLongs>[] fName2ClassId2Location, Map<Integer, Float>[] fName2ClassId2Weight) throws IOException {
+        startClassifications();
+        for (int c = 0; c < cNames.length; c++) {
+            writeClassification(cNames[c], fName2ClassId2Location[c], fName2ClassId2Weight[c]);
+        }
+        finishClassifications();
+    }
+
+    /**
+     * update the classifications from updates that were written to a file, one classification at a time
+     */
+    public void updateClassifications(String[] cNames, UpdateItemFile updateItems, ProgressListener progress) throws IOException {
+        startClassifications();
+        for (int c = 0; c < cNames.length; c++) {
+            writeClassification(cNames[c], updateItems.getClassId2Locations(c), updateItems.getClassIdToWeightMap(c));
+            progress.incrementProgress();
+        }
+        finishClassifications();
+    }
+
+    private void startClassifications() throws IOException {
         io = new InputOutputReaderWriter(new File(fileName), READ_WRITE);
 
         io.seek(footerSectionRMA6.getStartClassificationsSection());
         io.setLength(io.getPosition());
 
         footerSectionRMA6.getAvailableClassification2Position().clear();
+    }
 
-        for (int c = 0; c < cNames.length; c++) {
-            final String cName = cNames[c];
-            final ClassificationBlockRMA6 classification = new ClassificationBlockRMA6(cName);
-            final Map<Integer, ListOfLongs> id2locations = fName2ClassId2Location[c];
-            for (int id : id2locations.keySet()) {
-                final Float weight = fName2ClassId2Weight[c].get(id);
-                classification.setWeightedSum(id, weight != null ? weight : 0f);
-                final ListOfLongs list = fName2ClassId2Location[c].get(id);
-                classification.setSum(id, list != null ? list.size() : 0);
-            }
-            footerSectionRMA6.getAvailableClassification2Position().put(cName, io.getPosition());
-			classification.write(io, id2locations);
-			System.err.printf("Numb. %4s classes: %,10d%n", StringUtils.abbreviate(cName, 4), id2locations.size());
+    private void writeClassification(String cName, Map<Integer, ListOfLongs> id2locations, Map<Integer, Float> id2weight) throws IOException {
+        final ClassificationBlockRMA6 classification = new ClassificationBlockRMA6(cName);
+        for (int id : id2locations.keySet()) {
+            final Float weight = id2weight.get(id);
+            classification.setWeightedSum(id, weight != null ? weight : 0f);
+            final ListOfLongs list = id2locations.get(id);
+            classification.setSum(id, list != null ? list.size() : 0);
         }
+        footerSectionRMA6.getAvailableClassification2Position().put(cName, io.getPosition());
+        classification.write(io, id2locations);
+        System.err.printf("Numb. %4s classes: %,10d%n", StringUtils.abbreviate(cName, 4), id2locations.size());
+    }
 
+    private void finishClassifications() throws IOException {
         footerSectionRMA6.setEndClassificationsSection(io.getPosition());
         footerSectionRMA6.setStartAuxDataSection(io.getPosition());
         io.writeInt(0);
@@ -309,6 +309,16 @@ public class RMA6FromBlastCreator {
                 accessAccessionMappingDatabase.close();
         }
 
+        finishFile(rma6FileCreator, rma6File, doc, pairedReads, totalNumberOfReads, totalNumberOfMatches, progress);
+    }
+
+    /**
+     * finishes an RMA6 file after all queries have been added: writes the remaining sections, links paired reads,
+     * performs the classification and saves the auxiliary data
+     *
+	 */
+    static void finishFile(RMA6FileCreator rma6FileCreator, String rma6File, Document doc, boolean pairedReads, long totalNumberOfReads, long totalNumberOfMatches,
+                           ProgressListener progress) throws IOException, CanceledException, SQLException {
         rma6FileCreator.endAddingQueries();
 
             progress.reportTaskCompleted();
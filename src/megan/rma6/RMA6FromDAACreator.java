@@ -0,0 +1,401 @@
+/*
+ * RMA6FromDAACreator.java Copyright (C) 2024 Daniel H. Huson
+ *
+ * (Some files contain contributions from other authors, who are then mentioned separately.)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package megan.rma6;
+
+import jloda.fx.util.ProgramExecutorService;
+import jloda.util.ByteInputBuffer;
+import jloda.util.ByteOutputBuffer;
+import jloda.util.CanceledException;
+import jloda.util.FileUtils;
+import jloda.util.Single;
+import jloda.util.StringUtils;
+import jloda.util.interval.Interval;
+import jloda.util.interval.IntervalTree;
+import jloda.util.progress.ProgressListener;
+import megan.classification.Classification;
+import megan.core.Document;
+import megan.core.MeganFile;
+import megan.daa.DAAReferencesAnnotator;
+import megan.daa.io.*;
+import megan.io.FileInputStreamAdapter;
+import megan.io.FileRandomAccessReadOnlyAdapter;
+import megan.parsers.blast.PostProcessMatches;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.*;
+
+/**
+ * Creates a new RMA6 file directly from the binary query and match records of one or two DAA files, without
+ * going through SAM text that is parsed again. The classification ids of references are taken from the reference
+ * annotations of a meganized file, or are computed once per reference otherwise. Chunks of consecutive queries
+ * are processed in parallel and written in input order
+ * <p>
+ * Daniel Huson, 10.2026
+ */
+public class RMA6FromDAACreator {
+    /**
+     * approximate number of bytes of DAA query records per chunk
+     */
+    private static final int CHUNK_SIZE = 1 << 22;
+
+    private final String[] daaFiles;
+    private final String rma6File;
+    private final Document doc;
+
+    private final int maxMatchesPerRead;
+    private final String[] cNames;
+    private final boolean pairedReads;
+    private final boolean longReads;
+    private final int pairedReadSuffixLength;
+
+    private final RMA6FileCreator rma6FileCreator;
+
+    /**
+     * construct a new creator to create an RMA6 file from one DAA file, or two, for paired reads
+     *
+	 */
+    public RMA6FromDAACreator(String creator, String[] daaFiles, String rma6File, boolean useCompression, Document doc, int maxMatchesPerRead) throws IOException {
+        this.daaFiles = daaFiles;
+        this.rma6File = rma6File;
+        this.maxMatchesPerRead = maxMatchesPerRead;
+        this.doc = doc;
+        doc.getMeganFile().setFile(rma6File, MeganFile.Type.RMA6_FILE);
+
+        if (doc.getActiveViewers().size() > 0)
+            cNames = doc.getActiveViewers().toArray(new String[0]);
+        else
+            cNames = new String[]{Classification.Taxonomy};
+        if (!Arrays.asList(cNames).contains(Classification.Taxonomy))
+            throw new IOException("Internal error: taxonomy not among classifications");
+
+        System.err.println("Classifications: " + StringUtils.toString(cNames, ", "));
+
+        this.longReads = doc.isLongReads();
+        this.pairedReads = doc.isPairedReads();
+        this.pairedReadSuffixLength = doc.getPairedReadSuffixLength();
+
+        // setup the file creator and write the header:
+        rma6FileCreator = new RMA6FileCreator(rma6File, useCompression);
+        rma6FileCreator.writeHeader(creator, doc.getBlastMode(), cNames, doc.isPairedReads());
+    }
+
+    /**
+     * parse the files
+     *
+	 */
+    public void parseFiles(final ProgressListener progress) throws IOException, CanceledException, SQLException {
+        progress.setTasks("Generating RMA6 file", "Parsing matches");
+
+        final HashMap<String, Long> read2PairedReadLocation = (pairedReads ? new HashMap<>(1000000) : null);
+        final long[] totals = new long[2]; // reads and matches
+
+        rma6FileCreator.startAddingQueries();
+
+        final int numberOfWorkers = Math.max(1, ProgramExecutorService.getNumberOfCoresToUse() - 1);
+        final ExecutorService workers = Executors.newFixedThreadPool(numberOfWorkers);
+        try {
+            for (String daaFile : daaFiles) {
+                progress.setTasks("Parsing file", FileUtils.getFileNameWithoutPath(daaFile));
+                System.err.println("Parsing file: " + daaFile);
+
+                final DAAHeader header = new DAAHeader(daaFile, true);
+                final ReferenceAnnotations annotations = setupReferenceAnnotations(header, progress);
+                processFile(new DAAParser(header), annotations, workers, 2 * numberOfWorkers, read2PairedReadLocation, totals, progress);
+            }
+        } finally {
+            workers.shutdownNow();
+        }
+
+        RMA6FromBlastCreator.finishFile(rma6FileCreator, rma6File, doc, pairedReads, totals[0], totals[1], progress);
+    }
+
+    /**
+     * determines the classification ids of all references, reusing the reference annotations of a meganized file
+     * and only computing the missing ones
+     *
+     * @return reference annotations
+     */
+    private ReferenceAnnotations setupReferenceAnnotations(DAAHeader header, ProgressListener progress) throws IOException {
+        header.loadRefAnnotations();
+
+        final int[] refAnnotationIndex = new int[cNames.length];
+        final ArrayList<String> missing = new ArrayList<>();
+        for (int c = 0; c < cNames.length; c++) {
+            refAnnotationIndex[c] = header.getRefAnnotationIndex(cNames[c]);
+            if (refAnnotationIndex[c] == -1)
+                missing.add(cNames[c]);
+        }
+        if (missing.size() < cNames.length)
+            System.err.println("Using reference annotations contained in DAA file for: " + StringUtils.toString(remove(cNames, missing), ", "));
+
+        // load all reference names now: the chunk workers look them up concurrently, and loading on demand is not thread-safe
+        header.loadReferences(false);
+
+        final int[][] ref2class = new int[cNames.length][];
+        if (missing.size() > 0) {
+            final int[][] computed = DAAReferencesAnnotator.computeReferenceAnnotations(header, missing.toArray(new String[0]), progress);
+            for (int c = 0, m = 0; c < cNames.length; c++) {
+                if (refAnnotationIndex[c] == -1)
+                    ref2class[c] = computed[m++];
+            }
+        }
+        return new ReferenceAnnotations(header, refAnnotationIndex, ref2class);
+    }
+
+    /**
+     * process all queries in one DAA file. The calling thread reads chunks of query records, the workers convert them and
+     * a writer thread adds them to the RMA6 file in input order
+     *
+     * @param maxChunksInFlight maximal number of chunks read, but not yet written
+     */
+    private void processFile(DAAParser daaParser, ReferenceAnnotations annotations, ExecutorService workers, int maxChunksInFlight,
+                             HashMap<String, Long> read2PairedReadLocation, long[] totals, ProgressListener progress) throws IOException, CanceledException {
+        final DAAHeader header = daaParser.getHeader();
+
+        final ArrayBlockingQueue<Future<Chunk>> queue = new ArrayBlockingQueue<>(Math.max(1, maxChunksInFlight));
+        final Single<Exception> exception = new Single<>();
+
+        final ExecutorService writer = Executors.newSingleThreadExecutor();
+        try {
+            writer.submit(() -> {
+                try {
+                    while (true) {
+                        final Chunk chunk = queue.take().get();
+                        if (chunk == Chunk.SENTINEL)
+                            break;
+                        for (QueryAndMatches query : chunk.output) {
+                            long mateLocation = 0;
+                            if (read2PairedReadLocation != null) {
+                                final String strippedName = StringUtils.toString(query.name, 0, query.name.length - pairedReadSuffixLength);
+                                final Long location = read2PairedReadLocation.get(strippedName);
+                                if (location == null)
+                                    read2PairedReadLocation.put(strippedName, rma6FileCreator.getPosition());
+                                else {
+                                    read2PairedReadLocation.remove(strippedName);
+                                    mateLocation = location;
+                                }
+                            }
+                            rma6FileCreator.addQuery(query.text, query.text.length, query.ids.length, query.matches, query.matches.length, query.ids, mateLocation);
+                            totals[0]++;
+                            totals[1] += query.ids.length;
+                        }
+                    }
+                } catch (Exception ex) {
+                    exception.setIfCurrentValueIsNull(ex);
+                }
+            });
+
+            progress.setMaximum(header.getQueryRecords());
+            progress.setProgress(0);
+
+            try (InputReaderLittleEndian ins = new InputReaderLittleEndian(new FileInputStreamAdapter(header.getFileName()))) {
+                ins.seek(header.getLocationOfBlockInFile(header.getAlignmentsBlockIndex()));
+                ArrayList<byte[]> records = new ArrayList<>();
+                int size = 0;
+                for (long q = 0; q < header.getQueryRecords() && exception.get() == null; q++) {
+                    final byte[] record = new byte[ins.readInt()];
+                    ins.read(record, 0, record.length);
+                    records.add(record);
+                    size += record.length;
+                    if (size >= CHUNK_SIZE || q + 1 == header.getQueryRecords()) {
+                        final Chunk chunk = new Chunk(records);
+                        enqueue(queue, workers.submit(() -> chunk.process(daaParser, annotations, maxMatchesPerRead, longReads)), exception);
+                        records = new ArrayList<>();
+                        size = 0;
+                        progress.setProgress(q);
+                    }
+                }
+            } finally {
+                enqueue(queue, CompletableFuture.completedFuture(Chunk.SENTINEL), exception);
+            }
+        } catch (InterruptedException ex) {
+            exception.setIfCurrentValueIsNull(ex);
+        } finally {
+            writer.shutdown();
+            try {
+                writer.awaitTermination(1000, TimeUnit.DAYS);
+            } catch (InterruptedException ex) {
+                exception.setIfCurrentValueIsNull(ex);
+            }
+        }
+        if (exception.get() instanceof IOException)
+            throw (IOException) exception.get();
+        else if (exception.get() != null)
+            throw new IOException(exception.get());
+    }
+
+    /**
+     * put a chunk into the queue, unless the writer has failed, in which case nobody will take it
+     */
+    private static void enqueue(BlockingQueue<Future<Chunk>> queue, Future<Chunk> future, Single<Exception> exception) throws InterruptedException {
+        while (!queue.offer(future, 100, TimeUnit.MILLISECONDS)) {
+            if (exception.get() != null)
+                return;
+        }
+    }
+
+    private static String[] remove(String[] array, ArrayList<String> toRemove) {
+        final ArrayList<String> list = new ArrayList<>();
+        for (String a : array) {
+            if (!toRemove.contains(a))
+                list.add(a);
+        }
+        return list.toArray(new String[0]);
+    }
+
+    /**
+     * classification ids of all references, either contained in the DAA file or computed
+     */
+    private static class ReferenceAnnotations {
+        private final DAAHeader header;
+        private final int[] refAnnotationIndex;
+        private final int[][] ref2class;
+
+        ReferenceAnnotations(DAAHeader header, int[] refAnnotationIndex, int[][] ref2class) {
+            this.header = header;
+            this.refAnnotationIndex = refAnnotationIndex;
+            this.ref2class = ref2class;
+        }
+
+        /**
+         * gets the ids of a reference for all classifications
+         */
+        int[] getIds(int refId) {
+            final int[] ids = new int[ref2class.length];
+            for (int c = 0; c < ids.length; c++) {
+                ids[c] = (ref2class[c] != null ? ref2class[c][refId] : header.getRefAnnotation(refAnnotationIndex[c], refId));
+            }
+            return ids;
+        }
+    }
+
+    /**
+     * a query and its matches, as stored in an RMA6 file
+     */
+    private static class QueryAndMatches {
+        private final byte[] name;
+        private final byte[] text;
+        private final byte[] matches;
+        private final int[][] ids;
+
+        QueryAndMatches(byte[] name, byte[] text, byte[] matches, int[][] ids) {
+            this.name = name;
+            this.text = text;
+            this.matches = matches;
+            this.ids = ids;
+        }
+    }
+
+    /**
+     * a chunk of consecutive DAA query records and, once processed, the corresponding queries and matches
+     */
+    private static class Chunk {
+        static final Chunk SENTINEL = new Chunk(null);
+
+        private final ArrayList<byte[]> records;
+        private final ArrayList<QueryAndMatches> output = new ArrayList<>();
+
+        Chunk(ArrayList<byte[]> records) {
+            this.records = records;
+        }
+
+        /**
+         * decode all query records and render their matches as SAM lines. Queries without matches are skipped
+         */
+        Chunk process(DAAParser daaParser, ReferenceAnnotations annotations, int maxMatchesPerRead, boolean longReads) throws IOException {
+            final DAAHeader header = daaParser.getHeader();
+            final ByteInputBuffer inputBuffer = new ByteInputBuffer();
+            final ByteOutputBuffer outputBuffer = new ByteOutputBuffer(100000);
+            final DAAQueryRecord queryRecord = new DAAQueryRecord(daaParser);
+            final DAAMatchRecord matchRecord = new DAAMatchRecord(queryRecord);
+            final ArrayList<DAAMatchRecord> list = new ArrayList<>();
+            final ArrayList<int[]> ids = new ArrayList<>();
+
+            final IntervalTree<DAAMatchRecord> intervalTree;
+            final float minProportionCoverToDominate;
+            final float topProportionScoreToDominate;
+            if (longReads) {
+                final PostProcessMatches postProcessMatches = new PostProcessMatches();
+                postProcessMatches.setParseLongReads(true);
+                intervalTree = new IntervalTree<>();
+                minProportionCoverToDominate = postProcessMatches.getMinProportionCoverToStronglyDominate();
+                topProportionScoreToDominate = postProcessMatches.getTopProportionScoreToStronglyDominate();
+            } else {
+                intervalTree = null;
+                minProportionCoverToDominate = 0;
+                topProportionScoreToDominate = 0;
+            }
+
+            try (InputReaderLittleEndian refIns = new InputReaderLittleEndian(new FileRandomAccessReadOnlyAdapter(header.getFileName()))) {
+                for (byte[] record : records) {
+                    inputBuffer.setSize(record.length);
+                    System.arraycopy(record, 0, inputBuffer.getBytes(), 0, record.length);
+                    inputBuffer.rewind();
+                    queryRecord.parseBuffer(inputBuffer);
+
+                    if (!longReads) {
+                        int numberOfMatches = 0;
+                        while (inputBuffer.getPosition() < inputBuffer.size()) {
+                            if (++numberOfMatches > maxMatchesPerRead)
+                                break;
+                            matchRecord.parseBuffer(inputBuffer, refIns);
+                            SAMUtilities.createSAM(daaParser, matchRecord, outputBuffer, daaParser.getAlignmentAlphabet());
+                            ids.add(annotations.getIds(matchRecord.getSubjectId()));
+                        }
+                    } else { // only keep matches that are not strongly dominated by another match
+                        intervalTree.clear();
+                        while (inputBuffer.getPosition() < inputBuffer.size()) {
+                            final DAAMatchRecord aMatchRecord = new DAAMatchRecord(queryRecord);
+                            aMatchRecord.parseBuffer(inputBuffer, refIns);
+                            intervalTree.add(aMatchRecord.getQueryBegin(), aMatchRecord.getQueryEnd(), aMatchRecord);
+                        }
+                        list.clear();
+                        for (Interval<DAAMatchRecord> interval : intervalTree) {
+                            boolean covered = false;
+                            for (Interval<DAAMatchRecord> other : intervalTree.getIntervals(interval)) {
+                                if (other.overlap(interval) >= minProportionCoverToDominate * interval.length() && topProportionScoreToDominate * other.getData().getScore() > interval.getData().getScore()) {
+                                    covered = true;
+                                    break;
+                                }
+                            }
+                            if (!covered)
+                                list.add(interval.getData());
+                        }
+                        for (DAAMatchRecord aMatchRecord : list) {
+                            SAMUtilities.createSAM(daaParser, aMatchRecord, outputBuffer, daaParser.getAlignmentAlphabet());
+                            ids.add(annotations.getIds(aMatchRecord.getSubjectId()));
+                        }
+                    }
+
+                    if (outputBuffer.size() > 0) {
+                        output.add(new QueryAndMatches(queryRecord.getQueryName(), queryRecord.getQueryFastA(daaParser.getSourceAlphabet()), outputBuffer.copyBytes(), ids.toArray(new int[0][])));
+                        outputBuffer.rewind();
+                    }
+                    ids.clear();
+                }
+            }
+            records.clear();
+            return this;
+        }
+    }
+}
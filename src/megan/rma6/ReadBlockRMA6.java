@@ -20,6 +20,7 @@ package megan.rma6;
 
 import jloda.seq.BlastMode;
 import jloda.util.StringUtils;
+import megan.data.ClassificationOrdinals;
 import megan.data.IMatchBlock;
 import megan.data.IReadBlock;
 import megan.io.IInputReader;
@@ -37,6 +38,7 @@ public class ReadBlockRMA6 implements IReadBlock {
     private final boolean pairedReads;
 
     private final String[] cNames;
+    private final int[] cOrdinals;
     private long uid;
     private String readHeader;
     private String readSequence;
@@ -56,6 +58,33 @@ public class ReadBlockRMA6 implements IReadBlock {
         this.blastMode = blastMode;
         this.pairedReads = pairedReads;
         this.cNames = cNames;
+        this.cOrdinals = ClassificationOrdinals.get(cNames);
+    }
+
+    /**
+     * gets a copy, including copies of all match blocks
+     *
+     * @return copy
+     */
+    public ReadBlockRMA6 copy() {
+        final ReadBlockRMA6 copy = new ReadBlockRMA6(blastMode, pairedReads, cNames);
+        copy.uid = uid;
+        copy.readHeader = readHeader;
+        copy.readSequence = readSequence;
+        copy.readLength = readLength;
+        copy.readComplexity = readComplexity;
+        copy.readWeight = readWeight;
+        copy.mateUid = mateUid;
+        copy.mateType = mateType;
+        copy.numberOfMatches = numberOfMatches;
+        if (matchBlocks != null) {
+            copy.matchBlocks = matchBlocks.clone();
+            for (int i = 0; i < copy.matchBlocks.length; i++) {
+                if (copy.matchBlocks[i] instanceof MatchBlockRMA6 matchBlock)
+                    copy.matchBlocks[i] = matchBlock.copy();
+            }
+        }
+        return copy;
     }
 
     /**
@@ -259,13 +288,11 @@ public class ReadBlockRMA6 implements IReadBlock {
         if (wantMatches) {
             // construct match blocks:
             matchBlocks = new MatchBlockRMA6[numberOfMatches];
-            for (int i = 0; i < numberOfMatches; i++)
-                matchBlocks[i] = new MatchBlockRMA6();
             // for each match, read taxon-id and classification ids:
             for (int i = 0; i < numberOfMatches; i++) {
-                for (String cName : cNames) {
-                    matchBlocks[i].setId(cName, reader.readInt()); // read 4*fName.length bytes
-                }
+                final MatchBlockRMA6 matchBlock = new MatchBlockRMA6();
+                matchBlock.readIds(reader, cOrdinals); // read 4*fName.length bytes
+                matchBlocks[i] = matchBlock;
             }
 
             // read the text for all matches:
@@ -0,0 +1,240 @@
+/*
+ * PairwiseStatistics.java Copyright (C) 2024 Daniel H. Huson
+ *
+ * (Some files contain contributions from other authors, who are then mentioned separately.)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package megan.stats;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.function.DoublePredicate;
+import java.util.stream.IntStream;
+
+/**
+ * statistics for all pairs of a set of vectors of the same length, computed in parallel, one row per thread.
+ * Results are returned as full symmetric matrices
+ * Daniel Huson, 10.2026
+ */
+public class PairwiseStatistics {
+    /**
+     * computes Pearson's correlation coefficient for all pairs of vectors. Each vector is centered and scaled to unit
+     * length once, so that the coefficient of a pair is the dot product of the two scaled vectors
+     *
+     * @return matrix of coefficients, NaN for vectors that have no variance
+     */
+    public static double[][] computePearson(double[][] vectors) {
+        final var n = vectors.length;
+        final var scaled = new double[n][];
+        IntStream.range(0, n).parallel().forEach(a -> scaled[a] = centerAndScale(vectors[a]));
+
+        final var result = new double[n][n];
+        IntStream.range(0, n).parallel().forEach(a -> {
+            final var x = scaled[a];
+            result[a][a] = 1;
+            for (var b = a + 1; b < n; b++) {
+                final var y = scaled[b];
+                var sum = 0.0;
+                for (var i = 0; i < x.length; i++)
+                    sum += x[i] * y[i];
+                result[a][b] = sum;
+            }
+        });
+        mirror(result);
+        return result;
+    }
+
+    /**
+     * computes Spearman's rank correlation coefficient for all pairs of vectors, that is, Pearson's coefficient of the
+     * ranks, using average ranks for ties
+     *
+     * @return matrix of coefficients
+     */
+    public static double[][] computeSpearman(double[][] vectors) {
+        final var ranks = new double[vectors.length][];
+        IntStream.range(0, vectors.length).parallel().forEach(a -> ranks[a] = computeRanks(vectors[a]));
+        return computePearson(ranks);
+    }
+
+    /**
+     * computes (C-D)/(C+D) for all pairs of vectors, where C and D are the numbers of concordant and discordant pairs of
+     * positions, ignoring all pairs of positions that are tied in either vector. As in Knight's algorithm, positions are
+     * visited in the order of the first vector, and D is obtained by counting, for each position, the preceding positions
+     * with a strictly smaller value in the first vector and a strictly larger one in the second vector. These are counted
+     * using a Fenwick tree over the ranks of the second vector, so each pair takes O(m log k) time, where k is the
+     * number of distinct values
+     *
+     * @return matrix of values, 0 where there are no untied pairs
+     */
+    public static double[][] computeKendall(double[][] vectors) {
+        final var n = vectors.length;
+        final var orders = new int[n][];
+        final var ranks = new int[n][];
+        final var numberOfRanks = new int[n];
+        final var ties = new long[n];
+        IntStream.range(0, n).parallel().forEach(a -> {
+            final var values = vectors[a];
+            final var order = orders[a] = computeOrder(values);
+            final var rank = ranks[a] = new int[values.length];
+            var k = 0;
+            var run = 1L;
+            for (var i = 0; i < order.length; i++) {
+                if (i > 0 && values[order[i]] != values[order[i - 1]]) {
+                    k++;
+                    ties[a] += run * (run - 1) / 2;
+                    run = 1;
+                } else if (i > 0)
+                    run++;
+                rank[order[i]] = k + 1;
+            }
+            ties[a] += run * (run - 1) / 2;
+            numberOfRanks[a] = k + 1;
+        });
+
+        final var result = new double[n][n];
+        IntStream.range(0, n).parallel().forEach(a -> {
+            final var order = orders[a];
+            final var rankA = ranks[a];
+            final var m = order.length;
+            final var pairs = (long) m * (m - 1) / 2;
+            final var tree = new int[Arrays.stream(numberOfRanks).max().orElse(0) + 1];
+            final var countInGroup = new int[tree.length];
+
+            result[a][a] = 1;
+            for (var b = a + 1; b < n; b++) {
+                final var rankB = ranks[b];
+                final var k = numberOfRanks[b];
+                Arrays.fill(tree, 0, k + 1, 0);
+
+                var discordant = 0L;
+                var tiedBoth = 0L;
+                var inserted = 0;
+                for (var start = 0; start < m; ) {
+                    var end = start + 1;
+                    while (end < m && rankA[order[end]] == rankA[order[start]])
+                        end++;
+                    for (var i = start; i < end; i++) {
+                        final var r = rankB[order[i]];
+                        var atMost = 0; // number of inserted positions with rank at most r
+                        for (var j = r; j > 0; j -= j & -j)
+                            atMost += tree[j];
+                        discordant += inserted - atMost;
+                        tiedBoth += countInGroup[r]++;
+                    }
+                    for (var i = start; i < end; i++) {
+                        final var r = rankB[order[i]];
+                        countInGroup[r] = 0;
+                        for (var j = r; j <= k; j += j & -j)
+                            tree[j]++;
+                    }
+                    inserted += end - start;
+                    start = end;
+                }
+                final var untied = pairs - ties[a] - ties[b] + tiedBoth;
+                result[a][b] = (untied > 0 ? (double) (untied - 2 * discordant) / untied : 0);
+            }
+        });
+        mirror(result);
+        return result;
+    }
+
+    /**
+     * computes the ranks of values, using the average rank for ties
+     *
+     * @return ranks, starting at 1
+     */
+    public static double[] computeRanks(double[] values) {
+        final var order = computeOrder(values);
+        final var ranks = new double[values.length];
+        for (var start = 0; start < order.length; ) {
+            var end = start + 1;
+            while (end < order.length && values[order[end]] == values[order[start]])
+                end++;
+            final var rank = 0.5 * (start + end + 1);
+            for (var i = start; i < end; i++)
+                ranks[order[i]] = rank;
+            start = end;
+        }
+        return ranks;
+    }
+
+    /**
+     * computes a bit set of all positions whose value satisfies the predicate
+     *
+     * @return bits, 64 positions per long
+     */
+    public static long[] toBitSet(double[] values, DoublePredicate predicate) {
+        final var bits = new long[(values.length + 63) >>> 6];
+        for (var i = 0; i < values.length; i++) {
+            if (predicate.test(values[i]))
+                bits[i >>> 6] |= 1L << i;
+        }
+        return bits;
+    }
+
+    /**
+     * size of intersection of two bit sets of the same length
+     */
+    public static int countIntersection(long[] a, long[] b) {
+        var count = 0;
+        for (var i = 0; i < a.length; i++)
+            count += Long.bitCount(a[i] & b[i]);
+        return count;
+    }
+
+    /**
+     * size of union of two bit sets of the same length
+     */
+    public static int countUnion(long[] a, long[] b) {
+        var count = 0;
+        for (var i = 0; i < a.length; i++)
+            count += Long.bitCount(a[i] | b[i]);
+        return count;
+    }
+
+    private static double[] centerAndScale(double[] values) {
+        var mean = 0.0;
+        for (var value : values)
+            mean += value;
+        mean /= values.length;
+        final var result = new double[values.length];
+        var sumOfSquares = 0.0;
+        for (var i = 0; i < values.length; i++) {
+            result[i] = values[i] - mean;
+            sumOfSquares += result[i] * result[i];
+        }
+        final var length = Math.sqrt(sumOfSquares);
+        for (var i = 0; i < result.length; i++)
+            result[i] /= length;
+        return result;
+    }
+
+    /**
+     * positions sorted by increasing value
+     */
+    private static int[] computeOrder(double[] values) {
+        return IntStream.range(0, values.length).boxed().sorted(Comparator.comparingDouble(i -> values[i])).mapToInt(i -> i).toArray();
+    }
+
+    /**
+     * copies the upper triangle to the lower one
+     */
+    private static void mirror(double[][] matrix) {
+        for (var a = 0; a < matrix.length; a++) {
+            for (var b = a + 1; b < matrix.length; b++)
+                matrix[b][a] = matrix[a][b];
+        }
+    }
+}
@@ -50,7 +50,7 @@ public class AAdderBuild {
     final public static byte[] MAGIC_NUMBER_IDX = "AAddIdxV0.1.".getBytes();
     final public static byte[] MAGIC_NUMBER_DBX = "AAddDbxV0.1.".getBytes();
 
-    private final static String INDEX_CREATOR = "AADD";
+    public final static String INDEX_CREATOR = "AADD";
 
     /**
      * add functional annotations to DNA alignments
@@ -24,19 +24,16 @@ import jloda.swing.util.ResourceManager;
 import jloda.util.*;
 import jloda.util.interval.Interval;
 import jloda.util.interval.IntervalTree;
-import jloda.util.progress.ProgressPercentage;
-import megan.classification.IdMapper;
 import megan.genes.GeneItem;
-import megan.genes.GeneItemCreator;
+import megan.genes.GeneItemAccessor;
+import megan.io.BlockGZipCompressor;
 import megan.io.IInputReader;
-import megan.io.InputReader;
 import megan.main.MeganProperties;
 
 import java.io.*;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import java.util.zip.GZIPOutputStream;
+import java.util.concurrent.*;
+import java.util.zip.Deflater;
 
 /**
  * add functional annotations to DNA alignments
@@ -66,7 +63,7 @@ public class AAdderRun {
     /**
      * run the program
      */
-    private void run(String[] args) throws CanceledException, IOException, UsageException {
+    private void run(String[] args) throws IOException, UsageException {
         final ArgsOptions options = new ArgsOptions(args, this, "Adds functional accessions to DNA alignments");
         options.setVersion(ProgramProperties.getProgramVersion());
         options.setLicense("Copyright (C) 2024. This program comes with ABSOLUTELY NO WARRANTY.");
@@ -80,6 +77,9 @@ public class AAdderRun {
         final double minCoverageProportion = options.getOption("-c", "percentToCover", "Percent of alignment that must be covered by protein", 90.00) / 100.0;
         final boolean reportUnmappedAccessions = options.getOption("-rnf", "reportNotFound", "Report the names of DNA references for which no functional accession is available", false);
 
+        final var numberOfThreads = Math.max(1, options.getOption("-t", "threads", "Number of threads", 8));
+        final var cacheBits = options.getOption("-cb", "cacheBits", "Cache at most 2^cacheBits decoded references", GeneItemAccessor.DEFAULT_CACHE_BITS);
+
         final var propertiesFile = options.getOption("-P", "propertiesFile", "Properties file",megan.main.Megan6.getDefaultPropertiesFile());
         options.done();
 
@@ -94,172 +94,301 @@ public class AAdderRun {
                 throw new UsageException("Number of output files doesn't match number of input files");
         }
 
-        final Map<String, Pair<Long, IntervalTree<GeneItem>>> ref2PosAndTree;
-        final File indexFile = new File(indexDirectory, "aadd.idx");
-
-        try (InputReader ins = new InputReader(indexFile); ProgressPercentage progress = new ProgressPercentage("Reading file: " + indexFile)) {
-            readAndVerifyMagicNumber(ins, AAdderBuild.MAGIC_NUMBER_IDX);
-            final String creator = ins.readString();
-            System.err.println("Index created by: " + creator);
-            final int entries = ins.readInt();
-            progress.setMaximum(entries);
+        // the global thread budget is shared between the files processed concurrently, which each use one thread for reading
+        // and, if available, one for writing, and the workers that annotate and compress chunks for all files.
+        // Without writer threads or workers, the reading threads do the work themselves
+        final var numberOfFilesInParallel = Math.max(1, Math.min(inputFiles.length, numberOfThreads / 4));
+        final var numberOfWriters = (numberOfThreads >= 2 * numberOfFilesInParallel ? numberOfFilesInParallel : 0);
+        final var numberOfWorkers = numberOfThreads - numberOfFilesInParallel - numberOfWriters;
+
+        try (var accessor = new GeneItemAccessor(new File(indexDirectory, "aadd.idx"), new File(indexDirectory, "aadd.dbx"), cacheBits)) {
+            final var service = Executors.newFixedThreadPool(numberOfFilesInParallel);
+            final var writers = (numberOfWriters > 0 ? Executors.newFixedThreadPool(numberOfWriters) : null);
+            final var workers = (numberOfWorkers > 0 ? Executors.newFixedThreadPool(numberOfWorkers) : null);
+            final var exception = new Single<Exception>();
+            try {
+                for (int i = 0; i < inputFiles.length; i++) {
+                    final File inputFile = new File(inputFiles[i]);
+                    final File outputFile;
+                    if (outputDir != null) {
+                        outputFile = new File(outputDir, inputFile.getName() + ".out");
+                    } else
+                        outputFile = new File(outputFiles[i]);
+                    if (inputFile.equals(outputFile))
+                        throw new IOException("Input file equals output file: " + inputFile);
+
+                    service.submit(() -> {
+                        try {
+                            if (exception.get() == null) {
+                                final var report = processFile(inputFile, outputFile, accessor, workers, writers, Math.max(2, 2 * numberOfWorkers), minCoverageProportion, reportUnmappedAccessions);
+                                synchronized (exception) {
+                                    System.err.print(report);
+                                }
+                            }
+                        } catch (Exception ex) {
+                            exception.setIfCurrentValueIsNull(ex);
+                        }
+                    });
+                }
+            } finally {
+                service.shutdown();
+                try {
+                    service.awaitTermination(1000, TimeUnit.DAYS);
+                } catch (InterruptedException e) {
+                    exception.setIfCurrentValueIsNull(e);
+                }
+                if (workers != null)
+                    workers.shutdownNow();
+                if (writers != null)
+                    writers.shutdownNow();
+            }
+            if (exception.get() != null)
+                throw new IOException(exception.get());
+            System.err.printf("(Loaded refs:%,9d)%n", accessor.getCountCacheMisses());
+        }
+    }
 
-            ref2PosAndTree = new HashMap<>(2 * entries);
+    /**
+     * annotate all alignments in one SAM file. The calling thread reads chunks of lines, the workers annotate and, if requested,
+     * compress them into BGZF blocks, and a writer thread writes the results in input order
+     *
+     * @param workers           provides the workers, or null, in which case the calling thread processes all chunks
+     * @param writers           provides the writer thread, must have one thread for each file processed concurrently, or null,
+     *                          in which case the calling thread processes and writes all chunks
+     * @param maxChunksInFlight maximal number of chunks read, but not yet written
+     * @return report on the processed file
+     */
+    private static String processFile(File inputFile, File outputFile, GeneItemAccessor accessor, ExecutorService workers, ExecutorService writers, int maxChunksInFlight,
+                                      double minCoverageProportion, boolean reportUnmappedAccessions) throws Exception {
+        final boolean gzipOutput = outputFile.getName().toLowerCase().endsWith(".gz");
+
+        final var queue = new ArrayBlockingQueue<Future<Chunk>>(Math.max(1, maxChunksInFlight));
+        final var exception = new Single<Exception>();
+        final var totals = new Chunk(null);
+        final var refNotFound = new HashSet<String>();
+
+        System.err.println("Writing file: " + outputFile);
+
+        try (var outs = new BufferedOutputStream(new FileOutputStream(outputFile), 1 << 20)) {
+            Future<?> writer = null;
+            try {
+                if (writers != null) {
+                    writer = writers.submit(() -> {
+                        try {
+                            while (true) {
+                                final var chunk = queue.take().get();
+                                if (chunk == Chunk.SENTINEL)
+                                    break;
+                                write(chunk, outs, totals, refNotFound, reportUnmappedAccessions);
+                            }
+                        } catch (Exception ex) {
+                            exception.setIfCurrentValueIsNull(ex);
+                        }
+                    });
+                }
 
-            for (int t = 0; t < entries; t++) {
-                final String dnaId = ins.readString();
-                final long pos = ins.readLong();
-                ref2PosAndTree.put(dnaId, new Pair<>(pos, null));
-                progress.incrementProgress();
+                try (final FileLineIterator it = new FileLineIterator(inputFile, false)) {
+                    var lines = new ArrayList<String>();
+                    var size = 0;
+                    while (it.hasNext() && exception.get() == null) {
+                        final var aLine = it.next();
+                        lines.add(aLine);
+                        size += aLine.length() + 1;
+                        if (size >= CHUNK_SIZE || !it.hasNext()) {
+                            final var chunk = new Chunk(lines);
+                            if (writers == null)
+                                write(chunk.process(accessor, minCoverageProportion, gzipOutput), outs, totals, refNotFound, reportUnmappedAccessions);
+                            else if (workers == null)
+                                enqueue(queue, CompletableFuture.completedFuture(chunk.process(accessor, minCoverageProportion, gzipOutput)), exception);
+                            else
+                                enqueue(queue, workers.submit(() -> chunk.process(accessor, minCoverageProportion, gzipOutput)), exception);
+                            lines = new ArrayList<>();
+                            size = 0;
+                        }
+                    }
+                } finally {
+                    if (writer != null)
+                        enqueue(queue, CompletableFuture.completedFuture(Chunk.SENTINEL), exception);
+                }
+            } finally {
+                if (writer != null)
+                    writer.get();
             }
+            if (exception.get() == null && gzipOutput)
+                outs.write(BlockGZipCompressor.EOF_BLOCK);
         }
+        if (exception.get() != null)
+            throw exception.get();
+
+        final var buf = new StringBuilder();
+        buf.append(String.format("File: %s%n", inputFile.getName()));
+        buf.append(String.format("Lines:     %,11d%n", totals.countLines));
+        buf.append(String.format("Alignments:%,11d%n", totals.countAlignments));
+        buf.append(String.format("Annotated: %,11d%n", totals.countAnnotated));
+        if (refNotFound.size() > 0)
+            buf.append(String.format("(Missing refs:%,8d)%n", refNotFound.size()));
+        return buf.toString();
+    }
 
-        final IntervalTree<GeneItem> emptyTree = new IntervalTree<>();
+    /**
+     * writes a processed chunk and adds its counts to the totals
+     */
+    private static void write(Chunk chunk, OutputStream outs, Chunk totals, Set<String> refNotFound, boolean reportUnmappedAccessions) throws IOException {
+        outs.write(chunk.output);
+        totals.countLines += chunk.countLines;
+        totals.countAlignments += chunk.countAlignments;
+        totals.countAnnotated += chunk.countAnnotated;
+        for (var ref : chunk.refNotFound) {
+            if (refNotFound.add(ref) && reportUnmappedAccessions)
+                System.err.println("Reference not found: " + ref);
+        }
+    }
 
-        final File dbFile = new File(indexDirectory, "aadd.dbx");
+    /**
+     * put a chunk into the queue, unless the writer has failed, in which case nobody will take it
+     */
+    private static void enqueue(BlockingQueue<Future<Chunk>> queue, Future<Chunk> future, Single<Exception> exception) throws InterruptedException {
+        while (!queue.offer(future, 100, TimeUnit.MILLISECONDS)) {
+            if (exception.get() != null)
+                return;
+        }
+    }
 
-        try (InputReader dbxIns = new InputReader(dbFile)) {
-            System.err.println("Opening file: " + dbFile);
+    /**
+     * approximate number of characters per chunk of input lines
+     */
+    private static final int CHUNK_SIZE = 1 << 20;
 
-            readAndVerifyMagicNumber(dbxIns, AAdderBuild.MAGIC_NUMBER_DBX);
-            final String[] cNames = new String[dbxIns.readInt()];
-            for (int i = 0; i < cNames.length; i++) {
-                cNames[i] = dbxIns.readString();
+    /**
+     * a chunk of consecutive input lines and, once processed, the corresponding output
+     */
+    private static class Chunk {
+        static final Chunk SENTINEL = new Chunk(null);
+
+        private final List<String> lines;
+        private byte[] output;
+        private long countLines;
+        private long countAlignments;
+        private long countAnnotated;
+        private final Set<String> refNotFound = new LinkedHashSet<>();
+
+        Chunk(List<String> lines) {
+            this.lines = lines;
+        }
+
+        /**
+         * annotate all lines and encode, and if requested compress, the result
+         */
+        Chunk process(GeneItemAccessor accessor, double minCoverageProportion, boolean gzipOutput) {
+            final var buf = new StringBuilder(CHUNK_SIZE + CHUNK_SIZE / 8);
+            for (var aLine : lines) {
+                annotateLine(aLine, buf, accessor, minCoverageProportion);
             }
-            final GeneItemCreator creator = new GeneItemCreator(cNames, new IdMapper[0]);
-
-            for (int i = 0; i < inputFiles.length; i++) {
-                File inputFile = new File(inputFiles[i]);
-                final File outputFile;
-                if (outputDir != null) {
-                    outputFile = new File(outputDir, inputFile.getName() + ".out");
-                } else
-                    outputFile = new File(outputFiles[i]);
-                if (inputFile.equals(outputFile))
-                    throw new IOException("Input file equals output file: " + inputFile);
-                final boolean gzipOutput = outputFile.getName().toLowerCase().endsWith(".gz");
-
-                long countLines = 0;
-                long countAlignments = 0;
-                long countAnnotated = 0;
-                long countReferencesLoaded = 0;
-
-                final Set<String> refNotFound = new HashSet<>();
-
-                try (final FileLineIterator it = new FileLineIterator(inputFile, true);
-                     final BufferedWriter w = new BufferedWriter(new OutputStreamWriter(gzipOutput ? new GZIPOutputStream(new FileOutputStream(outputFile)) : new FileOutputStream(outputFile)))) {
-                    System.err.println("Writing file: " + outputFile);
-
-                    while (it.hasNext()) {
-                        final String aLine = it.next();
-                        if (aLine.startsWith("@"))
-                            w.write(aLine);
-                        else {
-
-							final String[] tokens = StringUtils.split(aLine, '\t');
-
-                            if (tokens.length < 2 || tokens[2].equals("*")) {
-                                w.write(aLine);
-                            } else {
-                                final IntervalTree<GeneItem> tree;
-                                {
-                                    final int pos = tokens[2].indexOf(".");
-                                    final String ref = (pos > 0 ? tokens[2].substring(0, pos) : tokens[2]);
-
-                                    final Pair<Long, IntervalTree<GeneItem>> pair = ref2PosAndTree.get(ref);
-
-                                    if (pair != null) {
-                                        if (pair.getSecond() == null && pair.getFirst() != 0) {
-                                            dbxIns.seek(pair.getFirst());
-
-                                            int intervalsLength = dbxIns.readInt();
-                                            if (intervalsLength > 0) {
-                                                tree = new IntervalTree<>();
-                                                for (int t = 0; t < intervalsLength; t++) {
-                                                    final int start = dbxIns.readInt();
-                                                    final int end = dbxIns.readInt();
-                                                    final GeneItem geneItem = creator.createGeneItem();
-                                                    geneItem.read(dbxIns);
-                                                    tree.add(start, end, geneItem);
-                                                    //System.err.println(refIndex+"("+start+"-"+end+") -> "+geneItem);
-                                                }
-                                                countReferencesLoaded++;
-                                            } else {
-                                                tree = emptyTree;
-                                            }
-                                            pair.setSecond(tree);
-                                        } else {
-                                            tree = pair.getSecond();
-                                        }
-                                    } else {
-                                        if (!refNotFound.contains(ref)) {
-                                            refNotFound.add(ref);
-                                            if (reportUnmappedAccessions)
-                                                System.err.println("Reference not found: " + ref);
-                                        }
-                                        continue;
-                                    }
-                                }
+            lines.clear();
 
-                                final int startSubject = NumberUtils.parseInt(tokens[3]);
-                                final int endSubject = startSubject + getRefLength(tokens[5]) - 1;
-
-                                final Interval<GeneItem> refInterval = tree.getBestInterval(new Interval<GeneItem>(startSubject, endSubject, null), minCoverageProportion);
-
-                                String annotatedRef = tokens[2];
-                                if (refInterval != null) {
-                                    final GeneItem geneItem = refInterval.getData();
-                                    final String remainder;
-                                    final int len = annotatedRef.indexOf(' ');
-                                    if (len >= 0 && len < annotatedRef.length()) {
-                                        remainder = annotatedRef.substring(len); // keep space...
-                                        annotatedRef = annotatedRef.substring(0, len);
-                                    } else
-                                        remainder = "";
-                                    annotatedRef += (annotatedRef.endsWith("|") ? "" : "|") + geneItem.getAnnotation(refInterval) + remainder;
-                                }
-                                for (int t = 0; t < tokens.length; t++) {
-                                    if (t > 0)
-                                        w.write('\t');
-                                    if (t == 2 && !annotatedRef.equals(tokens[2])) {
-                                        w.write(annotatedRef);
-                                        countAnnotated++;
-                                    } else
-                                        w.write(tokens[t]);
-                                }
-                            }
-                            countAlignments++;
-                        }
-                        w.write("\n");
-                        countLines++;
-                    }
+            final var bytes = buf.toString().getBytes();
+            if (gzipOutput) {
+                try (var compressor = new BlockGZipCompressor(Deflater.DEFAULT_COMPRESSION)) {
+                    output = compressor.compress(bytes, 0, bytes.length);
                 }
+            } else
+                output = bytes;
+            return this;
+        }
 
-                System.err.printf("Lines:     %,11d%n", countLines);
-                System.err.printf("Alignments:%,11d%n", countAlignments);
-                System.err.printf("Annotated: %,11d%n", countAnnotated);
-                System.err.printf("(Loaded refs:%,9d)%n", countReferencesLoaded);
-                if (refNotFound.size() > 0)
-                    System.err.printf("(Missing refs:%,8d)%n", refNotFound.size());
+        /**
+         * annotate a single SAM line and append it to the buffer. Lines for unknown references are dropped
+         */
+        private void annotateLine(String aLine, StringBuilder buf, GeneItemAccessor accessor, double minCoverageProportion) {
+            if (aLine.startsWith("@")) {
+                buf.append(aLine).append('\n');
+                countLines++;
+                return;
+            }
+            // only the reference, position and cigar fields are needed, so locate them rather than splitting the whole line
+            final var refStart = nextField(aLine, nextField(aLine, 0));
+            final var refEnd = endOfField(aLine, refStart);
+            if (refStart == -1 || (refEnd - refStart == 1 && aLine.charAt(refStart) == '*')) {
+                buf.append(aLine).append('\n');
+                countAlignments++;
+                countLines++;
+                return;
             }
+            final var refName = aLine.substring(refStart, refEnd);
+            final var dot = refName.indexOf('.');
+            final var ref = (dot > 0 ? refName.substring(0, dot) : refName);
+
+            if (!accessor.containsReference(ref)) {
+                refNotFound.add(ref);
+                return;
+            }
+            countAlignments++;
+            countLines++;
+
+            final IntervalTree<GeneItem> tree = accessor.getIntervals(ref);
+            if (tree != null) {
+                final var posStart = nextField(aLine, refEnd);
+                final var cigarStart = nextField(aLine, nextField(aLine, posStart));
+                if (cigarStart != -1) {
+                    final int startSubject = NumberUtils.parseInt(aLine.substring(posStart, endOfField(aLine, posStart)));
+                    final int endSubject = startSubject + getRefLength(aLine, cigarStart, endOfField(aLine, cigarStart)) - 1;
+
+                    final Interval<GeneItem> refInterval = tree.getBestInterval(new Interval<GeneItem>(startSubject, endSubject, null), minCoverageProportion);
+
+                    if (refInterval != null) {
+                        final GeneItem geneItem = refInterval.getData();
+                        final var space = refName.indexOf(' ');
+                        final var name = (space >= 0 ? refName.substring(0, space) : refName);
+                        final var remainder = (space >= 0 ? refName.substring(space) : ""); // keep space...
+
+                        buf.append(aLine, 0, refStart).append(name).append(name.endsWith("|") ? "" : "|").append(geneItem.getAnnotation(refInterval)).append(remainder)
+                                .append(aLine, refEnd, aLine.length()).append('\n');
+                        countAnnotated++;
+                        return;
+                    }
+                }
+            }
+            buf.append(aLine).append('\n');
         }
-    }
 
-    private static final Pattern pattern = Pattern.compile("[0-9]+[MDN]+");
+        /**
+         * start of the field following the one containing position pos, or -1
+         */
+        private static int nextField(String aLine, int pos) {
+            if (pos == -1)
+                return -1;
+            final var tab = aLine.indexOf('\t', pos);
+            return (tab == -1 ? -1 : tab + 1);
+        }
 
-    private static int getRefLength(String cigar) {
-        final Matcher matcher = pattern.matcher(cigar);
-        final ArrayList<String> pairs = new ArrayList<>();
-        while (matcher.find())
-            pairs.add(matcher.group());
+        /**
+         * end of the field that starts at the given position
+         */
+        private static int endOfField(String aLine, int start) {
+            if (start == -1)
+                return -1;
+            final var tab = aLine.indexOf('\t', start);
+            return (tab == -1 ? aLine.length() : tab);
+        }
+    }
 
-        int length = 0;
-        for (String p : pairs) {
-            int num = Integer.parseInt(p.substring(0, p.length() - 1));
-            length += num;
+    /**
+     * length of reference covered by a cigar string, counting M, D and N operations
+     */
+    private static int getRefLength(String aLine, int start, int end) {
+        var length = 0;
+        var number = 0;
+        for (var i = start; i < end; i++) {
+            final var ch = aLine.charAt(i);
+            if (Character.isDigit(ch))
+                number = 10 * number + (ch - '0');
+            else {
+                if (ch == 'M' || ch == 'D' || ch == 'N')
+                    length += number;
+                number = 0;
+            }
         }
         return length;
-
     }
 
     /**
@@ -21,25 +21,22 @@ package megan.tools;
 import jloda.swing.util.ArgsOptions;
 import jloda.swing.util.ResourceManager;
 import jloda.util.*;
-import jloda.util.parse.NexusStreamParser;
 import jloda.util.progress.ProgressSilent;
-import megan.commands.SaveCommand;
-import megan.commands.show.CompareCommand;
-import megan.core.Director;
 import megan.core.Document;
 import megan.core.MeganFile;
 import megan.dialogs.compare.Comparer;
+import megan.dialogs.compare.StreamingComparer;
 import megan.main.MeganProperties;
 
 import java.io.BufferedReader;
+import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Arrays;
 
 /**
- * compares multiple samples
+ * compares multiple samples, without opening documents or viewers for the input files
  * Daniel Huson, 8.2018
  * @deprecated use CompareFiles.java instead
  */
@@ -108,22 +105,28 @@ public class ComputeComparison {
         if (inputFiles.size() == 0)
             throw new UsageException("No input file");
 
-        final Director dir = Director.newProject(false);
-        final Document doc = dir.getDocument();
+        final Document doc = new Document();
         doc.setProgressListener(new ProgressSilent());
+        doc.getMeganFile().setFile(outputFile, MeganFile.Type.MEGAN_SUMMARY_FILE);
 
         {
-            CompareCommand compareCommand = new CompareCommand();
-            compareCommand.setDir(dir);
-			final String command = "compare mode=" + (normalize ? Comparer.COMPARISON_MODE.RELATIVE : Comparer.COMPARISON_MODE.ABSOLUTE) +
-								   " readAssignmentMode=" + readAssignmentMode + " keep1=" + keepOne + " ignoreUnassigned=" + ignoreUnassignedReads +
-								   " meganFile='" + StringUtils.toString(inputFiles, "', '") + "';";
-			try {
-				compareCommand.apply(new NexusStreamParser(new StringReader(command)));
-			} catch (Exception ex) {
-				Basic.caught(ex);
-			}
-		}
+            final StreamingComparer comparer = new StreamingComparer();
+            comparer.setMode((normalize ? Comparer.COMPARISON_MODE.RELATIVE : Comparer.COMPARISON_MODE.ABSOLUTE).toString());
+            comparer.setKeep1(keepOne);
+            comparer.setIgnoreUnassigned(ignoreUnassignedReads);
+            for (String fileName : inputFiles)
+                comparer.addFile(fileName);
+
+            doc.setReadAssignmentMode(readAssignmentMode);
+            comparer.computeComparison(doc.getSampleAttributeTable(), doc.getDataTable(), doc.getProgressListener());
+            doc.setNumberReads(doc.getDataTable().getTotalReads());
+            doc.setTopPercent(100);
+            doc.setMinScore(0);
+            doc.setMinSupportPercent(0);
+            doc.setMinSupport(1);
+            doc.setMaxExpected(10000);
+            doc.getActiveViewers().addAll(doc.getDataTable().getClassification2Class2Counts().keySet());
+        }
 
 		if (StringUtils.notBlank(metadataFile)) {
 			try (BufferedReader r = new BufferedReader(new InputStreamReader(FileUtils.getInputStreamPossiblyZIPorGZIP(metadataFile)))) {
@@ -133,11 +136,11 @@ public class ComputeComparison {
 			}
 		}
 
-		doc.getMeganFile().setFile(outputFile, MeganFile.Type.MEGAN_SUMMARY_FILE);
-		final SaveCommand saveCommand = new SaveCommand();
-		saveCommand.setDir(dir);
 		System.err.println("Saving to file: " + outputFile);
-		saveCommand.apply(new NexusStreamParser(new StringReader("save file='" + outputFile + "';")));
-
+		try (FileWriter writer = new FileWriter(outputFile)) {
+			doc.getDataTable().setParameters(doc.getParameterString());
+			doc.getDataTable().write(writer);
+			doc.getSampleAttributeTable().write(writer, false, true);
+		}
     }
 }
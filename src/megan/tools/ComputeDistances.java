@@ -0,0 +1,121 @@
+/*
+ * ComputeDistances.java Copyright (C) 2024 Daniel H. Huson
+ *
+ * (Some files contain contributions from other authors, who are then mentioned separately.)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package megan.tools;
+
+import jloda.swing.util.ArgsOptions;
+import jloda.swing.util.ResourceManager;
+import jloda.util.*;
+import megan.classification.Classification;
+import megan.classification.ClassificationManager;
+import megan.clusteranalysis.indices.BrayCurtisDissimilarity;
+import megan.clusteranalysis.indices.DistancesManager;
+import megan.clusteranalysis.indices.GoodallsDistance;
+import megan.clusteranalysis.tree.HierarchicalClustering;
+import megan.core.Document;
+import megan.core.MeganFile;
+import megan.main.MeganProperties;
+import megan.viewer.TaxonomyData;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.util.Arrays;
+
+/**
+ * computes the distances between all samples of a comparison file, without a viewer
+ * Daniel Huson, 10.2026
+ */
+public class ComputeDistances {
+    /**
+     * computes the distances between all samples of a comparison file
+     *
+     */
+    public static void main(String[] args) {
+        try {
+            ResourceManager.insertResourceRoot(megan.resources.Resources.class);
+            ProgramProperties.setProgramName("ComputeDistances");
+            ProgramProperties.setProgramVersion(megan.main.Version.SHORT_DESCRIPTION);
+
+            PeakMemoryUsageMonitor.start();
+            (new ComputeDistances()).run(args);
+            PeakMemoryUsageMonitor.report();
+            System.exit(0);
+        } catch (Exception ex) {
+            Basic.caught(ex);
+            System.exit(1);
+        }
+    }
+
+    /**
+     * run
+     *
+     */
+    private void run(String[] args) throws UsageException, IOException {
+        final var options = new ArgsOptions(args, this, "Computes the distances between all samples of a MEGAN comparison file");
+        options.setVersion(ProgramProperties.getProgramVersion());
+        options.setLicense("Copyright (C) 2024. This program comes with ABSOLUTELY NO WARRANTY.");
+        options.setAuthors("Daniel H. Huson");
+
+        options.comment("Input and Output");
+        final var inputFile = options.getOptionMandatory("-i", "in", "Input MEGAN comparison file (.megan file)", "");
+        final var outputFile = options.getOption("-o", "out", "Output file (stdout or .gz ok)", "stdout");
+
+        options.comment("Options");
+        final var methods = Arrays.stream(DistancesManager.getAllNames()).filter(name -> !name.equals(GoodallsDistance.NAME)).toList();
+        final var method = options.getOption("-m", "method", "Distance calculation to use", methods, BrayCurtisDissimilarity.NAME);
+        final var classificationName = options.getOption("-c", "classification", "The classification to use", ClassificationManager.getAllSupportedClassifications(), Classification.Taxonomy);
+
+        final var propertiesFile = options.getOption("-P", "propertiesFile", "Properties file", megan.main.Megan6.getDefaultPropertiesFile());
+        options.done();
+
+        MeganProperties.initializeProperties(propertiesFile);
+
+        if (!methods.contains(method))
+            throw new UsageException("Unsupported method: " + method);
+
+        TaxonomyData.load();
+
+        final var doc = new Document();
+        doc.getMeganFile().setFile(inputFile, MeganFile.Type.MEGAN_SUMMARY_FILE);
+        doc.loadMeganFile();
+
+        final var class2counts = doc.getDataTable().getClass2Counts(classificationName);
+        if (class2counts == null)
+            throw new IOException("Classification not found in file: " + classificationName);
+
+        final var samples = doc.getSampleNamesAsArray();
+        if (samples.length < 2)
+            throw new IOException("Too few samples: " + samples.length);
+
+        final var distances = DistancesManager.apply(method, classificationName, class2counts, samples.length);
+
+        try (var w = new BufferedWriter(new OutputStreamWriter(FileUtils.getOutputStreamPossiblyZIPorGZIP(outputFile)))) {
+            w.write("#" + method);
+            for (var sample : samples)
+                w.write("\t" + sample);
+            w.write("\n");
+            for (var s = 0; s < samples.length; s++) {
+                w.write(samples[s]);
+                for (var t = 0; t < samples.length; t++)
+                    w.write("\t" + (s == t ? 0 : (float) distances[HierarchicalClustering.index(samples.length, s, t)]));
+                w.write("\n");
+            }
+        }
+    }
+}
@@ -27,6 +27,7 @@ import jloda.util.progress.ProgressListener;
 import jloda.util.progress.ProgressPercentage;
 import megan.accessiondb.AccessAccessionMappingDatabase;
 import megan.accessiondb.ConfigRequests;
+import megan.algorithms.DataProcessor;
 import megan.classification.Classification;
 import megan.classification.ClassificationManager;
 import megan.classification.IdMapper;
@@ -37,9 +38,8 @@ import megan.core.Document;
 import megan.core.SampleAttributeTable;
 import megan.daa.io.DAAParser;
 import megan.main.MeganProperties;
-import megan.parsers.blast.BlastFileFormat;
 import megan.rma6.RMA6Connector;
-import megan.rma6.RMA6FromBlastCreator;
+import megan.rma6.RMA6FromDAACreator;
 import megan.util.DAAFileFilter;
 
 import java.io.File;
@@ -179,6 +179,7 @@ public class DAA2RMA6 {
         options.comment(ArgsOptions.OTHER);
         ProgramExecutorService.setNumberOfCoresToUse(options.getOption("-t", "threads", "Number of threads", 8));
         ConfigRequests.setCacheSize(options.getOption("-cs","cacheSize","Cache size for SQLITE (use with care)", ConfigRequests.getCacheSize()));
+        ProgramProperties.preset(DataProcessor.STREAMING_BINNING, options.getOption("-sb", "streamingBinning", "Write read assignments to a temporary file during binning, to reduce memory usage", false));
 
         final var propertiesFile = options.getOption("-P", "propertiesFile", "Properties file",megan.main.Megan6.getDefaultPropertiesFile());
         options.done();
@@ -244,37 +245,19 @@ public class DAA2RMA6 {
             throw new IOException("Number of metadata files (" + metaDataFiles.length + ") doesn't match number of output files (" + outputFiles.length + ")");
         }
 
-        final IdMapper taxonIdMapper = ClassificationManager.get(Classification.Taxonomy, true).getIdMapper();
-        final IdMapper[] idMappers = new IdMapper[cNames.size()];
-
-        // Load all mapping files:
+        // Load all classifications and mapping files, in parallel:
+        final Map<String, Map<IdMapper.MapType, String>> cName2MappingFiles = new HashMap<>();
         if (runClassifications) {
-            ClassificationManager.get(Classification.Taxonomy, true);
-            taxonIdMapper.setUseTextParsing(parseTaxonNames);
-
-            if (mapDBFile.length() > 0) {
-                taxonIdMapper.loadMappingFile(mapDBFile, IdMapper.MapType.MeganMapDB, false, new ProgressPercentage());
-            }
-            if (acc2TaxaFile.length() > 0) {
-                taxonIdMapper.loadMappingFile(acc2TaxaFile, IdMapper.MapType.Accession, false, new ProgressPercentage());
-            }
-            if (synonyms2TaxaFile.length() > 0) {
-                taxonIdMapper.loadMappingFile(synonyms2TaxaFile, IdMapper.MapType.Synonyms, false, new ProgressPercentage());
+            cName2MappingFiles.put(Classification.Taxonomy, ClassificationManager.createMappingFiles(mapDBFile, acc2TaxaFile, synonyms2TaxaFile));
+            for (String cName : cNames) {
+                cName2MappingFiles.put(cName, ClassificationManager.createMappingFiles(mapDBClassifications.contains(cName) ? mapDBFile : null, class2AccessionFile.get(cName), class2SynonymsFile.get(cName)));
             }
+        } else
+            cName2MappingFiles.put(Classification.Taxonomy, Collections.emptyMap());
+        ClassificationManager.preload(cName2MappingFiles, new ProgressPercentage());
 
-            for (int i = 0; i < cNames.size(); i++) {
-                final String cName = cNames.get(i);
-
-                idMappers[i] = ClassificationManager.get(cName, true).getIdMapper();
-
-                if (mapDBClassifications.contains(cName))
-                    idMappers[i].loadMappingFile(mapDBFile, IdMapper.MapType.MeganMapDB, false, new ProgressPercentage());
-                if (class2AccessionFile.get(cName).length() > 0)
-                    idMappers[i].loadMappingFile(class2AccessionFile.get(cName), IdMapper.MapType.Accession, false, new ProgressPercentage());
-                if (class2SynonymsFile.get(cName).length() > 0)
-                    idMappers[i].loadMappingFile(class2SynonymsFile.get(cName), IdMapper.MapType.Synonyms, false, new ProgressPercentage());
-            }
-        }
+        if (runClassifications)
+            ClassificationManager.get(Classification.Taxonomy, true).getIdMapper().setUseTextParsing(parseTaxonNames);
 
         /*
          * process each set of files:
@@ -357,7 +340,7 @@ public class DAA2RMA6 {
      */
     private static void createRMA6FileFromDAA(String creator, String daaFile, String rma6FileName, boolean useCompression, Document doc,
                                               int maxMatchesPerRead, ProgressListener progressListener) throws IOException, CanceledException, SQLException {
-        final RMA6FromBlastCreator rma6Creator = new RMA6FromBlastCreator(creator, BlastFileFormat.DAA, doc.getBlastMode(), new String[]{daaFile}, new String[]{}, rma6FileName, useCompression, doc, maxMatchesPerRead);
+        final RMA6FromDAACreator rma6Creator = new RMA6FromDAACreator(creator, new String[]{daaFile}, rma6FileName, useCompression, doc, maxMatchesPerRead);
         rma6Creator.parseFiles(progressListener);
     }
 
@@ -368,8 +351,7 @@ public class DAA2RMA6 {
      */
     private static void createRMA6FileFromDAAPair(String creator, String daaFile1, String daaFile2, String rma6FileName, boolean useCompression, Document doc,
                                                   int maxMatchesPerRead, ProgressListener progressListener) throws IOException, CanceledException, SQLException {
-        final RMA6FromBlastCreator rma6Creator =
-                new RMA6FromBlastCreator(creator, BlastFileFormat.DAA, doc.getBlastMode(), new String[]{daaFile1, daaFile2}, new String[]{}, rma6FileName, useCompression, doc, maxMatchesPerRead);
+        final RMA6FromDAACreator rma6Creator = new RMA6FromDAACreator(creator, new String[]{daaFile1, daaFile2}, rma6FileName, useCompression, doc, maxMatchesPerRead);
         rma6Creator.parseFiles(progressListener);
     }
 }
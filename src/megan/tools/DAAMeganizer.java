@@ -26,6 +26,7 @@ import jloda.util.*;
 import jloda.util.progress.ProgressPercentage;
 import megan.accessiondb.AccessAccessionMappingDatabase;
 import megan.accessiondb.ConfigRequests;
+import megan.algorithms.DataProcessor;
 import megan.classification.Classification;
 import megan.classification.ClassificationManager;
 import megan.classification.IdMapper;
@@ -33,6 +34,7 @@ import megan.classification.IdParser;
 import megan.classification.data.ClassificationCommandHelper;
 import megan.core.Document;
 import megan.daa.Meganize;
+import megan.daa.io.DAAQueryIndex;
 import megan.main.MeganProperties;
 import megan.util.DAAFileFilter;
 
@@ -166,6 +168,8 @@ public class DAAMeganizer {
         options.comment(ArgsOptions.OTHER);
         ProgramExecutorService.setNumberOfCoresToUse(options.getOption("-t", "threads", "Number of threads", 8));
 		ConfigRequests.setCacheSize(options.getOption("-cs","cacheSize","Cache size for SQLITE (use with care)", ConfigRequests.getCacheSize()));
+		ProgramProperties.preset(DataProcessor.STREAMING_BINNING, options.getOption("-sb", "streamingBinning", "Write read assignments to a temporary file during binning, to reduce memory usage", false));
+		ProgramProperties.preset(DAAQueryIndex.WRITE_DAA_QUERY_INDEX, options.getOption("-qi", "writeQueryIndex", "Write an index of the queries, used to read the file in parallel (file can then not be meganized by older versions of MEGAN)", false));
 
 		final var propertiesFile = options.getOption("-P", "propertiesFile", "Properties file",megan.main.Megan6.getDefaultPropertiesFile());
 		options.done();
@@ -208,37 +212,19 @@ public class DAAMeganizer {
         if (!cNames.isEmpty())
 			System.err.println("Functional classifications to use: " + StringUtils.toString(cNames, ", "));
 
-        final var taxonIdMapper = ClassificationManager.get(Classification.Taxonomy, true).getIdMapper();
-        final var idMappers = new IdMapper[cNames.size()];
-
-        // Load all mapping files:
+        // Load all classifications and mapping files, in parallel:
+        final var cName2MappingFiles = new HashMap<String, Map<IdMapper.MapType, String>>();
         if (runClassifications) {
-            ClassificationManager.get(Classification.Taxonomy, true);
-            taxonIdMapper.setUseTextParsing(parseTaxonNames);
-
-			if (StringUtils.notBlank(mapDBFile)) {
-				taxonIdMapper.loadMappingFile(mapDBFile, IdMapper.MapType.MeganMapDB, false, new ProgressPercentage());
-			}
-			if (StringUtils.notBlank(acc2TaxaFile)) {
-				taxonIdMapper.loadMappingFile(acc2TaxaFile, IdMapper.MapType.Accession, false, new ProgressPercentage());
-			}
-			if (StringUtils.notBlank(synonyms2TaxaFile)) {
-				taxonIdMapper.loadMappingFile(synonyms2TaxaFile, IdMapper.MapType.Synonyms, false, new ProgressPercentage());
-			}
-
-            for (var i = 0; i < cNames.size(); i++) {
-                final var cName = cNames.get(i);
-
-                idMappers[i] = ClassificationManager.get(cName, true).getIdMapper();
-
-				if (mapDBClassifications.contains(cName))
-					idMappers[i].loadMappingFile(mapDBFile, IdMapper.MapType.MeganMapDB, false, new ProgressPercentage());
-				if (StringUtils.notBlank(class2AccessionFile.get(cName)))
-					idMappers[i].loadMappingFile(class2AccessionFile.get(cName), IdMapper.MapType.Accession, false, new ProgressPercentage());
-				if (StringUtils.notBlank(class2SynonymsFile.get(cName)))
-					idMappers[i].loadMappingFile(class2SynonymsFile.get(cName), IdMapper.MapType.Synonyms, false, new ProgressPercentage());
+            cName2MappingFiles.put(Classification.Taxonomy, ClassificationManager.createMappingFiles(mapDBFile, acc2TaxaFile, synonyms2TaxaFile));
+            for (var cName : cNames) {
+                cName2MappingFiles.put(cName, ClassificationManager.createMappingFiles(mapDBClassifications.contains(cName) ? mapDBFile : null, class2AccessionFile.get(cName), class2SynonymsFile.get(cName)));
             }
-        }
+        } else
+            cName2MappingFiles.put(Classification.Taxonomy, Collections.emptyMap());
+        ClassificationManager.preload(cName2MappingFiles, new ProgressPercentage());
+
+        if (runClassifications)
+            ClassificationManager.get(Classification.Taxonomy, true).getIdMapper().setUseTextParsing(parseTaxonNames);
 
         /*
          * process each file
@@ -27,6 +27,7 @@ import jloda.util.progress.ProgressListener;
 import jloda.util.progress.ProgressPercentage;
 import megan.accessiondb.AccessAccessionMappingDatabase;
 import megan.accessiondb.ConfigRequests;
+import megan.algorithms.DataProcessor;
 import megan.classification.Classification;
 import megan.classification.ClassificationManager;
 import megan.classification.IdMapper;
@@ -163,6 +164,7 @@ public class SAM2RMA6 {
         options.comment(ArgsOptions.OTHER);
         ProgramExecutorService.setNumberOfCoresToUse(options.getOption("-t", "threads", "Number of threads", 8));
         ConfigRequests.setCacheSize(options.getOption("-cs","cacheSize","Cache size for SQLITE (use with care)", ConfigRequests.getCacheSize()));
+        ProgramProperties.preset(DataProcessor.STREAMING_BINNING, options.getOption("-sb", "streamingBinning", "Write read assignments to a temporary file during binning, to reduce memory usage", false));
 
         final var propertiesFile = options.getOption("-P", "propertiesFile", "Properties file", Megan6.getDefaultPropertiesFile());
         options.done();
@@ -234,37 +236,19 @@ public class SAM2RMA6 {
         } else if (readsFiles.length != samFiles.length)
             throw new IOException("Number of reads files must equal number of SAM files");
 
-        final IdMapper taxonIdMapper = ClassificationManager.get(Classification.Taxonomy, true).getIdMapper();
-        final IdMapper[] idMappers = new IdMapper[cNames.size()];
-
-        // Load all mapping files:
+        // Load all classifications and mapping files, in parallel:
+        final Map<String, Map<IdMapper.MapType, String>> cName2MappingFiles = new HashMap<>();
         if (runClassifications) {
-            ClassificationManager.get(Classification.Taxonomy, true);
-            taxonIdMapper.setUseTextParsing(parseTaxonNames);
-
-            if (mapDBFile.length() > 0) {
-                taxonIdMapper.loadMappingFile(mapDBFile, IdMapper.MapType.MeganMapDB, false, new ProgressPercentage());
-            }
-            if (acc2TaxaFile.length() > 0) {
-                taxonIdMapper.loadMappingFile(acc2TaxaFile, IdMapper.MapType.Accession, false, new ProgressPercentage());
-            }
-            if (synonyms2TaxaFile.length() > 0) {
-                taxonIdMapper.loadMappingFile(synonyms2TaxaFile, IdMapper.MapType.Synonyms, false, new ProgressPercentage());
+            cName2MappingFiles.put(Classification.Taxonomy, ClassificationManager.createMappingFiles(mapDBFile, acc2TaxaFile, synonyms2TaxaFile));
+            for (String cName : cNames) {
+                cName2MappingFiles.put(cName, ClassificationManager.createMappingFiles(mapDBClassifications.contains(cName) ? mapDBFile : null, class2AccessionFile.get(cName), class2SynonymsFile.get(cName)));
             }
+        } else
+            cName2MappingFiles.put(Classification.Taxonomy, Collections.emptyMap());
+        ClassificationManager.preload(cName2MappingFiles, new ProgressPercentage());
 
-            for (int i = 0; i < cNames.size(); i++) {
-                final String cName = cNames.get(i);
-
-                idMappers[i] = ClassificationManager.get(cName, true).getIdMapper();
-
-                if (mapDBClassifications.contains(cName))
-                    idMappers[i].loadMappingFile(mapDBFile, IdMapper.MapType.MeganMapDB, false, new ProgressPercentage());
-                if (class2AccessionFile.get(cName).length() > 0)
-                    idMappers[i].loadMappingFile(class2AccessionFile.get(cName), IdMapper.MapType.Accession, false, new ProgressPercentage());
-                if (class2SynonymsFile.get(cName).length() > 0)
-                    idMappers[i].loadMappingFile(class2SynonymsFile.get(cName), IdMapper.MapType.Synonyms, false, new ProgressPercentage());
-            }
-        }
+        if (runClassifications)
+            ClassificationManager.get(Classification.Taxonomy, true).getIdMapper().setUseTextParsing(parseTaxonNames);
 
         /*
          * process each set of files:
@@ -24,12 +24,16 @@ import jloda.swing.util.ResourceManager;
 import jloda.util.*;
 import jloda.util.progress.ProgressPercentage;
 import megan.main.MeganProperties;
+import megan.parsers.maf.MAFExternalSorter;
 
 import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 
 /**
  * sort last MAF alignments
@@ -70,6 +74,13 @@ public class SortLastMAFAlignmentsByQuery {
 
         final String outputFile = options.getOption("-o", "output", "Output file (stdout or .gz ok)", "stdout");
 
+        options.comment("External sorting");
+        final boolean externalSort = options.getOption("-x", "externalSort", "Sort using temporary files, for input that doesn't fit into memory", false);
+        final int memoryMB = options.getOption("-m", "memory", "Memory used for sorting, shared by all threads (in MB)", 512);
+        final boolean compressRuns = options.getOption("-z", "compressRuns", "Compress temporary files", false);
+        final String tempDirectory = options.getOption("-T", "tempDir", "Directory for temporary files", System.getProperty("java.io.tmpdir"));
+        final int numberOfThreads = options.getOption("-t", "threads", "Number of threads used for sorting runs", 8);
+
         final var propertiesFile = options.getOption("-P", "propertiesFile", "Properties file",megan.main.Megan6.getDefaultPropertiesFile());
         options.done();
 
@@ -92,6 +103,11 @@ public class SortLastMAFAlignmentsByQuery {
         } else
             orderSetFromReadsFile = false;
 
+        if (externalSort) {
+            sortExternally(lastMAFFile, outputFile, readNamesOrder, orderSetFromReadsFile, new File(tempDirectory), 1024L * 1024L * memoryMB, compressRuns, numberOfThreads);
+            return;
+        }
+
         boolean inInitialComments = true;
 
         long readsIn = 0;
@@ -187,6 +203,85 @@ public class SortLastMAFAlignmentsByQuery {
         System.err.printf("Reads      :%,10d%n", readsIn);
     }
 
+    /**
+     * sort using bounded memory: alignments are written to sorted runs in temporary files, which are then merged.
+     * Queries are ranked by the order of the reads file, if given, followed by all other queries in order of first appearance
+     */
+    private void sortExternally(String lastMAFFile, String outputFile, ArrayList<String> readNamesOrder, boolean orderSetFromReadsFile, File tempDirectory,
+                                long maxBytes, boolean compressRuns, int numberOfThreads) throws IOException {
+        final HashMap<String, Integer> readName2Rank = new HashMap<>(Math.max(1000000, 2 * readNamesOrder.size()));
+        for (String readName : readNamesOrder) {
+            readName2Rank.putIfAbsent(readName, readName2Rank.size());
+        }
+        readNamesOrder.clear();
+        final int numberOfReadsInReadsFile = readName2Rank.size();
+
+        boolean inInitialComments = true;
+        long alignmentsIn = 0;
+        long readsIn = 0;
+        final long[] counts;
+
+        try (FileLineIterator it = new FileLineIterator(lastMAFFile);
+             BufferedWriter w = new BufferedWriter(new OutputStreamWriter(FileUtils.getOutputStreamPossiblyZIPorGZIP(outputFile)));
+             MAFExternalSorter sorter = new MAFExternalSorter(tempDirectory, maxBytes, compressRuns, numberOfThreads)) {
+            final HashSet<String> seen = new HashSet<>(orderSetFromReadsFile ? numberOfReadsInReadsFile : 16);
+            boolean warned = false;
+
+            try (ProgressPercentage progress = new ProgressPercentage("Processing file: " + lastMAFFile)) {
+                progress.setMaximum(it.getMaximumProgress());
+                while (it.hasNext()) {
+                    String line = it.next();
+                    if (line.startsWith("#")) {
+                        if (inInitialComments && !line.startsWith("# batch")) {
+                            w.write(line);
+                            w.write('\n');
+                        }
+                    } else {
+                        if (inInitialComments)
+                            inInitialComments = false;
+                        if (line.startsWith("a ") && it.hasNext()) {
+                            final byte[][] alignment = new byte[3][];
+                            alignment[0] = line.getBytes();
+                            alignment[1] = it.next().getBytes();
+                            if (it.hasNext()) {
+                                final String line2 = it.next();
+                                alignment[2] = line2.getBytes();
+                                alignmentsIn++;
+
+                                final String readName = getSecondWord(line2);
+                                Integer rank = readName2Rank.get(readName);
+                                if (rank == null) {
+                                    if (orderSetFromReadsFile && !warned) {
+                                        System.err.println("Warning: alignments found for queries that are not mentioned in the provided reads file");
+                                        warned = true;
+                                    }
+                                    rank = readName2Rank.size();
+                                    readName2Rank.put(readName, rank);
+                                    readsIn++;
+                                } else if (rank < numberOfReadsInReadsFile && seen.add(readName))
+                                    readsIn++;
+                                sorter.add(rank, alignment);
+                            }
+                        }
+                    }
+                    progress.setProgress(it.getProgress());
+                }
+            }
+            readName2Rank.clear();
+
+            System.err.println("Merging " + sorter.getNumberOfRuns() + " sorted run(s) into file: " + outputFile);
+            counts = sorter.merge(w);
+        }
+
+        if (alignmentsIn != counts[1])
+            System.err.println("Alignments: in=" + alignmentsIn + ", out=" + counts[1]);
+        if (readsIn != counts[0])
+            System.err.println("Reads: in=" + readsIn + ", out=" + counts[0]);
+
+        System.err.printf("Alignments: %,10d%n", alignmentsIn);
+        System.err.printf("Reads      :%,10d%n", readsIn);
+    }
+
     private int parseScoreFromA(byte[] s) {
 		String string = StringUtils.toString(s);
 		int a = string.indexOf('=') + 1;
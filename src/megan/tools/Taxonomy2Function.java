@@ -209,10 +209,11 @@ public class Taxonomy2Function {
 						}
 					}
 					var list = first2reads.computeIfAbsent(mappedClassId,k->new ArrayList<>());
-					var it = connector.getReadsIterator(firstClassificationName, classId, 0, 10, false, false);
-					while (it.hasNext()) {
-						var readBlock = it.next();
-						list.add(readBlock.getReadName());
+					try (var it = connector.getReadsIterator(firstClassificationName, classId, 0, 10, false, false)) {
+						while (it.hasNext()) {
+							var readBlock = it.next();
+							list.add(readBlock.getReadName());
+						}
 					}
 				}
 				progress.incrementProgress();
@@ -243,10 +244,11 @@ public class Taxonomy2Function {
 					}
 				}
 				if (includeSecondUnassigned || classId > 0) {
-					var it = connector.getReadsIterator(secondClassificationName, classId, 0, 10, false, false);
-					while (it.hasNext()) {
-						var readBlock = it.next();
-						read2second.put(readBlock.getReadName(),mappedClassId);
+					try (var it = connector.getReadsIterator(secondClassificationName, classId, 0, 10, false, false)) {
+						while (it.hasNext()) {
+							var readBlock = it.next();
+							read2second.put(readBlock.getReadName(), mappedClassId);
+						}
 					}
 				}
 				progress.incrementProgress();
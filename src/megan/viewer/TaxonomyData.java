@@ -25,6 +25,7 @@ import megan.classification.Classification;
 import megan.classification.ClassificationManager;
 import megan.classification.IdMapper;
 import megan.classification.data.ClassificationFullTree;
+import megan.classification.data.IntIdSet;
 import megan.classification.data.Name2IdMap;
 
 import java.util.*;
@@ -88,7 +89,7 @@ public class TaxonomyData {
      * @return true, if disabled
      */
     public static boolean isTaxonDisabled(String cName, Integer taxonId) {
-        return cName.equals(Classification.Taxonomy) && (taxonId == null || (taxonId > 0 && taxonomyClassification.getIdMapper().getDisabledIds().contains(taxonId)));
+        return Classification.Taxonomy.equals(cName) && isTaxonDisabled(taxonId);
     }
 
     /**
@@ -97,7 +98,16 @@ public class TaxonomyData {
      * @return true, if disabled
      */
     public static boolean isTaxonDisabled(Integer taxonId) {
-        return taxonId == null || (taxonId > 0 && taxonomyClassification.getIdMapper().getDisabledIds().contains(taxonId));
+        return taxonId == null || isTaxonDisabled(taxonId.intValue());
+    }
+
+    /**
+     * is this taxon, or one of its ancestors, disabled? Taxa that are disabled are ignored by LCA algorithm
+     *
+     * @return true, if disabled
+     */
+    public static boolean isTaxonDisabled(int taxonId) {
+        return taxonId > 0 && taxonomyClassification.getIdMapper().isDisabled(taxonId);
     }
 
 
@@ -106,7 +116,7 @@ public class TaxonomyData {
      *
      * @return all disabled taxa
      */
-    public static Set<Integer> getDisabledTaxa() {
+    public static IntIdSet getDisabledTaxa() {
         if (taxonomyClassification == null)
             load();
         return taxonomyClassification.getIdMapper().getDisabledIds();
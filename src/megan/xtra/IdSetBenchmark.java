@@ -0,0 +1,114 @@
+/*
+ * IdSetBenchmark.java Copyright (C) 2024 Daniel H. Huson
+ *
+ * (Some files contain contributions from other authors, who are then mentioned separately.)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package megan.xtra;
+
+import megan.classification.data.IntIdSet;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * micro benchmark for the per-read id set tests made during binning: the disabled-taxon test for each match
+ * and the known-id test for each read and classification, using boxed hash sets (as before) and IntIdSet (as now).
+ * Usage: IdSetBenchmark [reads] [matches-per-read] [classifications]
+ * Daniel Huson, 10.2026
+ */
+public class IdSetBenchmark {
+    private static final String TAXONOMY = "Taxonomy";
+
+    public static void main(String[] args) {
+        final var numberOfReads = (args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000);
+        final var matchesPerRead = (args.length > 1 ? Integer.parseInt(args[1]) : 25);
+        final var numberOfClassifications = (args.length > 2 ? Integer.parseInt(args[2]) : 4);
+
+        final var random = new Random(666);
+
+        // ids similar to the NCBI taxonomy: about 2.5 million ids up to 3 million, some sparse high ids
+        final var knownHashSet = new HashSet<Integer>();
+        for (var i = 0; i < 2_500_000; i++)
+            knownHashSet.add(random.nextInt(3_000_000));
+        for (var i = 0; i < 1000; i++)
+            knownHashSet.add(1_000_000_000 + random.nextInt(100_000_000));
+        final var disabledHashSet = new HashSet<Integer>();
+        for (var i = 0; i < 50_000; i++)
+            disabledHashSet.add(random.nextInt(3_000_000));
+
+        final var knownIdSet = new IntIdSet(knownHashSet);
+        final var disabledIdSet = new IntIdSet(disabledHashSet);
+
+        final var ids = new int[1 << 20];
+        for (var i = 0; i < ids.length; i++)
+            ids[i] = (random.nextInt(10) == 0 ? 1_000_000_000 + random.nextInt(100_000_000) : random.nextInt(3_000_000));
+
+        for (var round = 1; round <= 2; round++) { // first round is warm-up
+            var start = System.nanoTime();
+            final var before = runBefore(TAXONOMY, knownHashSet, disabledHashSet, ids, numberOfReads, matchesPerRead, numberOfClassifications);
+            final var timeBefore = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            final var after = runAfter(TAXONOMY, knownIdSet, disabledIdSet, ids, numberOfReads, matchesPerRead, numberOfClassifications);
+            final var timeAfter = System.nanoTime() - start;
+
+            System.err.printf("Round %d, HashSet<Integer>: %,8.1f ns per read (%,d)%n", round, (double) timeBefore / numberOfReads, before);
+            System.err.printf("Round %d, IntIdSet:         %,8.1f ns per read (%,d)%n", round, (double) timeAfter / numberOfReads, after);
+        }
+    }
+
+    /**
+     * per-read tests as done before, returns a count so that the work is not optimized away
+     */
+    private static long runBefore(String cName, Set<Integer> knownIds, Set<Integer> disabledIds, int[] ids, int numberOfReads, int matchesPerRead, int numberOfClassifications) {
+        var count = 0L;
+        var pos = 0;
+        for (var r = 0; r < numberOfReads; r++) {
+            for (var m = 0; m < matchesPerRead; m++) {
+                final Integer taxonId = ids[pos++ & (ids.length - 1)];
+                if (!(cName.equals(TAXONOMY) && taxonId > 0 && disabledIds.contains(taxonId)))
+                    count++;
+            }
+            for (var c = 0; c < numberOfClassifications; c++) {
+                if (knownIds.contains(ids[pos++ & (ids.length - 1)]))
+                    count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * per-read tests as done now, returns a count so that the work is not optimized away
+     */
+    private static long runAfter(String cName, IntIdSet knownIds, IntIdSet disabledIds, int[] ids, int numberOfReads, int matchesPerRead, int numberOfClassifications) {
+        var count = 0L;
+        var pos = 0;
+        final var disabled = (TAXONOMY.equals(cName) ? disabledIds : null); // looked up once per read in ActiveMatches
+        for (var r = 0; r < numberOfReads; r++) {
+            for (var m = 0; m < matchesPerRead; m++) {
+                final var taxonId = ids[pos++ & (ids.length - 1)];
+                if (!(disabled != null && taxonId > 0 && disabled.contains(taxonId)))
+                    count++;
+            }
+            for (var c = 0; c < numberOfClassifications; c++) {
+                if (knownIds.contains(ids[pos++ & (ids.length - 1)]))
+                    count++;
+            }
+        }
+        return count;
+    }
+}
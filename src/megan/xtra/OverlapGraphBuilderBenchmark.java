@@ -0,0 +1,172 @@
+/*
+ * OverlapGraphBuilderBenchmark.java Copyright (C) 2024 Daniel H. Huson
+ *
+ * (Some files contain contributions from other authors, who are then mentioned separately.)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package megan.xtra;
+
+import jloda.graph.Graph;
+import jloda.util.CanceledException;
+import jloda.util.progress.ProgressSilent;
+import megan.assembly.MatchData;
+import megan.assembly.OverlapGraphBuilder;
+import megan.assembly.ReadData;
+
+import java.util.*;
+
+/**
+ * benchmark for the overlap graph builder on a synthetic gene-centric data set:
+ * reads are sampled from a number of random genes, each read aligned to the genes it was sampled from.
+ * The graph and the contained reads are compared against those computed by the original sequential algorithm.
+ * Usage: OverlapGraphBuilderBenchmark [genes] [reads-per-gene] [read-length] [min-overlap]
+ * Daniel Huson, 10.2026
+ */
+public class OverlapGraphBuilderBenchmark {
+
+    public static void main(String[] args) throws CanceledException {
+        final var numberOfGenes = (args.length > 0 ? Integer.parseInt(args[0]) : 200);
+        final var readsPerGene = (args.length > 1 ? Integer.parseInt(args[1]) : 500);
+        final var readLength = (args.length > 2 ? Integer.parseInt(args[2]) : 150);
+        final var minOverlap = (args.length > 3 ? Integer.parseInt(args[3]) : 20);
+
+        final var reads = createDataSet(numberOfGenes, readsPerGene, readLength, new Random(666));
+        System.err.printf("Reads: %,d%n", reads.size());
+
+        OverlapGraphBuilder builder = null;
+        Graph referenceGraph = null;
+        List<Integer>[] referenceContainedReads = null;
+        for (var round = 1; round <= 2; round++) { // first round is warm-up
+            var start = System.currentTimeMillis();
+            builder = new OverlapGraphBuilder(minOverlap, false);
+            builder.apply(reads, new ProgressSilent());
+            final var time = System.currentTimeMillis() - start;
+            System.err.printf("Round %d, OverlapGraphBuilder: %,d ms, nodes=%,d edges=%,d%n", round, time, builder.getOverlapGraph().getNumberOfNodes(), builder.getOverlapGraph().getNumberOfEdges());
+
+            start = System.currentTimeMillis();
+            referenceContainedReads = new List[reads.size()];
+            referenceGraph = computeReferenceGraph(reads, minOverlap, referenceContainedReads);
+            final var referenceTime = System.currentTimeMillis() - start;
+            System.err.printf("Round %d, original algorithm:  %,d ms, nodes=%,d edges=%,d%n", round, referenceTime, referenceGraph.getNumberOfNodes(), referenceGraph.getNumberOfEdges());
+        }
+
+        System.err.println("Same graph: " + getEdges(builder.getOverlapGraph()).equals(getEdges(referenceGraph)));
+        System.err.println("Same contained reads: " + Arrays.equals(builder.getReadId2ContainedReads(), referenceContainedReads));
+    }
+
+    /**
+     * sample reads from random genes. Each gene has a protein reference of geneLength/3 positions
+     */
+    private static List<ReadData> createDataSet(int numberOfGenes, int readsPerGene, int readLength, Random random) {
+        final var reads = new ArrayList<ReadData>();
+        final var geneLength = 3 * 1000;
+        for (var g = 0; g < numberOfGenes; g++) {
+            final var gene = new StringBuilder();
+            for (var i = 0; i < geneLength; i++)
+                gene.append("acgt".charAt(random.nextInt(4)));
+            for (var r = 0; r < readsPerGene; r++) {
+                final var firstPosInRef = 1 + random.nextInt((geneLength - readLength) / 3);
+                final var lastPosInRef = firstPosInRef + readLength / 3 - 1;
+                final var read = new ReadData(reads.size(), "read" + reads.size());
+                read.setSegment(gene.substring(3 * (firstPosInRef - 1), 3 * lastPosInRef));
+                read.setMatches(new MatchData[]{new MatchData(read, "gene" + g, firstPosInRef, lastPosInRef, null, 100)});
+                reads.add(read);
+            }
+        }
+        return reads;
+    }
+
+    /**
+     * the original single-threaded algorithm, recording the contained reads of each read by read id
+     */
+    private static Graph computeReferenceGraph(List<ReadData> reads, int minOverlap, List<Integer>[] readId2ContainedReads) {
+        final var ref2matches = new HashMap<String, SortedSet<MatchData>>();
+        for (var read : reads) {
+            for (var match : read.getMatches()) {
+                ref2matches.computeIfAbsent(match.getRefName(), k -> new TreeSet<>(new MatchData())).add(match);
+            }
+        }
+        final var graph = new Graph();
+        final var nodes = new jloda.graph.Node[reads.size()];
+        final var containedReadIds = new BitSet();
+        for (var refName : ref2matches.keySet()) {
+            final var matches = ref2matches.get(refName).toArray(new MatchData[0]);
+            for (var i = 0; i < matches.length; i++) {
+                final var iMatch = matches[i];
+                if (!containedReadIds.get(iMatch.getRead().getId())) {
+                    var v = nodes[iMatch.getRead().getId()];
+                    if (v == null)
+                        v = nodes[iMatch.getRead().getId()] = graph.newNode(iMatch.getRead().getId());
+                    for (var j = i + 1; j < matches.length; j++) {
+                        final var jMatch = matches[j];
+                        if (3 * (iMatch.getLastPosInRef() - jMatch.getFirstPosInRef()) <= minOverlap)
+                            break;
+                        final var overlapLength = computePerfectOverlapLength(iMatch, jMatch);
+                        if (overlapLength > 0 && jMatch.getLastPosInRef() <= iMatch.getLastPosInRef()) {
+                            containedReadIds.set(jMatch.getRead().getId());
+                            if (readId2ContainedReads[iMatch.getRead().getId()] == null)
+                                readId2ContainedReads[iMatch.getRead().getId()] = new ArrayList<>();
+                            readId2ContainedReads[iMatch.getRead().getId()].add(jMatch.getRead().getId());
+                        } else if (overlapLength >= minOverlap) {
+                            var w = nodes[jMatch.getRead().getId()];
+                            if (w == null)
+                                w = nodes[jMatch.getRead().getId()] = graph.newNode(jMatch.getRead().getId());
+                            final var e = graph.getCommonEdge(v, w);
+                            if (e == null)
+                                graph.newEdge(v, w, overlapLength);
+                            else if ((Integer) e.getInfo() < overlapLength)
+                                e.setInfo(overlapLength);
+                        }
+                    }
+                }
+            }
+        }
+        return graph;
+    }
+
+    private static int computePerfectOverlapLength(MatchData iMatch, MatchData jMatch) {
+        try {
+            final var first = Math.max(iMatch.getFirstPosInRef(), jMatch.getFirstPosInRef());
+            final var last = Math.min(iMatch.getLastPosInRef(), jMatch.getLastPosInRef());
+            var count = 0;
+            for (var refPos = first; refPos <= last; refPos++) {
+                for (var k = 0; k < 3; k++) {
+                    final var iPos = 3 * (refPos - iMatch.getFirstPosInRef()) + k;
+                    final var jPos = 3 * (refPos - jMatch.getFirstPosInRef()) + k;
+                    final var iChar = Character.toLowerCase(iMatch.getRead().getSegment().charAt(iPos));
+                    final var jChar = Character.toLowerCase(jMatch.getRead().getSegment().charAt(jPos));
+                    if (iChar != jChar && iChar != 'n' && jChar != 'n')
+                        return 0;
+                    else if (Character.isLetter(iMatch.getRead().getSegment().charAt(iPos)))
+                        count++;
+                }
+            }
+            return count;
+        } catch (Exception ex) {
+            return 0;
+        }
+    }
+
+    /**
+     * edges as source-target-overlap strings, for comparison
+     */
+    private static Set<String> getEdges(Graph graph) {
+        final var edges = new HashSet<String>();
+        for (var e : graph.edges()) {
+            edges.add(e.getSource().getInfo() + "->" + e.getTarget().getInfo() + ":" + e.getInfo());
+        }
+        return edges;
+    }
+}